@@ -0,0 +1,139 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.smartcliparser.demos.Reverse;
+
+/**
+ * Measures the latency of invoking demos.Reverse in a new JVM, compared to
+ * invoking it through a ProgramDaemon from a new process running the native
+ * client, from a new JVM running DaemonClient, and from within a JVM that is
+ * already running.
+ *
+ * The native client is the one the jmh task compiles from
+ * client/smartcliparser_client.c, passed as the smartcliparser.client
+ * system property. Where no C compiler is available, the jmh task leaves
+ * nativeClientLaunch out instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DaemonBenchmark {
+
+  private static final String[] ARGS = {"-i", "smart", "cli", "parser", "-u"};
+
+  private Path directory;
+  private Path socket;
+  private ProgramDaemon daemon;
+  private DaemonClient client;
+  private String java;
+  private String classPath;
+  private String nativeClient;
+
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("smartcliparser");
+    socket = directory.resolve("daemon.sock");
+    daemon = new ProgramDaemon(socket);
+    daemon.register("reverse", new Supplier<CommandLineProgram>() {
+      public CommandLineProgram get() {
+        return new Reverse();
+      }
+    });
+    daemon.start();
+    client = new DaemonClient(socket);
+    java = Paths.get(System.getProperty("java.home"), "bin", "java")
+        .toString();
+    classPath = System.getProperty("java.class.path");
+    nativeClient = System.getProperty("smartcliparser.client");
+  }
+
+
+  @TearDown
+  public void tearDown() throws IOException {
+    daemon.close();
+    Files.deleteIfExists(directory);
+  }
+
+
+  @Benchmark
+  public int coldLaunch() throws Exception {
+    return launch(java, "-cp", classPath, Reverse.class.getName());
+  }
+
+
+  @Benchmark
+  public int nativeClientLaunch() throws Exception {
+    if (nativeClient == null) {
+      throw new IllegalStateException(
+          "The smartcliparser.client system property is not set.");
+    }
+    return launch(nativeClient, socket.toString(), "reverse");
+  }
+
+
+  @Benchmark
+  public int clientLaunch() throws Exception {
+    return launch(java, "-cp", classPath, DaemonClient.class.getName(),
+        socket.toString(), "reverse");
+  }
+
+
+  @Benchmark
+  public int inProcessClient() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    return client.execute("reverse", ARGS, null, out, out) + out.size();
+  }
+
+
+  /**
+   * Runs |prefix| followed by ARGS in a new process.
+   * @return The exit status.
+   */
+  private int launch(String... prefix) throws Exception {
+    String[] command = new String[prefix.length + ARGS.length];
+    System.arraycopy(prefix, 0, command, 0, prefix.length);
+    System.arraycopy(ARGS, 0, command, prefix.length, ARGS.length);
+    return new ProcessBuilder(command)
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .redirectError(ProcessBuilder.Redirect.DISCARD)
+        .start().waitFor();
+  }
+
+}  // class DaemonBenchmark
@@ -0,0 +1,223 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rubikscube.io.FileIOUtilities;
+import rubikscube.io.TextIOUtilities;
+
+/**
+ * Measures expanding a FileSetFlag over a generated directory tree, compared
+ * to the single-threaded FileIOUtilities and TextIOUtilities. Every
+ * directory holds |filesPerDirectory| files, half of them text and half of
+ * them binary, and |fanOut| subdirectories, down to |depth| levels.
+ *
+ * A FileSetFlag remembers its expansion, and TextFileDetector remembers its
+ * verdicts for the life of the process, so the uncached benchmarks expand a
+ * fresh flag and check files with a fresh detector each time, while the
+ * cached ones measure what repeated calls cost. The operating system still
+ * caches the tree in both cases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileSetFlagBenchmark {
+
+  @Param({"2", "4"})
+  public int depth;
+
+  @Param({"4", "8"})
+  public int fanOut;
+
+  @Param({"16"})
+  public int filesPerDirectory;
+
+  private File root;
+
+  /**
+   * A flag whose expansion is remembered across invocations.
+   */
+  private FileSetFlag flag;
+
+  /**
+   * The files of the tree, and a detector that already checked them.
+   */
+  private List<Path> paths;
+  private TextFileDetector detector;
+
+
+  /**
+   * A flag that has not expanded its args yet, created for each invocation.
+   */
+  @State(Scope.Thread)
+  public static class FreshFlag {
+
+    FileSetFlag flag;
+
+
+    @Setup(Level.Invocation)
+    public void setUp(FileSetFlagBenchmark benchmark) {
+      this.flag = createFlag(benchmark.root);
+    }
+
+  }  // class FreshFlag
+
+
+  @Setup
+  public void setUp() throws IOException {
+    root = File.createTempFile("smartcliparser", "bench");
+    if (!root.delete() || !root.mkdir()) {
+      throw new IOException("Could not create " + root);
+    }
+    generate(root, depth);
+
+    flag = createFlag(root);
+    paths = FileSetWalker.walk(flag.args);
+    detector = new TextFileDetector();
+    detector.filter(paths);
+  }
+
+
+  private static FileSetFlag createFlag(File root) {
+    FileSetFlag flag = new FileSetFlag(new String[]{"input"}, true, 1, 1);
+    List<String> args = new ArrayList<String>(
+        Arrays.asList(new String[]{root.getPath()}));
+    ListIterator<String> it = args.listIterator();
+    flag.consume(args, it);
+    return flag;
+  }
+
+
+  private void generate(File directory, int levels) throws IOException {
+    byte[] text = "some text\n".getBytes("UTF-8");
+    byte[] binary = new byte[]{0, 1, 2, 3, (byte) 0xff};
+    for (int i = 0; i < filesPerDirectory; i++) {
+      FileOutputStream out = new FileOutputStream(
+          new File(directory, "file" + i + (i % 2 == 0 ? ".txt" : ".bin")));
+      try {
+        out.write(i % 2 == 0 ? text : binary);
+      } finally {
+        out.close();
+      }
+    }
+    if (levels == 0) {
+      return;
+    }
+    for (int i = 0; i < fanOut; i++) {
+      File subdirectory = new File(directory, "dir" + i);
+      if (!subdirectory.mkdir()) {
+        throw new IOException("Could not create " + subdirectory);
+      }
+      generate(subdirectory, levels - 1);
+    }
+  }
+
+
+  @TearDown
+  public void tearDown() {
+    delete(root);
+  }
+
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (int i = 0; i < children.length; i++) {
+        delete(children[i]);
+      }
+    }
+    file.delete();
+  }
+
+
+  @Benchmark
+  public Collection<File> getFileSet(FreshFlag fresh)
+      throws FileNotFoundException {
+    return fresh.flag.getFileSet();
+  }
+
+
+  @Benchmark
+  public Collection<File> getFileSetCached() throws FileNotFoundException {
+    return flag.getFileSet();
+  }
+
+
+  @Benchmark
+  public List<Path> walk() throws FileNotFoundException {
+    return FileSetWalker.walk(flag.args);
+  }
+
+
+  @Benchmark
+  public Collection<File> legacyGetFileSet() throws FileNotFoundException {
+    return FileIOUtilities.getFileSet(flag.args);
+  }
+
+
+  @Benchmark
+  public List<Path> walkTextFiles() throws FileNotFoundException {
+    return new TextFileDetector().filter(FileSetWalker.walk(flag.args));
+  }
+
+
+  @Benchmark
+  public List<Path> filterText() {
+    return new TextFileDetector().filter(paths);
+  }
+
+
+  @Benchmark
+  public List<Path> filterTextCached() {
+    return detector.filter(paths);
+  }
+
+
+  @Benchmark
+  public Collection<File> legacyGetTextFileSet()
+      throws FileNotFoundException {
+    return TextIOUtilities.getTextFiles(
+        FileIOUtilities.getFileSet(flag.args));
+  }
+
+}  // class FileSetFlagBenchmark
@@ -0,0 +1,92 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares resolving flag-like tokens through FlagNameIndex against
+ * extracting the name and looking it up in a HashMap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FlagNameIndexBenchmark {
+
+  private static final int NUM_OF_TOKENS = 1 << 16;
+
+  @Param({"10", "100", "1000", "10000"})
+  public int numOfFlags;
+
+  private Map<String, Integer> map;
+  private FlagNameIndex index;
+  private String[] tokens;
+
+
+  @Setup
+  public void setUp() {
+    map = new HashMap<String, Integer>();
+    index = new FlagNameIndex();
+    for (int i = 0; i < numOfFlags; i++) {
+      String name = "generated-flag-" + i;
+      map.put(name, i);
+      index.add(name, i);
+    }
+
+    Random random = new Random(numOfFlags);
+    tokens = new String[NUM_OF_TOKENS];
+    for (int i = 0; i < tokens.length; i++) {
+      tokens[i] = "--generated-flag-" + random.nextInt(numOfFlags);
+    }
+  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_OF_TOKENS)
+  public long hashMap() {
+    long checksum = 0;
+    for (int i = 0; i < tokens.length; i++) {
+      checksum += map.get(Flag.extractName(tokens[i]));
+    }
+    return checksum;
+  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_OF_TOKENS)
+  public long flagNameIndex() {
+    long checksum = 0;
+    for (int i = 0; i < tokens.length; i++) {
+      String token = tokens[i];
+      checksum += index.resolve(
+          token, Flag.getNameOffset(token), token.length(), false);
+    }
+    return checksum;
+  }
+
+}  // class FlagNameIndexBenchmark
@@ -0,0 +1,144 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares suggesting the names closest to a misspelled flag through
+ * FlagNameSuggester against computing the distance to every name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FlagNameSuggesterBenchmark {
+
+  private static final int NUM_OF_TOKENS = 256;
+
+  @Param({"100", "1000", "10000"})
+  public int numOfFlags;
+
+  private List<String> names;
+  private FlagNameSuggester suggester;
+  private String[] tokens;
+
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(numOfFlags);
+    names = new ArrayList<String>();
+    for (int i = 0; i < numOfFlags; i++) {
+      names.add(randomWord(random) + "-" + randomWord(random));
+    }
+    suggester = new FlagNameSuggester(names);
+
+    // Misspelling names by replacing one of their characters.
+    tokens = new String[NUM_OF_TOKENS];
+    for (int i = 0; i < tokens.length; i++) {
+      char[] name = names.get(random.nextInt(numOfFlags)).toCharArray();
+      name[random.nextInt(name.length)] = (char) ('a' + random.nextInt(26));
+      tokens[i] = "--" + new String(name);
+    }
+  }
+
+
+  /**
+   * @return The Levenshtein distance between |name| and characters |start|
+   *     to |end| of |string|.
+   * @param rows Two rows of scratch space, grown as needed.
+   */
+  private static int distance(String name, CharSequence string, int start,
+      int end, int[][] rows) {
+    int length = end - start;
+    if (rows[0] == null || rows[0].length <= length) {
+      rows[0] = new int[length + 1];
+      rows[1] = new int[length + 1];
+    }
+    int[] previous = rows[0];
+    int[] current = rows[1];
+    for (int j = 0; j <= length; j++) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= name.length(); i++) {
+      current[0] = i;
+      char c = name.charAt(i - 1);
+      for (int j = 1; j <= length; j++) {
+        int substitution = previous[j - 1] +
+            (c == string.charAt(start + j - 1) ? 0 : 1);
+        current[j] = Math.min(substitution,
+            Math.min(previous[j], current[j - 1]) + 1);
+      }
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return previous[length];
+  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_OF_TOKENS)
+  public long linearScan() {
+    long checksum = 0;
+    int[][] rows = new int[2][];
+    for (int i = 0; i < tokens.length; i++) {
+      String token = tokens[i];
+      int maxDistance = FlagNameSuggester.getMaxDistance(token.length() - 2);
+      for (int j = 0; j < names.size(); j++) {
+        if (distance(names.get(j), token, 2,
+            token.length(), rows) <= maxDistance) {
+          checksum++;
+        }
+      }
+    }
+    return checksum;
+  }
+
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_OF_TOKENS)
+  public long automaton() {
+    long checksum = 0;
+    for (int i = 0; i < tokens.length; i++) {
+      String token = tokens[i];
+      checksum += suggester.suggest(token, 2, token.length(),
+          FlagNameSuggester.getMaxDistance(token.length() - 2)).size();
+    }
+    return checksum;
+  }
+
+
+  private static String randomWord(Random random) {
+    char[] word = new char[3 + random.nextInt(6)];
+    for (int i = 0; i < word.length; i++) {
+      word[i] = (char) ('a' + random.nextInt(26));
+    }
+    return new String(word);
+  }
+
+}  // class FlagNameSuggesterBenchmark
@@ -0,0 +1,145 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing of generated command lines, through both
+ * CommandLineProgram.parseArgs and a reused ParseResult.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParseArgsBenchmark {
+
+  /**
+   * The number of values following each flag.
+   */
+  private static final int VALUES_PER_FLAG = 9;
+
+  @Param({"10", "1000", "100000", "1000000"})
+  public int numOfArgs;
+
+  @Param({"10", "1000"})
+  public int numOfFlags;
+
+  /**
+   * The kind of command line to generate.
+   * values: Flags followed by values, all of them valid.
+   * pattern: Like values, with every flag validating its values against a
+   *     pattern.
+   * unconsumed: Mostly args that no flag consumes, handed to the unconsumed
+   *     flag.
+   * errors: Unknown flags and flags with too few args.
+   */
+  @Param({"values", "pattern", "unconsumed", "errors"})
+  public String shape;
+
+  private BenchmarkProgram program;
+  private ParserSpec spec;
+  private ParseResult result;
+  private String[] args;
+
+
+  /**
+   * A program with generated flags, registered before parsing.
+   */
+  static final class BenchmarkProgram extends CommandLineProgram {
+
+    @Override
+    public void initialize() {}
+
+
+    @Override
+    public void run() {}
+
+  }  // class BenchmarkProgram
+
+
+  @Setup
+  public void setUp() {
+    boolean withPattern = shape.equals("pattern");
+    boolean withErrors = shape.equals("errors");
+    program = new BenchmarkProgram();
+    for (int i = 0; i < numOfFlags; i++) {
+      program.registerFlag(new Flag(new String[]{"flag" + i}, false,
+          withErrors ? VALUES_PER_FLAG + 1 : 0, Flag.UNLIMITED_NUM_OF_ARGS,
+          withPattern ? Pattern.compile("[0-9]+") : null, false));
+    }
+    program.setUnconsumedFlags(0, Flag.UNLIMITED_NUM_OF_ARGS);
+    spec = program.compile();
+    result = spec.newResult();
+    args = generateArgs(new Random(numOfArgs));
+    // Parsing once, so that the benchmarks always clear a parsed program.
+    program.parseArgs(args);
+  }
+
+
+  private String[] generateArgs(Random random) {
+    String[] generated = new String[numOfArgs];
+    int flagEvery = shape.equals("unconsumed") ? 1000 : VALUES_PER_FLAG + 1;
+    for (int i = 0; i < numOfArgs; i++) {
+      if (i % flagEvery == 0 && i > 0) {
+        int flag = random.nextInt(numOfFlags);
+        generated[i] = shape.equals("errors") && flag % 2 == 0 ?
+            "--unknown" + flag : "--flag" + flag;
+      } else {
+        generated[i] = Integer.toString(random.nextInt(1000000));
+      }
+    }
+    return generated;
+  }
+
+
+  @Benchmark
+  public boolean parseArgs() {
+    program.clear();
+    return program.parseArgs(args);
+  }
+
+
+  @Benchmark
+  public boolean parseReusingResult() {
+    return spec.parse(args, result).isValid();
+  }
+
+
+  @Benchmark
+  public List<ParsingError> parseAndGetErrors() {
+    program.clear();
+    program.parseArgs(args);
+    return program.getErrors();
+  }
+
+}  // class ParseArgsBenchmark
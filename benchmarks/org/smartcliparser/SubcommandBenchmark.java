@@ -0,0 +1,151 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the time to create, initialize and run a tool as a function of
+ * its number of subcommands, comparing a tool registering the flags of all
+ * subcommands in a single namespace against one dispatching to lazily
+ * initialized subcommands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SubcommandBenchmark {
+
+  private static final int NUM_OF_FLAGS_PER_SUBCOMMAND = 8;
+
+  @Param({"10", "100", "300", "1000"})
+  public int numOfSubcommands;
+
+  private String[] flatArgs;
+  private String[] subcommandArgs;
+
+
+  @Setup
+  public void setUp() {
+    String last = "command" + (numOfSubcommands - 1);
+    flatArgs = new String[]{"--verbose", "--" + last + "-flag0", "value"};
+    subcommandArgs = new String[]{"--verbose", last, "--flag0", "value"};
+  }
+
+
+  @Benchmark
+  public int flat() {
+    return new FlatTool(numOfSubcommands).execute(flatArgs);
+  }
+
+
+  @Benchmark
+  public int subcommands() {
+    return new Tool(numOfSubcommands).execute(subcommandArgs);
+  }
+
+
+  /**
+   * Registers the flags of all subcommands, prefixed by their names.
+   */
+  private static class FlatTool extends CommandLineProgram {
+
+    private final int numOfSubcommands;
+
+
+    FlatTool(int numOfSubcommands) {
+      this.numOfSubcommands = numOfSubcommands;
+    }
+
+
+    @Override
+    public void initialize() {
+      registerFlag(Flag.createSwitch(new String[]{"verbose"}));
+      for (int i = 0; i < numOfSubcommands; i++) {
+        registerFlags(this, "command" + i + "-");
+      }
+    }
+
+
+    @Override
+    public void run() {}
+
+  }  // class FlatTool
+
+
+  private static class Tool extends CommandLineProgram {
+
+    private static final Supplier<CommandLineProgram> FACTORY =
+        new Supplier<CommandLineProgram>() {
+          public CommandLineProgram get() {
+            return new Subcommand();
+          }
+        };
+
+    private final int numOfSubcommands;
+
+
+    Tool(int numOfSubcommands) {
+      this.numOfSubcommands = numOfSubcommands;
+    }
+
+
+    @Override
+    public void initialize() {
+      registerFlag(Flag.createSwitch(new String[]{"verbose"}));
+      for (int i = 0; i < numOfSubcommands; i++) {
+        registerSubcommand("command" + i, FACTORY);
+      }
+    }
+
+
+    @Override
+    public void run() {}
+
+  }  // class Tool
+
+
+  private static class Subcommand extends CommandLineProgram {
+
+    @Override
+    public void initialize() {
+      registerFlags(this, "");
+    }
+
+
+    @Override
+    public void run() {}
+
+  }  // class Subcommand
+
+
+  private static void registerFlags(CommandLineProgram program,
+      String prefix) {
+    for (int i = 0; i < NUM_OF_FLAGS_PER_SUBCOMMAND; i++) {
+      program.registerFlag(
+          new Flag(new String[]{prefix + "flag" + i}, false, 1, 1));
+    }
+  }
+
+}  // class SubcommandBenchmark
@@ -0,0 +1,104 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser.demos;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares uppercasing and reversing the lines of a file through
+ * LineReverser against the per-string path of Reverse --input, given the
+ * lines already split. Output is discarded in both cases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReverseBenchmark {
+
+  @Param({"1000000"})
+  public int numOfLines;
+
+  private Path file;
+  private String[] lines;
+  private PrintStream printStream;
+  private OutputStream nullStream;
+
+
+  @Setup
+  public void setUp() throws IOException {
+    Random random = new Random(numOfLines);
+    String[] words = {"alpha", "Beta", "gamma", "\u00e9t\u00e9",
+        "\ud83d\ude00", "/usr/local/share"};
+    lines = new String[numOfLines];
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < numOfLines; i++) {
+      StringBuilder line = new StringBuilder();
+      int numOfWords = 1 + random.nextInt(12);
+      for (int j = 0; j < numOfWords; j++) {
+        line.append(words[random.nextInt(words.length)]).append(' ');
+      }
+      lines[i] = line.toString();
+      text.append(lines[i]).append('\n');
+    }
+    file = Files.createTempFile("reverse-benchmark", ".txt");
+    Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+    nullStream = new OutputStream() {
+      @Override
+      public void write(int b) {}
+
+      @Override
+      public void write(byte[] bytes, int offset, int length) {}
+    };
+    printStream = new PrintStream(nullStream);
+  }
+
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(file);
+  }
+
+
+  @Benchmark
+  public void perString() {
+    for (int i = 0; i < lines.length; i++) {
+      printStream.println(Reverse.reverse(lines[i]).toUpperCase());
+    }
+    printStream.flush();
+  }
+
+
+  @Benchmark
+  public void mappedFile() throws IOException {
+    new LineReverser(LineReverser.Case.UPPER).reverse(file, nullStream);
+  }
+
+}  // class ReverseBenchmark
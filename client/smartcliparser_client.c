@@ -0,0 +1,352 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+/*
+ * Invokes a program hosted by org.smartcliparser.ProgramDaemon, like
+ * org.smartcliparser.DaemonClient does, but without starting a JVM. It
+ * speaks the protocol described by org.smartcliparser.DaemonProtocol,
+ * forwarding the args, working directory, environment and stdio of the
+ * caller, and exits with the exit status of the program.
+ *
+ * Build: cc -O2 -o smartcliparser-client smartcliparser_client.c
+ * Usage: smartcliparser-client socket program [args...]
+ */
+
+#include <errno.h>
+#include <fcntl.h>
+#include <poll.h>
+#include <signal.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/socket.h>
+#include <sys/un.h>
+#include <unistd.h>
+
+/* Constants of DaemonProtocol. */
+#define MAGIC 0x53435044
+#define VERSION 1
+#define STDIN_CHANNEL 0
+#define STDOUT_CHANNEL 1
+#define STDERR_CHANNEL 2
+#define EXIT_CHANNEL 3
+#define MAX_FRAME_LENGTH (1024 * 1024)
+
+#define HEADER_LENGTH 5
+#define BUFFER_SIZE (64 * 1024)
+
+extern char **environ;
+
+/* The request being built, before it is sent. */
+static unsigned char *request = NULL;
+static size_t request_length = 0;
+static size_t request_capacity = 0;
+
+
+static void fail(const char *message) {
+  fprintf(stderr, "smartcliparser-client: %s\n", message);
+  exit(1);
+}
+
+
+static void fail_errno(const char *message) {
+  fprintf(stderr, "smartcliparser-client: %s: %s\n", message,
+      strerror(errno));
+  exit(1);
+}
+
+
+static void put_int(unsigned char *bytes, uint32_t value) {
+  bytes[0] = (unsigned char) (value >> 24);
+  bytes[1] = (unsigned char) (value >> 16);
+  bytes[2] = (unsigned char) (value >> 8);
+  bytes[3] = (unsigned char) value;
+}
+
+
+static uint32_t get_int(const unsigned char *bytes) {
+  return ((uint32_t) bytes[0] << 24) | ((uint32_t) bytes[1] << 16) |
+      ((uint32_t) bytes[2] << 8) | (uint32_t) bytes[3];
+}
+
+
+static void append(const void *bytes, size_t length) {
+  if (request_length + length > request_capacity) {
+    size_t capacity = request_capacity == 0 ? 4096 : request_capacity;
+    while (request_length + length > capacity) {
+      capacity *= 2;
+    }
+    request = realloc(request, capacity);
+    if (request == NULL) {
+      fail("Out of memory.");
+    }
+    request_capacity = capacity;
+  }
+  memcpy(request + request_length, bytes, length);
+  request_length += length;
+}
+
+
+static void append_int(uint32_t value) {
+  unsigned char bytes[4];
+  put_int(bytes, value);
+  append(bytes, 4);
+}
+
+
+/* Strings are sent as their length in bytes followed by the bytes. */
+static void append_string(const char *string, size_t length) {
+  append_int((uint32_t) length);
+  append(string, length);
+}
+
+
+/* Writes all |length| bytes, retrying on short writes. */
+static int write_all(int fd, const unsigned char *bytes, size_t length) {
+  while (length > 0) {
+    ssize_t written = write(fd, bytes, length);
+    if (written < 0) {
+      if (errno == EINTR) {
+        continue;
+      }
+      return -1;
+    }
+    bytes += written;
+    length -= (size_t) written;
+  }
+  return 0;
+}
+
+
+static int connect_to(const char *path) {
+  struct sockaddr_un address;
+  int fd;
+  if (strlen(path) >= sizeof(address.sun_path)) {
+    fail("The socket path is too long.");
+  }
+  memset(&address, 0, sizeof(address));
+  address.sun_family = AF_UNIX;
+  strcpy(address.sun_path, path);
+  fd = socket(AF_UNIX, SOCK_STREAM, 0);
+  if (fd < 0) {
+    fail_errno("Could not create a socket");
+  }
+  if (connect(fd, (struct sockaddr *) &address, sizeof(address)) < 0) {
+    fail_errno("Could not connect to the daemon");
+  }
+  return fd;
+}
+
+
+static void build_request(const char *program, int argc, char **argv) {
+  char *directory;
+  size_t num_of_variables = 0;
+  char **variable;
+  int i;
+
+  append_int(MAGIC);
+  append_int(VERSION);
+  append_string(program, strlen(program));
+  directory = getcwd(NULL, 0);
+  if (directory == NULL) {
+    fail_errno("Could not get the working directory");
+  }
+  append_string(directory, strlen(directory));
+  free(directory);
+  append_int((uint32_t) argc);
+  for (i = 0; i < argc; i++) {
+    append_string(argv[i], strlen(argv[i]));
+  }
+
+  for (variable = environ; *variable != NULL; variable++) {
+    if (strchr(*variable, '=') != NULL) {
+      num_of_variables++;
+    }
+  }
+  append_int((uint32_t) num_of_variables);
+  for (variable = environ; *variable != NULL; variable++) {
+    const char *separator = strchr(*variable, '=');
+    if (separator != NULL) {
+      append_string(*variable, (size_t) (separator - *variable));
+      append_string(separator + 1, strlen(separator + 1));
+    }
+  }
+}
+
+
+/*
+ * Forwards stdin to the daemon and its frames to stdout and stderr, until
+ * it reports the exit status. Stdin is only read once the previous frame of
+ * it has been sent, and the socket is never written while it would block,
+ * so that the output of the daemon is always read.
+ * @return The exit status of the program.
+ */
+static int serve(int socket_fd) {
+  static unsigned char in[BUFFER_SIZE];
+  static unsigned char out[HEADER_LENGTH + BUFFER_SIZE];
+  /* The pending stdin frame, in out[out_start, out_end). */
+  size_t out_start = 0;
+  size_t out_end = 0;
+  int is_stdin_open = 1;
+  /* The header of the frame being read, and the payload left to read. */
+  unsigned char header[HEADER_LENGTH];
+  size_t header_length = 0;
+  uint32_t payload_left = 0;
+  unsigned char status[4];
+  size_t status_length = 0;
+  int channel = -1;
+
+  if (fcntl(socket_fd, F_SETFL,
+      fcntl(socket_fd, F_GETFL) | O_NONBLOCK) < 0) {
+    fail_errno("Could not configure the socket");
+  }
+  while (1) {
+    struct pollfd fds[2];
+    nfds_t num_of_fds = 1;
+    ssize_t length;
+    size_t i;
+
+    fds[0].fd = socket_fd;
+    fds[0].events = POLLIN | (out_start < out_end ? POLLOUT : 0);
+    fds[0].revents = 0;
+    if (is_stdin_open && out_start == out_end) {
+      fds[1].fd = STDIN_FILENO;
+      fds[1].events = POLLIN;
+      fds[1].revents = 0;
+      num_of_fds = 2;
+    }
+    if (poll(fds, num_of_fds, -1) < 0) {
+      if (errno == EINTR) {
+        continue;
+      }
+      fail_errno("Could not wait for input");
+    }
+
+    if (num_of_fds == 2 && fds[1].revents != 0) {
+      length = read(STDIN_FILENO, out + HEADER_LENGTH, BUFFER_SIZE);
+      if (length < 0 && errno == EINTR) {
+        continue;
+      }
+      if (length <= 0) {
+        /* An empty frame ends stdin. */
+        is_stdin_open = 0;
+        length = 0;
+      }
+      out[0] = STDIN_CHANNEL;
+      put_int(out + 1, (uint32_t) length);
+      out_start = 0;
+      out_end = HEADER_LENGTH + (size_t) length;
+    }
+
+    if (out_start < out_end && (fds[0].revents & POLLOUT)) {
+      length = send(socket_fd, out + out_start, out_end - out_start, 0);
+      if (length < 0 && errno != EAGAIN && errno != EINTR) {
+        /* The daemon no longer reads stdin, its output may still come. */
+        is_stdin_open = 0;
+        out_start = out_end;
+      } else if (length > 0) {
+        out_start += (size_t) length;
+      }
+    }
+
+    if (!(fds[0].revents & (POLLIN | POLLHUP | POLLERR))) {
+      continue;
+    }
+    length = recv(socket_fd, in, sizeof(in), 0);
+    if (length < 0) {
+      if (errno == EAGAIN || errno == EINTR) {
+        continue;
+      }
+      fail_errno("Could not read from the daemon");
+    }
+    if (length == 0) {
+      fail("The daemon closed the connection.");
+    }
+    for (i = 0; i < (size_t) length;) {
+      if (header_length < HEADER_LENGTH) {
+        header[header_length++] = in[i++];
+        if (header_length < HEADER_LENGTH) {
+          continue;
+        }
+        channel = header[0];
+        payload_left = get_int(header + 1);
+        if (payload_left > MAX_FRAME_LENGTH) {
+          fail("The daemon sent a frame that is too large.");
+        }
+        if (channel == EXIT_CHANNEL && payload_left != 4) {
+          fail("The daemon sent an invalid exit status.");
+        }
+      }
+      if (payload_left > 0) {
+        size_t chunk = (size_t) length - i;
+        if (chunk > payload_left) {
+          chunk = payload_left;
+        }
+        if (channel == EXIT_CHANNEL) {
+          memcpy(status + status_length, in + i, chunk);
+          status_length += chunk;
+        } else if (write_all(channel == STDERR_CHANNEL ?
+            STDERR_FILENO : STDOUT_FILENO, in + i, chunk) < 0) {
+          /* Such as stdout being a pipe whose reader exited. */
+          exit(128 + SIGPIPE);
+        }
+        i += chunk;
+        payload_left -= (uint32_t) chunk;
+      }
+      if (payload_left == 0) {
+        if (channel == EXIT_CHANNEL) {
+          return (int) get_int(status);
+        }
+        header_length = 0;
+      }
+    }
+  }
+}
+
+
+/*
+ * Opens /dev/null in place of closed stdio, so that the socket does not
+ * take the place of one of them.
+ */
+static void open_closed_stdio(void) {
+  int fd;
+  for (fd = STDIN_FILENO; fd <= STDERR_FILENO; fd++) {
+    if (fcntl(fd, F_GETFD) < 0 &&
+        open("/dev/null", fd == STDIN_FILENO ? O_RDONLY : O_WRONLY) != fd) {
+      exit(1);
+    }
+  }
+}
+
+
+int main(int argc, char **argv) {
+  int socket_fd;
+  open_closed_stdio();
+  if (argc < 3) {
+    fprintf(stderr, "Usage: smartcliparser-client socket program "
+        "[args...]\n");
+    return 2;
+  }
+  /* Failed writes are reported as errors instead. */
+  signal(SIGPIPE, SIG_IGN);
+  build_request(argv[2], argc - 3, argv + 3);
+  socket_fd = connect_to(argv[1]);
+  if (write_all(socket_fd, request, request_length) < 0) {
+    fail_errno("Could not send the request");
+  }
+  free(request);
+  return serve(socket_fd);
+}
@@ -0,0 +1,120 @@
+# Copyright 2014 Demetrios Papadopoulos
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Tab completion for programs built on smartcliparser, answered from the
+# index written by org.smartcliparser.CompletionIndex without starting a
+# JVM. The index is loaded once per shell, and resolved the same way as
+# CompletionIndex.complete().
+#
+# Usage, in ~/.bashrc:
+#
+#   source smartcliparser.bash
+#   smartcliparser_complete COMMAND INDEX [GENERATOR...]
+#
+# If INDEX does not exist when first needed, GENERATOR is run once to write
+# it, such as:
+#
+#   smartcliparser_complete tool ~/.cache/tool.completion \
+#       java -cp tool.jar org.smartcliparser.CompletionIndex \
+#       --program com.example.Tool --output ~/.cache/tool.completion
+
+declare -gA _smartcliparser_indices _smartcliparser_generators
+declare -gA _smartcliparser_loaded _smartcliparser_commands
+declare -gA _smartcliparser_flags _smartcliparser_specs
+
+smartcliparser_complete() {
+  local command=$1 index=$2
+  shift 2
+  _smartcliparser_indices[$command]=$index
+  _smartcliparser_generators[$command]=$(printf '%q ' "$@")
+  complete -F _smartcliparser_complete "$command"
+}
+
+# Loads an index into the tables above, unless it is already loaded.
+_smartcliparser_load() {
+  [[ -n ${ZSH_VERSION-} ]] && setopt localoptions shwordsplit
+  local index=$1 kind node names min max hint values name
+  [[ -n ${_smartcliparser_loaded[$index]} ]] && return 0
+  [[ -r $index ]] || return 1
+  while IFS=$'\t' read -r kind node names min max hint values; do
+    case $kind in
+      command)
+        _smartcliparser_commands[$index|$node]+=" $names"
+        ;;
+      flag)
+        _smartcliparser_flags[$index|$node]+=" $names"
+        for name in $names; do
+          _smartcliparser_specs[$index|$node|$name]="$min $max $hint $values"
+        done
+        ;;
+    esac
+  done < "$index"
+  _smartcliparser_loaded[$index]=1
+}
+
+_smartcliparser_complete() {
+  [[ -n ${ZSH_VERSION-} ]] && setopt localoptions ksharrays shwordsplit
+  local command=$1
+  local index=${_smartcliparser_indices[$command]}
+  if [[ ! -e $index && -n ${_smartcliparser_generators[$command]} ]]; then
+    eval "${_smartcliparser_generators[$command]}" > /dev/null 2>&1
+  fi
+  _smartcliparser_load "$index" || return 0
+
+  # The subcommand path, the flag taking values and how many it took, and
+  # whether a leftover arg prevents selecting a subcommand.
+  local node=/ current= count=0 has_leftover=0 word i
+  local -a spec
+  for ((i = 1; i < COMP_CWORD; i++)); do
+    word=${COMP_WORDS[i]}
+    if [[ $word == -[!-] || $word == --?* ]]; then
+      current=${_smartcliparser_specs[$index|$node|$word]}
+      count=0
+    elif [[ -n $current ]] && spec=($current) && ((count < spec[1])); then
+      ((count++))
+    elif ((!has_leftover)) &&
+        [[ " ${_smartcliparser_commands[$index|$node]} " == *" $word "* ]]
+    then
+      node=${node%/}/$word
+      current=
+    else
+      has_leftover=1
+      current=
+    fi
+  done
+
+  local cur=${COMP_WORDS[COMP_CWORD]}
+  COMPREPLY=()
+  if [[ -n $current && $cur != -* ]] && spec=($current) &&
+      ((count < spec[1])); then
+    case ${spec[2]} in
+      values)
+        COMPREPLY=($(compgen -W "${spec[3]//,/ }" -- "$cur"))
+        ;;
+      path)
+        compopt -o filenames 2> /dev/null
+        COMPREPLY=($(compgen -f -- "$cur"))
+        ;;
+    esac
+    ((count < spec[0])) && return 0
+  fi
+  if [[ $cur == -* ]]; then
+    COMPREPLY+=($(compgen -W "${_smartcliparser_flags[$index|$node]}" \
+        -- "$cur"))
+  elif ((!has_leftover)); then
+    COMPREPLY+=($(compgen -W "${_smartcliparser_commands[$index|$node]}" \
+        -- "$cur"))
+  fi
+  return 0
+}
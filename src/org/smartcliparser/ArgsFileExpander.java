@@ -0,0 +1,285 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replaces every @path arg with the args listed in the file at |path|, like
+ * javac does. An arg starting with @@ stands for itself without the first
+ * '@'. Relative paths, including the ones found in args files, are resolved
+ * against the working directory of the invocation.
+ *
+ * Args files are UTF-8 encoded and are read through a memory mapping. Args
+ * are separated by whitespace, and may be quoted with single or double quotes
+ * to include whitespace. Within double quotes a backslash escapes the next
+ * character. Files containing a NUL character, such as the output of
+ * find -print0, are instead split at every NUL, and their args are taken as
+ * they are. Args of a file may name other args files, as long as a file does
+ * not include itself.
+ *
+ * Each arg is decoded directly from the mapped file into the expanded args,
+ * so that the contents of a file are never held in the heap twice.
+ */
+final class ArgsFileExpander {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The directory relative paths are resolved against, or null for the
+   * working directory of this process.
+   */
+  private final Path workingDirectory;
+
+  /**
+   * The expanded args, in |expanded[0, size)|.
+   */
+  private String[] expanded;
+  private int size = 0;
+
+  /**
+   * The bytes of the arg being read from an args file.
+   */
+  private byte[] token = new byte[64];
+  private int tokenLength = 0;
+
+  /**
+   * The real paths of the args files being expanded, outermost first.
+   */
+  private final List<Path> including = new ArrayList<Path>();
+
+  /**
+   * The error that stopped expansion, or null.
+   */
+  private ArgsFileParsingError error = null;
+
+
+  ArgsFileExpander() {
+    this(null);
+  }
+
+
+  /**
+   * @param workingDirectory The directory relative paths are resolved
+   *     against, or null for the working directory of this process.
+   */
+  ArgsFileExpander(Path workingDirectory) {
+    this.workingDirectory = workingDirectory;
+  }
+
+
+  /**
+   * Expands all args files within |args|.
+   * @return The expanded args, or |args| itself if it names no args files, or
+   *     null if an args file could not be expanded.
+   */
+  String[] expand(String[] args) {
+    if (!hasArgsFile(args)) {
+      return args;
+    }
+    this.expanded = new String[args.length + 16];
+    for (int i = 0; i < args.length; i++) {
+      if (!this.add(args[i])) {
+        return null;
+      }
+    }
+    return Arrays.copyOf(this.expanded, this.size);
+  }
+
+
+  /**
+   * @return The error that stopped the last expansion, or null.
+   */
+  ArgsFileParsingError getError() {
+    return this.error;
+  }
+
+
+  private static boolean hasArgsFile(String[] args) {
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].startsWith("@")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Adds |arg| to the expanded args, expanding it if it names an args file.
+   * @return False if expansion failed.
+   */
+  private boolean add(String arg) {
+    if (arg.startsWith("@@")) {
+      this.append(arg.substring(1));
+    } else if (arg.length() > 1 && arg.charAt(0) == '@') {
+      return this.expandFile(arg.substring(1));
+    } else {
+      this.append(arg);
+    }
+    return true;
+  }
+
+
+  private void append(String arg) {
+    if (this.size == this.expanded.length) {
+      this.expanded = Arrays.copyOf(this.expanded, this.size * 2);
+    }
+    this.expanded[this.size++] = arg;
+  }
+
+
+  private boolean expandFile(String name) {
+    FileChannel channel = null;
+    try {
+      Path path = (this.workingDirectory != null ?
+          this.workingDirectory.resolve(name) : Paths.get(name)).toRealPath();
+      if (this.including.contains(path)) {
+        this.error = new ArgsFileParsingError(
+            ArgsFileParsingError.Type.CYCLE, name);
+        return false;
+      }
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+      long length = channel.size();
+      if (length > Integer.MAX_VALUE) {
+        this.error = new ArgsFileParsingError(
+            ArgsFileParsingError.Type.IO_ERROR, name, "File is too large.");
+        return false;
+      }
+      ByteBuffer buffer =
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      this.including.add(path);
+      boolean isExpanded = this.tokenize(buffer, name);
+      this.including.remove(this.including.size() - 1);
+      return isExpanded;
+    } catch (IOException e) {
+      this.error = new ArgsFileParsingError(
+          ArgsFileParsingError.Type.IO_ERROR, name, e.toString());
+      return false;
+    } catch (InvalidPathException e) {
+      this.error = new ArgsFileParsingError(
+          ArgsFileParsingError.Type.IO_ERROR, name, e.getMessage());
+      return false;
+    } finally {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          // The file was only read, nothing is lost.
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Adds the args found in |buffer|, the contents of the args file |name|.
+   * @return False if expansion failed.
+   */
+  private boolean tokenize(ByteBuffer buffer, String name) {
+    int limit = buffer.limit();
+    for (int i = 0; i < limit; i++) {
+      if (buffer.get(i) == 0) {
+        return this.tokenizeNulSeparated(buffer);
+      }
+    }
+
+    // The quote character of the quoted section being read, or 0.
+    byte quote = 0;
+    boolean hasToken = false;
+    for (int i = 0; i < limit; i++) {
+      byte b = buffer.get(i);
+      if (quote != 0) {
+        if (b == quote) {
+          quote = 0;
+        } else if (b == '\\' && quote == '"' && i + 1 < limit) {
+          this.put(buffer.get(++i));
+        } else {
+          this.put(b);
+        }
+      } else if (b == '"' || b == '\'') {
+        quote = b;
+        hasToken = true;
+      } else if (b == ' ' || b == '\t' || b == '\n' || b == '\r' ||
+          b == '\f') {
+        if (hasToken && !this.add(this.takeToken())) {
+          return false;
+        }
+        hasToken = false;
+      } else {
+        this.put(b);
+        hasToken = true;
+      }
+    }
+
+    if (quote != 0) {
+      this.error = new ArgsFileParsingError(
+          ArgsFileParsingError.Type.UNTERMINATED_QUOTE, name);
+      return false;
+    }
+    return !hasToken || this.add(this.takeToken());
+  }
+
+
+  /**
+   * Adds the args of a NUL separated file as they are, so that an arg such
+   * as @name is not expanded.
+   * @return True, since such args can not fail to expand.
+   */
+  private boolean tokenizeNulSeparated(ByteBuffer buffer) {
+    int limit = buffer.limit();
+    for (int i = 0; i < limit; i++) {
+      byte b = buffer.get(i);
+      if (b != 0) {
+        this.put(b);
+      } else {
+        this.append(this.takeToken());
+      }
+    }
+    if (this.tokenLength > 0) {
+      this.append(this.takeToken());
+    }
+    return true;
+  }
+
+
+  private void put(byte b) {
+    if (this.tokenLength == this.token.length) {
+      this.token = Arrays.copyOf(this.token, this.tokenLength * 2);
+    }
+    this.token[this.tokenLength++] = b;
+  }
+
+
+  /**
+   * @return The arg read so far, clearing it for the next one.
+   */
+  private String takeToken() {
+    String arg = new String(this.token, 0, this.tokenLength, UTF_8);
+    this.tokenLength = 0;
+    return arg;
+  }
+
+}  // class ArgsFileExpander
@@ -0,0 +1,80 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+/**
+ * An error related to an args file, such as an unreadable file or a file
+ * that includes itself.
+ */
+public class ArgsFileParsingError implements ParsingError {
+
+  /**
+   * Types of errors that can be related to an args file.
+   */
+  public static enum Type {
+    CYCLE,
+    IO_ERROR,
+    UNTERMINATED_QUOTE
+  }
+
+  /**
+   * The path of the args file, as it was given after the '@'.
+   */
+  public String path;
+
+  /**
+   * The type of the error that occurred.
+   */
+  public Type type;
+
+  /**
+   * The reason the file could not be read, for IO_ERROR errors.
+   */
+  private String reason;
+
+
+  public ArgsFileParsingError(ArgsFileParsingError.Type type, String path) {
+    this(type, path, null);
+  }
+
+
+  public ArgsFileParsingError(
+      ArgsFileParsingError.Type type, String path, String reason) {
+    this.type = type;
+    this.path = path;
+    this.reason = reason;
+  }
+
+
+  @Override
+  public String toString() {
+    return "@" + this.path + ": " + this.type.toString() + ": " +
+        this.getDescription();
+  }
+
+
+  @Override
+  public String getDescription() {
+    if (this.type == Type.CYCLE) {
+      return "Args file " + this.path + " includes itself.";
+    } else if (this.type == Type.IO_ERROR) {
+      return "Could not read args file " + this.path + ": " + this.reason;
+    } else if (this.type == Type.UNTERMINATED_QUOTE) {
+      return "Args file " + this.path + " has an unterminated quote.";
+    }
+    return "";
+  }
+
+}  // class ArgsFileParsingError
@@ -0,0 +1,301 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.lang.reflect.Array;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Receives the args of a command line as ArgumentTokenizer classifies them,
+ * keeping the per flag state needed to validate the parse: how many args
+ * each flag consumed and which of its args first violated its constraints.
+ * Subclasses count the args received by each flag and decide what to do
+ * with the args themselves.
+ */
+abstract class ArgumentSink {
+
+  final ParserSpec spec;
+
+  /**
+   * For each flag, the number of args it consumed.
+   */
+  final int[] counts;
+
+  /**
+   * For each flag, whether it was specified.
+   */
+  final boolean[] isSet;
+
+  /**
+   * The indices of the flags that were set, in the order they were first
+   * encountered. Only these flags need to be reset for the next parse.
+   */
+  final int[] touched;
+  int numOfTouched = 0;
+
+  /**
+   * For each flag with a pattern, a matcher kept for reuse, or null.
+   */
+  private final Matcher[] matchers;
+
+  /**
+   * For each flag, its first arg that violated its pattern, or null.
+   */
+  final String[] patternViolations;
+
+  /**
+   * For each typed flag, the error its first invalid arg caused, or null.
+   */
+  final SingleFlagParsingError.Type[] conversionErrors;
+
+  /**
+   * For each typed flag, its first invalid arg, or null.
+   */
+  final String[] invalidValues;
+
+  /**
+   * For each typed flag whose args were all converted, an array created by
+   * the flag holding the values of its args, with room for more, or null.
+   * Unless values are kept, it only holds the latest value.
+   */
+  final Object[] convertedValues;
+
+  /**
+   * Whether the values of all args are kept, instead of only converting
+   * each arg to check it.
+   */
+  private final boolean keepsValues;
+
+
+  /**
+   * @param keepsValues If true, the values of the args of typed flags are
+   *     kept in |convertedValues|.
+   */
+  ArgumentSink(ParserSpec spec, boolean keepsValues) {
+    int numOfFlags = spec.getNumOfFlags();
+    this.spec = spec;
+    this.counts = new int[numOfFlags];
+    this.isSet = new boolean[numOfFlags];
+    this.touched = new int[numOfFlags];
+    this.matchers = new Matcher[numOfFlags];
+    this.patternViolations = new String[numOfFlags];
+    this.conversionErrors = new SingleFlagParsingError.Type[numOfFlags];
+    this.invalidValues = new String[numOfFlags];
+    this.convertedValues = new Object[numOfFlags];
+    this.keepsValues = keepsValues;
+  }
+
+
+  // Events, in the order of the args.
+
+  /**
+   * Called for an arg naming the flag at |index|, which is then set.
+   */
+  abstract void addFlag(int position, int index);
+
+
+  /**
+   * Called for an arg consumed by the flag at |index|.
+   */
+  abstract void addValue(int position, int index);
+
+
+  /**
+   * Called for a leftover arg received by the unconsumed flag.
+   */
+  abstract void addPositional(int position);
+
+
+  /**
+   * Called for a leftover arg no flag consumed.
+   * @param isUnknownFlag True if the arg is flag-like.
+   */
+  abstract void addRemaining(int position, boolean isUnknownFlag);
+
+
+  /**
+   * Called for an abbreviation matching the names of several flags.
+   */
+  abstract void addAmbiguousFlag(int position);
+
+
+  /**
+   * Forgets the state of all flags touched by the previous parse.
+   */
+  void resetFlags() {
+    for (int i = 0; i < this.numOfTouched; i++) {
+      int index = this.touched[i];
+      this.isSet[index] = false;
+      this.counts[index] = 0;
+      this.patternViolations[index] = null;
+      this.conversionErrors[index] = null;
+      this.invalidValues[index] = null;
+      this.convertedValues[index] = null;
+    }
+    this.numOfTouched = 0;
+  }
+
+
+  int getCount(int index) {
+    return this.counts[index];
+  }
+
+
+  void setIsSet(int index) {
+    if (!this.isSet[index]) {
+      this.isSet[index] = true;
+      this.touched[this.numOfTouched++] = index;
+    }
+  }
+
+
+  /**
+   * Checks an arg against the pattern of the flag consuming it, unless an
+   * earlier arg already violated it.
+   * @return True if |arg| is the first arg violating the pattern.
+   */
+  boolean checkPattern(int index, String arg) {
+    Pattern pattern = this.spec.getPattern(index);
+    if (pattern == null || this.patternViolations[index] != null) {
+      return false;
+    }
+    ArgumentValidator validator = this.spec.getValidator(index);
+    boolean matches;
+    if (validator != null) {
+      matches = validator.matches(arg);
+    } else {
+      Matcher matcher = this.matchers[index];
+      if (matcher == null) {
+        matcher = pattern.matcher("");
+        this.matchers[index] = matcher;
+      }
+      matches = matcher.reset(arg).matches();
+    }
+    if (!matches) {
+      this.patternViolations[index] = arg;
+    }
+    return !matches;
+  }
+
+
+  /**
+   * Converts the latest arg of the typed flag consuming it, keeping the
+   * value if values are kept, unless an earlier arg already failed to
+   * convert.
+   * @return True if |arg| is the first arg that can not be converted.
+   */
+  boolean checkValue(int index, String arg) {
+    TypedFlag flag = this.spec.getTypedFlag(index);
+    if (flag == null || this.conversionErrors[index] != null) {
+      return false;
+    }
+    // Otherwise each value takes the place of the previous one.
+    int position = this.keepsValues ? this.counts[index] - 1 : 0;
+    Object values = this.convertedValues[index];
+    if (values == null || position >= Array.getLength(values)) {
+      values = flag.copyValues(values, position, Math.max(4, position * 2));
+      this.convertedValues[index] = values;
+    }
+    SingleFlagParsingError.Type error = flag.convert(arg, values, position);
+    if (error != null) {
+      this.conversionErrors[index] = error;
+      this.invalidValues[index] = arg;
+      this.convertedValues[index] = null;
+    }
+    return error != null;
+  }
+
+
+  /**
+   * Checks the constraints on the number of args of a set flag, and whether
+   * its args followed its pattern.
+   */
+  boolean isSetFlagValid(int index) {
+    int count = this.counts[index];
+    return count >= this.spec.getNumOfArgsMin(index) &&
+        count <= this.spec.getNumOfArgsMax(index) &&
+        this.patternViolations[index] == null &&
+        this.conversionErrors[index] == null;
+  }
+
+
+  boolean isRequiredFlagSetSatisfied() {
+    int[] requiredFlagSet = this.spec.getRequiredFlagSet();
+    if (requiredFlagSet == null) {
+      return true;
+    }
+    for (int i = 0; i < requiredFlagSet.length; i++) {
+      if (this.isSet[requiredFlagSet[i]]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * @return The error of the flag at |index| violating its constraints on
+   *     the number of args, or being required but not set, or null.
+   */
+  SingleFlagParsingError getCountError(int index) {
+    Flag flag = this.spec.getFlag(index);
+    int count = this.counts[index];
+    if (!this.isSet[index]) {
+      return this.spec.isRequired(index) ? new SingleFlagParsingError(
+          SingleFlagParsingError.Type.REQUIRED_FLAG_NOT_SET, flag, count) :
+          null;
+    } else if (count < this.spec.getNumOfArgsMin(index)) {
+      return new SingleFlagParsingError(
+          SingleFlagParsingError.Type.MIN_NUMBER_OF_ARGS_VIOLATION, flag,
+          count);
+    } else if (count > this.spec.getNumOfArgsMax(index)) {
+      return new SingleFlagParsingError(
+          SingleFlagParsingError.Type.MAX_NUMBER_OF_ARGS_VIOLATION, flag,
+          count);
+    }
+    return null;
+  }
+
+
+  /**
+   * @return The error of the arg of the flag at |index| that first violated
+   *     its pattern, or null.
+   */
+  SingleFlagParsingError getPatternError(int index) {
+    if (this.patternViolations[index] == null) {
+      return null;
+    }
+    return new SingleFlagParsingError(
+        SingleFlagParsingError.Type.PATTERN_VIOLATION,
+        this.spec.getFlag(index), this.counts[index],
+        this.patternViolations[index]);
+  }
+
+
+  /**
+   * @return The error of the arg of the flag at |index| that first failed to
+   *     convert, or null.
+   */
+  SingleFlagParsingError getConversionError(int index) {
+    if (this.conversionErrors[index] == null) {
+      return null;
+    }
+    return new SingleFlagParsingError(this.conversionErrors[index],
+        this.spec.getFlag(index), this.counts[index],
+        this.invalidValues[index]);
+  }
+
+}  // class ArgumentSink
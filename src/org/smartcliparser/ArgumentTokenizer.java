@@ -0,0 +1,84 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+/**
+ * Distributes an array of arguments to the flags they belong to. Every
+ * argument is classified exactly once, in a single pass over the original
+ * array, which is never copied or modified.
+ *
+ * The outcome is identical to walking the args one by one, letting each
+ * flag consume the non flag-like args following it and finally handing all
+ * leftover args to the unconsumed flag, up to the first one it refuses.
+ */
+final class ArgumentTokenizer {
+
+  private ArgumentTokenizer() {}
+
+
+  /**
+   * Feeds |args| to the flags of |spec|, passing each arg to |sink| in order
+   * once it is classified.
+   */
+  static void tokenize(ParserSpec spec, String[] args, ArgumentSink sink) {
+    int unconsumed = spec.getUnconsumedIndex();
+    // The flag consuming the args that follow it, or -1 if there is none.
+    int current = -1;
+    // Whether leftover args still go to the unconsumed flag. Once it refuses
+    // an arg, all following leftover args remain unconsumed.
+    boolean isPositional = true;
+
+    for (int i = 0; i < args.length; i++) {
+      int nameOffset = Flag.getNameOffset(args[i]);
+      boolean isFlagLike = nameOffset >= 0;
+      int index = FlagNameIndex.NOT_FOUND;
+      if (isFlagLike) {
+        index = spec.resolve(args[i], nameOffset);
+        if (index >= 0) {
+          sink.addFlag(i, index);
+          current = index;
+          continue;
+        }
+        current = -1;
+      } else if (current >= 0 && canConsume(spec, sink, current)) {
+        sink.addValue(i, current);
+        continue;
+      } else {
+        current = -1;
+      }
+
+      // Leftover args, including unknown flags.
+      sink.setIsSet(unconsumed);
+      if (isPositional && !isFlagLike &&
+          canConsume(spec, sink, unconsumed)) {
+        sink.addPositional(i);
+      } else if (index == FlagNameIndex.AMBIGUOUS) {
+        isPositional = false;
+        sink.addAmbiguousFlag(i);
+      } else {
+        isPositional = false;
+        sink.addRemaining(i, isFlagLike);
+      }
+    }
+  }
+
+
+  private static boolean canConsume(
+      ParserSpec spec, ArgumentSink sink, int index) {
+    return spec.isForceConsume(index) ||
+        sink.getCount(index) < spec.getNumOfArgsMax(index);
+  }
+
+}  // class ArgumentTokenizer
@@ -0,0 +1,506 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks args against a pattern without java.util.regex, for patterns of a
+ * simple shape. Such a pattern consists of a literal prefix, at most one
+ * character class repeated a number of times, and a literal suffix, as in
+ * [0-9]+, \w*, id-\d{4} or .*\.txt. Leading ^ and trailing $ anchors are
+ * ignored, since args need to match as a whole anyway.
+ */
+final class ArgumentValidator {
+
+  /**
+   * The number of args above which they are validated in parallel.
+   */
+  static final int PARALLEL_THRESHOLD = 1 << 15;
+
+  /**
+   * The number of args each parallel task validates.
+   */
+  private static final int CHUNK_SIZE = 1 << 12;
+
+  private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+  private final String prefix;
+  private final String suffix;
+
+  /**
+   * For each ASCII character, whether it belongs to the class, or null if the
+   * pattern only consists of literals.
+   */
+  private final boolean[] isInClass;
+
+  /**
+   * Whether the class contains the non-ASCII characters, except for the
+   * ones in |excluded|.
+   */
+  private final boolean containsNonAscii;
+  private final String excluded;
+
+  /**
+   * How many times the class may be repeated.
+   */
+  private final int minRepetitions;
+  private final int maxRepetitions;
+
+
+  private ArgumentValidator(String prefix, String suffix, boolean[] isInClass,
+      boolean containsNonAscii, String excluded, int minRepetitions,
+      int maxRepetitions) {
+    this.prefix = prefix;
+    this.suffix = suffix;
+    this.isInClass = isInClass;
+    this.containsNonAscii = containsNonAscii;
+    this.excluded = excluded;
+    this.minRepetitions = minRepetitions;
+    this.maxRepetitions = maxRepetitions;
+  }
+
+
+  /**
+   * Compiles |pattern| into a validator, if it has a simple shape.
+   * @return The validator, or null if |pattern| needs java.util.regex.
+   */
+  static ArgumentValidator compile(Pattern pattern) {
+    if (pattern.flags() != 0) {
+      return null;
+    }
+    return new Compiler(pattern.pattern()).compile();
+  }
+
+
+  /**
+   * @return True if |arg| matches the pattern as a whole. Like
+   *     java.util.regex, the class is repeated by code point, so that a
+   *     surrogate pair counts once.
+   */
+  boolean matches(String arg) {
+    int length = arg.length();
+    int end = length - this.suffix.length();
+    int numOfChars = end - this.prefix.length();
+    if (numOfChars < 0 || !arg.startsWith(this.prefix) ||
+        !arg.endsWith(this.suffix)) {
+      return false;
+    }
+    if (this.isInClass == null) {
+      return numOfChars == 0;
+    }
+    if (numOfChars < this.minRepetitions) {
+      return false;
+    }
+    int repetitions = 0;
+    for (int i = this.prefix.length(); i < end; repetitions++) {
+      if (repetitions == this.maxRepetitions) {
+        return false;
+      }
+      int c = arg.codePointAt(i);
+      if (c < 128 ? !this.isInClass[c] :
+          !this.containsNonAscii || this.excluded.indexOf(c) >= 0) {
+        return false;
+      }
+      i += Character.charCount(c);
+    }
+    return repetitions >= this.minRepetitions;
+  }
+
+
+  /**
+   * Finds the first of |args| that does not match |pattern|. Large lists are
+   * validated in parallel chunks, which stop once an earlier arg is known to
+   * fail.
+   * @param validator The compiled |pattern|, or null if it is not simple.
+   * @return The position of the first failing arg, or -1.
+   */
+  static int findFirstViolation(
+      Pattern pattern, ArgumentValidator validator, List<String> args) {
+    int size = args.size();
+    if (!(args instanceof RandomAccess)) {
+      Matcher matcher = validator == null ? pattern.matcher("") : null;
+      Iterator<String> it = args.iterator();
+      for (int i = 0; it.hasNext(); i++) {
+        if (!matches(validator, matcher, it.next())) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    AtomicInteger firstViolation = new AtomicInteger(size);
+    ValidationTask task = new ValidationTask(
+        pattern, validator, args, 0, size, firstViolation);
+    if (size < PARALLEL_THRESHOLD) {
+      task.validate();
+    } else {
+      ForkJoinPool.commonPool().invoke(task);
+    }
+    int position = firstViolation.get();
+    return position == size ? -1 : position;
+  }
+
+
+  private static boolean matches(
+      ArgumentValidator validator, Matcher matcher, String arg) {
+    return validator != null ?
+        validator.matches(arg) : matcher.reset(arg).matches();
+  }
+
+
+  /**
+   * Validates |args[start, end)|, splitting them in chunks, and lowers
+   * |firstViolation| to the position of any failing arg found.
+   */
+  private static final class ValidationTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Pattern pattern;
+    private final ArgumentValidator validator;
+    private final List<String> args;
+    private final int start;
+    private final int end;
+    private final AtomicInteger firstViolation;
+
+
+    ValidationTask(Pattern pattern, ArgumentValidator validator,
+        List<String> args, int start, int end, AtomicInteger firstViolation) {
+      this.pattern = pattern;
+      this.validator = validator;
+      this.args = args;
+      this.start = start;
+      this.end = end;
+      this.firstViolation = firstViolation;
+    }
+
+
+    @Override
+    protected void compute() {
+      if (this.end - this.start <= CHUNK_SIZE) {
+        this.validate();
+        return;
+      }
+      int middle = (this.start + this.end) >>> 1;
+      invokeAll(
+          new ValidationTask(this.pattern, this.validator, this.args,
+              this.start, middle, this.firstViolation),
+          new ValidationTask(this.pattern, this.validator, this.args,
+              middle, this.end, this.firstViolation));
+    }
+
+
+    void validate() {
+      Matcher matcher =
+          this.validator == null ? this.pattern.matcher("") : null;
+      for (int i = this.start; i < this.end; i++) {
+        if (i >= this.firstViolation.get()) {
+          return;
+        }
+        if (!matches(this.validator, matcher, this.args.get(i))) {
+          int current = this.firstViolation.get();
+          while (i < current &&
+              !this.firstViolation.compareAndSet(current, i)) {
+            current = this.firstViolation.get();
+          }
+          return;
+        }
+      }
+    }
+
+  }  // class ValidationTask
+
+
+  /**
+   * Parses the source of a pattern, giving up on anything that is not part
+   * of a simple shape.
+   */
+  private static final class Compiler {
+
+    private final String source;
+    private int position = 0;
+    private int end;
+
+    private boolean[] isInClass = null;
+    private boolean containsNonAscii = false;
+    private String excluded = "";
+    private int minRepetitions = 1;
+    private int maxRepetitions = 1;
+
+
+    Compiler(String source) {
+      this.source = source;
+      this.end = source.length();
+    }
+
+
+    ArgumentValidator compile() {
+      if (this.end > 0 && this.source.charAt(0) == '^') {
+        this.position++;
+      }
+      if (this.end > this.position &&
+          this.source.charAt(this.end - 1) == '$' &&
+          !this.isEscaped(this.end - 1)) {
+        this.end--;
+      }
+
+      StringBuilder prefix = new StringBuilder();
+      StringBuilder suffix = new StringBuilder();
+      while (this.position < this.end) {
+        int literal = this.parseLiteral();
+        if (literal >= 0) {
+          if (this.isQuantifier(this.position)) {
+            return null;
+          }
+          (this.isInClass == null ? prefix : suffix).append((char) literal);
+          continue;
+        }
+        if (this.isInClass != null || !this.parseClass() ||
+            !this.parseQuantifier()) {
+          return null;
+        }
+      }
+      return new ArgumentValidator(prefix.toString(), suffix.toString(),
+          this.isInClass, this.containsNonAscii, this.excluded,
+          this.minRepetitions, this.maxRepetitions);
+    }
+
+
+    private boolean isEscaped(int index) {
+      int backslashes = 0;
+      for (int i = index - 1; i >= 0 && this.source.charAt(i) == '\\'; i--) {
+        backslashes++;
+      }
+      return backslashes % 2 == 1;
+    }
+
+
+    private boolean isQuantifier(int index) {
+      return index < this.end && "?*+{".indexOf(this.source.charAt(index)) >= 0;
+    }
+
+
+    /**
+     * Parses a literal character, such as a or \., if there is one.
+     * @return The character, or -1 if the next element is not a literal.
+     */
+    private int parseLiteral() {
+      char c = this.source.charAt(this.position);
+      if (c == '\\' && this.position + 1 < this.end) {
+        char escaped = this.source.charAt(this.position + 1);
+        if (escaped < 128 && !Character.isLetterOrDigit(escaped)) {
+          this.position += 2;
+          return escaped;
+        }
+        return -1;
+      }
+      if (METACHARACTERS.indexOf(c) >= 0 || Character.isSurrogate(c)) {
+        return -1;
+      }
+      this.position++;
+      return c;
+    }
+
+
+    /**
+     * Parses a character class, such as [a-z_], \d or the dot.
+     * @return False if the next element is not a supported class.
+     */
+    private boolean parseClass() {
+      this.isInClass = new boolean[128];
+      char c = this.source.charAt(this.position);
+      if (c == '.') {
+        this.position++;
+        Arrays.fill(this.isInClass, true);
+        this.isInClass['\n'] = false;
+        this.isInClass['\r'] = false;
+        this.containsNonAscii = true;
+        this.excluded = "\u0085\u2028\u2029";
+        return true;
+      } else if (c == '\\') {
+        return this.parseEscapedClass(this.isInClass);
+      } else if (c != '[') {
+        return false;
+      }
+
+      this.position++;
+      boolean isNegated = this.position < this.end &&
+          this.source.charAt(this.position) == '^';
+      if (isNegated) {
+        this.position++;
+      }
+      boolean isFirst = true;
+      while (this.position < this.end) {
+        c = this.source.charAt(this.position);
+        if (c == ']' && !isFirst) {
+          this.position++;
+          if (isNegated) {
+            for (int i = 0; i < 128; i++) {
+              this.isInClass[i] = !this.isInClass[i];
+            }
+            this.containsNonAscii = true;
+          }
+          return true;
+        }
+        isFirst = false;
+        if (c == '\\' && this.parseEscapedClass(this.isInClass)) {
+          continue;
+        }
+        int from = this.parseClassLiteral();
+        if (from < 0) {
+          return false;
+        }
+        int to = from;
+        if (this.position + 1 < this.end &&
+            this.source.charAt(this.position) == '-' &&
+            this.source.charAt(this.position + 1) != ']') {
+          this.position++;
+          to = this.parseClassLiteral();
+          if (to < from) {
+            return false;
+          }
+        }
+        for (int i = from; i <= to; i++) {
+          this.isInClass[i] = true;
+        }
+      }
+      return false;
+    }
+
+
+    /**
+     * Parses an ASCII character within brackets, other than one with a
+     * special meaning there.
+     * @return The character, or -1.
+     */
+    private int parseClassLiteral() {
+      if (this.position >= this.end) {
+        return -1;
+      }
+      char c = this.source.charAt(this.position);
+      if (c == '\\' && this.position + 1 < this.end) {
+        c = this.source.charAt(this.position + 1);
+        if (c >= 128 || Character.isLetterOrDigit(c)) {
+          return -1;
+        }
+        this.position += 2;
+        return c;
+      }
+      if (c >= 128 || c == '[' || c == '&' || c == ']') {
+        return -1;
+      }
+      this.position++;
+      return c;
+    }
+
+
+    /**
+     * Adds the characters of \d, \w or \s to |isInClass|.
+     * @return False if the next element is not one of them.
+     */
+    private boolean parseEscapedClass(boolean[] isInClass) {
+      if (this.position + 1 >= this.end) {
+        return false;
+      }
+      char c = this.source.charAt(this.position + 1);
+      if (c == 'd' || c == 'w') {
+        for (int i = '0'; i <= '9'; i++) {
+          isInClass[i] = true;
+        }
+      }
+      if (c == 'w') {
+        for (int i = 'a'; i <= 'z'; i++) {
+          isInClass[i] = true;
+          isInClass[Character.toUpperCase(i)] = true;
+        }
+        isInClass['_'] = true;
+      } else if (c == 's') {
+        String whitespace = " \t\n\u000B\f\r";
+        for (int i = 0; i < whitespace.length(); i++) {
+          isInClass[whitespace.charAt(i)] = true;
+        }
+      } else if (c != 'd') {
+        return false;
+      }
+      this.position += 2;
+      return true;
+    }
+
+
+    /**
+     * Parses the quantifier following a class, if there is one.
+     * @return False if the quantifier is not supported.
+     */
+    private boolean parseQuantifier() {
+      if (!this.isQuantifier(this.position)) {
+        return true;
+      }
+      char c = this.source.charAt(this.position++);
+      if (c == '?') {
+        this.minRepetitions = 0;
+      } else if (c == '*') {
+        this.minRepetitions = 0;
+        this.maxRepetitions = Integer.MAX_VALUE;
+      } else if (c == '+') {
+        this.maxRepetitions = Integer.MAX_VALUE;
+      } else {
+        this.minRepetitions = this.parseNumber();
+        this.maxRepetitions = this.minRepetitions;
+        if (this.position < this.end &&
+            this.source.charAt(this.position) == ',') {
+          this.position++;
+          this.maxRepetitions =
+              this.position < this.end &&
+              this.source.charAt(this.position) == '}' ?
+              Integer.MAX_VALUE : this.parseNumber();
+        }
+        if (this.minRepetitions < 0 || this.maxRepetitions < 0 ||
+            this.position >= this.end ||
+            this.source.charAt(this.position++) != '}') {
+          return false;
+        }
+      }
+      // Lazy and possessive quantifiers are left to java.util.regex.
+      return !this.isQuantifier(this.position);
+    }
+
+
+    /**
+     * @return The number at the current position, or -1.
+     */
+    private int parseNumber() {
+      int number = 0;
+      int start = this.position;
+      while (this.position < this.end &&
+          this.source.charAt(this.position) >= '0' &&
+          this.source.charAt(this.position) <= '9' &&
+          this.position - start < 9) {
+        number = number * 10 + (this.source.charAt(this.position++) - '0');
+      }
+      return this.position == start ? -1 : number;
+    }
+
+  }  // class Compiler
+
+}  // class ArgumentValidator
@@ -0,0 +1,182 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the argv records of a BatchRunner from a stream. Records end at a
+ * newline, or at a NUL when NUL separated, so that args may then contain
+ * newlines. Within a record, args are separated and quoted like in args
+ * files: whitespace separates args, single or double quotes group text, and
+ * within double quotes a backslash escapes the next character.
+ */
+final class BatchRecordReader {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final InputStream in;
+  private final byte separator;
+
+  private final byte[] buffer = new byte[64 * 1024];
+  private int position = 0;
+  private int limit = 0;
+
+  /**
+   * The bytes of the arg being read.
+   */
+  private byte[] token = new byte[64];
+  private int tokenLength = 0;
+
+  /**
+   * The number of records read so far, including empty ones.
+   */
+  private long numOfRecords = 0;
+
+  private boolean isMalformed = false;
+
+
+  /**
+   * @param in The stream to read, which is not closed.
+   * @param isNulSeparated If true, records end at a NUL instead of a
+   *     newline.
+   */
+  BatchRecordReader(InputStream in, boolean isNulSeparated) {
+    this.in = in;
+    this.separator = isNulSeparated ? (byte) 0 : (byte) '\n';
+  }
+
+
+  /**
+   * Reads the next record that has any args. Empty records are skipped, but
+   * still counted.
+   * @return The args of the record, or null at the end of the stream.
+   */
+  String[] next() throws IOException {
+    List<String> args = new ArrayList<String>();
+    while (true) {
+      int end = this.readRecord(args);
+      if (end < 0 && args.isEmpty() && !this.isMalformed) {
+        return null;
+      }
+      this.numOfRecords++;
+      if (!args.isEmpty() || this.isMalformed) {
+        return args.toArray(new String[args.size()]);
+      }
+    }
+  }
+
+
+  /**
+   * @return The number of the record last returned by next, starting at 1.
+   */
+  long getRecordNumber() {
+    return this.numOfRecords;
+  }
+
+
+  /**
+   * @return True if the record last returned by next ended within quotes.
+   *     Its args are then incomplete.
+   */
+  boolean isMalformed() {
+    return this.isMalformed;
+  }
+
+
+  /**
+   * Reads the args of a record into |args|.
+   * @return The separator ending the record, or -1 at the end of the stream.
+   */
+  private int readRecord(List<String> args) throws IOException {
+    this.isMalformed = false;
+    // The quote character of the quoted section being read, or 0.
+    byte quote = 0;
+    boolean hasToken = false;
+    int b;
+    while ((b = this.read()) >= 0 && (byte) b != this.separator) {
+      if (quote != 0) {
+        if (b == quote) {
+          quote = 0;
+        } else if (b == '\\' && quote == '"') {
+          int next = this.read();
+          if (next < 0 || (byte) next == this.separator) {
+            b = next;
+            break;
+          }
+          this.put((byte) next);
+        } else {
+          this.put((byte) b);
+        }
+      } else if (b == '"' || b == '\'') {
+        quote = (byte) b;
+        hasToken = true;
+      } else if (b == ' ' || b == '\t' || b == '\n' || b == '\r' ||
+          b == '\f') {
+        if (hasToken) {
+          args.add(this.takeToken());
+        }
+        hasToken = false;
+      } else {
+        this.put((byte) b);
+        hasToken = true;
+      }
+    }
+    if (quote != 0) {
+      this.isMalformed = true;
+    }
+    if (hasToken) {
+      args.add(this.takeToken());
+    }
+    return b;
+  }
+
+
+  private int read() throws IOException {
+    if (this.position == this.limit) {
+      int length = this.in.read(this.buffer);
+      if (length <= 0) {
+        return -1;
+      }
+      this.position = 0;
+      this.limit = length;
+    }
+    return this.buffer[this.position++] & 0xff;
+  }
+
+
+  private void put(byte b) {
+    if (this.tokenLength == this.token.length) {
+      this.token = Arrays.copyOf(this.token, this.tokenLength * 2);
+    }
+    this.token[this.tokenLength++] = b;
+  }
+
+
+  /**
+   * @return The arg read so far, clearing it for the next one.
+   */
+  private String takeToken() {
+    String arg = new String(this.token, 0, this.tokenLength, UTF_8);
+    this.tokenLength = 0;
+    return arg;
+  }
+
+}  // class BatchRecordReader
@@ -0,0 +1,461 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+/**
+ * Runs a program once for each argv record read from a stream, on a pool of
+ * workers. Records are read as described by BatchRecordReader.
+ *
+ * Each run gets its own stdout and stderr, which are buffered and written
+ * out as a whole once the run finishes, either in the order of the records
+ * or in the order the runs finish. At most |maxInFlight| records are read
+ * ahead of the ones written out, which bounds memory regardless of the
+ * number of records. The exit status of each record can be reported as a
+ * line holding the number of the record, starting at 1, and the status,
+ * separated by a tab.
+ *
+ * Program instances are initialized once and reused for many records, so
+ * their flags are compiled once. A record whose quotes are not terminated
+ * is not run, and has the exit status MALFORMED_RECORD_STATUS.
+ *
+ * System.out and System.err are only the ones of a record on the worker
+ * running it. Work a program hands to other threads must print through
+ * CommandLineProgram.getStdout() and getStderr() instead.
+ */
+public final class BatchRunner {
+
+  /**
+   * The exit status of a record that could not be read.
+   */
+  public static final int MALFORMED_RECORD_STATUS = 2;
+
+  private final Supplier<? extends CommandLineProgram> factory;
+
+  private int numOfWorkers = Runtime.getRuntime().availableProcessors();
+  private boolean useVirtualThreads = false;
+  private boolean isOrdered = true;
+  private int maxInFlight = 1024;
+  private boolean isNulSeparated = false;
+
+
+  /**
+   * @param factory Creates instances of the program, without parsing any
+   *     args. It is called once per worker rather than once per record.
+   */
+  public BatchRunner(Supplier<? extends CommandLineProgram> factory) {
+    this.factory = factory;
+  }
+
+
+  /**
+   * Sets the number of records run concurrently on platform threads, which
+   * defaults to the number of processors.
+   */
+  public void setNumOfWorkers(int numOfWorkers) {
+    if (numOfWorkers < 1) {
+      throw new IllegalArgumentException("At least one worker is needed.");
+    }
+    this.numOfWorkers = numOfWorkers;
+  }
+
+
+  /**
+   * Sets whether each record runs on its own virtual thread, in which case
+   * the number of concurrent runs is only bounded by |maxInFlight|. This
+   * suits programs that mostly block, and requires Java 21 or later.
+   */
+  public void setUseVirtualThreads(boolean useVirtualThreads) {
+    this.useVirtualThreads = useVirtualThreads;
+  }
+
+
+  /**
+   * Sets whether the output of the records is written in the order of the
+   * records, which is the default, or as soon as each run finishes.
+   */
+  public void setOrdered(boolean isOrdered) {
+    this.isOrdered = isOrdered;
+  }
+
+
+  /**
+   * Sets the number of records that may be read before the output of the
+   * earlier ones is written, 1024 by default.
+   */
+  public void setMaxInFlight(int maxInFlight) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException(
+          "At least one record must be in flight.");
+    }
+    this.maxInFlight = maxInFlight;
+  }
+
+
+  /**
+   * Sets whether records end at a NUL instead of a newline.
+   */
+  public void setNulSeparated(boolean isNulSeparated) {
+    this.isNulSeparated = isNulSeparated;
+  }
+
+
+  /**
+   * The outcome of running a record.
+   */
+  private static final class Outcome {
+
+    final long sequence;
+    final long recordNumber;
+    final int status;
+    final byte[] out;
+    final byte[] err;
+
+
+    Outcome(long sequence, long recordNumber, int status, byte[] out,
+        byte[] err) {
+      this.sequence = sequence;
+      this.recordNumber = recordNumber;
+      this.status = status;
+      this.out = out;
+      this.err = err;
+    }
+
+  }  // class Outcome
+
+
+  /**
+   * Runs the program for every record of |in|.
+   * @param out Receives the stdout of all runs.
+   * @param err Receives the stderr of all runs.
+   * @param status Receives the exit status of each record, or null.
+   * @return The number of records whose exit status is not 0.
+   * @throws IOException If reading records or writing output failed.
+   */
+  public long run(InputStream in, OutputStream out, OutputStream err,
+      OutputStream status) throws IOException, InterruptedException {
+    final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<Outcome>();
+    final Semaphore inFlight = new Semaphore(this.maxInFlight);
+    final Queue<CommandLineProgram> idlePrograms =
+        new ConcurrentLinkedQueue<CommandLineProgram>();
+    Writer writer = new Writer(outcomes, inFlight, out, err,
+        status == null ? null : new PrintStream(status, false, "UTF-8"));
+    Thread writerThread = new Thread(writer, "BatchRunner writer");
+    ExecutorService executor = this.createExecutor();
+    StdioRouter.install();
+    writerThread.start();
+    try {
+      BatchRecordReader reader =
+          new BatchRecordReader(in, this.isNulSeparated);
+      long sequence = 0;
+      String[] args;
+      while ((args = reader.next()) != null) {
+        inFlight.acquire();
+        if (writer.error != null) {
+          // Nothing more can be written out, so the permit is given back for
+          // the wait below to return once the records in flight are done.
+          inFlight.release();
+          break;
+        }
+        final long recordNumber = reader.getRecordNumber();
+        final long recordSequence = sequence++;
+        if (reader.isMalformed()) {
+          outcomes.add(new Outcome(recordSequence, recordNumber,
+              MALFORMED_RECORD_STATUS, new byte[0],
+              ("Unterminated quote in record " + recordNumber + "\n")
+                  .getBytes("UTF-8")));
+          continue;
+        }
+        final String[] recordArgs = args;
+        executor.execute(new Runnable() {
+          public void run() {
+            outcomes.add(BatchRunner.this.runRecord(
+                recordSequence, recordNumber, recordArgs, idlePrograms));
+          }
+        });
+      }
+      // Waits until everything read has been written out.
+      inFlight.acquire(this.maxInFlight);
+    } finally {
+      executor.shutdown();
+      writerThread.interrupt();
+      writerThread.join();
+      StdioRouter.uninstall();
+    }
+    if (writer.error != null) {
+      throw writer.error;
+    }
+    return writer.numOfFailures;
+  }
+
+
+  private ExecutorService createExecutor() {
+    if (this.useVirtualThreads) {
+      try {
+        return (ExecutorService) Executors.class
+            .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (ReflectiveOperationException e) {
+        throw new UnsupportedOperationException(
+            "Virtual threads require Java 21 or later.", e);
+      }
+    }
+    return Executors.newFixedThreadPool(this.numOfWorkers,
+        new ThreadFactory() {
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "BatchRunner worker");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+
+
+  /**
+   * Runs a record on an idle program, or a new one if none is idle.
+   */
+  private Outcome runRecord(long sequence, long recordNumber, String[] args,
+      Queue<CommandLineProgram> idlePrograms) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    StdioRouter.route(new ByteArrayInputStream(new byte[0]), out, err);
+    int status;
+    try {
+      CommandLineProgram program = idlePrograms.poll();
+      if (program == null) {
+        program = this.factory.get();
+        program.initialize();
+      }
+      status = program.parseAndRun(args);
+      idlePrograms.add(program);
+    } catch (RuntimeException e) {
+      // The program may be left in any state, so it is not reused.
+      e.printStackTrace();
+      status = 1;
+    } catch (Error e) {
+      e.printStackTrace();
+      status = 1;
+    } finally {
+      StdioRouter.unroute();
+    }
+    return new Outcome(sequence, recordNumber, status, out.toByteArray(),
+        err.toByteArray());
+  }
+
+
+  /**
+   * Writes out the outcomes of the records, releasing their permits.
+   */
+  private final class Writer implements Runnable {
+
+    private final BlockingQueue<Outcome> outcomes;
+    private final Semaphore inFlight;
+    private final OutputStream out;
+    private final OutputStream err;
+    private final PrintStream status;
+
+    /**
+     * The outcomes finished ahead of the next one to write, by sequence.
+     */
+    private final Map<Long, Outcome> pending = new HashMap<Long, Outcome>();
+    private long nextSequence = 0;
+
+    volatile long numOfFailures = 0;
+    volatile IOException error = null;
+
+
+    Writer(BlockingQueue<Outcome> outcomes, Semaphore inFlight,
+        OutputStream out, OutputStream err, PrintStream status) {
+      this.outcomes = outcomes;
+      this.inFlight = inFlight;
+      this.out = out;
+      this.err = err;
+      this.status = status;
+    }
+
+
+    public void run() {
+      try {
+        while (true) {
+          Outcome outcome = this.outcomes.take();
+          if (!BatchRunner.this.isOrdered) {
+            this.write(outcome);
+            continue;
+          }
+          this.pending.put(outcome.sequence, outcome);
+          while ((outcome = this.pending.remove(this.nextSequence)) != null) {
+            this.nextSequence++;
+            this.write(outcome);
+          }
+        }
+      } catch (InterruptedException e) {
+        // All outcomes were written.
+      }
+      try {
+        this.out.flush();
+        this.err.flush();
+        if (this.status != null) {
+          this.status.flush();
+        }
+      } catch (IOException e) {
+        this.error = e;
+      }
+    }
+
+
+    private void write(Outcome outcome) {
+      try {
+        if (this.error == null) {
+          this.out.write(outcome.out);
+          this.err.write(outcome.err);
+          if (this.status != null) {
+            this.status.print(
+                outcome.recordNumber + "\t" + outcome.status + "\n");
+          }
+        }
+      } catch (IOException e) {
+        this.error = e;
+      } finally {
+        if (outcome.status != 0) {
+          this.numOfFailures++;
+        }
+        this.inFlight.release();
+      }
+    }
+
+  }  // class Writer
+
+
+  /**
+   * The command line of BatchRunner, parsed by the parser itself.
+   */
+  private static final class Main extends CommandLineProgram {
+
+    private IntFlag workers;
+    private IntFlag maxInFlight;
+    private Flag virtual;
+    private Flag unordered;
+    private Flag nul;
+    private Flag input;
+    private Flag statusFile;
+    private Flag program;
+    private int status = 0;
+
+
+    @Override
+    public void initialize() {
+      this.workers = new IntFlag(new String[]{"workers", "w"}, false, 1, 1);
+      this.maxInFlight =
+          new IntFlag(new String[]{"max-in-flight"}, false, 1, 1);
+      this.virtual = Flag.createSwitch(new String[]{"virtual"});
+      this.unordered = Flag.createSwitch(new String[]{"unordered"});
+      this.nul = Flag.createSwitch(new String[]{"null", "0"});
+      this.input = new Flag(new String[]{"input", "i"}, false, 1, 1);
+      this.statusFile = new Flag(new String[]{"status"}, false, 1, 1);
+      this.program = new Flag(new String[]{"program", "p"}, true, 1, 1);
+      this.registerFlag(this.workers);
+      this.registerFlag(this.maxInFlight);
+      this.registerFlag(this.virtual);
+      this.registerFlag(this.unordered);
+      this.registerFlag(this.nul);
+      this.registerFlag(this.input);
+      this.registerFlag(this.statusFile);
+      this.registerFlag(this.program);
+    }
+
+
+    @Override
+    public void run() {
+      try {
+        final Constructor<? extends CommandLineProgram> constructor =
+            Class.forName(this.program.args.get(0))
+                .asSubclass(CommandLineProgram.class).getConstructor();
+        BatchRunner runner = new BatchRunner(
+            new Supplier<CommandLineProgram>() {
+              public CommandLineProgram get() {
+                try {
+                  return constructor.newInstance();
+                } catch (ReflectiveOperationException e) {
+                  throw new IllegalStateException(e);
+                }
+              }
+            });
+        if (this.workers.isSet()) {
+          runner.setNumOfWorkers(this.workers.getValue(0));
+        }
+        if (this.maxInFlight.isSet()) {
+          runner.setMaxInFlight(this.maxInFlight.getValue(0));
+        }
+        runner.setUseVirtualThreads(this.virtual.isSet());
+        runner.setOrdered(!this.unordered.isSet());
+        runner.setNulSeparated(this.nul.isSet());
+
+        InputStream in = this.input.isSet() ?
+            new FileInputStream(this.input.args.get(0)) : System.in;
+        OutputStream statusOut = this.statusFile.isSet() ?
+            new FileOutputStream(this.statusFile.args.get(0)) : null;
+        try {
+          long numOfFailures =
+              runner.run(in, System.out, System.err, statusOut);
+          this.status = numOfFailures == 0 ? 0 : 1;
+        } finally {
+          if (this.input.isSet()) {
+            in.close();
+          }
+          if (statusOut != null) {
+            statusOut.close();
+          }
+        }
+      } catch (Exception e) {
+        System.err.println("BatchRunner: " + e);
+        this.status = 1;
+      }
+    }
+
+  }  // class Main
+
+
+  /**
+   * Usage: BatchRunner --program class [--input file] [--status file]
+   *     [--workers n] [--virtual] [--unordered] [--null]
+   *     [--max-in-flight n]
+   * Exits with 1 if any record failed.
+   */
+  public static void main(String[] args) {
+    Main main = new Main();
+    int status = main.execute(args);
+    System.exit(status != 0 ? status : main.status);
+  }
+
+}  // class BatchRunner
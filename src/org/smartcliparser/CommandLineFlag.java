@@ -0,0 +1,57 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a flag on a field, to be parsed by the class FlagProcessor
+ * generates for the enclosing class. The field must not be private, final or
+ * static, and its type decides the kind of flag:
+ *
+ *   boolean: a switch, set to true if the flag is set.
+ *   String: a flag taking one arg by default, set to the first one.
+ *   List&lt;String&gt;: a flag taking one arg by default, set to all of them.
+ *   int, long, double: an IntFlag, LongFlag or DoubleFlag, set to the first
+ *       value.
+ *
+ * Fields of flags that are not set keep their value.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface CommandLineFlag {
+
+  /**
+   * The names of the flag.
+   */
+  String[] names();
+
+  boolean isRequired() default false;
+
+  /**
+   * The number of args, ignored for switches.
+   */
+  int numOfArgsMin() default 1;
+  int numOfArgsMax() default 1;
+
+  /**
+   * A regular expression all args must match, or "" to accept any arg.
+   */
+  String pattern() default "";
+
+}  // @interface CommandLineFlag
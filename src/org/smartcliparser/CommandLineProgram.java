@@ -14,15 +14,21 @@
 */
 package org.smartcliparser;
 
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * An abstract base class to be extended by coomand line programs.
@@ -36,6 +42,21 @@ public abstract class CommandLineProgram {
 
   public Set<Flag> flags;
 
+  /**
+   * A mapping of flag names to the position of the flag within |flags|.
+   */
+  private FlagNameIndex nameIndex;
+
+  /**
+   * If true, unique prefixes of flag names are accepted as abbreviations.
+   */
+  private boolean allowAbbreviations = false;
+
+  /**
+   * If true, @path args are replaced by the args listed in the file |path|.
+   */
+  private boolean expandArgsFiles = false;
+
   /**
    * A set of flags that is required. At least one of the flags in this set
    * needs to be specified for parsing to succeed.
@@ -52,13 +73,76 @@ public abstract class CommandLineProgram {
    */
   public List<String> args;
 
+  /**
+   * The registered flags compiled for parsing, or null if they changed since
+   * they were last compiled.
+   */
+  private ParserSpec spec = null;
+
+  /**
+   * The outcome of the last call to parseArgs, or null.
+   */
+  private ParseResult result = null;
+
+  /**
+   * The working directory and environment of the invocation, or null to use
+   * the ones of this process.
+   */
+  private Path workingDirectory = null;
+  private Map<String, String> environment = null;
+
+  /**
+   * The stdout and stderr of the current invocation, or null to use the
+   * ones of this process.
+   */
+  private PrintStream stdout = null;
+  private PrintStream stderr = null;
+
+  /**
+   * The exit status the current run set, reported once it returns.
+   */
+  private int exitStatus = 0;
+
+  /**
+   * A mapping of subcommand names to factories of the programs running them,
+   * or null if this program has no subcommands.
+   */
+  private Map<String, Supplier<? extends CommandLineProgram>> subcommands =
+      null;
+
+  /**
+   * The program that ran this one as its subcommand, or null.
+   */
+  private CommandLineProgram parent = null;
+
+  /**
+   * The sources of the values of flags not set by args, in increasing order
+   * of precedence, and the args of flags no source sets.
+   */
+  private List<ValueSource> valueSources = new ArrayList<ValueSource>();
+  private Map<Flag, List<String>> defaultArgs =
+      new IdentityHashMap<Flag, List<String>>();
+
+  /**
+   * The flag standing for the positional args read from stdin, or null if
+   * they are not read, and whether they are NUL separated.
+   */
+  private Flag stdinFlag = null;
+  private boolean isStdinNulSeparated = false;
+
+  /**
+   * The positional args read from stdin by the current run, or null.
+   */
+  private StdinArgs stdinArgs = null;
+
 
   /**
    * Creates an instance without parsing any args.
    */
   public CommandLineProgram() {
-    this.flags = new HashSet<Flag>();
+    this.flags = new LinkedHashSet<Flag>();
     this.flagsMap = new HashMap<String, Flag>();
+    this.nameIndex = new FlagNameIndex();
     this.unconsumed = new Flag(
         new String[]{"unconsumed"}, false, 0, 0, null, true);
     this.registerFlag(this.unconsumed);
@@ -70,40 +154,228 @@ public abstract class CommandLineProgram {
    */
   public CommandLineProgram(String[] args) {
     this();
+    int status = this.execute(args);
+    if (status != 0) {
+      System.exit(status);
+    }
+  }
+
+
+  /**
+   * Initializes this program, parses |args| and runs it if they are valid,
+   * without exiting the process.
+   * @return The exit status, 0 on success and 1 if |args| are invalid.
+   */
+  public int execute(String[] args) {
     initialize();
-    if (!this.parseArgs(args)) {
+    return this.parseAndRun(args);
+  }
+
+
+  /**
+   * Parses |args| and runs this program if they are valid, after clearing
+   * the outcome of any previous call, so that an initialized instance can be
+   * run many times.
+   * @return The exit status, 0 on success and 1 if |args| are invalid.
+   */
+  int parseAndRun(String[] args) {
+    return this.parseAndRun(args, false);
+  }
+
+
+  /**
+   * @param areArgsFilesExpanded True if |args| were passed on by a program
+   *     that already expanded the args files within them, in which case they
+   *     are not expanded again.
+   */
+  private int parseAndRun(String[] args, boolean areArgsFilesExpanded) {
+    if (this.result != null) {
+      this.clear();
+    }
+    this.stdout = StdioRouter.getOut();
+    this.stderr = StdioRouter.getErr();
+    this.exitStatus = 0;
+    ArgsFileExpander expander = null;
+    if (this.expandArgsFiles && !areArgsFilesExpanded) {
+      expander = new ArgsFileExpander(this.workingDirectory);
+      args = this.expandArgsFiles(args, expander);
+    }
+    ParseResult result = this.tokenize(args);
+    if (this.subcommands != null) {
+      int position = result.getFirstLeftoverPosition();
+      if (position >= 0 && this.subcommands.containsKey(args[position])) {
+        return this.runSubcommand(args, position,
+            areArgsFilesExpanded || this.expandArgsFiles);
+      }
+    }
+    if (!this.finishParse(args, result, expander)) {
       System.err.println("Invalid use, see --help");
       CommandLineProgram.printErrors(this.getErrors());
-      System.exit(1);
-    } else {
+      return 1;
+    }
+    if (this.stdinFlag != null) {
+      // Resolved here, since the reader thread has no stdin routed to it.
+      this.stdinArgs = new StdinArgs(StdioRouter.getIn(), this.stdinFlag,
+          this.isStdinNulSeparated);
+    }
+    Instrumentation.Span span =
+        Instrumentation.begin(MetricsListener.Phase.RUN);
+    boolean hasRun = false;
+    try {
       run();
+      hasRun = true;
+    } finally {
+      Instrumentation.end(span);
+      if (!hasRun && this.stdinArgs != null) {
+        this.stdinArgs.close();
+      }
     }
+    int status = this.finishStdinArgs();
+    return status != 0 ? status : this.exitStatus;
   }
 
 
-  public List<ParsingError> getErrors() {
-    List<ParsingError> errors = new LinkedList<ParsingError>();
-    Iterator<Flag> it = this.flags.iterator();
-    while (it.hasNext()) {
-      errors.addAll(it.next().getErrors());
+  /**
+   * Checks the number of positional args read from stdin by the run, once
+   * they are all read.
+   * @return The exit status, 1 if the number is not allowed.
+   */
+  private int finishStdinArgs() {
+    if (this.stdinArgs == null) {
+      return 0;
     }
-
-    // TODO(dpapad): Cache the result, so that this method is not called twice.
-    if (!this.checkRequiredFlagSetSatisfied()) {
-      errors.add(new MultiFlagParsingError(
-          MultiFlagParsingError.Type.REQUIRED_FLAG_SET_VIOLATION,
-          this.requiredFlagSet));
+    List<ParsingError> errors = this.stdinArgs.finish();
+    if (errors.isEmpty()) {
+      return 0;
+    }
+    for (int i = errors.size() - 1; i >= 0; i--) {
+      this.result.addError(errors.get(i));
     }
+    System.err.println("Invalid use, see --help");
+    CommandLineProgram.printErrors(errors);
+    return 1;
+  }
+
+
+  /**
+   * Creates and runs the subcommand named by args[position], passing it all
+   * other args.
+   * @param areArgsFilesExpanded True if the args files within |args| were
+   *     already expanded.
+   * @return The exit status of the subcommand.
+   */
+  private int runSubcommand(
+      String[] args, int position, boolean areArgsFilesExpanded) {
+    // Inherited flags may still hold the values of a previous invocation.
+    this.clear();
+    CommandLineProgram subcommand = this.createSubcommand(args[position]);
+    String[] subcommandArgs = new String[args.length - 1];
+    System.arraycopy(args, 0, subcommandArgs, 0, position);
+    System.arraycopy(args, position + 1, subcommandArgs, position,
+        subcommandArgs.length - position);
+    return subcommand.parseAndRun(subcommandArgs, areArgsFilesExpanded);
+  }
+
 
-    ListIterator<String> itArgs = this.args.listIterator();
-    while (itArgs.hasNext()) {
-      String arg = itArgs.next();
-      if (Flag.isFlagLike(arg) && !hasFlag(Flag.extractName(arg))) {
-        errors.add(new SingleFlagParsingError(
-              SingleFlagParsingError.Type.UNKNOWN_FLAG, arg));
+  /**
+   * Creates and initializes the program running the subcommand |name|. Only
+   * the created subcommand is initialized. It inherits the flags of this
+   * program, which can thus appear before or after its name, and the values
+   * of which this program sees as well.
+   * @return The subcommand, or null if |name| is not registered.
+   */
+  CommandLineProgram createSubcommand(String name) {
+    Supplier<? extends CommandLineProgram> factory =
+        this.subcommands == null ? null : this.subcommands.get(name);
+    if (factory == null) {
+      return null;
+    }
+    CommandLineProgram subcommand = factory.get();
+    subcommand.parent = this;
+    subcommand.setInvocationContext(this.workingDirectory, this.environment);
+    subcommand.valueSources.addAll(this.valueSources);
+    subcommand.defaultArgs.putAll(this.defaultArgs);
+    Iterator<Flag> it = this.flags.iterator();
+    while (it.hasNext()) {
+      Flag flag = it.next();
+      if (flag != this.unconsumed) {
+        subcommand.registerFlag(flag);
       }
     }
-    return errors;
+    subcommand.initialize();
+    return subcommand;
+  }
+
+
+  /**
+   * @return The working directory of this invocation. It differs from the
+   *     one of this process when run by a ProgramDaemon, so relative paths
+   *     should be resolved against it.
+   */
+  public Path getWorkingDirectory() {
+    return this.workingDirectory != null ?
+        this.workingDirectory : Paths.get("").toAbsolutePath();
+  }
+
+
+  /**
+   * @return The environment of this invocation, which differs from the one
+   *     of this process when run by a ProgramDaemon.
+   */
+  public Map<String, String> getEnvironment() {
+    return this.environment != null ? this.environment : System.getenv();
+  }
+
+
+  /**
+   * @return The stdout of this invocation. It differs from the one of this
+   *     process when run by a ProgramDaemon or a BatchRunner, which only
+   *     route System.out on the thread running the program. Work handed to
+   *     other threads, such as parallel streams, must print through this
+   *     stream rather than System.out.
+   */
+  public PrintStream getStdout() {
+    return this.stdout != null ? this.stdout : System.out;
+  }
+
+
+  /**
+   * @return The stderr of this invocation.
+   * @see #getStdout
+   */
+  public PrintStream getStderr() {
+    return this.stderr != null ? this.stderr : System.err;
+  }
+
+
+  /**
+   * Sets the exit status of the current run, reported once run() returns,
+   * for failures that are not an invalid use, such as a file that could not
+   * be read. The status is reset for every run.
+   */
+  protected void setExitStatus(int status) {
+    this.exitStatus = status;
+  }
+
+
+  /**
+   * Sets the working directory and environment of an invocation on behalf
+   * of another process.
+   */
+  void setInvocationContext(
+      Path workingDirectory, Map<String, String> environment) {
+    this.workingDirectory = workingDirectory;
+    this.environment = environment;
+  }
+
+
+  /**
+   * Finds all errors that caused the last call to parseArgs to fail. The
+   * errors are collected while parsing, so this does not validate again.
+   * @return A list of errors that caused parsing to fail.
+   */
+  public List<ParsingError> getErrors() {
+    return this.getResult().getErrors();
   }
 
 
@@ -115,11 +387,76 @@ public abstract class CommandLineProgram {
   }
 
 
+  /**
+   * Registers a subcommand, selected when |name| is the first arg not
+   * consumed by a flag of this program, as in git commit. The program
+   * running the subcommand is only created and initialized when selected,
+   * so subcommands cost nothing until then.
+   * @param factory Creates the program running the subcommand.
+   */
+  public void registerSubcommand(
+      String name, Supplier<? extends CommandLineProgram> factory) {
+    if (this.subcommands == null) {
+      this.subcommands =
+          new HashMap<String, Supplier<? extends CommandLineProgram>>();
+    }
+    this.subcommands.put(name, factory);
+  }
+
+
+  /**
+   * @return The names of the registered subcommands.
+   */
+  public Set<String> getSubcommandNames() {
+    if (this.subcommands == null) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(this.subcommands.keySet());
+  }
+
+
+  /**
+   * @return The program that ran this one as its subcommand, or null.
+   */
+  public CommandLineProgram getParent() {
+    return this.parent;
+  }
+
+
   /**
    * Sets the maximum/minumum allowable number of unconsumed args.
    */
   public void setUnconsumedFlags(int min, int max) {
     this.unconsumed.setNumOfArgs(min, max);
+    this.spec = null;
+  }
+
+
+  /**
+   * Makes positional args be read from stdin, one per line or ending at a
+   * NUL, as xargs reads them. They are streamed to run through
+   * getStdinArgs, and their number is only checked once they are all read,
+   * failing the run if it is not within |min| and |max|. Positional args
+   * given on the command line are still described by setUnconsumedFlags.
+   * @see StdinArgs
+   */
+  public void setStdinArgs(int min, int max, boolean isNulSeparated) {
+    this.stdinFlag = new Flag(
+        new String[]{"stdin"}, false, min, max, null, true);
+    this.isStdinNulSeparated = isNulSeparated;
+  }
+
+
+  /**
+   * @return The positional args read from stdin by the current run.
+   * @throws IllegalStateException If setStdinArgs was not called, or this
+   *     program is not running.
+   */
+  public StdinArgs getStdinArgs() {
+    if (this.stdinArgs == null) {
+      throw new IllegalStateException("Stdin args are not being read.");
+    }
+    return this.stdinArgs;
   }
 
 
@@ -143,10 +480,14 @@ public abstract class CommandLineProgram {
     if (!this.flags.add(flag)) {
       return;
     }
+    this.spec = null;
+    int position = this.flags.size() - 1;
     List<String> names = flag.getNames();
     Iterator<String> it = names.iterator();
     while (it.hasNext()) {
-      this.flagsMap.put(it.next(), flag);
+      String name = it.next();
+      this.flagsMap.put(name, flag);
+      this.nameIndex.add(name, position);
     }
   }
 
@@ -157,6 +498,23 @@ public abstract class CommandLineProgram {
    */
   public void setRequiredFlagSet(Flag[] flags) {
     this.requiredFlagSet = Arrays.asList(flags);
+    this.spec = null;
+  }
+
+
+  /**
+   * Freezes the registered flags into a spec that can be shared by multiple
+   * threads, each of them parsing independently. The spec is cached, and
+   * compiled again once a flag is registered or reconfigured. Specs already
+   * returned keep describing the flags as they were when compiled.
+   * @return The compiled spec.
+   */
+  public ParserSpec compile() {
+    if (this.spec == null || this.spec.isStale()) {
+      this.spec = new ParserSpec(this.flags, this.unconsumed,
+          this.requiredFlagSet, this.allowAbbreviations, this.nameIndex);
+    }
+    return this.spec;
   }
 
 
@@ -166,61 +524,215 @@ public abstract class CommandLineProgram {
    * @return True if a flag with that name is registered.
    */
   public boolean hasFlag(String name) {
-    return this.flagsMap.get(name) != null;
+    return this.nameIndex.get(name) != FlagNameIndex.NOT_FOUND;
+  }
+
+
+  /**
+   * Sets whether a unique prefix of a flag name (such as --inp for --input)
+   * is accepted in place of the name. Ambiguous prefixes are reported as
+   * errors. Abbreviations are not accepted by default.
+   */
+  public void setAllowAbbreviations(boolean allowAbbreviations) {
+    this.allowAbbreviations = allowAbbreviations;
+    this.spec = null;
+  }
+
+
+  /**
+   * Sets whether an arg of the form @path is replaced by the args listed in
+   * the file |path|, which is useful when the args do not fit in a command
+   * line. Args files are not expanded by default.
+   * @see ArgsFileExpander
+   */
+  public void setExpandArgsFiles(boolean expandArgsFiles) {
+    this.expandArgsFiles = expandArgsFiles;
+  }
+
+
+  /**
+   * Sets the args |flag| takes when neither args nor a value source set it.
+   * Like args, they are validated when parsing.
+   */
+  public void setDefaultArgs(Flag flag, String... args) {
+    this.defaultArgs.put(flag, Arrays.asList(args));
   }
 
 
   /**
-   * Parses arguments.
+   * Adds a source of the values of flags not set by args. A flag takes its
+   * values from the source added last among the ones setting it, or else
+   * from its default args. Sources are inherited by subcommands.
+   * @see ConfigFile
+   * @see EnvironmentValueSource
+   */
+  public void addValueSource(ValueSource source) {
+    this.valueSources.add(source);
+  }
+
+
+  /**
+   * Adds the environment of each invocation as a value source, taking the
+   * values of flags from the variables prefixed by |prefix|.
+   * @see EnvironmentValueSource
+   */
+  public void addEnvironmentSource(final String prefix) {
+    this.addValueSource(new ValueSource() {
+      @Override
+      public List<String> getValues(Flag flag) {
+        return new EnvironmentValueSource(prefix, getEnvironment())
+            .getValues(flag);
+      }
+    });
+  }
+
+
+  /**
+   * Parses arguments. Subcommands are not run, and an arg that would select
+   * an unknown subcommand is reported as an error.
    * @param args The arguments to parse.
    */
   public boolean parseArgs(String[] args) {
-    this.args = new LinkedList<String>(Arrays.asList(args));
-    ListIterator<String> itArgs = this.args.listIterator();
-    while (itArgs.hasNext()) {
-      String arg = itArgs.next();
-      if (Flag.isFlagLike(arg) && hasFlag(Flag.extractName(arg))) {
-        itArgs.remove();
-        this.flagsMap.get(Flag.extractName(arg)).consume(this.args, itArgs);
-      }
+    ArgsFileExpander expander = null;
+    if (this.expandArgsFiles) {
+      expander = new ArgsFileExpander(this.workingDirectory);
+      args = this.expandArgsFiles(args, expander);
     }
+    return this.finishParse(args, this.tokenize(args), expander);
+  }
 
-    // Placing remaining args to this.unconsumed as described by it.
-    itArgs = this.args.listIterator();
-    if (itArgs.hasNext()) {
-      this.unconsumed.consume(this.args, itArgs);
-    }
-    // TODO: consume again here until only uknown flags exist in this.args.
 
-    return this.isParsingValid();
+  /**
+   * Expands the args files within |args| through |expander|.
+   * @return The expanded args, or |args| if expansion failed, in which case
+   *     the error is left in |expander|.
+   */
+  private String[] expandArgsFiles(String[] args, ArgsFileExpander expander) {
+    Instrumentation.Span span =
+        Instrumentation.begin(MetricsListener.Phase.EXPAND_ARGS_FILES);
+    String[] expanded = expander.expand(args);
+    Instrumentation.end(span);
+    return expanded != null ? expanded : args;
+  }
+
+
+  /**
+   * Starts parsing |args|, classifying every arg without validating them.
+   * @see #finishParse
+   */
+  private ParseResult tokenize(String[] args) {
+    ParserSpec spec = this.compile();
+    ParseResult result = spec.newResult();
+    spec.tokenize(args, result);
+    return result;
   }
 
 
   /**
-   * Checks if parsing of arguments was successful. It can fail if a required
-   * flag was not present, if wrong number of args was passed to a flag.
+   * Completes the parse of |args| started by tokenize, giving flags their
+   * sourced values and storing the values of all flags in them.
+   * @param expander The expander of the args files within |args|, or null
+   *     if they were not expanded.
    * @return True if parsing was valid.
    */
-  public boolean isParsingValid() {
+  private boolean finishParse(
+      String[] args, ParseResult result, ArgsFileExpander expander) {
+    // Remaining args are placed to this.unconsumed as described by it.
+    // TODO: consume again here until only uknown flags exist in this.args.
+    if (this.valueSources.isEmpty() && this.defaultArgs.isEmpty()) {
+      this.compile().finish(result, null);
+    } else {
+      this.compile().finish(result, new Function<Flag, List<String>>() {
+        public List<String> apply(Flag flag) {
+          return CommandLineProgram.this.getSourcedValues(flag);
+        }
+      });
+    }
+    this.result = result;
+    if (expander != null && expander.getError() != null) {
+      this.result.addError(expander.getError());
+    }
+    if (this.subcommands != null) {
+      int position = this.result.getFirstLeftoverPosition();
+      if (position >= 0 && !this.subcommands.containsKey(args[position])) {
+        String name = args[position];
+        List<String> candidates =
+            new FlagNameSuggester(this.subcommands.keySet()).suggest(
+                name, 0, name.length(),
+                FlagNameSuggester.getMaxDistance(name.length()));
+        this.result.addError(new SubcommandParsingError(
+            SubcommandParsingError.Type.UNKNOWN_SUBCOMMAND, name,
+            candidates));
+      }
+    }
+
     Iterator<Flag> it = this.flags.iterator();
     while (it.hasNext()) {
-      if (!it.next().isValid()) {
-        return false;
+      Flag flag = it.next();
+      if (this.result.isSet(flag)) {
+        flag.setIsSet();
+      }
+      if (flag instanceof FileSetFlag) {
+        ((FileSetFlag) flag).setWorkingDirectory(this.workingDirectory);
+      }
+      flag.args.addAll(this.result.getArgs(flag));
+      if (flag instanceof TypedFlag) {
+        Object values =
+            this.result.getConvertedValues((TypedFlag) flag);
+        if (values != null) {
+          ((TypedFlag) flag).setConvertedValues(values);
+        }
       }
     }
+    this.args = new ArrayList<String>(this.result.getRemainingArgs());
+
+    return this.isParsingValid();
+  }
 
-    if (!this.checkRequiredFlagSetSatisfied()) {
-      return false;
-    }
 
-    // Checking if the number of unconsumed flags is as expected. All
-    // unconsumed args should have been consumed by |this.unconsumed| and
-    // |this.args| should be empty.
-    if (this.args.size() > 0 || !this.unconsumed.isValid()) {
-      return false;
+  /**
+   * @return The values |flag| takes when args do not set it, from the value
+   *     sources or the default args, or null if it is left unset. They are
+   *     validated like args, but are not parsed as args, so a value starting
+   *     with - is not taken for a flag.
+   */
+  private List<String> getSourcedValues(Flag flag) {
+    if (flag == this.unconsumed) {
+      return null;
     }
+    List<String> values = null;
+    for (int i = this.valueSources.size() - 1; i >= 0 && values == null;
+        i--) {
+      values = this.valueSources.get(i).getValues(flag);
+    }
+    if (values == null) {
+      values = this.defaultArgs.get(flag);
+    }
+    return values == ValueSource.SWITCH_OFF ? null : values;
+  }
 
-    return true;
+
+  /**
+   * Checks if the last call to parseArgs was successful. It can fail if a
+   * required flag was not present, if wrong number of args was passed to a
+   * flag. The verdict is decided while parsing.
+   * @return True if parsing was valid.
+   */
+  public boolean isParsingValid() {
+    return this.getResult().isValid();
+  }
+
+
+  /**
+   * @return The outcome of the last call to parseArgs.
+   * @throws IllegalStateException If no args have been parsed since the last
+   *     call to clear.
+   */
+  public ParseResult getResult() {
+    if (this.result == null) {
+      throw new IllegalStateException("No args have been parsed.");
+    }
+    return this.result;
   }
 
 
@@ -253,9 +765,16 @@ public abstract class CommandLineProgram {
   public void clear() {
     Iterator<Flag> it = this.flags.iterator();
     while (it.hasNext()) {
-      it.next().args.clear();
+      it.next().reset();
+    }
+    if (this.args != null) {
+      this.args.clear();
+    }
+    if (this.stdinArgs != null) {
+      this.stdinArgs.close();
+      this.stdinArgs = null;
     }
-    this.args.clear();
+    this.result = null;
   }
 
 }  // class CommandLineProgram
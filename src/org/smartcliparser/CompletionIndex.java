@@ -0,0 +1,455 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The flags and subcommands of a program, precomputed so that shells can
+ * complete its command lines without starting a JVM and initializing the
+ * program on every key press. The index is written as a text file read by
+ * the adapters in the completion directory, which resolve completions the
+ * same way as complete().
+ *
+ * Each line holds tab separated fields, subcommands being identified by the
+ * path of their names from the program, such as / or /remote/add:
+ *
+ *   command PATH NAME
+ *   flag PATH SPELLINGS MIN MAX HINT VALUES
+ *
+ * SPELLINGS are the names of a flag as typed, such as "--output -o". HINT is
+ * "path" for flags taking paths, "values" for flags taking one of VALUES,
+ * separated by commas, or "-". Subcommands list the flags they inherit.
+ */
+public final class CompletionIndex {
+
+  private static final String HEADER =
+      "# smartcliparser completion index, version 1";
+
+  private static final String ROOT = "/";
+  private static final String NONE = "-";
+
+  /**
+   * The kinds of values a flag can be completed with.
+   */
+  enum Hint {
+    NONE,
+    PATH,
+    VALUES
+  }
+
+
+  /**
+   * The part of a flag that matters for completion.
+   */
+  static final class FlagEntry {
+
+    final List<String> spellings;
+    final int numOfArgsMin;
+    final int numOfArgsMax;
+    final Hint hint;
+    final List<String> values;
+
+
+    FlagEntry(List<String> spellings, int numOfArgsMin, int numOfArgsMax,
+        Hint hint, List<String> values) {
+      this.spellings = spellings;
+      this.numOfArgsMin = numOfArgsMin;
+      this.numOfArgsMax = numOfArgsMax;
+      this.hint = hint;
+      this.values = values;
+    }
+
+  }  // class FlagEntry
+
+
+  /**
+   * The flags of each subcommand path, in registration order.
+   */
+  private final Map<String, List<FlagEntry>> flags =
+      new HashMap<String, List<FlagEntry>>();
+
+  /**
+   * The flags of each subcommand path, by spelling.
+   */
+  private final Map<String, Map<String, FlagEntry>> flagsBySpelling =
+      new HashMap<String, Map<String, FlagEntry>>();
+
+  /**
+   * The sorted subcommand names of each subcommand path.
+   */
+  private final Map<String, List<String>> commands =
+      new HashMap<String, List<String>>();
+
+
+  private CompletionIndex() {}
+
+
+  /**
+   * Builds the index of |program| and of all its subcommands, initializing
+   * each of them.
+   * @param program A program that is not initialized yet.
+   */
+  public static CompletionIndex build(CommandLineProgram program) {
+    CompletionIndex index = new CompletionIndex();
+    program.initialize();
+    index.add(ROOT, program);
+    return index;
+  }
+
+
+  private void add(String path, CommandLineProgram program) {
+    Flag unconsumed = program.compile().getUnconsumedFlag();
+    Iterator<Flag> it = program.flags.iterator();
+    while (it.hasNext()) {
+      Flag flag = it.next();
+      if (flag == unconsumed) {
+        continue;
+      }
+      List<String> spellings = new ArrayList<String>();
+      Iterator<String> names = flag.getNames().iterator();
+      while (names.hasNext()) {
+        spellings.add(Flag.getSpelling(names.next()));
+      }
+      Hint hint = Hint.NONE;
+      List<String> values = Collections.emptyList();
+      if (flag instanceof FileSetFlag || flag instanceof PathFlag) {
+        hint = Hint.PATH;
+      } else if (flag instanceof TypedFlag &&
+          !((TypedFlag) flag).getAllowedValues().isEmpty()) {
+        hint = Hint.VALUES;
+        values = ((TypedFlag) flag).getAllowedValues();
+      }
+      this.addFlag(path, new FlagEntry(spellings, flag.getNumOfArgsMin(),
+          flag.getNumOfArgsMax(), hint, values));
+    }
+
+    List<String> names =
+        new ArrayList<String>(program.getSubcommandNames());
+    Collections.sort(names);
+    this.commands.put(path, names);
+    for (int i = 0; i < names.size(); i++) {
+      String name = names.get(i);
+      this.add(child(path, name), program.createSubcommand(name));
+    }
+  }
+
+
+  private void addFlag(String path, FlagEntry entry) {
+    List<FlagEntry> entries = this.flags.get(path);
+    Map<String, FlagEntry> bySpelling = this.flagsBySpelling.get(path);
+    if (entries == null) {
+      entries = new ArrayList<FlagEntry>();
+      bySpelling = new HashMap<String, FlagEntry>();
+      this.flags.put(path, entries);
+      this.flagsBySpelling.put(path, bySpelling);
+    }
+    entries.add(entry);
+    for (int i = 0; i < entry.spellings.size(); i++) {
+      bySpelling.put(entry.spellings.get(i), entry);
+    }
+  }
+
+
+  private void addCommand(String path, String name) {
+    List<String> names = this.commands.get(path);
+    if (names == null) {
+      names = new ArrayList<String>();
+      this.commands.put(path, names);
+    }
+    names.add(name);
+  }
+
+
+  private static String child(String path, String name) {
+    return path.equals(ROOT) ? ROOT + name : path + "/" + name;
+  }
+
+
+  /**
+   * Writes the index in the format read by read() and the shell adapters.
+   */
+  public void write(Writer writer) throws IOException {
+    writer.write(HEADER + "\n");
+    List<String> paths = new ArrayList<String>(this.commands.keySet());
+    Collections.sort(paths);
+    for (int i = 0; i < paths.size(); i++) {
+      String path = paths.get(i);
+      List<String> names = this.commands.get(path);
+      for (int j = 0; j < names.size(); j++) {
+        writer.write("command\t" + path + "\t" + names.get(j) + "\n");
+      }
+      List<FlagEntry> entries = this.getFlags(path);
+      for (int j = 0; j < entries.size(); j++) {
+        FlagEntry entry = entries.get(j);
+        writer.write("flag\t" + path + "\t" + join(entry.spellings, " ") +
+            "\t" + entry.numOfArgsMin + "\t" + entry.numOfArgsMax + "\t" +
+            (entry.hint == Hint.NONE ?
+                NONE : entry.hint.name().toLowerCase()) + "\t" +
+            (entry.values.isEmpty() ? NONE : join(entry.values, ",")) +
+            "\n");
+      }
+    }
+    writer.flush();
+  }
+
+
+  /**
+   * Reads an index written by write().
+   * @throws IOException If the index can not be read or is malformed.
+   */
+  public static CompletionIndex read(Reader reader) throws IOException {
+    CompletionIndex index = new CompletionIndex();
+    BufferedReader lines = new BufferedReader(reader);
+    String line;
+    while ((line = lines.readLine()) != null) {
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\t", -1);
+      try {
+        if (fields[0].equals("command") && fields.length == 3) {
+          index.addCommand(fields[1], fields[2]);
+        } else if (fields[0].equals("flag") && fields.length == 7) {
+          index.addFlag(fields[1], new FlagEntry(
+              Arrays.asList(fields[2].split(" ")),
+              Integer.parseInt(fields[3]), Integer.parseInt(fields[4]),
+              fields[5].equals(NONE) ?
+                  Hint.NONE : Hint.valueOf(fields[5].toUpperCase()),
+              fields[6].equals(NONE) ? Collections.<String>emptyList() :
+                  Arrays.asList(fields[6].split(","))));
+        } else {
+          throw new IOException("Malformed completion index line: " + line);
+        }
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Malformed completion index line: " + line);
+      }
+    }
+    return index;
+  }
+
+
+  /**
+   * Completes a command line.
+   * @param words The words following the name of the program, the last of
+   *     which is the possibly empty word being completed.
+   * @return The sorted words that can replace the last word.
+   */
+  public List<String> complete(List<String> words) {
+    String path = ROOT;
+    // Whether a leftover arg was seen at |path|, after which no subcommand
+    // can be selected any more.
+    boolean hasLeftover = false;
+    FlagEntry current = null;
+    int numOfValues = 0;
+    for (int i = 0; i < words.size() - 1; i++) {
+      String word = words.get(i);
+      if (Flag.getNameOffset(word) >= 0) {
+        current = this.getFlag(path, word);
+        numOfValues = 0;
+      } else if (current != null && numOfValues < current.numOfArgsMax) {
+        numOfValues++;
+      } else if (!hasLeftover && this.getCommands(path).contains(word)) {
+        path = child(path, word);
+        current = null;
+      } else {
+        hasLeftover = true;
+        current = null;
+      }
+    }
+
+    String word = words.isEmpty() ? "" : words.get(words.size() - 1);
+    List<String> completions = new ArrayList<String>();
+    if (current != null && numOfValues < current.numOfArgsMax &&
+        !word.startsWith("-")) {
+      if (current.hint == Hint.VALUES) {
+        addWithPrefix(current.values, word, completions);
+      } else if (current.hint == Hint.PATH) {
+        addPaths(word, completions);
+      }
+      if (numOfValues < current.numOfArgsMin) {
+        Collections.sort(completions);
+        return completions;
+      }
+    }
+    if (word.startsWith("-")) {
+      List<FlagEntry> entries = this.getFlags(path);
+      for (int i = 0; i < entries.size(); i++) {
+        addWithPrefix(entries.get(i).spellings, word, completions);
+      }
+    } else if (!hasLeftover) {
+      addWithPrefix(this.getCommands(path), word, completions);
+    }
+    Collections.sort(completions);
+    return completions;
+  }
+
+
+  private List<FlagEntry> getFlags(String path) {
+    List<FlagEntry> entries = this.flags.get(path);
+    return entries == null ? Collections.<FlagEntry>emptyList() : entries;
+  }
+
+
+  private FlagEntry getFlag(String path, String spelling) {
+    Map<String, FlagEntry> bySpelling = this.flagsBySpelling.get(path);
+    return bySpelling == null ? null : bySpelling.get(spelling);
+  }
+
+
+  private List<String> getCommands(String path) {
+    List<String> names = this.commands.get(path);
+    return names == null ? Collections.<String>emptyList() : names;
+  }
+
+
+  private static void addWithPrefix(
+      List<String> words, String prefix, List<String> completions) {
+    for (int i = 0; i < words.size(); i++) {
+      if (words.get(i).startsWith(prefix)) {
+        completions.add(words.get(i));
+      }
+    }
+  }
+
+
+  /**
+   * Adds the paths starting with |prefix|, like compgen -f.
+   */
+  private static void addPaths(String prefix, List<String> completions) {
+    int slash = prefix.lastIndexOf('/');
+    String directory = prefix.substring(0, slash + 1);
+    String namePrefix = prefix.substring(slash + 1);
+    try {
+      DirectoryStream<Path> stream = Files.newDirectoryStream(
+          Paths.get(directory.isEmpty() ? "." : directory));
+      try {
+        for (Path child : stream) {
+          String name = child.getFileName().toString();
+          if (name.startsWith(namePrefix) &&
+              (!name.startsWith(".") || namePrefix.startsWith("."))) {
+            completions.add(directory + name);
+          }
+        }
+      } finally {
+        stream.close();
+      }
+    } catch (IOException e) {
+      // Unreadable directories complete to nothing, as in shells.
+    }
+  }
+
+
+  private static String join(List<String> words, String separator) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < words.size(); i++) {
+      if (i > 0) {
+        builder.append(separator);
+      }
+      builder.append(words.get(i));
+    }
+    return builder.toString();
+  }
+
+
+  private static final class Main extends CommandLineProgram {
+
+    private Flag program;
+    private PathFlag output;
+    private int status = 0;
+
+
+    @Override
+    public void initialize() {
+      this.program = new Flag(new String[]{"program", "p"}, true, 1, 1);
+      this.output =
+          new PathFlag(new String[]{"output", "o"}, false, 1, 1);
+      this.registerFlag(this.program);
+      this.registerFlag(this.output);
+    }
+
+
+    @Override
+    public void run() {
+      try {
+        CommandLineProgram target = Class.forName(this.program.args.get(0))
+            .asSubclass(CommandLineProgram.class).getConstructor()
+            .newInstance();
+        CompletionIndex index = CompletionIndex.build(target);
+        if (!this.output.isSet()) {
+          Writer writer = new OutputStreamWriter(
+              System.out, StandardCharsets.UTF_8);
+          index.write(writer);
+          return;
+        }
+        // Replacing the index atomically, since shells may be reading it.
+        Path output = this.output.getValue(0).toAbsolutePath();
+        Path temporary = Files.createTempFile(output.getParent(),
+            output.getFileName().toString(), ".tmp");
+        try {
+          Writer writer =
+              Files.newBufferedWriter(temporary, StandardCharsets.UTF_8);
+          try {
+            index.write(writer);
+          } finally {
+            writer.close();
+          }
+          Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+          Files.deleteIfExists(temporary);
+        }
+      } catch (ReflectiveOperationException e) {
+        System.err.println("Can not create " + this.program.args.get(0) +
+            ": " + e);
+        this.status = 1;
+      } catch (IOException e) {
+        System.err.println("Can not write the index: " + e.getMessage());
+        this.status = 1;
+      }
+    }
+
+  }  // class Main
+
+
+  /**
+   * Usage: CompletionIndex --program class [--output file]
+   * Writes the completion index of a program with a public no-arg
+   * constructor, to stdout unless an output file is given.
+   */
+  public static void main(String[] args) {
+    Main main = new Main();
+    int status = main.execute(args);
+    System.exit(status != 0 ? status : main.status);
+  }
+
+}  // class CompletionIndex
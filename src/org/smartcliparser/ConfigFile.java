@@ -0,0 +1,342 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A config file of key=value lines in UTF-8, the keys of which are flag
+ * names. A key may be repeated to give a flag several args. A switch is
+ * turned on by its key alone, and turned off by a value such as false or 0.
+ * Blanks around keys and values are ignored, as are empty lines and lines
+ * starting with #.
+ *
+ * The file is memory-mapped, and indexed by the hash of each key when first
+ * used, without decoding anything. Only the lines whose keys are looked up
+ * are decoded, so a file of any number of settings costs little more than
+ * reading it once, and a shared instance can be used by several threads.
+ */
+public final class ConfigFile implements ValueSource {
+
+  /**
+   * The value start of a key without a value.
+   */
+  private static final int NO_VALUE = -1;
+
+  private final Path path;
+  private final ByteBuffer buffer;
+
+  /**
+   * The index of the keys, built when first needed.
+   */
+  private volatile Index index = null;
+
+
+  /**
+   * The lines of the file, chained by the hash of their keys.
+   */
+  private static final class Index {
+
+    /**
+     * The last line of each chain, or -1. The size is a power of 2.
+     */
+    final int[] buckets;
+
+    /**
+     * For each line, the previous line of its chain, or -1.
+     */
+    final int[] previous;
+
+    final int[] hashes;
+    final int[] keyStarts;
+    final int[] keyEnds;
+    final int[] valueStarts;
+    final int[] valueEnds;
+
+
+    Index(int[] hashes, int[] keyStarts, int[] keyEnds, int[] valueStarts,
+        int[] valueEnds) {
+      this.hashes = hashes;
+      this.keyStarts = keyStarts;
+      this.keyEnds = keyEnds;
+      this.valueStarts = valueStarts;
+      this.valueEnds = valueEnds;
+      int size = Integer.highestOneBit(Math.max(1, hashes.length) * 2);
+      this.buckets = new int[size];
+      Arrays.fill(this.buckets, -1);
+      this.previous = new int[hashes.length];
+      for (int i = 0; i < hashes.length; i++) {
+        int bucket = hashes[i] & (size - 1);
+        this.previous[i] = this.buckets[bucket];
+        this.buckets[bucket] = i;
+      }
+    }
+
+  }  // class Index
+
+
+  private ConfigFile(Path path, ByteBuffer buffer) {
+    this.path = path;
+    this.buffer = buffer;
+  }
+
+
+  /**
+   * Maps the file at |path| into memory. It is not read until used.
+   * @throws IOException If the file can not be opened, or is 2 GB or
+   *     larger.
+   */
+  public static ConfigFile open(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Config file " + path + " is too large.");
+      }
+      // The mapping remains valid after the channel is closed.
+      return new ConfigFile(
+          path, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    } finally {
+      channel.close();
+    }
+  }
+
+
+  public Path getPath() {
+    return this.path;
+  }
+
+
+  @Override
+  public List<String> getValues(Flag flag) {
+    Iterator<String> it = flag.getNames().iterator();
+    while (it.hasNext()) {
+      int[] lines = this.find(it.next());
+      if (lines.length == 0) {
+        continue;
+      }
+      Index index = this.getIndex();
+      if (flag.getNumOfArgsMax() == 0) {
+        int line = lines[lines.length - 1];
+        return index.valueStarts[line] == NO_VALUE ?
+            Collections.<String>emptyList() :
+            EnvironmentValueSource.getSwitchValues(this.decodeValue(line));
+      }
+      List<String> values = new ArrayList<String>(lines.length);
+      for (int i = 0; i < lines.length; i++) {
+        values.add(this.decodeValue(lines[i]));
+      }
+      return values;
+    }
+    return null;
+  }
+
+
+  /**
+   * @return The values of all lines with the key |key|, in the order of the
+   *     file, a key without a value having an empty value.
+   */
+  public List<String> get(String key) {
+    int[] lines = this.find(key);
+    List<String> values = new ArrayList<String>(lines.length);
+    for (int i = 0; i < lines.length; i++) {
+      values.add(this.decodeValue(lines[i]));
+    }
+    return values;
+  }
+
+
+  /**
+   * @return The lines with the key |key|, in the order of the file.
+   */
+  private int[] find(String key) {
+    Index index = this.getIndex();
+    byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+    int hash = hash(bytes);
+    int[] lines = new int[0];
+    int numOfLines = 0;
+    for (int line = index.buckets[hash & (index.buckets.length - 1)];
+        line >= 0; line = index.previous[line]) {
+      if (index.hashes[line] == hash && this.equals(
+          index.keyStarts[line], index.keyEnds[line], bytes)) {
+        if (numOfLines == lines.length) {
+          lines = Arrays.copyOf(lines, Math.max(4, numOfLines * 2));
+        }
+        lines[numOfLines++] = line;
+      }
+    }
+    // Chains run from the last line to the first.
+    int[] ordered = new int[numOfLines];
+    for (int i = 0; i < numOfLines; i++) {
+      ordered[i] = lines[numOfLines - 1 - i];
+    }
+    return ordered;
+  }
+
+
+  private Index getIndex() {
+    Index index = this.index;
+    if (index == null) {
+      synchronized (this) {
+        index = this.index;
+        if (index == null) {
+          index = this.buildIndex();
+          this.index = index;
+        }
+      }
+    }
+    return index;
+  }
+
+
+  /**
+   * Finds the key and value of each line, hashing the keys.
+   */
+  private Index buildIndex() {
+    ByteBuffer buffer = this.buffer;
+    int limit = buffer.limit();
+    int capacity = 64;
+    int[] hashes = new int[capacity];
+    int[] keyStarts = new int[capacity];
+    int[] keyEnds = new int[capacity];
+    int[] valueStarts = new int[capacity];
+    int[] valueEnds = new int[capacity];
+    int size = 0;
+
+    int position = 0;
+    while (position < limit) {
+      int lineEnd = position;
+      while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+        lineEnd++;
+      }
+      int end = lineEnd;
+      if (end > position && buffer.get(end - 1) == '\r') {
+        end--;
+      }
+      int start = this.skipBlanks(position, end);
+      if (start < end && buffer.get(start) != '#') {
+        int equals = start;
+        while (equals < end && buffer.get(equals) != '=') {
+          equals++;
+        }
+        int keyEnd = this.trimBlanks(start, equals);
+        if (keyEnd > start) {
+          if (size == capacity) {
+            capacity *= 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            keyStarts = Arrays.copyOf(keyStarts, capacity);
+            keyEnds = Arrays.copyOf(keyEnds, capacity);
+            valueStarts = Arrays.copyOf(valueStarts, capacity);
+            valueEnds = Arrays.copyOf(valueEnds, capacity);
+          }
+          hashes[size] = this.hash(start, keyEnd);
+          keyStarts[size] = start;
+          keyEnds[size] = keyEnd;
+          if (equals < end) {
+            int valueStart = this.skipBlanks(equals + 1, end);
+            valueStarts[size] = valueStart;
+            valueEnds[size] = this.trimBlanks(valueStart, end);
+          } else {
+            valueStarts[size] = NO_VALUE;
+          }
+          size++;
+        }
+      }
+      position = lineEnd + 1;
+    }
+    return new Index(Arrays.copyOf(hashes, size),
+        Arrays.copyOf(keyStarts, size), Arrays.copyOf(keyEnds, size),
+        Arrays.copyOf(valueStarts, size), Arrays.copyOf(valueEnds, size));
+  }
+
+
+  private String decodeValue(int line) {
+    Index index = this.getIndex();
+    int start = index.valueStarts[line];
+    if (start == NO_VALUE) {
+      return "";
+    }
+    byte[] bytes = new byte[index.valueEnds[line] - start];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = this.buffer.get(start + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+
+  private int skipBlanks(int start, int end) {
+    while (start < end && isBlank(this.buffer.get(start))) {
+      start++;
+    }
+    return start;
+  }
+
+
+  private int trimBlanks(int start, int end) {
+    while (end > start && isBlank(this.buffer.get(end - 1))) {
+      end--;
+    }
+    return end;
+  }
+
+
+  private boolean equals(int start, int end, byte[] bytes) {
+    if (end - start != bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      if (this.buffer.get(start + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  // FNV-1a, over bytes of the file or of a key looked up.
+
+  private int hash(int start, int end) {
+    int hash = 0x811c9dc5;
+    for (int i = start; i < end; i++) {
+      hash = (hash ^ (this.buffer.get(i) & 0xff)) * 0x01000193;
+    }
+    return hash;
+  }
+
+
+  private static int hash(byte[] bytes) {
+    int hash = 0x811c9dc5;
+    for (int i = 0; i < bytes.length; i++) {
+      hash = (hash ^ (bytes[i] & 0xff)) * 0x01000193;
+    }
+    return hash;
+  }
+
+
+  private static boolean isBlank(byte b) {
+    return b == ' ' || b == '\t';
+  }
+
+}  // class ConfigFile
@@ -0,0 +1,203 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Invokes a program hosted by a ProgramDaemon, forwarding the args, working
+ * directory, environment and stdio of the caller. It suits callers already
+ * running in a JVM. A process running it still pays for starting a JVM, so
+ * scripts should invoke programs through the native client built from
+ * client/smartcliparser_client.c instead.
+ *
+ * Usage: DaemonClient socket program [args...]
+ */
+public final class DaemonClient {
+
+  private final Path socketPath;
+
+
+  /**
+   * @param socketPath The socket the daemon listens on.
+   */
+  public DaemonClient(Path socketPath) {
+    this.socketPath = socketPath;
+  }
+
+
+  /**
+   * Invokes |program| with the working directory and environment of this
+   * process.
+   * @see #execute(String, String[], Path, Map, InputStream, OutputStream,
+   *     OutputStream)
+   */
+  public int execute(String program, String[] args, InputStream stdin,
+      OutputStream stdout, OutputStream stderr) throws IOException {
+    return this.execute(program, args, Paths.get("").toAbsolutePath(),
+        System.getenv(), stdin, stdout, stderr);
+  }
+
+
+  /**
+   * Invokes |program| and waits for it to finish.
+   * @param stdin The stdin of the program, or null for an empty one. It is
+   *     read on a separate thread, which may outlive the invocation while
+   *     blocked on reading.
+   * @param stdout Receives the stdout of the program.
+   * @param stderr Receives the stderr of the program.
+   * @return The exit status of the program.
+   * @throws IOException If the daemon can not be reached, or goes away
+   *     before the program finishes.
+   */
+  public int execute(String program, String[] args, Path workingDirectory,
+      Map<String, String> environment, InputStream stdin,
+      OutputStream stdout, OutputStream stderr) throws IOException {
+    SocketChannel channel =
+        SocketChannel.open(UnixDomainSocketAddress.of(this.socketPath));
+    try {
+      final DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(DaemonProtocol.newOutputStream(channel)));
+      out.writeInt(DaemonProtocol.MAGIC);
+      out.writeInt(DaemonProtocol.VERSION);
+      DaemonProtocol.writeString(out, program);
+      DaemonProtocol.writeString(out, workingDirectory.toString());
+      out.writeInt(args.length);
+      for (int i = 0; i < args.length; i++) {
+        DaemonProtocol.writeString(out, args[i]);
+      }
+      out.writeInt(environment.size());
+      Iterator<Map.Entry<String, String>> it =
+          environment.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<String, String> variable = it.next();
+        DaemonProtocol.writeString(out, variable.getKey());
+        DaemonProtocol.writeString(out, variable.getValue());
+      }
+      if (stdin == null) {
+        out.writeByte(DaemonProtocol.STDIN);
+        out.writeInt(0);
+        out.flush();
+      } else {
+        out.flush();
+        Thread pump = new Thread(new StdinPump(stdin, out), "DaemonClient");
+        pump.setDaemon(true);
+        pump.start();
+      }
+
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+          DaemonProtocol.newInputStream(channel)));
+      byte[] buffer = new byte[8192];
+      while (true) {
+        byte frameChannel;
+        try {
+          frameChannel = in.readByte();
+        } catch (EOFException e) {
+          throw new IOException("The daemon closed the connection.");
+        }
+        int length = DaemonProtocol.readFrameLength(in);
+        if (frameChannel == DaemonProtocol.EXIT) {
+          stdout.flush();
+          stderr.flush();
+          return in.readInt();
+        }
+        OutputStream target =
+            frameChannel == DaemonProtocol.STDERR ? stderr : stdout;
+        while (length > 0) {
+          int chunk = Math.min(length, buffer.length);
+          in.readFully(buffer, 0, chunk);
+          target.write(buffer, 0, chunk);
+          length -= chunk;
+        }
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+
+  /**
+   * Sends stdin to the daemon as frames, ending with an empty one.
+   */
+  private static final class StdinPump implements Runnable {
+
+    private final InputStream stdin;
+    private final DataOutputStream out;
+
+
+    StdinPump(InputStream stdin, DataOutputStream out) {
+      this.stdin = stdin;
+      this.out = out;
+    }
+
+
+    public void run() {
+      byte[] buffer = new byte[8192];
+      try {
+        int length;
+        while ((length = this.stdin.read(buffer)) > 0) {
+          DaemonProtocol.writeFrame(
+              this.out, DaemonProtocol.STDIN, buffer, 0, length);
+          synchronized (this.out) {
+            this.out.flush();
+          }
+        }
+        synchronized (this.out) {
+          this.out.writeByte(DaemonProtocol.STDIN);
+          this.out.writeInt(0);
+          this.out.flush();
+        }
+      } catch (IOException e) {
+        // The invocation is over, or stdin can not be read any further.
+      }
+    }
+
+  }  // class StdinPump
+
+
+  public static void main(String[] args) {
+    if (args.length < 2) {
+      System.err.println("Usage: DaemonClient socket program [args...]");
+      System.exit(2);
+    }
+    DaemonClient client = new DaemonClient(Paths.get(args[0]));
+    int status;
+    try {
+      status = client.execute(args[1],
+          Arrays.copyOfRange(args, 2, args.length),
+          System.in, System.out, System.err);
+    } catch (IOException e) {
+      System.err.println("Could not invoke " + args[1] + " through " +
+          args[0] + ": " + e.getMessage());
+      status = 1;
+    }
+    System.exit(status);
+  }
+
+}  // class DaemonClient
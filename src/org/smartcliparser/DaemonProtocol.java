@@ -0,0 +1,287 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The protocol spoken between a DaemonClient and a ProgramDaemon over a Unix
+ * domain socket. All integers are big endian.
+ *
+ * The client sends MAGIC, VERSION, the name of the program, the working
+ * directory, the number of args followed by the args, and the number of
+ * environment variables followed by their names and values. Strings are sent
+ * as their length in UTF-8 bytes followed by the bytes. The client then
+ * sends stdin as frames, and the daemon sends stdout and stderr as frames,
+ * followed by a frame carrying the exit status.
+ *
+ * A frame is its channel as a byte, followed by the length and bytes of its
+ * payload. A STDIN frame with no payload marks the end of stdin. The payload
+ * of an EXIT frame is the exit status as an int.
+ *
+ * Requests are limited to MAX_REQUEST_LENGTH bytes before stdin, and frames
+ * to MAX_FRAME_LENGTH bytes of payload, so that a bad length can not make
+ * the other side allocate more than that.
+ */
+final class DaemonProtocol {
+
+  static final int MAGIC = 0x53435044;
+  static final int VERSION = 1;
+
+  static final byte STDIN = 0;
+  static final byte STDOUT = 1;
+  static final byte STDERR = 2;
+  static final byte EXIT = 3;
+
+  /**
+   * The largest request a daemon accepts, counting the name, working
+   * directory, args and environment as they are sent.
+   */
+  static final int MAX_REQUEST_LENGTH = 16 * 1024 * 1024;
+
+  /**
+   * The largest payload of a frame.
+   */
+  static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+  /**
+   * The exit status reported when the program is not registered.
+   */
+  static final int UNKNOWN_PROGRAM_STATUS = 127;
+
+  /**
+   * The exit status reported when a request exceeds MAX_REQUEST_LENGTH.
+   */
+  static final int REQUEST_TOO_LARGE_STATUS = 126;
+
+  private DaemonProtocol() {}
+
+
+  static void writeString(DataOutputStream out, String string)
+      throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+
+  /**
+   * Reads a length or a count, rejecting negative ones.
+   */
+  static int readLength(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Invalid length: " + length);
+    }
+    return length;
+  }
+
+
+  /**
+   * Reads the length of a frame payload, rejecting ones larger than
+   * MAX_FRAME_LENGTH.
+   */
+  static int readFrameLength(DataInputStream in) throws IOException {
+    int length = DaemonProtocol.readLength(in);
+    if (length > MAX_FRAME_LENGTH) {
+      throw new IOException("Frame too large: " + length);
+    }
+    return length;
+  }
+
+
+  /**
+   * Writes a frame of |length| bytes of |bytes| starting at |offset|.
+   */
+  static void writeFrame(DataOutputStream out, byte channel, byte[] bytes,
+      int offset, int length) throws IOException {
+    synchronized (out) {
+      out.writeByte(channel);
+      out.writeInt(length);
+      out.write(bytes, offset, length);
+    }
+  }
+
+
+  /**
+   * Creates a stream reading from |channel|. Unlike the streams of
+   * java.nio.channels.Channels, it does not block writes to |channel| while
+   * waiting for input, which both sides need to exchange stdio.
+   */
+  static InputStream newInputStream(final SocketChannel channel) {
+    return new InputStream() {
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return this.read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] bytes, int offset, int length)
+          throws IOException {
+        return length == 0 ?
+            0 : channel.read(ByteBuffer.wrap(bytes, offset, length));
+      }
+    };
+  }
+
+
+  /**
+   * Creates a stream writing to |channel|.
+   * @see #newInputStream
+   */
+  static OutputStream newOutputStream(final SocketChannel channel) {
+    return new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        this.write(new byte[]{(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] bytes, int offset, int length)
+          throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    };
+  }
+
+
+  /**
+   * An output stream sending everything written to it as frames of a
+   * channel, splitting larger writes into frames of MAX_FRAME_LENGTH bytes.
+   * Writes from several threads are not interleaved within a frame.
+   */
+  static final class FrameOutputStream extends OutputStream {
+
+    private final DataOutputStream out;
+    private final byte channel;
+
+
+    FrameOutputStream(DataOutputStream out, byte channel) {
+      this.out = out;
+      this.channel = channel;
+    }
+
+
+    @Override
+    public void write(int b) throws IOException {
+      this.write(new byte[]{(byte) b}, 0, 1);
+    }
+
+
+    @Override
+    public void write(byte[] bytes, int offset, int length)
+        throws IOException {
+      while (length > 0) {
+        int chunk = Math.min(length, MAX_FRAME_LENGTH);
+        DaemonProtocol.writeFrame(
+            this.out, this.channel, bytes, offset, chunk);
+        offset += chunk;
+        length -= chunk;
+      }
+    }
+
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (this.out) {
+        this.out.flush();
+      }
+    }
+
+  }  // class FrameOutputStream
+
+
+  /**
+   * Reads the fields of a request, failing with RequestTooLargeException
+   * before allocating anything for a field that would take the request past
+   * MAX_REQUEST_LENGTH.
+   */
+  static final class RequestReader {
+
+    private final DataInputStream in;
+
+    /**
+     * The number of bytes the rest of the request may take.
+     */
+    private int remaining = MAX_REQUEST_LENGTH;
+
+
+    RequestReader(DataInputStream in) {
+      this.in = in;
+    }
+
+
+    /**
+     * Reads the number of entries of a list. Each entry takes at least the
+     * four bytes of its length, which bounds the count.
+     */
+    int readCount() throws IOException {
+      int count = this.readLength();
+      if (count > this.remaining / 4) {
+        throw new RequestTooLargeException();
+      }
+      return count;
+    }
+
+
+    String readString() throws IOException {
+      int length = this.readLength();
+      if (length > this.remaining) {
+        throw new RequestTooLargeException();
+      }
+      this.remaining -= length;
+      byte[] bytes = new byte[length];
+      this.in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    private int readLength() throws IOException {
+      if (this.remaining < 4) {
+        throw new RequestTooLargeException();
+      }
+      this.remaining -= 4;
+      return DaemonProtocol.readLength(this.in);
+    }
+
+  }  // class RequestReader
+
+
+  /**
+   * Thrown when a request exceeds MAX_REQUEST_LENGTH.
+   */
+  static final class RequestTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+
+    RequestTooLargeException() {
+      super("The request exceeds " + MAX_REQUEST_LENGTH + " bytes.");
+    }
+
+  }  // class RequestTooLargeException
+
+}  // class DaemonProtocol
@@ -0,0 +1,87 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+/**
+ * A flag whose args are decimal numbers, such as 2.5, -1e-3 or NaN.
+ */
+public class DoubleFlag extends TypedFlag {
+
+  private double[] values = new double[0];
+
+
+  public DoubleFlag(String[] names, boolean isRequired, int numOfArgsMin,
+      int numOfArgsMax) {
+    super(names, isRequired, numOfArgsMin, numOfArgsMax);
+  }
+
+
+  @Override
+  protected Object newValues(int size) {
+    return new double[size];
+  }
+
+
+  @Override
+  protected SingleFlagParsingError.Type convert(String arg, Object values,
+      int position) {
+    try {
+      ((double[]) values)[position] = DoubleFlag.parse(arg);
+      return null;
+    } catch (NumberFormatException e) {
+      return SingleFlagParsingError.Type.NOT_A_NUMBER;
+    }
+  }
+
+
+  @Override
+  protected void setValues(Object values) {
+    this.values = (double[]) values;
+  }
+
+
+  /**
+   * Parses |arg| like Double.parseDouble does, except that the Java type
+   * suffixes (as in 1.5f) and surrounding whitespace are rejected.
+   */
+  private static double parse(String arg) {
+    int length = arg.length();
+    char last = length == 0 ? ' ' : arg.charAt(length - 1);
+    if (last == 'f' || last == 'F' || last == 'd' || last == 'D' ||
+        last <= ' ' || arg.charAt(0) <= ' ') {
+      throw new NumberFormatException(arg);
+    }
+    return Double.parseDouble(arg);
+  }
+
+
+  /**
+   * @return The value at |position|.
+   */
+  public double getValue(int position) {
+    this.ensureConverted();
+    return this.values[position];
+  }
+
+
+  /**
+   * @return All values. The array is shared and should not be modified.
+   */
+  public double[] getValues() {
+    this.ensureConverted();
+    return this.values;
+  }
+
+}  // class DoubleFlag
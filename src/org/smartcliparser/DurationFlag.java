@@ -0,0 +1,148 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A flag whose args are non-negative durations, written as one or more
+ * integers followed by a unit, such as 250ms, 90s or 1h30m. The units are
+ * ns, us, ms, s, m, h and d. A plain 0 is also accepted. Values are stored
+ * in nanoseconds, and read as Durations.
+ */
+public class DurationFlag extends TypedFlag {
+
+  private long[] values = new long[0];
+
+
+  public DurationFlag(String[] names, boolean isRequired, int numOfArgsMin,
+      int numOfArgsMax) {
+    super(names, isRequired, numOfArgsMin, numOfArgsMax);
+  }
+
+
+  @Override
+  protected Object newValues(int size) {
+    return new long[size];
+  }
+
+
+  @Override
+  protected SingleFlagParsingError.Type convert(String arg, Object values,
+      int position) {
+    long nanos = DurationFlag.parseNanos(arg);
+    if (nanos < 0) {
+      return SingleFlagParsingError.Type.INVALID_DURATION;
+    }
+    ((long[]) values)[position] = nanos;
+    return null;
+  }
+
+
+  @Override
+  protected void setValues(Object values) {
+    this.values = (long[]) values;
+  }
+
+
+  /**
+   * Parses a duration without allocating.
+   * @return The duration in nanoseconds, or -1 if |arg| is not a valid
+   *     duration or does not fit in a long.
+   */
+  static long parseNanos(String arg) {
+    int length = arg.length();
+    if (length == 0) {
+      return -1;
+    } else if (length == 1 && arg.charAt(0) == '0') {
+      return 0;
+    }
+
+    long total = 0;
+    int i = 0;
+    while (i < length) {
+      long amount = 0;
+      int start = i;
+      for (; i < length && arg.charAt(i) >= '0' && arg.charAt(i) <= '9'; i++) {
+        if (amount > (Long.MAX_VALUE - 9) / 10) {
+          return -1;
+        }
+        amount = amount * 10 + (arg.charAt(i) - '0');
+      }
+      int unitStart = i;
+      while (i < length && arg.charAt(i) >= 'a' && arg.charAt(i) <= 'z') {
+        i++;
+      }
+      long unit = DurationFlag.getUnitNanos(arg, unitStart, i);
+      if (unitStart == start || unit < 0 ||
+          amount > Long.MAX_VALUE / unit ||
+          total > Long.MAX_VALUE - amount * unit) {
+        return -1;
+      }
+      total += amount * unit;
+    }
+    return total;
+  }
+
+
+  /**
+   * @return The nanoseconds in the unit |arg[start, end)|, or -1.
+   */
+  private static long getUnitNanos(String arg, int start, int end) {
+    int length = end - start;
+    char first = length == 0 ? ' ' : arg.charAt(start);
+    if (length == 1) {
+      if (first == 's') {
+        return ChronoUnit.SECONDS.getDuration().toNanos();
+      } else if (first == 'm') {
+        return ChronoUnit.MINUTES.getDuration().toNanos();
+      } else if (first == 'h') {
+        return ChronoUnit.HOURS.getDuration().toNanos();
+      } else if (first == 'd') {
+        return ChronoUnit.DAYS.getDuration().toNanos();
+      }
+    } else if (length == 2 && arg.charAt(start + 1) == 's') {
+      if (first == 'n') {
+        return 1;
+      } else if (first == 'u') {
+        return ChronoUnit.MICROS.getDuration().toNanos();
+      } else if (first == 'm') {
+        return ChronoUnit.MILLIS.getDuration().toNanos();
+      }
+    }
+    return -1;
+  }
+
+
+  /**
+   * @return The value at |position|.
+   */
+  public Duration getValue(int position) {
+    this.ensureConverted();
+    return Duration.ofNanos(this.values[position]);
+  }
+
+
+  /**
+   * @return All values in nanoseconds. The array is shared and should not be
+   *     modified.
+   */
+  public long[] getNanos() {
+    this.ensureConverted();
+    return this.values;
+  }
+
+}  // class DurationFlag
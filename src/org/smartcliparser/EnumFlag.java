@@ -0,0 +1,110 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A flag whose args are names of the constants of an enum, ignoring case.
+ * Values are stored as ordinals.
+ */
+public class EnumFlag<E extends Enum<E>> extends TypedFlag {
+
+  private final E[] constants;
+
+  /**
+   * The names of |constants|, listed in errors.
+   */
+  private final List<String> constantNames;
+
+  private int[] ordinals = new int[0];
+
+
+  public EnumFlag(String[] names, boolean isRequired, int numOfArgsMin,
+      int numOfArgsMax, Class<E> enumClass) {
+    super(names, isRequired, numOfArgsMin, numOfArgsMax);
+    this.constants = enumClass.getEnumConstants();
+    List<String> constantNames = new ArrayList<String>();
+    for (int i = 0; i < this.constants.length; i++) {
+      constantNames.add(this.constants[i].name());
+    }
+    this.constantNames = Collections.unmodifiableList(constantNames);
+  }
+
+
+  @Override
+  protected Object newValues(int size) {
+    return new int[size];
+  }
+
+
+  @Override
+  protected SingleFlagParsingError.Type convert(String arg, Object values,
+      int position) {
+    int ordinal = this.findOrdinal(arg);
+    if (ordinal < 0) {
+      return SingleFlagParsingError.Type.INVALID_ENUM_CONSTANT;
+    }
+    ((int[]) values)[position] = ordinal;
+    return null;
+  }
+
+
+  @Override
+  protected void setValues(Object values) {
+    this.ordinals = (int[]) values;
+  }
+
+
+  @Override
+  List<String> getAllowedValues() {
+    return this.constantNames;
+  }
+
+
+  /**
+   * @return The ordinal of the constant named |arg|, or -1.
+   */
+  private int findOrdinal(String arg) {
+    for (int i = 0; i < this.constants.length; i++) {
+      if (this.constants[i].name().equalsIgnoreCase(arg)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+  /**
+   * @return The value at |position|.
+   */
+  public E getValue(int position) {
+    this.ensureConverted();
+    return this.constants[this.ordinals[position]];
+  }
+
+
+  /**
+   * @return The ordinals of all values. The array is shared and should not be
+   *     modified.
+   */
+  public int[] getOrdinals() {
+    this.ensureConverted();
+    return this.ordinals;
+  }
+
+}  // class EnumFlag
@@ -0,0 +1,94 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Takes flag values from environment variables named after the flags, such
+ * as TOOL_OUTPUT_FILE for --output-file with the prefix TOOL_. A flag taking
+ * several args takes them separated by commas. A switch is on unless its
+ * variable is empty, 0, false or no.
+ */
+public final class EnvironmentValueSource implements ValueSource {
+
+  private final String prefix;
+  private final Map<String, String> environment;
+
+
+  /**
+   * Creates a source reading the environment of this process.
+   */
+  public EnvironmentValueSource(String prefix) {
+    this(prefix, System.getenv());
+  }
+
+
+  public EnvironmentValueSource(
+      String prefix, Map<String, String> environment) {
+    this.prefix = prefix;
+    this.environment = environment;
+  }
+
+
+  @Override
+  public List<String> getValues(Flag flag) {
+    Iterator<String> it = flag.getNames().iterator();
+    while (it.hasNext()) {
+      String value = this.environment.get(this.getVariableName(it.next()));
+      if (value == null) {
+        continue;
+      }
+      if (flag.getNumOfArgsMax() == 0) {
+        return getSwitchValues(value);
+      } else if (flag.getNumOfArgsMax() == 1) {
+        return Collections.singletonList(value);
+      }
+      return Arrays.asList(value.split(",", -1));
+    }
+    return null;
+  }
+
+
+  /**
+   * @return The variable holding the values of the flag named |name|.
+   */
+  String getVariableName(String name) {
+    return this.prefix + name.toUpperCase().replace('-', '_');
+  }
+
+
+  /**
+   * @return The args a switch takes from |value|: none if it is on,
+   *     ValueSource.SWITCH_OFF if it is off, or |value| itself if it is
+   *     neither, which is then reported as an extra arg.
+   */
+  static List<String> getSwitchValues(String value) {
+    String lowerCase = value.trim().toLowerCase();
+    if (lowerCase.isEmpty() || lowerCase.equals("0") ||
+        lowerCase.equals("false") || lowerCase.equals("no")) {
+      return ValueSource.SWITCH_OFF;
+    } else if (lowerCase.equals("1") || lowerCase.equals("true") ||
+        lowerCase.equals("yes")) {
+      return Collections.emptyList();
+    }
+    return Collections.singletonList(value);
+  }
+
+}  // class EnvironmentValueSource
@@ -16,28 +16,275 @@ package org.smartcliparser;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import rubikscube.io.FileIOUtilities;
-import rubikscube.io.TextIOUtilities;
 
-
-// A Flag subclass used for specifying files on the command line.
+// A Flag subclass used for specifying files on the command line. Once glob
+// expansion is enabled, args that are globs select files within the
+// directories given by the other args, or within the working directory if
+// there are none; those starting with ! are excluded, and directories they
+// exclude are not walked at all. Absolute globs select files within the
+// directory they start with. A \ quotes the glob characters of an arg that
+// is a path. See GlobFilter.
 public class FileSetFlag extends Flag {
 
+  /**
+   * The directory holding the persistent indices of expansions, or null.
+   */
+  private Path indexDirectory = null;
+
+  /**
+   * Whether args may be globs, rather than only paths.
+   */
+  private boolean expandGlobs = false;
+
+  /**
+   * The directory relative args are resolved against, or null for the
+   * working directory of this process.
+   */
+  private Path workingDirectory = null;
+
+  /**
+   * The args that were last expanded, and the files they expanded to.
+   */
+  private List<String> expandedArgs = null;
+  private List<Path> expandedPaths = null;
+
+  /**
+   * The args that were last split into roots and globs, and the outcome.
+   */
+  private List<String> splitArgs = null;
+  private List<String> roots = null;
+  private GlobFilter globs = null;
+
+
   public FileSetFlag(String[] names, boolean isRequired, int numOfArgsMin,
       int numOfArgsMax) {
     super(names, isRequired, numOfArgsMin, numOfArgsMax, null, false);
   }
 
 
+  /**
+   * Expands the args of this flag into the files they contain, walking
+   * directories concurrently. Files are listed in a deterministic order, and
+   * only once even if they are reachable in several ways.
+   * @throws FileNotFoundException If one of the args does not exist.
+   */
   public Collection<File> getFileSet() throws FileNotFoundException {
-    return FileIOUtilities.getFileSet(this.args);
+    return FileSetFlag.toFiles(this.getPaths());
+  }
+
+
+  private static List<File> toFiles(List<Path> paths) {
+    List<File> files = new ArrayList<File>(paths.size());
+    for (int i = 0; i < paths.size(); i++) {
+      files.add(paths.get(i).toFile());
+    }
+    return files;
+  }
+
+
+  /**
+   * Like getFileSet, but lists the files as paths. The expansion is
+   * remembered, and only repeated once the args change.
+   * @return An unmodifiable list of the files.
+   */
+  public List<Path> getPaths() throws FileNotFoundException {
+    if (this.expandedPaths == null || !this.args.equals(this.expandedArgs)) {
+      List<String> args = new ArrayList<String>(this.args);
+      this.split();
+      Instrumentation.Span span =
+          Instrumentation.begin(MetricsListener.Phase.EXPAND_FILE_SET);
+      try {
+        this.expandedPaths = Collections.unmodifiableList(
+            FileSetWalker.walk(this.roots, this.workingDirectory, this.globs,
+                this.indexDirectory));
+      } finally {
+        Instrumentation.end(span);
+      }
+      this.expandedArgs = args;
+    }
+    return this.expandedPaths;
+  }
+
+
+  /**
+   * Splits the args into the paths to walk and the globs applied within
+   * them, unless they were already split.
+   */
+  private void split() {
+    if (this.roots != null && this.args.equals(this.splitArgs)) {
+      return;
+    }
+    List<String> roots = new ArrayList<String>();
+    List<String> includes = new ArrayList<String>();
+    List<String> excludes = new ArrayList<String>();
+    List<String> baseDirectories = new ArrayList<String>();
+    boolean hasRelativeIncludes = false;
+    Iterator<String> it = this.args.iterator();
+    while (it.hasNext()) {
+      String arg = it.next();
+      if (!this.expandGlobs) {
+        roots.add(arg);
+      } else if (!GlobFilter.isGlob(arg)) {
+        roots.add(GlobFilter.unquote(arg));
+      } else if (arg.startsWith("!")) {
+        excludes.add(arg.substring(1));
+      } else {
+        includes.add(arg);
+        if (arg.startsWith("/")) {
+          baseDirectories.add(GlobFilter.getBaseDirectory(arg));
+        } else {
+          hasRelativeIncludes = true;
+        }
+      }
+    }
+    boolean hasGlobs = !includes.isEmpty() || !excludes.isEmpty();
+    if (roots.isEmpty() &&
+        (hasRelativeIncludes || (includes.isEmpty() && hasGlobs))) {
+      roots.add(".");
+    }
+    roots.addAll(baseDirectories);
+    this.globs = hasGlobs ? new GlobFilter(includes, excludes) : null;
+    this.roots = roots;
+    this.splitArgs = new ArrayList<String>(this.args);
+  }
+
+
+  /**
+   * Lets args be globs, which is off by default so that every arg is a path.
+   * Once enabled, a path containing glob characters, or starting with !,
+   * needs to quote them with \.
+   */
+  public void setExpandGlobs(boolean expandGlobs) {
+    this.expandGlobs = expandGlobs;
+    this.roots = null;
+    this.expandedPaths = null;
   }
 
+
+  /**
+   * Keeps a persistent index of the directories walked under |directory|,
+   * so that later expansions of the same args, even by other processes,
+   * only list the directories that were modified since. The verdicts of
+   * getTextFileSet and getTextFileStream are kept there too.
+   * @param directory The directory holding the indices, or null to walk
+   *     without an index, which is the default.
+   */
+  public void setIndexDirectory(Path directory) {
+    this.indexDirectory = directory;
+    this.expandedPaths = null;
+  }
+
+
+  /**
+   * Resolves relative args against |directory|, the working directory of
+   * the invocation that parsed them.
+   * @see CommandLineProgram#getWorkingDirectory
+   */
+  void setWorkingDirectory(Path directory) {
+    if (directory == null ? this.workingDirectory != null :
+        !directory.equals(this.workingDirectory)) {
+      this.workingDirectory = directory;
+      this.expandedPaths = null;
+    }
+  }
+
+
+  /**
+   * Like getFileSet, but only lists text files. Files are checked in
+   * parallel, and only read again if they changed since this process, or
+   * one sharing the same index directory, last checked them.
+   * @see TextFileDetector
+   */
   public Collection<File> getTextFileSet() throws FileNotFoundException {
-    Collection<File> inputFiles = this.getFileSet();
-    return TextIOUtilities.getTextFiles(inputFiles);
+    TextFileDetector detector =
+        TextFileDetector.getInstance(this.indexDirectory);
+    List<Path> paths = detector.filter(this.getPaths());
+    FileSetFlag.saveVerdicts(detector);
+    return FileSetFlag.toFiles(paths);
+  }
+
+
+  private static void saveVerdicts(TextFileDetector detector) {
+    try {
+      detector.save();
+    } catch (IOException e) {
+      // The verdicts only save time, the next check will try again.
+    }
+  }
+
+
+  /**
+   * Streams the files getPaths would list, yielding each one as soon as it
+   * is found instead of walking the whole tree first. The stream can be made
+   * parallel, and short-circuiting operations stop the walk early.
+   *
+   * A sequential stream yields the same paths as getPaths, in the same
+   * order, except that a file reachable through a symbolic link may be
+   * yielded at its own path instead, as FileSetSpliterator describes. A
+   * parallel stream is unordered, and yields a file reachable in several
+   * ways through whichever way it reaches first, so the paths it yields may
+   * differ from run to run.
+   * @throws FileNotFoundException If one of the args does not exist.
+   */
+  public Stream<Path> getFileStream() throws FileNotFoundException {
+    return this.createStream(null);
+  }
+
+
+  /**
+   * Like getFileStream, but only yields text files, checking each file as
+   * it is found. With an index directory, the verdicts are saved when the
+   * stream is closed.
+   */
+  public Stream<Path> getTextFileStream() throws FileNotFoundException {
+    final TextFileDetector detector =
+        TextFileDetector.getInstance(this.indexDirectory);
+    return this.createStream(new Predicate<Path>() {
+      public boolean test(Path path) {
+        return detector.isText(path);
+      }
+    }).onClose(new Runnable() {
+      public void run() {
+        FileSetFlag.saveVerdicts(detector);
+      }
+    });
+  }
+
+
+  private Stream<Path> createStream(Predicate<Path> filter)
+      throws FileNotFoundException {
+    this.split();
+    List<Path> roots = new ArrayList<Path>();
+    Iterator<String> it = this.roots.iterator();
+    while (it.hasNext()) {
+      String name = it.next();
+      try {
+        Path root = this.workingDirectory != null ?
+            this.workingDirectory.resolve(name) : Paths.get(name);
+        if (!Files.exists(root)) {
+          throw new FileNotFoundException(name);
+        }
+        roots.add(root);
+      } catch (InvalidPathException e) {
+        throw new FileNotFoundException(name);
+      }
+    }
+    return StreamSupport.stream(
+        new FileSetSpliterator(roots, this.globs, filter), false);
   }
 
 
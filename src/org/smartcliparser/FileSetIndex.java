@@ -0,0 +1,262 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent record of the directories walked while expanding a set of
+ * paths. For each directory it keeps the names and kinds of its entries
+ * along with its modification time, which changes whenever entries are
+ * added, removed or renamed. A directory whose modification time did not
+ * change since it was recorded is not listed again, and its files are not
+ * looked at again.
+ *
+ * Each set of paths has its own index file within the index directory. The
+ * file is a DataOutputStream encoding of the form
+ *   MAGIC VERSION numOfDirectories
+ *   (realPath modifiedTime numOfEntries (kind name)*)*
+ * and is replaced as a whole once a walk completes.
+ */
+final class FileSetIndex {
+
+  private static final int MAGIC = 0x46534958;
+  private static final int VERSION = 1;
+
+  static final byte FILE = 0;
+  static final byte DIRECTORY = 1;
+  static final byte LINK = 2;
+
+  /**
+   * Directories modified less than this long before they were listed are
+   * not recorded, since a change within the same tick of a coarse file
+   * system clock would go unnoticed.
+   */
+  static final long MIN_AGE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+  /**
+   * The fewest bytes a directory and an entry take in an index file: the
+   * lengths of their names, plus the modification time and number of
+   * entries of a directory, or the kind of an entry.
+   */
+  private static final int MIN_DIRECTORY_SIZE = 2 + 8 + 4;
+  private static final int MIN_ENTRY_SIZE = 1 + 2;
+
+  /**
+   * The entries of a directory, sorted by name.
+   */
+  static final class Listing {
+
+    final long modifiedTime;
+    final String[] names;
+    final byte[] kinds;
+
+
+    Listing(long modifiedTime, String[] names, byte[] kinds) {
+      this.modifiedTime = modifiedTime;
+      this.names = names;
+      this.kinds = kinds;
+    }
+
+  }  // class Listing
+
+  private final Path file;
+
+  /**
+   * The listings read from |file|, by real path.
+   */
+  private final Map<String, Listing> recorded;
+
+  /**
+   * The listings of the directories walked since the index was opened.
+   */
+  private final Map<String, Listing> walked =
+      new ConcurrentHashMap<String, Listing>();
+
+
+  private FileSetIndex(Path file, Map<String, Listing> recorded) {
+    this.file = file;
+    this.recorded = recorded;
+  }
+
+
+  /**
+   * Opens the index of |realRoots| within |directory|. A missing or
+   * unreadable index file is treated as an empty one.
+   */
+  static FileSetIndex open(Path directory, List<Path> realRoots) {
+    Path file = directory.resolve("fileset-" + hash(realRoots) + ".idx");
+    Map<String, Listing> recorded = new HashMap<String, Listing>();
+    if (Files.isRegularFile(file)) {
+      try {
+        recorded = read(file);
+      } catch (IOException e) {
+        // The index is rebuilt by the next walk.
+        recorded.clear();
+      }
+    }
+    return new FileSetIndex(file, recorded);
+  }
+
+
+  private static String hash(List<Path> realRoots) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      for (int i = 0; i < realRoots.size(); i++) {
+        digest.update(realRoots.get(i).toString().getBytes(
+            Charset.forName("UTF-8")));
+        digest.update((byte) 0);
+      }
+      StringBuilder hex = new StringBuilder();
+      byte[] bytes = digest.digest();
+      for (int i = 0; i < bytes.length; i++) {
+        hex.append(String.format("%02x", bytes[i]));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+
+  private static Map<String, Listing> read(Path file) throws IOException {
+    long size = Files.size(file);
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Unknown index format.");
+      }
+      int numOfDirectories = readCount(in, size, MIN_DIRECTORY_SIZE);
+      Map<String, Listing> recorded = new HashMap<String, Listing>();
+      for (int i = 0; i < numOfDirectories; i++) {
+        String realPath = in.readUTF();
+        long modifiedTime = in.readLong();
+        int numOfEntries = readCount(in, size, MIN_ENTRY_SIZE);
+        String[] names = new String[numOfEntries];
+        byte[] kinds = new byte[numOfEntries];
+        for (int j = 0; j < numOfEntries; j++) {
+          kinds[j] = in.readByte();
+          if (kinds[j] < FILE || kinds[j] > LINK) {
+            throw new IOException("Invalid entry kind: " + kinds[j]);
+          }
+          names[j] = in.readUTF();
+        }
+        recorded.put(realPath, new Listing(modifiedTime, names, kinds));
+      }
+      return recorded;
+    } finally {
+      in.close();
+    }
+  }
+
+
+  /**
+   * Reads the number of directories or entries that follow, rejecting
+   * counts that could not fit in a file of |size| bytes, where each of them
+   * takes at least |minSize| bytes, so that a corrupt index does not make
+   * the arrays holding them huge.
+   */
+  static int readCount(DataInputStream in, long size, int minSize)
+      throws IOException {
+    int count = in.readInt();
+    if (count < 0 || (long) count * minSize > size) {
+      throw new IOException("Invalid count: " + count);
+    }
+    return count;
+  }
+
+
+  /**
+   * @return The recorded listing of the directory |realPath|, if it was not
+   *     modified since, or null.
+   */
+  Listing get(Path realPath, long modifiedTime) {
+    String key = realPath.toString();
+    Listing listing = this.recorded.get(key);
+    if (listing == null || listing.modifiedTime != modifiedTime) {
+      return null;
+    }
+    this.walked.put(key, listing);
+    return listing;
+  }
+
+
+  /**
+   * Records the listing of the directory |realPath|, made just now.
+   */
+  void put(Path realPath, Listing listing) {
+    long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    if (now - listing.modifiedTime >= MIN_AGE_NANOS) {
+      this.walked.put(realPath.toString(), listing);
+    }
+  }
+
+
+  /**
+   * Replaces the index file with the listings of the directories walked
+   * since the index was opened.
+   */
+  void save() throws IOException {
+    Files.createDirectories(this.file.getParent());
+    Path temporary = Files.createTempFile(
+        this.file.getParent(), "fileset-", ".tmp");
+    try {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temporary)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(this.walked.size());
+        Iterator<Map.Entry<String, Listing>> it =
+            this.walked.entrySet().iterator();
+        while (it.hasNext()) {
+          Map.Entry<String, Listing> entry = it.next();
+          Listing listing = entry.getValue();
+          out.writeUTF(entry.getKey());
+          out.writeLong(listing.modifiedTime);
+          out.writeInt(listing.names.length);
+          for (int i = 0; i < listing.names.length; i++) {
+            out.writeByte(listing.kinds[i]);
+            out.writeUTF(listing.names[i]);
+          }
+        }
+      } finally {
+        out.close();
+      }
+      Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+}  // class FileSetIndex
@@ -0,0 +1,323 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Walks paths lazily, yielding their files as they are discovered, in the
+ * same order as FileSetWalker. A directory is listed only when the files
+ * before it have been consumed, and stopping early leaves the rest of the
+ * tree untouched.
+ *
+ * Splitting hands the first half of the pending directories and files to
+ * the new spliterator, listing a directory first if it is the only one
+ * pending, so parallel streams spread whole subtrees across threads.
+ *
+ * Each directory is walked and each file is yielded at most once, as
+ * determined by their real paths, which also stops symbolic link loops.
+ * Since directories are walked once, a file can only be reached twice
+ * through a symbolic link to it or under several roots. Like FileSetWalker,
+ * the real paths of files are only kept from the point such a file may
+ * exist, so that walking a plain tree holds on to its directories alone.
+ *
+ * Sequentially, the first way to reach a file is used, as by FileSetWalker,
+ * except for a link to a file of a directory walked before any such link
+ * was followed, which gives way to the file itself. Split spliterators race
+ * for the files they share, so which way is used then varies, and the
+ * spliterator does not report an encounter order.
+ */
+final class FileSetSpliterator implements Spliterator<Path> {
+
+  private static final LinkOption[] NO_FOLLOW_LINKS =
+      new LinkOption[]{LinkOption.NOFOLLOW_LINKS};
+
+  /**
+   * Marks the directories walked while files were tracked.
+   */
+  private static final Node TRACKED = new Node(null, null, null);
+
+  /**
+   * A path that has not been looked at yet.
+   */
+  private static final class Node {
+
+    final Path path;
+
+    /**
+     * The real path of the directory containing |path|, or null if |path|
+     * was given as a root.
+     */
+    final Path parentRealPath;
+
+    /**
+     * The path relative to the root it was found under, separated by /.
+     */
+    final String relativePath;
+
+
+    Node(Path path, Path parentRealPath, String relativePath) {
+      this.path = path;
+      this.parentRealPath = parentRealPath;
+      this.relativePath = relativePath;
+    }
+
+  }  // class Node
+
+  /**
+   * The pending nodes, in the order they are yielded or walked.
+   */
+  private final Deque<Node> pending;
+
+  /**
+   * The state shared with the spliterators split from this one.
+   */
+  private final Walk walk;
+
+  /**
+   * The globs selecting files and pruning directories, or null.
+   */
+  private final GlobFilter globs;
+
+  /**
+   * The filter files need to pass to be yielded, or null.
+   */
+  private final Predicate<Path> filter;
+
+  /**
+   * Whether the file last returned by expand is a symbolic link.
+   */
+  private boolean isLink = false;
+
+
+  /**
+   * What the spliterators split from one another know of the paths reached.
+   */
+  private static final class Walk {
+
+    /**
+     * The real paths of the directories walked, mapped to their node if
+     * they were walked before files were tracked, or to TRACKED.
+     */
+    final Map<Path, Node> directories = new ConcurrentHashMap<Path, Node>();
+
+    /**
+     * The real paths of the files yielded while they were tracked.
+     */
+    final Set<Path> files =
+        Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+
+    /**
+     * Whether files are tracked, from the start of a walk of several roots
+     * or from the first link to a file followed.
+     */
+    volatile boolean isTracking;
+
+
+    Walk(boolean isTracking) {
+      this.isTracking = isTracking;
+    }
+
+  }  // class Walk
+
+
+  private FileSetSpliterator(Deque<Node> pending, Walk walk,
+      GlobFilter globs, Predicate<Path> filter) {
+    this.pending = pending;
+    this.walk = walk;
+    this.globs = globs;
+    this.filter = filter;
+  }
+
+
+  /**
+   * @param roots The paths to walk, which should exist.
+   * @param globs The globs selecting files within the directories of
+   *     |roots|, or null to select all files.
+   * @param filter The filter files need to pass to be yielded, applied while
+   *     walking, or null.
+   */
+  FileSetSpliterator(
+      List<Path> roots, GlobFilter globs, Predicate<Path> filter) {
+    this(new ArrayDeque<Node>(), new Walk(roots.size() > 1), globs, filter);
+    for (int i = 0; i < roots.size(); i++) {
+      this.pending.addLast(new Node(roots.get(i), null, ""));
+    }
+  }
+
+
+  @Override
+  public boolean tryAdvance(Consumer<? super Path> action) {
+    Node node;
+    while ((node = this.pending.pollFirst()) != null) {
+      Path realPath = this.expand(node);
+      if (realPath != null && this.claim(realPath, this.isLink) &&
+          (this.filter == null || this.filter.test(node.path))) {
+        action.accept(node.path);
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Decides whether the file at |realPath| is yielded where it was just
+   * reached, recording it if files are tracked.
+   * @param isLink True if the file was reached through a symbolic link.
+   * @return False if the file was or will be yielded elsewhere.
+   */
+  private boolean claim(Path realPath, boolean isLink) {
+    Walk walk = this.walk;
+    if (isLink) {
+      // Files yielded before tracking started were not recorded. The file
+      // linked to can only be one of them if its directory was walked by
+      // then, so the link defers to it whether it was yielded yet or not.
+      walk.isTracking = true;
+      Node directory = walk.directories.get(realPath.getParent());
+      if (directory != null && directory != TRACKED) {
+        String name = realPath.getFileName().toString();
+        if (this.globs == null || this.globs.isIncluded(
+            directory.path.resolve(name), directory.parentRealPath == null ?
+            name : directory.relativePath + "/" + name)) {
+          return false;
+        }
+      }
+    }
+    if (walk.isTracking) {
+      return walk.files.add(realPath);
+    }
+    return !walk.files.contains(realPath);
+  }
+
+
+  /**
+   * Replaces |node| with its children if it is a directory.
+   * @return The real path of |node| if it is a file to be yielded, or null
+   *     if it was expanded or skipped.
+   */
+  private Path expand(Node node) {
+    BasicFileAttributes attributes;
+    Path realPath;
+    this.isLink = false;
+    try {
+      if (node.parentRealPath == null) {
+        attributes = Files.readAttributes(node.path, BasicFileAttributes.class);
+        realPath = node.path.toRealPath();
+      } else {
+        attributes = Files.readAttributes(
+            node.path, BasicFileAttributes.class, NO_FOLLOW_LINKS);
+        realPath = node.parentRealPath.resolve(node.path.getFileName());
+        if (attributes.isSymbolicLink()) {
+          attributes =
+              Files.readAttributes(node.path, BasicFileAttributes.class);
+          realPath = node.path.toRealPath();
+          this.isLink = true;
+        }
+      }
+    } catch (IOException e) {
+      // Unreadable files and broken links are skipped.
+      return null;
+    }
+    boolean isRoot = node.parentRealPath == null;
+    if (!attributes.isDirectory()) {
+      if (!isRoot && this.globs != null &&
+          !this.globs.isIncluded(node.path, node.relativePath)) {
+        return null;
+      }
+      return realPath;
+    }
+    if (!isRoot && this.globs != null &&
+        this.globs.isPruned(node.path, node.relativePath)) {
+      return null;
+    }
+    Node walked = this.walk.isTracking ? TRACKED : node;
+    if (this.walk.directories.putIfAbsent(realPath, walked) != null) {
+      return null;
+    }
+
+    List<String> names = new ArrayList<String>();
+    try {
+      DirectoryStream<Path> stream = Files.newDirectoryStream(node.path);
+      try {
+        for (Path child : stream) {
+          names.add(child.getFileName().toString());
+        }
+      } finally {
+        stream.close();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    Collections.sort(names);
+    for (int i = names.size() - 1; i >= 0; i--) {
+      String name = names.get(i);
+      this.pending.addFirst(new Node(node.path.resolve(name), realPath,
+          isRoot ? name : node.relativePath + "/" + name));
+    }
+    return null;
+  }
+
+
+  @Override
+  public Spliterator<Path> trySplit() {
+    if (this.pending.size() == 1) {
+      Node node = this.pending.pollFirst();
+      if (this.expand(node) != null) {
+        this.pending.addFirst(node);
+        return null;
+      }
+    }
+    int size = this.pending.size() / 2;
+    if (size == 0) {
+      return null;
+    }
+    Deque<Node> prefix = new ArrayDeque<Node>(size);
+    for (int i = 0; i < size; i++) {
+      prefix.addLast(this.pending.pollFirst());
+    }
+    return new FileSetSpliterator(
+        prefix, this.walk, this.globs, this.filter);
+  }
+
+
+  @Override
+  public long estimateSize() {
+    return this.pending.isEmpty() ? 0 : Long.MAX_VALUE;
+  }
+
+
+  @Override
+  public int characteristics() {
+    return Spliterator.DISTINCT | Spliterator.NONNULL;
+  }
+
+}  // class FileSetSpliterator
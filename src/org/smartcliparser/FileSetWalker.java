@@ -0,0 +1,459 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Expands paths into the files they contain, walking directories
+ * concurrently on the common fork/join pool. Each directory is read within
+ * ForkJoinPool.managedBlock, so that the pool adds threads while tasks wait
+ * on the file system. Walks on slow storage are then not capped at the
+ * parallelism of the pool, and do not starve the parallel streams sharing
+ * it.
+ *
+ * Symbolic links are followed, except for the ones pointing to a directory
+ * that is being walked, which would cause a loop. Globs select the files
+ * within directories, and directories they exclude are pruned before they
+ * are listed.
+ *
+ * The files are listed in the order of the paths they were found under, and
+ * depth first in the order of their names within each directory, regardless
+ * of how the walk was scheduled. A file reachable in several ways is only
+ * listed the first time, as determined by its real path.
+ */
+final class FileSetWalker {
+
+  private static final LinkOption[] NO_FOLLOW_LINKS =
+      new LinkOption[]{LinkOption.NOFOLLOW_LINKS};
+
+  private FileSetWalker() {}
+
+
+  /**
+   * A file found by the walk through a symbolic link.
+   */
+  private static final class Entry {
+
+    final Path path;
+    final Path realPath;
+
+
+    Entry(Path path, Path realPath) {
+      this.path = path;
+      this.realPath = realPath;
+    }
+
+  }  // class Entry
+
+
+  /**
+   * State shared by all tasks of a walk.
+   */
+  private static final class Walk {
+
+    /**
+     * Set once any task follows a symbolic link.
+     */
+    final AtomicBoolean followedLink = new AtomicBoolean(false);
+
+    /**
+     * The index of the directories walked, or null.
+     */
+    FileSetIndex index = null;
+
+    /**
+     * The globs selecting files and pruning directories, or null.
+     */
+    GlobFilter globs = null;
+
+  }  // class Walk
+
+
+  /**
+   * Expands |paths| into the files they contain.
+   * @throws FileNotFoundException If one of |paths| does not exist.
+   */
+  static List<Path> walk(Collection<String> paths)
+      throws FileNotFoundException {
+    return walk(paths, null, null, null);
+  }
+
+
+  /**
+   * Expands |paths| into the files they contain, reusing the listings of
+   * unmodified directories recorded in a persistent index, and updating it.
+   * @param workingDirectory The directory relative |paths| are resolved
+   *     against, or null for the working directory of this process.
+   * @param globs The globs selecting files within the directories of |paths|,
+   *     or null to select all files.
+   * @param indexDirectory The directory holding the index files, or null to
+   *     walk without an index.
+   * @throws FileNotFoundException If one of |paths| does not exist.
+   */
+  static List<Path> walk(Collection<String> paths, Path workingDirectory,
+      GlobFilter globs, Path indexDirectory) throws FileNotFoundException {
+    final List<DirectoryTask> tasks = new ArrayList<DirectoryTask>();
+    List<Path> realRoots = new ArrayList<Path>();
+    Walk walk = new Walk();
+    walk.globs = globs;
+    Iterator<String> it = paths.iterator();
+    while (it.hasNext()) {
+      String name = it.next();
+      Path path;
+      Path realPath;
+      try {
+        path = workingDirectory != null ?
+            workingDirectory.resolve(name) : Paths.get(name);
+        realPath = path.toRealPath();
+      } catch (IOException e) {
+        throw new FileNotFoundException(name);
+      } catch (InvalidPathException e) {
+        throw new FileNotFoundException(name);
+      }
+      tasks.add(new DirectoryTask(path, realPath, "", null, walk));
+      realRoots.add(realPath);
+    }
+    if (indexDirectory != null) {
+      walk.index = FileSetIndex.open(indexDirectory, realRoots);
+    }
+
+    ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+      @Override
+      protected void compute() {
+        invokeAll(tasks);
+      }
+    });
+
+    if (walk.index != null) {
+      try {
+        walk.index.save();
+      } catch (IOException e) {
+        // The index only saves time, the next walk will try again.
+      }
+    }
+
+    // A file can only be reached twice through overlapping paths or links.
+    List<Path> files = new ArrayList<Path>();
+    Set<Path> realPaths = tasks.size() > 1 || walk.followedLink.get() ?
+        new HashSet<Path>() : null;
+    for (int i = 0; i < tasks.size(); i++) {
+      tasks.get(i).collect(files, realPaths);
+    }
+    return files;
+  }
+
+
+  /**
+   * Lists a directory, or a single file, forking a task for each
+   * subdirectory.
+   */
+  private static final class DirectoryTask extends RecursiveAction
+      implements ForkJoinPool.ManagedBlocker {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Path path;
+    private final Path realPath;
+
+    /**
+     * The path relative to the root of the walk, separated by /.
+     */
+    private final String relativePath;
+
+    /**
+     * The task walking the parent directory, or null.
+     */
+    private final DirectoryTask parent;
+
+    private final Walk walk;
+
+    /**
+     * The entries of the directory sorted by name. Each is the Path of a
+     * file within the directory, the Entry of a file reached through a link,
+     * or the DirectoryTask walking a subdirectory.
+     */
+    private Object[] items = new Object[0];
+
+    /**
+     * The tasks walking the subdirectories, and whether the directory was
+     * read.
+     */
+    private List<DirectoryTask> subtasks = null;
+    private boolean isRead = false;
+
+
+    DirectoryTask(Path path, Path realPath, String relativePath,
+        DirectoryTask parent, Walk walk) {
+      this.path = path;
+      this.realPath = realPath;
+      this.relativePath = relativePath;
+      this.parent = parent;
+      this.walk = walk;
+    }
+
+
+    @Override
+    protected void compute() {
+      try {
+        ForkJoinPool.managedBlock(this);
+      } catch (InterruptedException e) {
+        // Reading does not wait for anything that can be interrupted.
+        Thread.currentThread().interrupt();
+      }
+      if (this.subtasks != null) {
+        invokeAll(this.subtasks);
+        this.subtasks = null;
+      }
+    }
+
+
+    @Override
+    public boolean block() {
+      this.read();
+      this.isRead = true;
+      return true;
+    }
+
+
+    @Override
+    public boolean isReleasable() {
+      return this.isRead;
+    }
+
+
+    /**
+     * Reads the directory, or the single file, creating the tasks walking
+     * its subdirectories.
+     */
+    private void read() {
+      BasicFileAttributes attributes = readAttributes(this.path, false);
+      if (attributes == null) {
+        return;
+      }
+      if (!attributes.isDirectory()) {
+        this.items = new Object[]{new Entry(this.path, this.realPath)};
+        return;
+      }
+
+      long modifiedTime =
+          attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+      FileSetIndex index = this.walk.index;
+      FileSetIndex.Listing listing =
+          index == null ? null : index.get(this.realPath, modifiedTime);
+      if (listing == null) {
+        listing = this.list(modifiedTime);
+        if (listing == null) {
+          // Unreadable directories are skipped, like unreadable files.
+          return;
+        }
+        if (index != null) {
+          index.put(this.realPath, listing);
+        }
+      }
+
+      Object[] items = new Object[listing.names.length];
+      List<DirectoryTask> subtasks = new ArrayList<DirectoryTask>();
+      for (int i = 0; i < items.length; i++) {
+        items[i] = this.createItem(
+            listing.names[i], listing.kinds[i], subtasks);
+      }
+      this.items = items;
+      this.subtasks = subtasks;
+    }
+
+
+    /**
+     * Lists the directory, looking at the kind of each entry.
+     * @return The listing, or null if the directory could not be read.
+     */
+    private FileSetIndex.Listing list(long modifiedTime) {
+      List<String> names = new ArrayList<String>();
+      try {
+        DirectoryStream<Path> stream = Files.newDirectoryStream(this.path);
+        try {
+          for (Path child : stream) {
+            names.add(child.getFileName().toString());
+          }
+        } finally {
+          stream.close();
+        }
+      } catch (IOException e) {
+        return null;
+      }
+      Collections.sort(names);
+
+      // Entries whose kind can not be read are left out.
+      String[] readableNames = new String[names.size()];
+      byte[] kinds = new byte[names.size()];
+      int numOfReadable = 0;
+      for (int i = 0; i < readableNames.length; i++) {
+        BasicFileAttributes attributes =
+            readAttributes(this.path.resolve(names.get(i)), true);
+        if (attributes == null) {
+          continue;
+        }
+        readableNames[numOfReadable] = names.get(i);
+        kinds[numOfReadable++] = attributes.isSymbolicLink() ?
+            FileSetIndex.LINK : attributes.isDirectory() ?
+            FileSetIndex.DIRECTORY : FileSetIndex.FILE;
+      }
+      return new FileSetIndex.Listing(modifiedTime,
+          Arrays.copyOf(readableNames, numOfReadable),
+          Arrays.copyOf(kinds, numOfReadable));
+    }
+
+
+    /**
+     * @return The item for the entry |name| of kind |kind|, after adding the
+     *     DirectoryTask walking it to |subtasks| if it is a directory, or null
+     *     if it is skipped.
+     */
+    private Object createItem(
+        String name, byte kind, List<DirectoryTask> subtasks) {
+      Path child = this.path.resolve(name);
+      GlobFilter globs = this.walk.globs;
+      String childRelativePath = this.relativePath.isEmpty() ?
+          name : this.relativePath + "/" + name;
+      if (kind == FileSetIndex.FILE) {
+        return globs == null ||
+            globs.isIncluded(child, childRelativePath) ? child : null;
+      }
+      Path childRealPath;
+      if (kind == FileSetIndex.DIRECTORY) {
+        if (globs != null && globs.isPruned(child, childRelativePath)) {
+          return null;
+        }
+        childRealPath = this.realPath.resolve(name);
+      } else {
+        this.walk.followedLink.set(true);
+        BasicFileAttributes attributes = readAttributes(child, false);
+        try {
+          childRealPath = child.toRealPath();
+        } catch (IOException e) {
+          // Broken links are skipped.
+          return null;
+        }
+        if (attributes == null) {
+          return null;
+        } else if (!attributes.isDirectory()) {
+          return globs == null ||
+              globs.isIncluded(child, childRelativePath) ?
+              new Entry(child, childRealPath) : null;
+        } else if (this.isWalking(childRealPath) ||
+            (globs != null && globs.isPruned(child, childRelativePath))) {
+          return null;
+        }
+      }
+      DirectoryTask subtask = new DirectoryTask(
+          child, childRealPath, childRelativePath, this, this.walk);
+      subtasks.add(subtask);
+      return subtask;
+    }
+
+
+    /**
+     * @return True if this task or one of its ancestors walks |realPath|.
+     */
+    private boolean isWalking(Path realPath) {
+      for (DirectoryTask task = this; task != null; task = task.parent) {
+        if (task.realPath.equals(realPath)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+
+    /**
+     * Adds the files found by this task and its subtasks to |files|, in
+     * order, unless their real paths are already in |realPaths|.
+     * @param realPaths The real paths of the files added so far, or null if
+     *     no file can be reached twice.
+     */
+    void collect(List<Path> files, Set<Path> realPaths) {
+      // Using an explicit stack, since trees can be arbitrarily deep.
+      List<DirectoryTask> stack = new ArrayList<DirectoryTask>();
+      List<Integer> positions = new ArrayList<Integer>();
+      stack.add(this);
+      positions.add(0);
+      while (!stack.isEmpty()) {
+        int top = stack.size() - 1;
+        DirectoryTask task = stack.get(top);
+        int position = positions.get(top);
+        if (position == task.items.length) {
+          stack.remove(top);
+          positions.remove(top);
+          continue;
+        }
+        positions.set(top, position + 1);
+        Object item = task.items[position];
+        if (item instanceof DirectoryTask) {
+          stack.add((DirectoryTask) item);
+          positions.add(0);
+        } else if (item instanceof Entry) {
+          Entry entry = (Entry) item;
+          if (realPaths == null || realPaths.add(entry.realPath)) {
+            files.add(entry.path);
+          }
+        } else if (item != null) {
+          Path path = (Path) item;
+          if (realPaths == null ||
+              realPaths.add(task.realPath.resolve(path.getFileName()))) {
+            files.add(path);
+          }
+        }
+      }
+    }
+
+  }  // class DirectoryTask
+
+
+  /**
+   * @return The attributes of |path|, or null if they can not be read.
+   */
+  private static BasicFileAttributes readAttributes(
+      Path path, boolean noFollowLinks) {
+    try {
+      return noFollowLinks ?
+          Files.readAttributes(path, BasicFileAttributes.class,
+              NO_FOLLOW_LINKS) :
+          Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+}  // class FileSetWalker
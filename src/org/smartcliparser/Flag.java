@@ -14,12 +14,12 @@
 */
 package org.smartcliparser;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 // A class representing a flag that of a command line program.
@@ -65,6 +65,13 @@ public class Flag {
    */
   public Pattern pattern = null;
 
+  /**
+   * The validator compiled from |validatedPattern|, or null if it is not of
+   * a simple shape.
+   */
+  private ArgumentValidator validator = null;
+  private Pattern validatedPattern = null;
+
   /**
    * A list of all arguments that were consumed by this flag.
    */
@@ -90,7 +97,7 @@ public class Flag {
     this.setNumOfArgs(numOfArgsMin, numOfArgsMax);
     this.forceConsume = forceConsume;
     this.isSet = false;
-    this.args = new LinkedList<String>();
+    this.args = new ArrayList<String>();
     this.pattern = pattern;
   }
 
@@ -114,6 +121,40 @@ public class Flag {
   }
 
 
+  /**
+   * Marks this flag as specified in the command line.
+   */
+  void setIsSet() {
+    this.isSet = true;
+  }
+
+
+  /**
+   * Forgets the args and whether this flag was specified, so that it can be
+   * parsed again.
+   */
+  void reset() {
+    this.args.clear();
+    this.isSet = false;
+  }
+
+
+  /**
+   * @return True if this flag is required for the program to run.
+   */
+  boolean isRequired() {
+    return this.isRequired;
+  }
+
+
+  /**
+   * @return True if this flag consumes args regardless of its maximum.
+   */
+  boolean isForceConsume() {
+    return this.forceConsume;
+  }
+
+
   /**
    * @return The minimum number of arguments accepted by this flag.
    */
@@ -217,18 +258,25 @@ public class Flag {
    *     the check will succeed.
    */
   private boolean checkArgumentsPattern() {
+    return this.findPatternViolation() < 0;
+  }
+
+
+  /**
+   * Finds the first argument that does not satisfy the specified pattern.
+   * @return The position of the argument, or -1 if all arguments satisfy the
+   *     pattern or no pattern has been specified.
+   */
+  private int findPatternViolation() {
     if (this.pattern == null) {
-      return true;
+      return -1;
     }
-    Iterator<String> it = this.args.iterator();
-    while (it.hasNext()) {
-      String argument = it.next();
-      Matcher matcher = this.pattern.matcher(argument);
-      if (!matcher.matches()) {
-        return false;
-      }
+    if (this.validatedPattern != this.pattern) {
+      this.validator = ArgumentValidator.compile(this.pattern);
+      this.validatedPattern = this.pattern;
     }
-    return true;
+    return ArgumentValidator.findFirstViolation(
+        this.pattern, this.validator, this.args);
   }
 
 
@@ -245,9 +293,13 @@ public class Flag {
       } else if (args.size() > this.numOfArgsMax) {
         errors.add(new SingleFlagParsingError(
             SingleFlagParsingError.Type.MAX_NUMBER_OF_ARGS_VIOLATION, this));
-      } else if (!this.checkArgumentsPattern()) {
-        errors.add(new SingleFlagParsingError(
-            SingleFlagParsingError.Type.PATTERN_VIOLATION, this));
+      } else {
+        int violation = this.findPatternViolation();
+        if (violation >= 0) {
+          errors.add(new SingleFlagParsingError(
+              SingleFlagParsingError.Type.PATTERN_VIOLATION, this,
+              this.args.size(), this.args.get(violation)));
+        }
       }
     } else if (this.isRequired) {
         errors.add(new SingleFlagParsingError(
@@ -266,10 +318,7 @@ public class Flag {
    * @return True if the string looks like a flag.
    */
   public static boolean isFlagLike(String string) {
-    // TODO(dpapad): User regular expressions instead.
-    return (string.length() > 2 && string.substring(0, 2).equals("--")) ||
-        (string.length() == 2 && !string.equals("--") &&
-            string.substring(0, 1).equals("-"));
+    return Flag.getNameOffset(string) >= 0;
   }
 
 
@@ -278,15 +327,35 @@ public class Flag {
    * @return The extracted name or null If |string| is not flag-like.
    */
   public static String extractName(String string) {
-    if (!Flag.isFlagLike(string)) {
-      return null;
-    }
+    int offset = Flag.getNameOffset(string);
+    return offset < 0 ? null : string.substring(offset);
+  }
+
 
-    if (string.length() > 2) {
-      return string.substring(2);
-    } else {
-      return string.substring(1);
+  /**
+   * @return |name| as typed in a command line, such as -o for o and --output
+   *     for output.
+   */
+  static String getSpelling(String name) {
+    return name.length() == 1 ? "-" + name : "--" + name;
+  }
+
+
+  /**
+   * Finds where the name of a flag-like string starts, without creating any
+   * substrings.
+   * @return The number of preceding dashes, or -1 if |string| is not
+   *     flag-like.
+   */
+  static int getNameOffset(CharSequence string) {
+    int length = string.length();
+    if (length < 2 || string.charAt(0) != '-') {
+      return -1;
+    }
+    if (length == 2) {
+      return string.charAt(1) == '-' ? -1 : 1;
     }
+    return string.charAt(1) == '-' ? 2 : -1;
   }
 
 
@@ -0,0 +1,420 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A compact (radix) trie mapping flag names to integer values. Names are
+ * looked up directly from a range of characters of a token, so no substring
+ * has to be created for a lookup.
+ *
+ * Nodes are stored in parallel arrays. Each node is labeled with a run of
+ * characters stored in |chars|, and the children of a node form a linked list
+ * through |nextSibling|. An open addressing table maps each (node, first
+ * character of a child's label) edge to the child, so that descending takes
+ * a single probe regardless of the number of children.
+ */
+final class FlagNameIndex {
+
+  /**
+   * Returned when no name matches.
+   */
+  static final int NOT_FOUND = -1;
+
+  /**
+   * Returned when a prefix matches the names of more than one value.
+   */
+  static final int AMBIGUOUS = -2;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * The characters of all labels.
+   */
+  private char[] chars;
+  private int numOfChars;
+
+  private int[] labelStart;
+  private int[] labelLength;
+  private int[] firstChild;
+  private int[] nextSibling;
+
+  /**
+   * For each node, the value of the name ending at it, or NOT_FOUND.
+   */
+  private int[] values;
+
+  /**
+   * For each node, the value shared by all names going through it, AMBIGUOUS
+   * if those names have different values, or NOT_FOUND if there are none.
+   */
+  private int[] prefixValues;
+
+  private int numOfNodes;
+
+  /**
+   * Edge keys, combining a node and the first character of a child's label,
+   * or 0 for empty slots. The size of the table is a power of 2.
+   */
+  private long[] edgeKeys;
+  private int[] edgeChildren;
+  private int numOfEdges;
+
+
+  FlagNameIndex() {
+    this.chars = new char[INITIAL_CAPACITY * 4];
+    this.numOfChars = 0;
+    this.labelStart = new int[INITIAL_CAPACITY];
+    this.labelLength = new int[INITIAL_CAPACITY];
+    this.firstChild = new int[INITIAL_CAPACITY];
+    this.nextSibling = new int[INITIAL_CAPACITY];
+    this.values = new int[INITIAL_CAPACITY];
+    this.prefixValues = new int[INITIAL_CAPACITY];
+    this.numOfNodes = 0;
+    this.edgeKeys = new long[INITIAL_CAPACITY * 2];
+    this.edgeChildren = new int[INITIAL_CAPACITY * 2];
+    this.numOfEdges = 0;
+    this.newNode(0, 0);
+  }
+
+
+  /**
+   * Creates a copy of |other|, trimmed to its size.
+   */
+  FlagNameIndex(FlagNameIndex other) {
+    int size = other.numOfNodes;
+    this.chars = Arrays.copyOf(other.chars, other.numOfChars);
+    this.numOfChars = other.numOfChars;
+    this.labelStart = Arrays.copyOf(other.labelStart, size);
+    this.labelLength = Arrays.copyOf(other.labelLength, size);
+    this.firstChild = Arrays.copyOf(other.firstChild, size);
+    this.nextSibling = Arrays.copyOf(other.nextSibling, size);
+    this.values = Arrays.copyOf(other.values, size);
+    this.prefixValues = Arrays.copyOf(other.prefixValues, size);
+    this.numOfNodes = size;
+    this.edgeKeys = other.edgeKeys.clone();
+    this.edgeChildren = other.edgeChildren.clone();
+    this.numOfEdges = other.numOfEdges;
+  }
+
+
+  /**
+   * Maps |name| to |value|, replacing any previous mapping of |name|.
+   * @param name A non-empty name.
+   * @param value A non-negative value.
+   */
+  void add(String name, int value) {
+    int node = 0;
+    int i = 0;
+    while (i < name.length()) {
+      int child = this.findChild(node, name.charAt(i));
+      if (child == NOT_FOUND) {
+        child = this.newNode(this.appendChars(name, i), name.length() - i);
+        this.nextSibling[child] = this.firstChild[node];
+        this.firstChild[node] = child;
+        this.putEdge(node, name.charAt(i), child);
+        this.prefixValues[child] = value;
+        node = child;
+        break;
+      }
+
+      int matched = this.matchLabel(child, name, i, name.length());
+      if (matched < this.labelLength[child]) {
+        child = this.split(node, child, matched);
+      }
+      this.addPrefixValue(child, value);
+      node = child;
+      i += matched;
+    }
+
+    int previousValue = this.values[node];
+    this.values[node] = value;
+    if (previousValue != NOT_FOUND && previousValue != value) {
+      // The previous value may no longer be reachable through some prefixes.
+      this.updatePrefixValues(0);
+    }
+  }
+
+
+  /**
+   * Recomputes the prefix values of |node| and all nodes below it.
+   * @return The prefix value of |node|.
+   */
+  private int updatePrefixValues(int node) {
+    int prefixValue = this.values[node];
+    for (int child = this.firstChild[node]; child != NOT_FOUND;
+        child = this.nextSibling[child]) {
+      int childValue = this.updatePrefixValues(child);
+      if (prefixValue == NOT_FOUND) {
+        prefixValue = childValue;
+      } else if (childValue != NOT_FOUND && childValue != prefixValue) {
+        prefixValue = AMBIGUOUS;
+      }
+    }
+    this.prefixValues[node] = prefixValue;
+    return prefixValue;
+  }
+
+
+  /**
+   * Looks up the name formed by characters |start| to |end| of |string|.
+   * @param allowPrefix If true, a name that is not registered itself resolves
+   *     to the value of the names it is a prefix of, if they all share one.
+   * @return The value of the name, NOT_FOUND or AMBIGUOUS.
+   */
+  int resolve(CharSequence string, int start, int end, boolean allowPrefix) {
+    int node = 0;
+    int i = start;
+    while (i < end) {
+      int child = this.findChild(node, string.charAt(i));
+      if (child == NOT_FOUND) {
+        return NOT_FOUND;
+      }
+      int matched = this.matchLabel(child, string, i, end);
+      if (matched < this.labelLength[child]) {
+        // Either a mismatch or the name ends within the label.
+        return i + matched == end && allowPrefix ?
+            this.prefixValues[child] : NOT_FOUND;
+      }
+      node = child;
+      i += matched;
+    }
+    if (this.values[node] != NOT_FOUND || !allowPrefix || start == end) {
+      return this.values[node];
+    }
+    return this.prefixValues[node];
+  }
+
+
+  /**
+   * Looks up a complete name.
+   * @return The value of |name|, or NOT_FOUND.
+   */
+  int get(String name) {
+    return this.resolve(name, 0, name.length(), false);
+  }
+
+
+  /**
+   * Finds all registered names starting with characters |start| to |end| of
+   * |string|.
+   * @return A sorted list of names.
+   */
+  List<String> getNamesWithPrefix(CharSequence string, int start, int end) {
+    List<String> names = new ArrayList<String>();
+    StringBuilder prefix = new StringBuilder();
+    prefix.append(string, start, end);
+    int node = 0;
+    int i = start;
+    while (i < end) {
+      int child = this.findChild(node, string.charAt(i));
+      if (child == NOT_FOUND) {
+        return names;
+      }
+      int matched = this.matchLabel(child, string, i, end);
+      if (matched < this.labelLength[child]) {
+        if (i + matched < end) {
+          return names;
+        }
+        prefix.append(this.chars, this.labelStart[child] + matched,
+            this.labelLength[child] - matched);
+      }
+      node = child;
+      i += matched;
+    }
+    this.collectNames(node, prefix, names);
+    Collections.sort(names);
+    return names;
+  }
+
+
+  private void collectNames(
+      int node, StringBuilder prefix, List<String> names) {
+    if (this.values[node] != NOT_FOUND) {
+      names.add(prefix.toString());
+    }
+    for (int child = this.firstChild[node]; child != NOT_FOUND;
+        child = this.nextSibling[child]) {
+      int length = prefix.length();
+      prefix.append(
+          this.chars, this.labelStart[child], this.labelLength[child]);
+      this.collectNames(child, prefix, names);
+      prefix.setLength(length);
+    }
+  }
+
+
+  private void addPrefixValue(int node, int value) {
+    int prefixValue = this.prefixValues[node];
+    if (prefixValue == NOT_FOUND) {
+      this.prefixValues[node] = value;
+    } else if (prefixValue != value) {
+      this.prefixValues[node] = AMBIGUOUS;
+    }
+  }
+
+
+  /**
+   * Finds the child of |node| whose label starts with |c|.
+   */
+  private int findChild(int node, char c) {
+    long key = edgeKey(node, c);
+    int mask = this.edgeKeys.length - 1;
+    for (int slot = hash(key, mask); ; slot = (slot + 1) & mask) {
+      long slotKey = this.edgeKeys[slot];
+      if (slotKey == key) {
+        return this.edgeChildren[slot];
+      } else if (slotKey == 0) {
+        return NOT_FOUND;
+      }
+    }
+  }
+
+
+  /**
+   * Maps the edge from |node| through |c| to |child|, replacing any previous
+   * mapping.
+   */
+  private void putEdge(int node, char c, int child) {
+    if (2 * (this.numOfEdges + 1) > this.edgeKeys.length) {
+      long[] keys = this.edgeKeys;
+      int[] children = this.edgeChildren;
+      this.edgeKeys = new long[keys.length * 2];
+      this.edgeChildren = new int[keys.length * 2];
+      for (int slot = 0; slot < keys.length; slot++) {
+        if (keys[slot] != 0) {
+          this.putEdge(keys[slot], children[slot]);
+        }
+      }
+    }
+    if (this.putEdge(edgeKey(node, c), child)) {
+      this.numOfEdges++;
+    }
+  }
+
+
+  /**
+   * @return True if a new edge was added.
+   */
+  private boolean putEdge(long key, int child) {
+    int mask = this.edgeKeys.length - 1;
+    int slot = hash(key, mask);
+    while (this.edgeKeys[slot] != 0 && this.edgeKeys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    boolean isNew = this.edgeKeys[slot] == 0;
+    this.edgeKeys[slot] = key;
+    this.edgeChildren[slot] = child;
+    return isNew;
+  }
+
+
+  private static long edgeKey(int node, char c) {
+    // Offsetting the node so that no key is 0.
+    return ((long) (node + 1) << 16) | c;
+  }
+
+
+  private static int hash(long key, int mask) {
+    return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+  }
+
+
+  /**
+   * @return The number of leading characters of the label of |node| that are
+   *     equal to characters |start| to |end| of |string|.
+   */
+  private int matchLabel(int node, CharSequence string, int start, int end) {
+    int offset = this.labelStart[node];
+    int length = Math.min(this.labelLength[node], end - start);
+    int matched = 0;
+    while (matched < length &&
+        this.chars[offset + matched] == string.charAt(start + matched)) {
+      matched++;
+    }
+    return matched;
+  }
+
+
+  /**
+   * Splits the label of |child| after |length| characters, inserting a new
+   * node between |parent| and |child|.
+   * @return The new node.
+   */
+  private int split(int parent, int child, int length) {
+    int node = this.newNode(this.labelStart[child], length);
+    this.prefixValues[node] = this.prefixValues[child];
+    this.firstChild[node] = child;
+    this.nextSibling[node] = this.nextSibling[child];
+    this.nextSibling[child] = NOT_FOUND;
+    this.labelStart[child] += length;
+    this.labelLength[child] -= length;
+    this.putEdge(parent, this.chars[this.labelStart[node]], node);
+    this.putEdge(node, this.chars[this.labelStart[child]], child);
+
+    if (this.firstChild[parent] == child) {
+      this.firstChild[parent] = node;
+    } else {
+      int sibling = this.firstChild[parent];
+      while (this.nextSibling[sibling] != child) {
+        sibling = this.nextSibling[sibling];
+      }
+      this.nextSibling[sibling] = node;
+    }
+    return node;
+  }
+
+
+  /**
+   * Stores the characters of |name| starting at |start|.
+   * @return The position they were stored at.
+   */
+  private int appendChars(String name, int start) {
+    int length = name.length() - start;
+    if (this.numOfChars + length > this.chars.length) {
+      this.chars = Arrays.copyOf(this.chars,
+          Math.max(this.chars.length * 2, this.numOfChars + length));
+    }
+    name.getChars(start, name.length(), this.chars, this.numOfChars);
+    this.numOfChars += length;
+    return this.numOfChars - length;
+  }
+
+
+  private int newNode(int start, int length) {
+    if (this.numOfNodes == this.labelStart.length) {
+      int capacity = this.labelStart.length * 2;
+      this.labelStart = Arrays.copyOf(this.labelStart, capacity);
+      this.labelLength = Arrays.copyOf(this.labelLength, capacity);
+      this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+      this.nextSibling = Arrays.copyOf(this.nextSibling, capacity);
+      this.values = Arrays.copyOf(this.values, capacity);
+      this.prefixValues = Arrays.copyOf(this.prefixValues, capacity);
+    }
+    int node = this.numOfNodes++;
+    this.labelStart[node] = start;
+    this.labelLength[node] = length;
+    this.firstChild[node] = NOT_FOUND;
+    this.nextSibling[node] = NOT_FOUND;
+    this.values[node] = NOT_FOUND;
+    this.prefixValues[node] = NOT_FOUND;
+    return node;
+  }
+
+}  // class FlagNameIndex
@@ -0,0 +1,37 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+/**
+ * Resolves the names of flag-like args to flags, in place of the index a
+ * ParserSpec otherwise builds from the names of its flags. The parsers
+ * generated by FlagProcessor implement it with a precomputed dispatch.
+ */
+public interface FlagNameResolver {
+
+  /**
+   * Returned when no flag has the name.
+   */
+  int NOT_FOUND = FlagNameIndex.NOT_FOUND;
+
+  /**
+   * @param arg A flag-like arg.
+   * @param nameOffset The position the name starts at within |arg|.
+   * @return The index of the flag named by the rest of |arg|, in
+   *     registration order, or NOT_FOUND.
+   */
+  int resolve(String arg, int nameOffset);
+
+}  // interface FlagNameResolver
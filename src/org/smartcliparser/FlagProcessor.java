@@ -0,0 +1,542 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a parser for each class declaring flags with CommandLineFlag,
+ * named after the class with a Parser suffix and placed in the same package.
+ * Nested classes are named after all their enclosing classes, joined by _.
+ *
+ * The generated parser compiles its flags into a ParserSpec once, resolving
+ * flag names with a dispatch on their length followed by comparisons, so it
+ * neither reflects on the class nor builds an index of the names or flags.
+ * It parses like CommandLineProgram.parseArgs would with the same flags
+ * registered in declaration order, reporting the same errors, and assigns
+ * the fields directly, reading the result by the index of each flag and
+ * numbers as they were converted while parsing:
+ *
+ *   ParseResult result = OptionsParser.parse(args, options);
+ *
+ * Fields are only assigned if the args are valid. Abbreviations and args
+ * files are not supported. Run javac with
+ * -processor org.smartcliparser.FlagProcessor to enable it.
+ */
+@SupportedAnnotationTypes({
+    "org.smartcliparser.CommandLineFlag",
+    "org.smartcliparser.UnconsumedArgs"})
+public class FlagProcessor extends AbstractProcessor {
+
+  private static final String INDENT = "  ";
+
+  /**
+   * The kinds of fields flags can be declared on.
+   */
+  private static enum Kind {
+    SWITCH, STRING, STRING_LIST, INT, LONG, DOUBLE
+  }
+
+
+  /**
+   * A flag declared on a field.
+   */
+  private static final class FlagField {
+
+    final VariableElement field;
+    final Kind kind;
+    final String[] names;
+    final boolean isRequired;
+    final int numOfArgsMin;
+    final int numOfArgsMax;
+    final String pattern;
+
+
+    FlagField(VariableElement field, Kind kind, String[] names,
+        boolean isRequired, int numOfArgsMin, int numOfArgsMax,
+        String pattern) {
+      this.field = field;
+      this.kind = kind;
+      this.names = names;
+      this.isRequired = isRequired;
+      this.numOfArgsMin = numOfArgsMin;
+      this.numOfArgsMax = numOfArgsMax;
+      this.pattern = pattern;
+    }
+
+  }  // class FlagField
+
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+
+  @Override
+  public boolean process(
+      Set<? extends TypeElement> annotations, RoundEnvironment environment) {
+    // The annotated fields grouped by class, in declaration order.
+    Map<TypeElement, List<VariableElement>> flagFields =
+        new LinkedHashMap<TypeElement, List<VariableElement>>();
+    Map<TypeElement, VariableElement> unconsumedFields =
+        new LinkedHashMap<TypeElement, VariableElement>();
+    Iterator<? extends Element> it = environment
+        .getElementsAnnotatedWith(CommandLineFlag.class).iterator();
+    while (it.hasNext()) {
+      VariableElement field = (VariableElement) it.next();
+      TypeElement type = (TypeElement) field.getEnclosingElement();
+      if (!flagFields.containsKey(type)) {
+        flagFields.put(type, new ArrayList<VariableElement>());
+      }
+      flagFields.get(type).add(field);
+    }
+    it = environment.getElementsAnnotatedWith(UnconsumedArgs.class)
+        .iterator();
+    while (it.hasNext()) {
+      VariableElement field = (VariableElement) it.next();
+      TypeElement type = (TypeElement) field.getEnclosingElement();
+      if (unconsumedFields.put(type, field) != null) {
+        this.error(field, "Only one field can receive unconsumed args.");
+      }
+      if (!flagFields.containsKey(type)) {
+        flagFields.put(type, new ArrayList<VariableElement>());
+      }
+    }
+
+    Iterator<Map.Entry<TypeElement, List<VariableElement>>> types =
+        flagFields.entrySet().iterator();
+    while (types.hasNext()) {
+      Map.Entry<TypeElement, List<VariableElement>> entry = types.next();
+      this.generate(entry.getKey(), entry.getValue(),
+          unconsumedFields.get(entry.getKey()));
+    }
+    return true;
+  }
+
+
+  /**
+   * Generates the parser of |type|, unless its fields are invalid.
+   */
+  private void generate(TypeElement type, List<VariableElement> fields,
+      VariableElement unconsumedField) {
+    boolean isValid = this.checkAccessible(type, type);
+    List<FlagField> flags = new ArrayList<FlagField>();
+    // Flag names are unique, including the one of the unconsumed flag.
+    Set<String> names = new HashSet<String>();
+    names.add("unconsumed");
+    Iterator<VariableElement> it = fields.iterator();
+    while (it.hasNext()) {
+      VariableElement field = it.next();
+      FlagField flag = this.createFlagField(field);
+      isValid &= this.checkAccessible(field, field) && flag != null;
+      if (flag == null) {
+        continue;
+      }
+      for (int i = 0; i < flag.names.length; i++) {
+        if (flag.names[i].isEmpty() || !names.add(flag.names[i])) {
+          this.error(field, "Invalid or duplicate flag name: \"" +
+              flag.names[i] + "\"");
+          isValid = false;
+        }
+      }
+      flags.add(flag);
+    }
+    if (unconsumedField != null) {
+      isValid &= this.checkAccessible(unconsumedField, unconsumedField);
+      if (!unconsumedField.asType().toString().equals(
+          "java.util.List<java.lang.String>")) {
+        this.error(unconsumedField, "Unconsumed args need a List<String>.");
+        isValid = false;
+      }
+    }
+    if (!isValid) {
+      return;
+    }
+
+    String packageName = this.getPackageName(type);
+    String parserName = this.getParserName(type);
+    String source = this.writeSource(
+        type, packageName, parserName, flags, unconsumedField);
+    String qualifiedName = packageName.isEmpty() ?
+        parserName : packageName + "." + parserName;
+    try {
+      Writer writer = this.processingEnv.getFiler()
+          .createSourceFile(qualifiedName, type).openWriter();
+      try {
+        writer.write(source);
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      this.error(type, "Could not write " + qualifiedName + ": " +
+          e.getMessage());
+    }
+  }
+
+
+  /**
+   * @return The flag declared on |field|, or null after reporting an error
+   *     if the declaration is invalid.
+   */
+  private FlagField createFlagField(VariableElement field) {
+    CommandLineFlag annotation = field.getAnnotation(CommandLineFlag.class);
+    String type = field.asType().toString();
+    Kind kind;
+    if (type.equals("boolean")) {
+      kind = Kind.SWITCH;
+    } else if (type.equals("java.lang.String")) {
+      kind = Kind.STRING;
+    } else if (type.equals("java.util.List<java.lang.String>")) {
+      kind = Kind.STRING_LIST;
+    } else if (type.equals("int")) {
+      kind = Kind.INT;
+    } else if (type.equals("long")) {
+      kind = Kind.LONG;
+    } else if (type.equals("double")) {
+      kind = Kind.DOUBLE;
+    } else {
+      this.error(field, "Flags can not be declared on fields of type " +
+          type + ".");
+      return null;
+    }
+
+    String[] names = annotation.names();
+    if (names.length == 0) {
+      this.error(field, "A flag needs at least one name.");
+      return null;
+    }
+    int numOfArgsMin = kind == Kind.SWITCH ? 0 : annotation.numOfArgsMin();
+    int numOfArgsMax = kind == Kind.SWITCH ? 0 : annotation.numOfArgsMax();
+    if (numOfArgsMin < 0 || numOfArgsMax < numOfArgsMin) {
+      this.error(field, "Invalid number of args.");
+      return null;
+    }
+    String pattern = annotation.pattern();
+    if (!pattern.isEmpty() &&
+        kind != Kind.STRING && kind != Kind.STRING_LIST) {
+      this.error(field, "Only flags of strings can have a pattern.");
+      return null;
+    }
+    try {
+      Pattern.compile(pattern);
+    } catch (PatternSyntaxException e) {
+      this.error(field, "Invalid pattern: " + e.getDescription());
+      return null;
+    }
+    return new FlagField(field, kind, names, annotation.isRequired(),
+        numOfArgsMin, numOfArgsMax, pattern);
+  }
+
+
+  /**
+   * Checks that the generated parser can access |element| directly.
+   * @param errorElement The element to report an error on.
+   */
+  private boolean checkAccessible(Element element, Element errorElement) {
+    Set<Modifier> modifiers = element.getModifiers();
+    if (modifiers.contains(Modifier.PRIVATE)) {
+      this.error(errorElement, element + " must not be private.");
+      return false;
+    }
+    if (element.getKind() == ElementKind.FIELD &&
+        (modifiers.contains(Modifier.FINAL) ||
+            modifiers.contains(Modifier.STATIC))) {
+      this.error(errorElement, element + " must not be final or static.");
+      return false;
+    }
+    Element enclosing = element.getEnclosingElement();
+    if (enclosing instanceof TypeElement) {
+      return this.checkAccessible(enclosing, errorElement);
+    }
+    return true;
+  }
+
+
+  private String getPackageName(TypeElement type) {
+    Element element = type;
+    while (!(element instanceof PackageElement)) {
+      element = element.getEnclosingElement();
+    }
+    return ((PackageElement) element).getQualifiedName().toString();
+  }
+
+
+  private String getParserName(TypeElement type) {
+    String name = type.getSimpleName().toString();
+    for (Element element = type.getEnclosingElement();
+        element instanceof TypeElement;
+        element = element.getEnclosingElement()) {
+      name = element.getSimpleName() + "_" + name;
+    }
+    return name + "Parser";
+  }
+
+
+  private void error(Element element, String message) {
+    this.processingEnv.getMessager().printMessage(
+        Diagnostic.Kind.ERROR, message, element);
+  }
+
+
+  private String writeSource(TypeElement type, String packageName,
+      String parserName, List<FlagField> flags,
+      VariableElement unconsumedField) {
+    String targetName = type.getQualifiedName().toString();
+    StringBuilder out = new StringBuilder();
+    if (!packageName.isEmpty()) {
+      out.append("package ").append(packageName).append(";\n\n");
+    }
+    out.append("import java.util.Arrays;\n\n");
+    out.append("import org.smartcliparser.DoubleFlag;\n");
+    out.append("import org.smartcliparser.Flag;\n");
+    out.append("import org.smartcliparser.FlagNameResolver;\n");
+    out.append("import org.smartcliparser.IntFlag;\n");
+    out.append("import org.smartcliparser.LongFlag;\n");
+    out.append("import org.smartcliparser.ParseResult;\n");
+    out.append("import org.smartcliparser.ParserSpec;\n\n");
+    out.append("/**\n");
+    out.append(" * Parses the flags declared by ").append(targetName)
+        .append(".\n");
+    out.append(" * Generated by org.smartcliparser.FlagProcessor.\n");
+    out.append(" */\n");
+    out.append("public final class ").append(parserName).append(" {\n\n");
+
+    // The flags, in the order CommandLineProgram would register them.
+    int unconsumedMin = 0;
+    int unconsumedMax = 0;
+    if (unconsumedField != null) {
+      UnconsumedArgs annotation =
+          unconsumedField.getAnnotation(UnconsumedArgs.class);
+      unconsumedMin = annotation.numOfArgsMin();
+      unconsumedMax = annotation.numOfArgsMax();
+    }
+    out.append(INDENT).append("private static final Flag FLAG_0 = ")
+        .append("new Flag(new String[]{\"unconsumed\"}, false, ")
+        .append(unconsumedMin).append(", ").append(unconsumedMax)
+        .append(", null, true);\n");
+    for (int i = 0; i < flags.size(); i++) {
+      FlagField flag = flags.get(i);
+      out.append(INDENT).append("private static final ")
+          .append(this.getFlagClass(flag.kind)).append(" FLAG_")
+          .append(i + 1).append(" = new ")
+          .append(this.getFlagClass(flag.kind)).append("(new String[]{");
+      for (int j = 0; j < flag.names.length; j++) {
+        out.append(j == 0 ? "" : ", ")
+            .append(this.quote(flag.names[j]));
+      }
+      out.append("}, ").append(flag.isRequired).append(", ")
+          .append(flag.numOfArgsMin).append(", ")
+          .append(flag.numOfArgsMax);
+      if (!flag.pattern.isEmpty()) {
+        out.append(", java.util.regex.Pattern.compile(")
+            .append(this.quote(flag.pattern)).append("), false");
+      }
+      out.append(");\n");
+    }
+    out.append("\n");
+    out.append(INDENT)
+        .append("private static final ParserSpec SPEC = new ParserSpec(\n");
+    out.append(INDENT).append(INDENT).append(INDENT)
+        .append("Arrays.asList(new Flag[]{FLAG_0");
+    for (int i = 0; i < flags.size(); i++) {
+      out.append(", FLAG_").append(i + 1);
+    }
+    out.append("}),\n");
+    out.append(INDENT).append(INDENT).append(INDENT)
+        .append("FLAG_0, null, new Resolver());\n\n");
+
+    out.append(INDENT).append("private ").append(parserName)
+        .append("() {}\n\n\n");
+    this.writeResolver(out, flags);
+
+    out.append(INDENT).append("/**\n");
+    out.append(INDENT).append(" * @return The spec of the flags.\n");
+    out.append(INDENT).append(" */\n");
+    out.append(INDENT).append("public static ParserSpec getSpec() {\n");
+    out.append(INDENT).append(INDENT).append("return SPEC;\n");
+    out.append(INDENT).append("}\n\n\n");
+
+    out.append(INDENT).append("/**\n");
+    out.append(INDENT).append(" * Parses |args| and assigns the fields of ")
+        .append("|target| if they are valid.\n");
+    out.append(INDENT).append(" */\n");
+    out.append(INDENT).append("public static ParseResult parse(")
+        .append("String[] args, ").append(targetName)
+        .append(" target) {\n");
+    String body = INDENT + INDENT;
+    out.append(body).append("ParseResult result = SPEC.parse(args);\n");
+    out.append(body).append("if (!result.isValid()) {\n");
+    out.append(body).append(INDENT).append("return result;\n");
+    out.append(body).append("}\n");
+    for (int i = 0; i < flags.size(); i++) {
+      this.writeAssignment(out, flags.get(i), i + 1);
+    }
+    if (unconsumedField != null) {
+      out.append(body).append("target.")
+          .append(unconsumedField.getSimpleName())
+          .append(" = result.getArgs(0);\n");
+    }
+    out.append(body).append("return result;\n");
+    out.append(INDENT).append("}\n\n");
+    out.append("}  // class ").append(parserName).append("\n");
+    return out.toString();
+  }
+
+
+  /**
+   * Writes the resolver of the flag names, which dispatches on the length
+   * of a name and then compares it to the names of that length.
+   */
+  private void writeResolver(StringBuilder out, List<FlagField> flags) {
+    Map<Integer, Map<String, Integer>> namesByLength =
+        new TreeMap<Integer, Map<String, Integer>>();
+    List<String[]> allNames = new ArrayList<String[]>();
+    allNames.add(new String[]{"unconsumed"});
+    for (int i = 0; i < flags.size(); i++) {
+      allNames.add(flags.get(i).names);
+    }
+    for (int i = 0; i < allNames.size(); i++) {
+      String[] names = allNames.get(i);
+      for (int j = 0; j < names.length; j++) {
+        Integer length = names[j].length();
+        if (!namesByLength.containsKey(length)) {
+          namesByLength.put(length, new TreeMap<String, Integer>());
+        }
+        namesByLength.get(length).put(names[j], i);
+      }
+    }
+
+    String indent = INDENT + INDENT;
+    out.append(INDENT).append("private static final class Resolver ")
+        .append("implements FlagNameResolver {\n\n");
+    out.append(indent).append("public int resolve(String arg, ")
+        .append("int nameOffset) {\n");
+    out.append(indent).append(INDENT)
+        .append("switch (arg.length() - nameOffset) {\n");
+    Iterator<Map.Entry<Integer, Map<String, Integer>>> it =
+        namesByLength.entrySet().iterator();
+    String caseIndent = indent + INDENT + INDENT + INDENT;
+    while (it.hasNext()) {
+      Map.Entry<Integer, Map<String, Integer>> entry = it.next();
+      out.append(indent).append(INDENT).append(INDENT).append("case ")
+          .append(entry.getKey()).append(":\n");
+      Iterator<Map.Entry<String, Integer>> names =
+          entry.getValue().entrySet().iterator();
+      while (names.hasNext()) {
+        Map.Entry<String, Integer> name = names.next();
+        out.append(caseIndent).append("if (arg.startsWith(")
+            .append(this.quote(name.getKey()))
+            .append(", nameOffset)) {\n");
+        out.append(caseIndent).append(INDENT).append("return ")
+            .append(name.getValue()).append(";\n");
+        out.append(caseIndent).append("}\n");
+      }
+      out.append(caseIndent).append("return NOT_FOUND;\n");
+    }
+    out.append(indent).append(INDENT).append(INDENT).append("default:\n");
+    out.append(caseIndent).append("return NOT_FOUND;\n");
+    out.append(indent).append(INDENT).append("}\n");
+    out.append(indent).append("}\n\n");
+    out.append(INDENT).append("}  // class Resolver\n\n\n");
+  }
+
+
+  /**
+   * Writes the assignment of the field of |flag|, the flag at |index| in the
+   * spec.
+   */
+  private void writeAssignment(StringBuilder out, FlagField flag, int index) {
+    String indent = INDENT + INDENT;
+    String target = "target." + flag.field.getSimpleName();
+    if (flag.kind == Kind.SWITCH) {
+      out.append(indent).append("if (result.isSet(").append(index)
+          .append(")) {\n");
+      out.append(indent).append(INDENT).append(target)
+          .append(" = true;\n");
+    } else if (flag.kind == Kind.STRING_LIST) {
+      out.append(indent).append("if (result.isSet(").append(index)
+          .append(")) {\n");
+      out.append(indent).append(INDENT).append(target)
+          .append(" = result.getArgs(").append(index).append(");\n");
+    } else {
+      out.append(indent).append("if (result.getNumOfArgs(")
+          .append(index).append(") > 0) {\n");
+      String method = flag.kind == Kind.INT ? "getIntValue" :
+          flag.kind == Kind.LONG ? "getLongValue" :
+          flag.kind == Kind.DOUBLE ? "getDoubleValue" : "getArg";
+      String value = "result." + method + "(" + index + ", 0)";
+      out.append(indent).append(INDENT).append(target).append(" = ")
+          .append(value).append(";\n");
+    }
+    out.append(indent).append("}\n");
+  }
+
+
+  private String getFlagClass(Kind kind) {
+    switch (kind) {
+      case INT:
+        return "IntFlag";
+      case LONG:
+        return "LongFlag";
+      case DOUBLE:
+        return "DoubleFlag";
+      default:
+        return "Flag";
+    }
+  }
+
+
+  /**
+   * @return |string| as a Java string literal.
+   */
+  private String quote(String string) {
+    StringBuilder out = new StringBuilder("\"");
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.append('\\').append(c);
+      } else if (c < ' ' || c > '~') {
+        out.append(String.format("\\u%04x", (int) c));
+      } else {
+        out.append(c);
+      }
+    }
+    return out.append('"').toString();
+  }
+
+}  // class FlagProcessor
@@ -0,0 +1,326 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Include and exclude globs, compiled once, that select the files of a file
+ * set by their path relative to the directory they were found under, always
+ * using / as the separator.
+ *
+ * In a glob, * matches within a path element, ? matches a single character
+ * other than /, ** matches across elements and **&#47; also matches no
+ * element at all. Brackets and braces work as in most shells, and \ quotes
+ * the next character. A glob without a / matches the name of a file or
+ * directory at any depth, as in gitignore, so *.java is short for
+ * **&#47;*.java, while ./*.java only matches at the top. A glob starting
+ * with / is absolute, and matches the absolute path of a file instead.
+ *
+ * A file is selected if it matches any include glob, or if there are none,
+ * and it matches no exclude glob. A directory matching an exclude glob, or
+ * an exclude glob ending in /** with that suffix removed, is pruned without
+ * being listed.
+ */
+final class GlobFilter {
+
+  /**
+   * The characters that make an arg a glob, and the ones \ quotes within
+   * the args that are paths.
+   */
+  private static final String GLOB_CHARACTERS = "*?[{";
+  private static final String QUOTED_CHARACTERS = "*?[]{}!\\";
+
+  private final Pattern[] includes;
+  private final Pattern[] excludes;
+
+  /**
+   * The exclude globs that select directories to prune.
+   */
+  private final Pattern[] prunedDirectories;
+
+  /**
+   * Whether each pattern of |includes|, |excludes| and |prunedDirectories|
+   * comes from an absolute glob.
+   */
+  private final boolean[] isIncludeAbsolute;
+  private final boolean[] isExcludeAbsolute;
+  private final boolean[] isPrunedDirectoryAbsolute;
+
+
+  /**
+   * @param includes The include globs.
+   * @param excludes The exclude globs, without the ! marking them in args.
+   */
+  GlobFilter(List<String> includes, List<String> excludes) {
+    this.includes = new Pattern[includes.size()];
+    this.isIncludeAbsolute = new boolean[includes.size()];
+    for (int i = 0; i < this.includes.length; i++) {
+      this.includes[i] = GlobFilter.compile(includes.get(i));
+      this.isIncludeAbsolute[i] = includes.get(i).startsWith("/");
+    }
+    this.excludes = new Pattern[excludes.size()];
+    this.isExcludeAbsolute = new boolean[excludes.size()];
+    List<Pattern> prunedDirectories = new ArrayList<Pattern>();
+    List<Boolean> isPrunedDirectoryAbsolute = new ArrayList<Boolean>();
+    for (int i = 0; i < this.excludes.length; i++) {
+      String glob = excludes.get(i);
+      this.excludes[i] = GlobFilter.compile(glob);
+      this.isExcludeAbsolute[i] = glob.startsWith("/");
+      prunedDirectories.add(this.excludes[i]);
+      isPrunedDirectoryAbsolute.add(this.isExcludeAbsolute[i]);
+      if (glob.endsWith("/**") && glob.length() > 3) {
+        prunedDirectories.add(
+            GlobFilter.compile(glob.substring(0, glob.length() - 3)));
+        isPrunedDirectoryAbsolute.add(this.isExcludeAbsolute[i]);
+      }
+    }
+    this.prunedDirectories =
+        prunedDirectories.toArray(new Pattern[prunedDirectories.size()]);
+    this.isPrunedDirectoryAbsolute =
+        new boolean[isPrunedDirectoryAbsolute.size()];
+    for (int i = 0; i < this.isPrunedDirectoryAbsolute.length; i++) {
+      this.isPrunedDirectoryAbsolute[i] = isPrunedDirectoryAbsolute.get(i);
+    }
+  }
+
+
+  /**
+   * @return True if |arg| of a FileSetFlag is a glob rather than a path,
+   *     that is if it starts with ! or has a glob character not quoted by \.
+   */
+  static boolean isGlob(String arg) {
+    if (arg.startsWith("!")) {
+      return true;
+    }
+    for (int i = 0; i < arg.length(); i++) {
+      char c = arg.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (GLOB_CHARACTERS.indexOf(c) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * @return The path an arg of a FileSetFlag that is not a glob stands for,
+   *     without the \ quoting glob characters, !, or \ itself.
+   */
+  static String unquote(String arg) {
+    if (arg.indexOf('\\') < 0) {
+      return arg;
+    }
+    StringBuilder path = new StringBuilder(arg.length());
+    for (int i = 0; i < arg.length(); i++) {
+      char c = arg.charAt(i);
+      if (c == '\\' && i + 1 < arg.length() &&
+          QUOTED_CHARACTERS.indexOf(arg.charAt(i + 1)) >= 0) {
+        c = arg.charAt(++i);
+      }
+      path.append(c);
+    }
+    return path.toString();
+  }
+
+
+  /**
+   * @return The directory the absolute |glob| selects files within, made of
+   *     its elements up to the first one that has a glob character.
+   */
+  static String getBaseDirectory(String glob) {
+    int end = 0;
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '/') {
+        end = i;
+      } else if (c == '\\') {
+        i++;
+      } else if (GLOB_CHARACTERS.indexOf(c) >= 0) {
+        break;
+      }
+    }
+    return end == 0 ? "/" : GlobFilter.unquote(glob.substring(0, end));
+  }
+
+
+  /**
+   * @param path The file, for absolute globs.
+   * @return True if the file at |relativePath| is selected.
+   */
+  boolean isIncluded(Path path, String relativePath) {
+    return (this.includes.length == 0 || matchesAny(this.includes,
+        this.isIncludeAbsolute, path, relativePath)) &&
+        !matchesAny(this.excludes, this.isExcludeAbsolute, path,
+            relativePath);
+  }
+
+
+  /**
+   * @param path The directory, for absolute globs.
+   * @return True if the directory at |relativePath| should not be walked.
+   */
+  boolean isPruned(Path path, String relativePath) {
+    return matchesAny(this.prunedDirectories, this.isPrunedDirectoryAbsolute,
+        path, relativePath);
+  }
+
+
+  private static boolean matchesAny(Pattern[] patterns, boolean[] isAbsolute,
+      Path path, String relativePath) {
+    String absolutePath = null;
+    for (int i = 0; i < patterns.length; i++) {
+      if (isAbsolute[i] && absolutePath == null) {
+        absolutePath = GlobFilter.toAbsolutePath(path);
+      }
+      Matcher matcher =
+          patterns[i].matcher(isAbsolute[i] ? absolutePath : relativePath);
+      if (matcher.matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * @return The absolute path of |path| separated by /, without the leading
+   *     /, as absolute globs are compiled.
+   */
+  private static String toAbsolutePath(Path path) {
+    String absolutePath = path.toAbsolutePath().normalize().toString();
+    if (File.separatorChar != '/') {
+      absolutePath = absolutePath.replace(File.separatorChar, '/');
+    }
+    return absolutePath.startsWith("/") ?
+        absolutePath.substring(1) : absolutePath;
+  }
+
+
+  /**
+   * Translates |glob| to a regular expression. A / or ./ at its start is
+   * dropped, anchoring it at the start of the path it is matched against.
+   */
+  static Pattern compile(String glob) {
+    if (glob.startsWith("/")) {
+      glob = glob.substring(1);
+    } else if (glob.startsWith("./")) {
+      glob = glob.substring(2);
+    } else if (glob.indexOf('/') < 0) {
+      glob = "**/" + glob;
+    }
+    return Pattern.compile(GlobFilter.toRegex(glob));
+  }
+
+
+  private static String toRegex(String glob) {
+    StringBuilder regex = new StringBuilder();
+    int length = glob.length();
+    int i = 0;
+    while (i < length) {
+      char c = glob.charAt(i);
+      if (c == '*' && i + 1 < length && glob.charAt(i + 1) == '*') {
+        boolean isElement = i == 0 || glob.charAt(i - 1) == '/';
+        i += 2;
+        if (isElement && i < length && glob.charAt(i) == '/') {
+          regex.append("(?:.*/)?");
+          i++;
+        } else {
+          regex.append(".*");
+        }
+        continue;
+      }
+      i++;
+      if (c == '*') {
+        regex.append("[^/]*");
+      } else if (c == '?') {
+        regex.append("[^/]");
+      } else if (c == '\\' && i < length) {
+        GlobFilter.appendLiteral(glob.charAt(i++), regex);
+      } else if (c == '[' && GlobFilter.findClassEnd(glob, i) > 0) {
+        int end = GlobFilter.findClassEnd(glob, i);
+        GlobFilter.appendClass(glob, i, end, regex);
+        i = end + 1;
+      } else if (c == '{' && glob.indexOf('}', i) > 0) {
+        int end = glob.indexOf('}', i);
+        String[] alternatives = glob.substring(i, end).split(",", -1);
+        regex.append("(?:");
+        for (int j = 0; j < alternatives.length; j++) {
+          regex.append(j == 0 ? "" : "|");
+          regex.append(GlobFilter.toRegex(alternatives[j]));
+        }
+        regex.append(")");
+        i = end + 1;
+      } else {
+        GlobFilter.appendLiteral(c, regex);
+      }
+    }
+    return regex.toString();
+  }
+
+
+  private static void appendLiteral(char c, StringBuilder regex) {
+    if (c < 128 && !Character.isLetterOrDigit(c)) {
+      regex.append('\\');
+    }
+    regex.append(c);
+  }
+
+
+  /**
+   * Finds the ] closing the bracket expression that starts right after the
+   * [ at |start| - 1. A ] right after the [, or after its negation, is part
+   * of the expression.
+   * @return The position of the ], or -1.
+   */
+  private static int findClassEnd(String glob, int start) {
+    int i = start;
+    if (i < glob.length() && (glob.charAt(i) == '!' || glob.charAt(i) == '^')) {
+      i++;
+    }
+    return glob.indexOf(']', i + 1);
+  }
+
+
+  /**
+   * Appends the bracket expression between |start| and the ] at |end|.
+   */
+  private static void appendClass(
+      String glob, int start, int end, StringBuilder regex) {
+    int i = start;
+    boolean isNegated = glob.charAt(i) == '!' || glob.charAt(i) == '^';
+    if (isNegated) {
+      i++;
+    }
+    regex.append(isNegated ? "[^/" : "[");
+    for (; i < end; i++) {
+      char c = glob.charAt(i);
+      if (c == '-') {
+        regex.append(c);
+      } else {
+        GlobFilter.appendLiteral(c, regex);
+      }
+    }
+    regex.append(']');
+  }
+
+}  // class GlobFilter
@@ -0,0 +1,172 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Times the phases of parsing and running programs, reporting them to the
+ * installed MetricsListener and as PhaseEvents to the JDK Flight Recorder.
+ * While there is no listener and the Flight Recorder has not been
+ * initialized, a phase only costs two volatile reads and allocates nothing.
+ * No PhaseEvent or other Flight Recorder class is loaded before then, since
+ * doing so adds hundreds of milliseconds to the start of every program.
+ */
+public final class Instrumentation {
+
+  private static volatile MetricsListener listener = null;
+
+  /**
+   * Whether the Flight Recorder is known to be initialized, or known to be
+   * missing from this JVM, in which case there is no need to check again.
+   */
+  private static volatile boolean isFlightRecorderInitialized = false;
+  private static volatile boolean isFlightRecorderMissing = false;
+
+  private Instrumentation() {}
+
+
+  /**
+   * Holds the type of PhaseEvent, so that it is only looked up once the
+   * Flight Recorder is initialized.
+   */
+  private static final class PhaseEventType {
+
+    /**
+     * The type of PhaseEvent, or null if this JVM can not record events.
+     */
+    static final EventType INSTANCE = phaseEventType();
+
+  }  // class PhaseEventType
+
+
+  /**
+   * A phase being timed.
+   */
+  static final class Span {
+
+    final MetricsListener.Phase phase;
+    final long startNanos;
+    final PhaseEvent event;
+
+
+    Span(MetricsListener.Phase phase, long startNanos, PhaseEvent event) {
+      this.phase = phase;
+      this.startNanos = startNanos;
+      this.event = event;
+    }
+
+  }  // class Span
+
+
+  private static EventType phaseEventType() {
+    try {
+      return EventType.getEventType(PhaseEvent.class);
+    } catch (RuntimeException e) {
+      return null;
+    } catch (InternalError e) {
+      // The JVM was built without the Flight Recorder.
+      return null;
+    }
+  }
+
+
+  /**
+   * @return Whether a Flight Recorder recording may enable PhaseEvents.
+   */
+  private static boolean isFlightRecorderInitialized() {
+    if (Instrumentation.isFlightRecorderInitialized) {
+      return true;
+    }
+    if (Instrumentation.isFlightRecorderMissing) {
+      return false;
+    }
+    try {
+      // Unlike looking up an EventType, this does not initialize the Flight
+      // Recorder. A recording, including one started by the
+      // -XX:StartFlightRecording option, initializes it before it starts.
+      if (!FlightRecorder.isInitialized()) {
+        return false;
+      }
+    } catch (LinkageError e) {
+      // The JVM was linked without the jdk.jfr module.
+      Instrumentation.isFlightRecorderMissing = true;
+      return false;
+    }
+    Instrumentation.isFlightRecorderInitialized = true;
+    return true;
+  }
+
+
+  /**
+   * Installs |listener|, replacing the previous one.
+   * @param listener The listener, or null to stop reporting to a listener.
+   */
+  public static void setListener(MetricsListener listener) {
+    Instrumentation.listener = listener;
+  }
+
+
+  /**
+   * @return The installed listener, or null.
+   */
+  public static MetricsListener getListener() {
+    return Instrumentation.listener;
+  }
+
+
+  /**
+   * Starts timing |phase|.
+   * @return The span to pass to end, or null if nothing is measured.
+   */
+  static Span begin(MetricsListener.Phase phase) {
+    boolean isRecording = false;
+    if (isFlightRecorderInitialized()) {
+      EventType type = PhaseEventType.INSTANCE;
+      isRecording = type != null && type.isEnabled();
+    }
+    if (Instrumentation.listener == null && !isRecording) {
+      return null;
+    }
+    PhaseEvent event = null;
+    if (isRecording) {
+      event = new PhaseEvent();
+      event.phase = phase.name();
+      event.begin();
+    }
+    return new Span(phase, System.nanoTime(), event);
+  }
+
+
+  /**
+   * Stops timing the phase of |span|, and reports it.
+   * @param span A span returned by begin, or null.
+   */
+  static void end(Span span) {
+    if (span == null) {
+      return;
+    }
+    long nanos = System.nanoTime() - span.startNanos;
+    if (span.event != null) {
+      span.event.commit();
+    }
+    MetricsListener listener = Instrumentation.listener;
+    if (listener != null) {
+      listener.phaseCompleted(span.phase, nanos);
+    }
+  }
+
+}  // class Instrumentation
@@ -0,0 +1,67 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+/**
+ * A flag whose args are integers that fit in an int.
+ */
+public class IntFlag extends IntegerFlag {
+
+  private int[] values = new int[0];
+
+
+  public IntFlag(String[] names, boolean isRequired, int numOfArgsMin,
+      int numOfArgsMax) {
+    super(names, isRequired, numOfArgsMin, numOfArgsMax, Integer.MIN_VALUE,
+        Integer.MAX_VALUE);
+  }
+
+
+  @Override
+  protected Object newValues(int size) {
+    return new int[size];
+  }
+
+
+  @Override
+  void store(Object values, int position, long value) {
+    ((int[]) values)[position] = (int) value;
+  }
+
+
+  @Override
+  protected void setValues(Object values) {
+    this.values = (int[]) values;
+  }
+
+
+  /**
+   * @return The value at |position|.
+   */
+  public int getValue(int position) {
+    this.ensureConverted();
+    return this.values[position];
+  }
+
+
+  /**
+   * @return All values. The array is shared and should not be modified.
+   */
+  public int[] getValues() {
+    this.ensureConverted();
+    return this.values;
+  }
+
+}  // class IntFlag
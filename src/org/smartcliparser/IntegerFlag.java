@@ -0,0 +1,77 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+/**
+ * A flag whose args are decimal integers within a range, as accepted by
+ * Long.parseLong. Args are parsed without throwing, so that invalid args
+ * are cheap to report.
+ */
+abstract class IntegerFlag extends TypedFlag {
+
+  private final long minValue;
+  private final long maxValue;
+
+
+  IntegerFlag(String[] names, boolean isRequired, int numOfArgsMin,
+      int numOfArgsMax, long minValue, long maxValue) {
+    super(names, isRequired, numOfArgsMin, numOfArgsMax);
+    this.minValue = minValue;
+    this.maxValue = maxValue;
+  }
+
+
+  /**
+   * Stores |value| at |position| of |values|, an array created by
+   * newValues.
+   */
+  abstract void store(Object values, int position, long value);
+
+
+  @Override
+  protected final SingleFlagParsingError.Type convert(String arg,
+      Object values, int position) {
+    int length = arg.length();
+    int i = 0;
+    boolean isNegative = false;
+    if (length > 0 && (arg.charAt(0) == '-' || arg.charAt(0) == '+')) {
+      isNegative = arg.charAt(0) == '-';
+      i = 1;
+    }
+    if (i == length) {
+      return SingleFlagParsingError.Type.NOT_AN_INTEGER;
+    }
+
+    // The value is accumulated negatively, since the magnitude of the
+    // minimum may exceed that of the maximum.
+    long limit = isNegative ? this.minValue : -this.maxValue;
+    long multiplyLimit = limit / 10;
+    long value = 0;
+    for (; i < length; i++) {
+      int digit = Character.digit(arg.charAt(i), 10);
+      if (digit < 0 || value < multiplyLimit) {
+        return SingleFlagParsingError.Type.NOT_AN_INTEGER;
+      }
+      value *= 10;
+      if (value < limit + digit) {
+        return SingleFlagParsingError.Type.NOT_AN_INTEGER;
+      }
+      value -= digit;
+    }
+    this.store(values, position, isNegative ? value : -value);
+    return null;
+  }
+
+}  // class IntegerFlag
@@ -0,0 +1,67 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+/**
+ * A flag whose args are integers that fit in a long.
+ */
+public class LongFlag extends IntegerFlag {
+
+  private long[] values = new long[0];
+
+
+  public LongFlag(String[] names, boolean isRequired, int numOfArgsMin,
+      int numOfArgsMax) {
+    super(names, isRequired, numOfArgsMin, numOfArgsMax, Long.MIN_VALUE,
+        Long.MAX_VALUE);
+  }
+
+
+  @Override
+  protected Object newValues(int size) {
+    return new long[size];
+  }
+
+
+  @Override
+  void store(Object values, int position, long value) {
+    ((long[]) values)[position] = value;
+  }
+
+
+  @Override
+  protected void setValues(Object values) {
+    this.values = (long[]) values;
+  }
+
+
+  /**
+   * @return The value at |position|.
+   */
+  public long getValue(int position) {
+    this.ensureConverted();
+    return this.values[position];
+  }
+
+
+  /**
+   * @return All values. The array is shared and should not be modified.
+   */
+  public long[] getValues() {
+    this.ensureConverted();
+    return this.values;
+  }
+
+}  // class LongFlag
@@ -0,0 +1,63 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+/**
+ * Receives measurements of parsing and running programs, once installed
+ * with Instrumentation.setListener. Methods may be called concurrently from
+ * any thread that parses, so implementations must be thread-safe and fast.
+ * @see ParseMetrics
+ */
+public interface MetricsListener {
+
+  /**
+   * The phases of parsing and running a program that are timed.
+   */
+  enum Phase {
+    /** Replacing @path args by the contents of args files. */
+    EXPAND_ARGS_FILES,
+    /** Distributing the args to the flags. */
+    PARSE,
+    /** Checking the constraints of the flags on their args. */
+    VALIDATE,
+    /** Collecting the errors of an invalid parse. */
+    COLLECT_ERRORS,
+    /** Walking the directories of a FileSetFlag. */
+    EXPAND_FILE_SET,
+    /** Running a program once its args are parsed. */
+    RUN
+  }
+
+
+  /**
+   * Called each time a phase completes.
+   * @param nanos The time the phase took.
+   */
+  void phaseCompleted(Phase phase, long nanos);
+
+
+  /**
+   * Called for each flag set by a parse.
+   * @param numOfArgs The number of args |flag| consumed.
+   */
+  void flagConsumed(Flag flag, int numOfArgs);
+
+
+  /**
+   * Called for each error found by a parse.
+   */
+  void errorReported(ParsingError error);
+
+}  // interface MetricsListener
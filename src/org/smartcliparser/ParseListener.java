@@ -0,0 +1,62 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+/**
+ * Receives the args of a command line one at a time, in their original
+ * order, as ParserSpec.parse(String[], ParseListener) classifies them. No
+ * lists of values are built, so a program can act on each value as soon as
+ * it is seen.
+ *
+ * A value is delivered even if it violates the constraints of its flag, and
+ * is then followed by the error it caused. Errors that can only be decided
+ * once all args are seen, such as a missing required flag, are reported
+ * last, in the registration order of the flags.
+ */
+public interface ParseListener {
+
+  /**
+   * Called for an arg naming a flag.
+   * @param arg The arg as it appeared, such as -o or --output.
+   */
+  void onFlag(Flag flag, String arg);
+
+
+  /**
+   * Called for an arg consumed by the flag named last.
+   */
+  void onValue(Flag flag, String value);
+
+
+  /**
+   * Called for a leftover arg received by the unconsumed flag without being
+   * named.
+   */
+  void onPositional(String value);
+
+
+  /**
+   * Called for an arg no flag consumed, including unknown flags, which
+   * makes the parse invalid.
+   */
+  void onRemaining(String arg);
+
+
+  /**
+   * Called for each error, as soon as it is found.
+   */
+  void onError(ParsingError error);
+
+}  // interface ParseListener
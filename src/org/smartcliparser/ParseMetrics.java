@@ -0,0 +1,225 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A MetricsListener keeping counters and latency histograms, which can be
+ * read at any time while measurements are reported.
+ *
+ * Latencies are counted in buckets by powers of two of nanoseconds, so
+ * percentiles are reported as the upper bound of their bucket, within a
+ * factor of two of the exact value.
+ */
+public final class ParseMetrics implements MetricsListener {
+
+  private static final int NUM_OF_BUCKETS = 64;
+
+  private static final MetricsListener.Phase[] PHASES =
+      MetricsListener.Phase.values();
+
+  private final LongAdder[] phaseCounts = new LongAdder[PHASES.length];
+  private final LongAdder[] phaseNanos = new LongAdder[PHASES.length];
+  private final AtomicLongArray[] histograms =
+      new AtomicLongArray[PHASES.length];
+
+  private final ConcurrentMap<Flag, LongAdder> numOfTimesSet =
+      new ConcurrentHashMap<Flag, LongAdder>();
+  private final ConcurrentMap<Flag, LongAdder> numOfArgsConsumed =
+      new ConcurrentHashMap<Flag, LongAdder>();
+
+  /**
+   * The number of errors by type, such as a SingleFlagParsingError.Type, or
+   * by class for errors that have no type.
+   */
+  private final ConcurrentMap<Object, LongAdder> errorCounts =
+      new ConcurrentHashMap<Object, LongAdder>();
+
+
+  public ParseMetrics() {
+    for (int i = 0; i < PHASES.length; i++) {
+      this.phaseCounts[i] = new LongAdder();
+      this.phaseNanos[i] = new LongAdder();
+      this.histograms[i] = new AtomicLongArray(NUM_OF_BUCKETS);
+    }
+  }
+
+
+  @Override
+  public void phaseCompleted(MetricsListener.Phase phase, long nanos) {
+    int index = phase.ordinal();
+    this.phaseCounts[index].increment();
+    this.phaseNanos[index].add(nanos);
+    this.histograms[index].incrementAndGet(ParseMetrics.getBucket(nanos));
+  }
+
+
+  @Override
+  public void flagConsumed(Flag flag, int numOfArgs) {
+    ParseMetrics.getCounter(this.numOfTimesSet, flag).increment();
+    ParseMetrics.getCounter(this.numOfArgsConsumed, flag).add(numOfArgs);
+  }
+
+
+  @Override
+  public void errorReported(ParsingError error) {
+    ParseMetrics.getCounter(
+        this.errorCounts, ParseMetrics.getErrorType(error)).increment();
+  }
+
+
+  private static <K> LongAdder getCounter(
+      ConcurrentMap<K, LongAdder> counters, K key) {
+    LongAdder counter = counters.get(key);
+    if (counter == null) {
+      LongAdder newCounter = new LongAdder();
+      counter = counters.putIfAbsent(key, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    return counter;
+  }
+
+
+  private static Object getErrorType(ParsingError error) {
+    if (error instanceof SingleFlagParsingError) {
+      return ((SingleFlagParsingError) error).type;
+    } else if (error instanceof MultiFlagParsingError) {
+      return ((MultiFlagParsingError) error).type;
+    } else if (error instanceof ArgsFileParsingError) {
+      return ((ArgsFileParsingError) error).type;
+    }
+    return error.getClass();
+  }
+
+
+  /**
+   * @return The bucket counting |nanos|, the position of its highest bit.
+   */
+  private static int getBucket(long nanos) {
+    return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+  }
+
+
+  /**
+   * @return The number of times |phase| completed.
+   */
+  public long getCount(MetricsListener.Phase phase) {
+    return this.phaseCounts[phase.ordinal()].sum();
+  }
+
+
+  /**
+   * @return The time spent in |phase| in total.
+   */
+  public long getTotalNanos(MetricsListener.Phase phase) {
+    return this.phaseNanos[phase.ordinal()].sum();
+  }
+
+
+  /**
+   * @param percentile A percentile between 0 and 100.
+   * @return An upper bound of the latency of |phase| at |percentile|, or 0
+   *     if the phase never completed.
+   */
+  public long getPercentileNanos(
+      MetricsListener.Phase phase, double percentile) {
+    AtomicLongArray histogram = this.histograms[phase.ordinal()];
+    long[] counts = new long[NUM_OF_BUCKETS];
+    long total = 0;
+    for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+      counts[i] = histogram.get(i);
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return i == 62 ? Long.MAX_VALUE : (2L << i) - 1;
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+
+  /**
+   * @return The number of parses that set |flag|.
+   */
+  public long getNumOfTimesSet(Flag flag) {
+    LongAdder counter = this.numOfTimesSet.get(flag);
+    return counter == null ? 0 : counter.sum();
+  }
+
+
+  /**
+   * @return The number of args |flag| consumed across all parses.
+   */
+  public long getNumOfArgsConsumed(Flag flag) {
+    LongAdder counter = this.numOfArgsConsumed.get(flag);
+    return counter == null ? 0 : counter.sum();
+  }
+
+
+  /**
+   * @param type The type of an error, such as
+   *     SingleFlagParsingError.Type.UNKNOWN_FLAG.
+   * @return The number of errors of |type| reported.
+   */
+  public long getErrorCount(Object type) {
+    LongAdder counter = this.errorCounts.get(type);
+    return counter == null ? 0 : counter.sum();
+  }
+
+
+  /**
+   * @return A report of all phases and errors, one per line.
+   */
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < PHASES.length; i++) {
+      long count = this.getCount(PHASES[i]);
+      if (count == 0) {
+        continue;
+      }
+      out.append(PHASES[i]).append(": count=").append(count)
+          .append(" mean=").append(this.getTotalNanos(PHASES[i]) / count)
+          .append("ns p50<=")
+          .append(this.getPercentileNanos(PHASES[i], 50))
+          .append("ns p99<=")
+          .append(this.getPercentileNanos(PHASES[i], 99)).append("ns\n");
+    }
+    Iterator<Map.Entry<Object, LongAdder>> it =
+        this.errorCounts.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Object, LongAdder> entry = it.next();
+      out.append(entry.getKey()).append(": ")
+          .append(entry.getValue().sum()).append("\n");
+    }
+    return out.toString();
+  }
+
+}  // class ParseMetrics
@@ -0,0 +1,635 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * The outcome of parsing one array of arguments against a ParserSpec. Values
+ * are stored as indices into the parsed array, which is never copied.
+ *
+ * A result can be passed back to ParserSpec.parse(String[], ParseResult) to
+ * be reused. Its buffers only grow, so once they fit the largest input,
+ * parsing a valid command line and reading it through isValid(), isSet(),
+ * getNumOfArgs() and getArg() allocates nothing. A reusable result must only
+ * be used by one thread at a time, and lists obtained from it are not valid
+ * after it is reused.
+ */
+public final class ParseResult extends ArgumentSink {
+
+  // Codes stored in |owners| for args that are not values of a flag.
+  private static final int FLAG_NAME = -1;
+  private static final int UNKNOWN_FLAG = -2;
+  private static final int REMAINING = -3;
+  private static final int POSITIONAL = -4;
+  private static final int AMBIGUOUS_FLAG = -5;
+
+  /**
+   * The parsed arguments.
+   */
+  private String[] args;
+
+  /**
+   * For each arg, the index of the flag that consumed it, or one of the codes
+   * above. Only the first args.length entries are in use.
+   */
+  private int[] owners;
+
+  /**
+   * The number of args the unconsumed flag received without being specified
+   * explicitly.
+   */
+  private int numOfPositional = 0;
+
+  /**
+   * The number of args that no flag consumed.
+   */
+  private int numOfRemaining = 0;
+
+  /**
+   * Indices of args grouped by the flag that consumed them. The args that no
+   * flag consumed form a last group, starting at |remainingStart|.
+   */
+  private int[] grouped;
+  private int remainingStart = 0;
+
+  /**
+   * For each set flag, the position its group starts at within |grouped|.
+   */
+  private final int[] groupStart;
+
+  /**
+   * Scratch space used while grouping.
+   */
+  private final int[] cursors;
+
+  /**
+   * The verdict of the last parse, decided when it finished.
+   */
+  private boolean isValid = true;
+
+  /**
+   * The errors of the last parse, collected when it finished, or null if it
+   * was valid.
+   */
+  private List<ParsingError> errors = null;
+
+
+  ParseResult(ParserSpec spec) {
+    super(spec, true);
+    int numOfFlags = spec.getNumOfFlags();
+    this.args = new String[0];
+    this.owners = new int[0];
+    this.grouped = new int[0];
+    this.groupStart = new int[numOfFlags];
+    this.cursors = new int[numOfFlags];
+  }
+
+
+  /**
+   * @return The spec that produced this result.
+   */
+  public ParserSpec getSpec() {
+    return this.spec;
+  }
+
+
+  /**
+   * Checks whether a flag was specified in the command line.
+   * @param flag A flag of the spec.
+   * @return Whether |flag| was specified in the command line.
+   */
+  public boolean isSet(Flag flag) {
+    return this.isSet(this.spec.indexOf(flag));
+  }
+
+
+  /**
+   * Like isSet(Flag), for the flag at |index| in the spec.
+   */
+  public boolean isSet(int index) {
+    return this.isSet[index];
+  }
+
+
+  /**
+   * @param flag A flag of the spec.
+   * @return An unmodifiable list of all arguments consumed by |flag|.
+   */
+  public List<String> getArgs(Flag flag) {
+    return this.getArgs(this.spec.indexOf(flag));
+  }
+
+
+  /**
+   * Like getArgs(Flag), for the flag at |index| in the spec.
+   */
+  public List<String> getArgs(int index) {
+    if (this.counts[index] == 0) {
+      return Collections.emptyList();
+    }
+    return new ArgsSlice(
+        this.args, this.grouped, this.groupStart[index], this.counts[index]);
+  }
+
+
+  /**
+   * @param flag A typed flag of the spec.
+   * @return An array created by |flag| holding the values its args were
+   *     converted to, or null if not all of them were.
+   */
+  Object getConvertedValues(TypedFlag flag) {
+    int index = this.spec.indexOf(flag);
+    Object values = this.convertedValues[index];
+    if (values == null || this.counts[index] == 0) {
+      return null;
+    }
+    return flag.copyValues(values, this.counts[index], this.counts[index]);
+  }
+
+
+  /**
+   * @param flag A flag of the spec.
+   * @return The number of arguments consumed by |flag|.
+   */
+  public int getNumOfArgs(Flag flag) {
+    return this.getNumOfArgs(this.spec.indexOf(flag));
+  }
+
+
+  /**
+   * Like getNumOfArgs(Flag), for the flag at |index| in the spec.
+   */
+  public int getNumOfArgs(int index) {
+    return this.counts[index];
+  }
+
+
+  /**
+   * @param flag A flag of the spec.
+   * @param position The position of the argument, between 0 and
+   *     getNumOfArgs(flag) - 1.
+   * @return An argument consumed by |flag|.
+   */
+  public String getArg(Flag flag, int position) {
+    return this.getArg(this.spec.indexOf(flag), position);
+  }
+
+
+  /**
+   * Like getArg(Flag, int), for the flag at |index| in the spec.
+   */
+  public String getArg(int index, int position) {
+    this.checkPosition(index, position);
+    return this.args[this.grouped[this.groupStart[index] + position]];
+  }
+
+
+  /**
+   * @param index The index of an IntFlag in the spec.
+   * @return The value an argument of the flag was converted to while
+   *     parsing.
+   * @throws IllegalStateException If the args of the flag were not all
+   *     converted.
+   */
+  public int getIntValue(int index, int position) {
+    return ((int[]) this.getValues(index, position))[position];
+  }
+
+
+  /**
+   * @param index The index of a LongFlag in the spec.
+   * @see #getIntValue
+   */
+  public long getLongValue(int index, int position) {
+    return ((long[]) this.getValues(index, position))[position];
+  }
+
+
+  /**
+   * @param index The index of a DoubleFlag in the spec.
+   * @see #getIntValue
+   */
+  public double getDoubleValue(int index, int position) {
+    return ((double[]) this.getValues(index, position))[position];
+  }
+
+
+  private Object getValues(int index, int position) {
+    this.checkPosition(index, position);
+    Object values = this.convertedValues[index];
+    if (values == null) {
+      throw new IllegalStateException("The args were not converted.");
+    }
+    return values;
+  }
+
+
+  private void checkPosition(int index, int position) {
+    if (position < 0 || position >= this.counts[index]) {
+      throw new IndexOutOfBoundsException("Position: " + position);
+    }
+  }
+
+
+  /**
+   * @return An unmodifiable list of all arguments that were not consumed by
+   *     any flag, in their original order.
+   */
+  public List<String> getRemainingArgs() {
+    return new ArgsSlice(
+        this.args, this.grouped, this.remainingStart, this.numOfRemaining);
+  }
+
+
+  /**
+   * Checks if parsing of arguments was successful. It can fail if a required
+   * flag was not present, if wrong number of args was passed to a flag.
+   * @return True if parsing was valid.
+   */
+  public boolean isValid() {
+    return this.isValid;
+  }
+
+
+  /**
+   * Finds all errors that caused parsing to fail. The errors are collected
+   * once, while parsing.
+   * @return An unmodifiable list of errors that caused parsing to fail.
+   */
+  public List<ParsingError> getErrors() {
+    if (this.errors == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(this.errors);
+  }
+
+
+  private void addFlagErrors(int index, List<ParsingError> errors) {
+    SingleFlagParsingError error = this.getCountError(index);
+    if (error == null) {
+      error = this.getPatternError(index);
+    }
+    if (error == null) {
+      error = this.getConversionError(index);
+    }
+    if (error != null) {
+      errors.add(error);
+    }
+  }
+
+
+  /**
+   * @return The position of the first arg no flag consumed that is not
+   *     flag-like, which selects a subcommand, or -1 if there is none.
+   */
+  int getFirstLeftoverPosition() {
+    for (int i = 0; i < this.args.length; i++) {
+      if (this.owners[i] == POSITIONAL || this.owners[i] == REMAINING) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+  // Methods used by ParserSpec and ArgumentTokenizer while parsing.
+
+  /**
+   * Discards the outcome of the previous parse, preparing for |args|.
+   */
+  void reset(String[] args) {
+    this.resetFlags();
+    this.isValid = true;
+    this.errors = null;
+    this.numOfPositional = 0;
+    this.numOfRemaining = 0;
+    this.remainingStart = 0;
+
+    this.args = args;
+    if (this.owners.length < args.length) {
+      this.owners = new int[args.length];
+      this.grouped = new int[args.length];
+    }
+  }
+
+
+  @Override
+  void addFlag(int position, int index) {
+    this.owners[position] = FLAG_NAME;
+    this.setIsSet(index);
+  }
+
+
+  @Override
+  void addValue(int position, int index) {
+    this.owners[position] = index;
+    this.counts[index]++;
+    this.checkValue(index, this.args[position]);
+  }
+
+
+  @Override
+  void addPositional(int position) {
+    int unconsumed = this.spec.getUnconsumedIndex();
+    this.owners[position] = POSITIONAL;
+    this.counts[unconsumed]++;
+    this.numOfPositional++;
+    this.checkValue(unconsumed, this.args[position]);
+  }
+
+
+  @Override
+  void addRemaining(int position, boolean isUnknownFlag) {
+    this.owners[position] = isUnknownFlag ? UNKNOWN_FLAG : REMAINING;
+    this.numOfRemaining++;
+  }
+
+
+  @Override
+  void addAmbiguousFlag(int position) {
+    this.owners[position] = AMBIGUOUS_FLAG;
+    this.numOfRemaining++;
+  }
+
+
+  /**
+   * Gives each flag the args did not set the values |sources| has for it, as
+   * if they followed its name. The values are validated like args, but are
+   * never taken for flags or positional args, so that a value such as -5
+   * keeps its meaning.
+   * @param sources Returns the values of a flag, or null to leave it unset.
+   */
+  void addSourcedValues(Function<Flag, List<String>> sources) {
+    int unconsumed = this.spec.getUnconsumedIndex();
+    List<String> values = new ArrayList<String>();
+    List<Integer> valueOwners = new ArrayList<Integer>();
+    for (int i = 0; i < this.spec.getNumOfFlags(); i++) {
+      if (i == unconsumed || this.isSet[i]) {
+        continue;
+      }
+      List<String> flagValues = sources.apply(this.spec.getFlag(i));
+      if (flagValues == null) {
+        continue;
+      }
+      this.setIsSet(i);
+      for (int j = 0; j < flagValues.size(); j++) {
+        values.add(flagValues.get(j));
+        valueOwners.add(i);
+      }
+    }
+    if (values.isEmpty()) {
+      return;
+    }
+
+    int numOfArgs = this.args.length;
+    String[] args = Arrays.copyOf(this.args, numOfArgs + values.size());
+    for (int i = 0; i < values.size(); i++) {
+      args[numOfArgs + i] = values.get(i);
+    }
+    this.args = args;
+    if (this.owners.length < args.length) {
+      this.owners = Arrays.copyOf(this.owners, args.length);
+      this.grouped = new int[args.length];
+    }
+    for (int i = 0; i < values.size(); i++) {
+      this.addValue(numOfArgs + i, valueOwners.get(i));
+    }
+  }
+
+
+  /**
+   * Completes the parse, grouping the args by the flag that consumed them
+   * and deciding whether the parse was valid.
+   */
+  void finish() {
+    Instrumentation.Span span =
+        Instrumentation.begin(MetricsListener.Phase.VALIDATE);
+    this.group();
+    for (int i = 0; i < this.numOfTouched; i++) {
+      this.checkPatterns(this.touched[i]);
+    }
+
+    // Flags that were not set are valid unless they are required.
+    boolean isValid =
+        this.numOfRemaining == 0 && this.isRequiredFlagSetSatisfied();
+    int[] requiredFlags = this.spec.getRequiredFlags();
+    for (int i = 0; i < requiredFlags.length && isValid; i++) {
+      isValid = this.isSet[requiredFlags[i]];
+    }
+    for (int i = 0; i < this.numOfTouched && isValid; i++) {
+      isValid = this.isSetFlagValid(this.touched[i]);
+    }
+
+    this.isValid = isValid;
+    Instrumentation.end(span);
+    if (!isValid) {
+      span = Instrumentation.begin(MetricsListener.Phase.COLLECT_ERRORS);
+      this.errors = this.collectErrors();
+      Instrumentation.end(span);
+    }
+  }
+
+
+  /**
+   * Checks the grouped args of the flag at |index| against its pattern,
+   * once they are all known, so that many of them are checked in parallel.
+   */
+  private void checkPatterns(int index) {
+    Pattern pattern = this.spec.getPattern(index);
+    int count = this.counts[index];
+    int start = this.groupStart[index];
+    if (pattern == null) {
+      return;
+    } else if (count < ArgumentValidator.PARALLEL_THRESHOLD) {
+      // Without allocating, to keep reused results allocation free.
+      for (int i = 0; i < count; i++) {
+        if (this.checkPattern(index, this.args[this.grouped[start + i]])) {
+          return;
+        }
+      }
+      return;
+    }
+    int position = ArgumentValidator.findFirstViolation(pattern,
+        this.spec.getValidator(index),
+        new ArgsSlice(this.args, this.grouped, start, count));
+    if (position >= 0) {
+      this.patternViolations[index] =
+          this.args[this.grouped[start + position]];
+    }
+  }
+
+
+  /**
+   * Reports the flags set by the finished parse and its errors to
+   * |listener|.
+   */
+  void report(MetricsListener listener) {
+    for (int i = 0; i < this.numOfTouched; i++) {
+      int index = this.touched[i];
+      listener.flagConsumed(this.spec.getFlag(index), this.counts[index]);
+    }
+    if (this.errors != null) {
+      for (int i = 0; i < this.errors.size(); i++) {
+        listener.errorReported(this.errors.get(i));
+      }
+    }
+  }
+
+
+  /**
+   * Marks the finished parse as invalid because of |error|, which was found
+   * before the args could be parsed, such as an unreadable args file.
+   */
+  void addError(ParsingError error) {
+    if (this.errors == null) {
+      this.errors = new ArrayList<ParsingError>();
+    }
+    this.errors.add(0, error);
+    this.isValid = false;
+    MetricsListener listener = Instrumentation.getListener();
+    if (listener != null) {
+      listener.errorReported(error);
+    }
+  }
+
+
+  /**
+   * Collects the errors of an invalid parse, from the state recorded while
+   * parsing.
+   */
+  private List<ParsingError> collectErrors() {
+    // Finding the flags with errors, to report them in registration order.
+    // The grouping cursors are no longer needed and serve as scratch space.
+    int[] invalidFlags = this.cursors;
+    int numOfInvalid = 0;
+    for (int i = 0; i < this.numOfTouched; i++) {
+      if (!this.isSetFlagValid(this.touched[i])) {
+        invalidFlags[numOfInvalid++] = this.touched[i];
+      }
+    }
+    int[] requiredFlags = this.spec.getRequiredFlags();
+    for (int i = 0; i < requiredFlags.length; i++) {
+      if (!this.isSet[requiredFlags[i]]) {
+        invalidFlags[numOfInvalid++] = requiredFlags[i];
+      }
+    }
+    Arrays.sort(invalidFlags, 0, numOfInvalid);
+
+    List<ParsingError> errors = new ArrayList<ParsingError>();
+    for (int i = 0; i < numOfInvalid; i++) {
+      this.addFlagErrors(invalidFlags[i], errors);
+    }
+
+    if (!this.isRequiredFlagSetSatisfied()) {
+      errors.add(new MultiFlagParsingError(
+          MultiFlagParsingError.Type.REQUIRED_FLAG_SET_VIOLATION,
+          this.spec.getRequiredFlagSetList()));
+    }
+
+    int end = this.remainingStart + this.numOfRemaining;
+    for (int i = this.remainingStart; i < end; i++) {
+      int position = this.grouped[i];
+      String arg = this.args[position];
+      if (this.owners[position] == UNKNOWN_FLAG) {
+        errors.add(new SingleFlagParsingError(
+            SingleFlagParsingError.Type.UNKNOWN_FLAG, arg,
+            this.spec.suggestNames(arg, Flag.getNameOffset(arg))));
+      } else if (this.owners[position] == AMBIGUOUS_FLAG) {
+        int nameOffset = Flag.getNameOffset(arg);
+        errors.add(new SingleFlagParsingError(
+            SingleFlagParsingError.Type.AMBIGUOUS_FLAG, arg,
+            this.spec.getNamesWithPrefix(arg, nameOffset)));
+      }
+    }
+    return errors;
+  }
+
+
+  /**
+   * Groups the args by the flag that consumed them. Args the unconsumed flag
+   * received explicitly precede the ones it received as leftovers.
+   */
+  private void group() {
+    int position = 0;
+    for (int i = 0; i < this.numOfTouched; i++) {
+      int index = this.touched[i];
+      this.groupStart[index] = position;
+      this.cursors[index] = position;
+      position += this.counts[index];
+    }
+    this.remainingStart = position;
+
+    int remainingCursor = this.remainingStart;
+    int unconsumed = this.spec.getUnconsumedIndex();
+    int positionalCursor = this.groupStart[unconsumed] +
+        this.counts[unconsumed] - this.numOfPositional;
+    for (int i = 0; i < this.args.length; i++) {
+      int owner = this.owners[i];
+      if (owner >= 0) {
+        this.grouped[this.cursors[owner]++] = i;
+      } else if (owner == POSITIONAL) {
+        this.grouped[positionalCursor++] = i;
+      } else if (owner != FLAG_NAME) {
+        this.grouped[remainingCursor++] = i;
+      }
+    }
+  }
+
+
+  /**
+   * A read-only view of some args, selected through an array of indices.
+   */
+  private static final class ArgsSlice extends AbstractList<String>
+      implements RandomAccess {
+
+    private final String[] args;
+    private final int[] indices;
+    private final int start;
+    private final int size;
+
+
+    ArgsSlice(String[] args, int[] indices, int start, int size) {
+      this.args = args;
+      this.indices = indices;
+      this.start = start;
+      this.size = size;
+    }
+
+
+    @Override
+    public String get(int index) {
+      if (index < 0 || index >= this.size) {
+        throw new IndexOutOfBoundsException("Index: " + index);
+      }
+      return this.args[this.indices[this.start + index]];
+    }
+
+
+    @Override
+    public int size() {
+      return this.size;
+    }
+
+  }  // class ArgsSlice
+
+}  // class ParseResult
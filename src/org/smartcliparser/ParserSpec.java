@@ -0,0 +1,545 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable snapshot of a set of flags, compiled for parsing. A spec holds
+ * no parsing state, so a single instance can be shared by any number of
+ * threads, each call to parse() returning its own ParseResult.
+ *
+ * The flags are only used as keys and for error reporting. Their
+ * configuration is copied when the spec is compiled, so later changes to them
+ * are not reflected.
+ */
+public final class ParserSpec {
+
+  /**
+   * All flags, in registration order.
+   */
+  private final Flag[] flags;
+
+  /**
+   * The index of the flag that receives all args no other flag consumed.
+   */
+  private final int unconsumedIndex;
+
+  /**
+   * A mapping of flag names to indices within |flags|, or null if names are
+   * resolved by |resolver|.
+   */
+  private final FlagNameIndex nameIndex;
+
+  /**
+   * Resolves flag names in place of |nameIndex|, or null.
+   */
+  private final FlagNameResolver resolver;
+
+  /**
+   * If true, unique prefixes of flag names are accepted as abbreviations.
+   */
+  private final boolean allowAbbreviations;
+
+  /**
+   * A mapping of flags to indices within |flags|, by identity, or null if
+   * names are resolved by |resolver|, whose callers know the indices.
+   */
+  private final Map<Flag, Integer> flagIndex;
+
+  private final int[] numOfArgsMin;
+  private final int[] numOfArgsMax;
+  private final boolean[] isRequired;
+  private final boolean[] forceConsume;
+  private final Pattern[] patterns;
+
+  /**
+   * For each flag with a pattern of a simple shape, its compiled validator,
+   * or null.
+   */
+  private final ArgumentValidator[] validators;
+
+  /**
+   * For each flag, the flag itself if it converts its args, or null.
+   */
+  private final TypedFlag[] typedFlags;
+
+  /**
+   * The indices of all required flags.
+   */
+  private final int[] requiredFlags;
+
+  /**
+   * The indices of the flags of the required flag set, or null if no such set
+   * exists.
+   */
+  private final int[] requiredFlagSet;
+
+  /**
+   * The required flag set as passed in, used for error reporting.
+   */
+  private final List<Flag> requiredFlagSetList;
+
+  /**
+   * A tree of all flag names for suggesting the ones closest to an unknown
+   * flag, built when first needed. Threads racing to build it build equal
+   * trees.
+   */
+  private volatile FlagNameSuggester suggester = null;
+
+
+  /**
+   * Compiles a spec.
+   * @param flags All flags, including |unconsumed|.
+   * @param unconsumed The flag that receives all args no other flag consumed.
+   * @param requiredFlagSet A set of flags of which at least one has to be set,
+   *     or null.
+   */
+  public ParserSpec(
+      Collection<Flag> flags, Flag unconsumed, List<Flag> requiredFlagSet) {
+    this(flags, unconsumed, requiredFlagSet, false);
+  }
+
+
+  /**
+   * Compiles a spec.
+   * @param flags All flags, including |unconsumed|.
+   * @param unconsumed The flag that receives all args no other flag consumed.
+   * @param requiredFlagSet A set of flags of which at least one has to be set,
+   *     or null.
+   * @param allowAbbreviations If true, a unique prefix of a flag name (such
+   *     as --inp for --input) is accepted in place of the name.
+   */
+  public ParserSpec(Collection<Flag> flags, Flag unconsumed,
+      List<Flag> requiredFlagSet, boolean allowAbbreviations) {
+    this(flags, unconsumed, requiredFlagSet, allowAbbreviations, null);
+  }
+
+
+  /**
+   * Compiles a spec, reusing an index of the flag names when one is already
+   * available.
+   * @param nameIndex A mapping of the names of |flags| to their position in
+   *     iteration order, or null. It is not modified.
+   */
+  ParserSpec(Collection<Flag> flags, Flag unconsumed,
+      List<Flag> requiredFlagSet, boolean allowAbbreviations,
+      FlagNameIndex nameIndex) {
+    this(flags, unconsumed, requiredFlagSet, allowAbbreviations, nameIndex,
+        null);
+  }
+
+
+  /**
+   * Compiles a spec whose flag names are resolved by |resolver|, without
+   * building an index of them or of the flags. Abbreviations are not
+   * accepted. Since finding a flag then scans all of them, results are best
+   * read by the index of each flag.
+   * @param resolver Resolves names to the position of the flag in the
+   *     iteration order of |flags|. It must be consistent with the names of
+   *     the flags, which are still used for reporting errors.
+   */
+  public ParserSpec(Collection<Flag> flags, Flag unconsumed,
+      List<Flag> requiredFlagSet, FlagNameResolver resolver) {
+    this(flags, unconsumed, requiredFlagSet, false, null, resolver);
+  }
+
+
+  private ParserSpec(Collection<Flag> flags, Flag unconsumed,
+      List<Flag> requiredFlagSet, boolean allowAbbreviations,
+      FlagNameIndex nameIndex, FlagNameResolver resolver) {
+    int size = flags.size();
+    this.flags = flags.toArray(new Flag[size]);
+    this.allowAbbreviations = allowAbbreviations;
+    this.resolver = resolver;
+    if (resolver != null) {
+      this.nameIndex = null;
+    } else {
+      this.nameIndex = nameIndex == null ?
+          new FlagNameIndex() : new FlagNameIndex(nameIndex);
+    }
+    this.flagIndex =
+        resolver != null ? null : new IdentityHashMap<Flag, Integer>();
+    this.numOfArgsMin = new int[size];
+    this.numOfArgsMax = new int[size];
+    this.isRequired = new boolean[size];
+    this.forceConsume = new boolean[size];
+    this.patterns = new Pattern[size];
+    this.validators = new ArgumentValidator[size];
+    this.typedFlags = new TypedFlag[size];
+
+    for (int i = 0; i < size; i++) {
+      Flag flag = this.flags[i];
+      if (this.flagIndex != null) {
+        this.flagIndex.put(flag, i);
+      }
+      if (nameIndex == null && resolver == null) {
+        Iterator<String> it = flag.getNames().iterator();
+        while (it.hasNext()) {
+          this.nameIndex.add(it.next(), i);
+        }
+      }
+      this.numOfArgsMin[i] = flag.getNumOfArgsMin();
+      this.numOfArgsMax[i] = flag.getNumOfArgsMax();
+      this.isRequired[i] = flag.isRequired();
+      this.forceConsume[i] = flag.isForceConsume();
+      this.patterns[i] = flag.pattern;
+      if (flag.pattern != null) {
+        this.validators[i] = ArgumentValidator.compile(flag.pattern);
+      }
+      if (flag instanceof TypedFlag) {
+        this.typedFlags[i] = (TypedFlag) flag;
+      }
+    }
+
+    int numOfRequired = 0;
+    for (int i = 0; i < size; i++) {
+      numOfRequired += this.isRequired[i] ? 1 : 0;
+    }
+    this.requiredFlags = new int[numOfRequired];
+    for (int i = 0, j = 0; i < size; i++) {
+      if (this.isRequired[i]) {
+        this.requiredFlags[j++] = i;
+      }
+    }
+
+    int index = this.findFlag(unconsumed);
+    if (index < 0) {
+      throw new IllegalArgumentException(
+          "The unconsumed flag must be one of the flags.");
+    }
+    this.unconsumedIndex = index;
+
+    if (requiredFlagSet == null) {
+      this.requiredFlagSet = null;
+      this.requiredFlagSetList = null;
+    } else {
+      this.requiredFlagSet = new int[requiredFlagSet.size()];
+      for (int i = 0; i < this.requiredFlagSet.length; i++) {
+        this.requiredFlagSet[i] = this.indexOf(requiredFlagSet.get(i));
+      }
+      this.requiredFlagSetList = Collections.unmodifiableList(
+          new ArrayList<Flag>(requiredFlagSet));
+    }
+  }
+
+
+  /**
+   * Parses |args|. The array must not be modified while the result is in use.
+   * @param args The arguments to parse.
+   * @return The outcome of parsing, independent of any other parse.
+   */
+  public ParseResult parse(String[] args) {
+    return this.parse(args, this.newResult());
+  }
+
+
+  /**
+   * Parses |args| into a result that is reused. Once the buffers of |result|
+   * fit the input, parsing allocates nothing.
+   * @param args The arguments to parse. The array must not be modified while
+   *     the result is in use.
+   * @param result A result created by newResult() of this spec. The outcome
+   *     of any previous parse stored in it is discarded.
+   * @return |result|.
+   */
+  public ParseResult parse(String[] args, ParseResult result) {
+    if (result.getSpec() != this) {
+      throw new IllegalArgumentException(
+          "The result was created by a different spec.");
+    }
+    return this.parse(args, result, null);
+  }
+
+
+  /**
+   * Parses |args|, then gives each flag they do not set the values |sources|
+   * has for it, as if they followed its name.
+   * @param sources Returns the values of a flag, or null to leave it unset.
+   * @see ParseResult#addSourcedValues
+   */
+  ParseResult parse(String[] args, Function<Flag, List<String>> sources) {
+    return this.parse(args, this.newResult(), sources);
+  }
+
+
+  private ParseResult parse(String[] args, ParseResult result,
+      Function<Flag, List<String>> sources) {
+    this.tokenize(args, result);
+    this.finish(result, sources);
+    return result;
+  }
+
+
+  /**
+   * Starts parsing |args| into |result|, classifying every arg. The parse is
+   * completed by finish, so that callers can see how the args were
+   * classified before they are validated.
+   */
+  void tokenize(String[] args, ParseResult result) {
+    result.reset(args);
+    Instrumentation.Span span =
+        Instrumentation.begin(MetricsListener.Phase.PARSE);
+    ArgumentTokenizer.tokenize(this, args, result);
+    Instrumentation.end(span);
+  }
+
+
+  /**
+   * Completes a parse started by tokenize, after giving each flag the args
+   * do not set the values |sources| has for it.
+   * @param sources Returns the values of a flag, or null to leave it unset.
+   *     May be null.
+   */
+  void finish(ParseResult result, Function<Flag, List<String>> sources) {
+    if (sources != null) {
+      result.addSourcedValues(sources);
+    }
+    result.finish();
+    MetricsListener listener = Instrumentation.getListener();
+    if (listener != null) {
+      result.report(listener);
+    }
+  }
+
+
+  /**
+   * Parses |args| without storing the outcome, passing each arg to
+   * |listener| in order as soon as it is classified. Only a count of args
+   * per flag is kept, so the values can be processed while they are parsed.
+   * @return True if the parse was valid, in which case no error was
+   *     reported to |listener|.
+   */
+  public boolean parse(String[] args, ParseListener listener) {
+    StreamingParse parse = new StreamingParse(this, args, listener);
+    Instrumentation.Span span =
+        Instrumentation.begin(MetricsListener.Phase.PARSE);
+    ArgumentTokenizer.tokenize(this, args, parse);
+    Instrumentation.end(span);
+    span = Instrumentation.begin(MetricsListener.Phase.VALIDATE);
+    boolean isValid = parse.finish();
+    Instrumentation.end(span);
+    return isValid;
+  }
+
+
+  /**
+   * Creates an empty result, to be reused across calls to
+   * parse(String[], ParseResult) by a single thread.
+   */
+  public ParseResult newResult() {
+    return new ParseResult(this);
+  }
+
+
+  /**
+   * @return The number of flags in this spec.
+   */
+  public int getNumOfFlags() {
+    return this.flags.length;
+  }
+
+
+  /**
+   * @return True if the number of args or the pattern of a flag changed since
+   *     this spec was compiled, so that it no longer describes the flags.
+   */
+  boolean isStale() {
+    for (int i = 0; i < this.flags.length; i++) {
+      Flag flag = this.flags[i];
+      if (this.numOfArgsMin[i] != flag.getNumOfArgsMin() ||
+          this.numOfArgsMax[i] != flag.getNumOfArgsMax() ||
+          this.patterns[i] != flag.pattern) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * @param index The index of a flag, in registration order.
+   * @return The flag at |index|.
+   */
+  public Flag getFlag(int index) {
+    return this.flags[index];
+  }
+
+
+  /**
+   * @return The flag that receives all args no other flag consumed.
+   */
+  public Flag getUnconsumedFlag() {
+    return this.flags[this.unconsumedIndex];
+  }
+
+
+  /**
+   * @param flag A flag of this spec.
+   * @return The index of |flag|, in registration order.
+   * @throws IllegalArgumentException If |flag| is not part of this spec.
+   */
+  public int indexOf(Flag flag) {
+    int index = this.findFlag(flag);
+    if (index < 0) {
+      throw new IllegalArgumentException("Unknown flag: " + flag.getNames());
+    }
+    return index;
+  }
+
+
+  /**
+   * @return The index of |flag|, or -1 if it is not part of this spec.
+   */
+  private int findFlag(Flag flag) {
+    if (this.flagIndex != null) {
+      Integer index = this.flagIndex.get(flag);
+      return index == null ? -1 : index;
+    }
+    for (int i = 0; i < this.flags.length; i++) {
+      if (this.flags[i] == flag) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+  /**
+   * @return True if unique prefixes of flag names are accepted.
+   */
+  public boolean getAllowAbbreviations() {
+    return this.allowAbbreviations;
+  }
+
+
+  /**
+   * Resolves the name of a flag-like arg, honoring abbreviations if allowed.
+   * @param arg A flag-like arg.
+   * @param nameOffset The position the name starts at within |arg|.
+   * @return The index of the flag, FlagNameIndex.NOT_FOUND or
+   *     FlagNameIndex.AMBIGUOUS.
+   */
+  int resolve(String arg, int nameOffset) {
+    if (this.resolver != null) {
+      return this.resolver.resolve(arg, nameOffset);
+    }
+    return this.nameIndex.resolve(
+        arg, nameOffset, arg.length(), this.allowAbbreviations);
+  }
+
+
+  /**
+   * @return The sorted names of all flags starting with the name of |arg|.
+   */
+  List<String> getNamesWithPrefix(String arg, int nameOffset) {
+    if (this.nameIndex == null) {
+      // Only abbreviations are ambiguous, which a resolver does not accept.
+      return Collections.<String>emptyList();
+    }
+    return this.nameIndex.getNamesWithPrefix(arg, nameOffset, arg.length());
+  }
+
+
+  /**
+   * @return The names of the flags closest to the name of the unknown
+   *     flag-like |arg|, closest first, or an empty list if the name is too
+   *     short to be taken for a misspelling.
+   */
+  List<String> suggestNames(String arg, int nameOffset) {
+    int maxDistance =
+        FlagNameSuggester.getMaxDistance(arg.length() - nameOffset);
+    if (maxDistance == 0) {
+      return Collections.<String>emptyList();
+    }
+    FlagNameSuggester suggester = this.suggester;
+    if (suggester == null) {
+      List<String> names = new ArrayList<String>();
+      for (int i = 0; i < this.flags.length; i++) {
+        // The unconsumed flag is not meant to be given by name.
+        if (i != this.unconsumedIndex) {
+          names.addAll(this.flags[i].getNames());
+        }
+      }
+      suggester = new FlagNameSuggester(names);
+      this.suggester = suggester;
+    }
+    return suggester.suggest(arg, nameOffset, arg.length(), maxDistance);
+  }
+
+
+  int getUnconsumedIndex() {
+    return this.unconsumedIndex;
+  }
+
+
+  int getNumOfArgsMin(int index) {
+    return this.numOfArgsMin[index];
+  }
+
+
+  int getNumOfArgsMax(int index) {
+    return this.numOfArgsMax[index];
+  }
+
+
+  boolean isRequired(int index) {
+    return this.isRequired[index];
+  }
+
+
+  boolean isForceConsume(int index) {
+    return this.forceConsume[index];
+  }
+
+
+  Pattern getPattern(int index) {
+    return this.patterns[index];
+  }
+
+
+  ArgumentValidator getValidator(int index) {
+    return this.validators[index];
+  }
+
+
+  TypedFlag getTypedFlag(int index) {
+    return this.typedFlags[index];
+  }
+
+
+  int[] getRequiredFlags() {
+    return this.requiredFlags;
+  }
+
+
+  int[] getRequiredFlagSet() {
+    return this.requiredFlagSet;
+  }
+
+
+  List<Flag> getRequiredFlagSetList() {
+    return this.requiredFlagSetList;
+  }
+
+}  // class ParserSpec
@@ -0,0 +1,76 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * A flag whose args are file system paths. The paths do not need to exist.
+ */
+public class PathFlag extends TypedFlag {
+
+  private Path[] values = new Path[0];
+
+
+  public PathFlag(String[] names, boolean isRequired, int numOfArgsMin,
+      int numOfArgsMax) {
+    super(names, isRequired, numOfArgsMin, numOfArgsMax);
+  }
+
+
+  @Override
+  protected Object newValues(int size) {
+    return new Path[size];
+  }
+
+
+  @Override
+  protected SingleFlagParsingError.Type convert(String arg, Object values,
+      int position) {
+    try {
+      ((Path[]) values)[position] = Paths.get(arg);
+      return null;
+    } catch (InvalidPathException e) {
+      return SingleFlagParsingError.Type.INVALID_PATH;
+    }
+  }
+
+
+  @Override
+  protected void setValues(Object values) {
+    this.values = (Path[]) values;
+  }
+
+
+  /**
+   * @return The value at |position|.
+   */
+  public Path getValue(int position) {
+    this.ensureConverted();
+    return this.values[position];
+  }
+
+
+  /**
+   * @return All values. The array is shared and should not be modified.
+   */
+  public Path[] getValues() {
+    this.ensureConverted();
+    return this.values;
+  }
+
+}  // class PathFlag
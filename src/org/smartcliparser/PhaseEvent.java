@@ -0,0 +1,37 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event timing a phase of parsing or running a
+ * program.
+ * @see MetricsListener.Phase
+ */
+@Name("org.smartcliparser.Phase")
+@Label("Parse Phase")
+@Category("Smart CLI Parser")
+@Description("A phase of parsing or running a command line program.")
+final class PhaseEvent extends Event {
+
+  @Label("Phase")
+  String phase;
+
+}  // class PhaseEvent
@@ -0,0 +1,414 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.lang.reflect.Constructor;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A long-lived process hosting command line programs, so that invoking them
+ * through a DaemonClient does not pay for starting a JVM, loading classes and
+ * warming up the JIT each time. Clients connect over a Unix domain socket,
+ * which requires Java 16 or later.
+ *
+ * Each invocation runs on its own thread, on a new instance of the program,
+ * so no parsing state is shared. Its System.in, System.out and System.err are
+ * the ones of the client, and so are the working directory and environment
+ * returned by CommandLineProgram. The process itself keeps its own working
+ * directory, so programs run this way should resolve relative paths against
+ * CommandLineProgram.getWorkingDirectory(), and must not call System.exit.
+ *
+ * IMPORTANT: System.out and System.err are only the ones of the client on
+ * the thread running the program. Anything printed through them by other
+ * threads, such as the ones of a parallel stream or of the common fork/join
+ * pool, goes to the daemon's own stdio. Such work must print through
+ * CommandLineProgram.getStdout() and getStderr() instead.
+ *
+ * Usage: ProgramDaemon socket name=class...
+ * where each class is a CommandLineProgram with a public no-arg constructor.
+ */
+public final class ProgramDaemon implements Closeable {
+
+  /**
+   * The size of the pipe buffering the stdin of an invocation.
+   */
+  private static final int STDIN_BUFFER_SIZE = 64 * 1024;
+
+  private final Path socketPath;
+
+  /**
+   * A mapping of program names to the factories creating their instances.
+   */
+  private final Map<String, Supplier<? extends CommandLineProgram>> programs =
+      new ConcurrentHashMap<String, Supplier<? extends CommandLineProgram>>();
+
+  private ServerSocketChannel server = null;
+  private ExecutorService executor = null;
+  private Thread acceptThread = null;
+
+
+  /**
+   * @param socketPath The path of the socket to listen on.
+   */
+  public ProgramDaemon(Path socketPath) {
+    this.socketPath = socketPath;
+  }
+
+
+  /**
+   * Registers a program, to be invoked as |name|.
+   * @param factory Creates a new instance of the program for each
+   *     invocation, without parsing any args.
+   */
+  public void register(
+      String name, Supplier<? extends CommandLineProgram> factory) {
+    this.programs.put(name, factory);
+  }
+
+
+  /**
+   * Starts listening for invocations on a background thread.
+   * @throws IOException If the socket can not be created, or another daemon
+   *     is already listening on it.
+   */
+  public synchronized void start() throws IOException {
+    if (this.server != null) {
+      throw new IllegalStateException("The daemon is already started.");
+    }
+    UnixDomainSocketAddress address =
+        UnixDomainSocketAddress.of(this.socketPath);
+    if (Files.exists(this.socketPath)) {
+      boolean isListening;
+      try {
+        SocketChannel.open(address).close();
+        isListening = true;
+      } catch (IOException e) {
+        isListening = false;
+      }
+      if (isListening) {
+        throw new IOException(
+            "A daemon is already listening on " + this.socketPath);
+      }
+      // A socket left behind by a daemon that died is replaced.
+      Files.delete(this.socketPath);
+    }
+    this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    this.server.bind(address);
+    // Like Executors.newCachedThreadPool, restoring the stdio of this
+    // process only once every invocation has finished.
+    this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L,
+        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new ThreadFactory() {
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ProgramDaemon invocation");
+            thread.setDaemon(true);
+            return thread;
+          }
+        }) {
+      @Override
+      protected void terminated() {
+        StdioRouter.uninstall();
+      }
+    };
+    StdioRouter.install();
+
+    final ServerSocketChannel server = this.server;
+    final ExecutorService executor = this.executor;
+    this.acceptThread = new Thread(new Runnable() {
+      public void run() {
+        while (true) {
+          final SocketChannel channel;
+          try {
+            channel = server.accept();
+          } catch (IOException e) {
+            // The daemon was closed.
+            return;
+          }
+          try {
+            executor.execute(new Runnable() {
+              public void run() {
+                ProgramDaemon.this.serve(channel);
+              }
+            });
+          } catch (RejectedExecutionException e) {
+            // The daemon was closed right after accepting.
+            try {
+              channel.close();
+            } catch (IOException closeException) {
+              // Nothing left to release.
+            }
+            return;
+          }
+        }
+      }
+    }, "ProgramDaemon " + this.socketPath);
+    this.acceptThread.start();
+  }
+
+
+  /**
+   * Waits until the daemon is closed.
+   */
+  public void join() throws InterruptedException {
+    Thread acceptThread;
+    synchronized (this) {
+      acceptThread = this.acceptThread;
+    }
+    if (acceptThread != null) {
+      acceptThread.join();
+    }
+  }
+
+
+  /**
+   * Stops accepting invocations and removes the socket. Running invocations
+   * are not interrupted, and keep the stdio of their clients until they
+   * finish, after which the stdio of this process is restored.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (this.server == null) {
+      return;
+    }
+    try {
+      this.server.close();
+      Files.deleteIfExists(this.socketPath);
+    } finally {
+      this.server = null;
+      this.executor.shutdown();
+    }
+  }
+
+
+  /**
+   * Reads an invocation from |channel|, runs it and reports its exit status.
+   */
+  private void serve(SocketChannel channel) {
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+          DaemonProtocol.newInputStream(channel)));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          DaemonProtocol.newOutputStream(channel)));
+      if (in.readInt() != DaemonProtocol.MAGIC ||
+          in.readInt() != DaemonProtocol.VERSION) {
+        return;
+      }
+      String name;
+      Path workingDirectory;
+      String[] args;
+      Map<String, String> environment = new HashMap<String, String>();
+      DaemonProtocol.RequestReader request =
+          new DaemonProtocol.RequestReader(in);
+      try {
+        name = request.readString();
+        workingDirectory = Paths.get(request.readString());
+        args = new String[request.readCount()];
+        for (int i = 0; i < args.length; i++) {
+          args[i] = request.readString();
+        }
+        int numOfVariables = request.readCount();
+        for (int i = 0; i < numOfVariables; i++) {
+          environment.put(request.readString(), request.readString());
+        }
+      } catch (DaemonProtocol.RequestTooLargeException e) {
+        byte[] message = (e.getMessage() + "\n").getBytes(
+            StandardCharsets.UTF_8);
+        DaemonProtocol.writeFrame(
+            out, DaemonProtocol.STDERR, message, 0, message.length);
+        ProgramDaemon.writeExit(
+            out, DaemonProtocol.REQUEST_TOO_LARGE_STATUS);
+        return;
+      }
+
+      PipedInputStream stdin = new PipedInputStream(STDIN_BUFFER_SIZE);
+      PipedOutputStream stdinPipe = new PipedOutputStream(stdin);
+      StdinPump pump = new StdinPump(in, stdinPipe);
+      try {
+        this.executor.execute(pump);
+      } catch (RejectedExecutionException e) {
+        // The daemon is closing, but this invocation was accepted before.
+        Thread thread = new Thread(pump, "ProgramDaemon stdin");
+        thread.setDaemon(true);
+        thread.start();
+      }
+      int status;
+      StdioRouter.route(stdin,
+          new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDOUT),
+          new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDERR));
+      try {
+        status = this.invoke(
+            name, workingDirectory, environment, args);
+      } finally {
+        StdioRouter.unroute();
+        // Unblocks the pump if the program did not read all of stdin.
+        stdin.close();
+      }
+      ProgramDaemon.writeExit(out, status);
+    } catch (IOException e) {
+      // The client went away, there is no one left to report to.
+    } finally {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // Nothing left to release.
+      }
+    }
+  }
+
+
+  private static void writeExit(DataOutputStream out, int status)
+      throws IOException {
+    synchronized (out) {
+      out.writeByte(DaemonProtocol.EXIT);
+      out.writeInt(4);
+      out.writeInt(status);
+      out.flush();
+    }
+  }
+
+
+  /**
+   * Runs the program registered as |name| on the current thread.
+   * @return The exit status of the program.
+   */
+  private int invoke(String name, Path workingDirectory,
+      Map<String, String> environment, String[] args) {
+    Supplier<? extends CommandLineProgram> factory = this.programs.get(name);
+    if (factory == null) {
+      System.err.println("Unknown program: " + name);
+      return DaemonProtocol.UNKNOWN_PROGRAM_STATUS;
+    }
+    try {
+      CommandLineProgram program = factory.get();
+      program.setInvocationContext(
+          workingDirectory, Collections.unmodifiableMap(environment));
+      return program.execute(args);
+    } catch (RuntimeException e) {
+      e.printStackTrace();
+      return 1;
+    } catch (Error e) {
+      e.printStackTrace();
+      return 1;
+    }
+  }
+
+
+  /**
+   * Copies the stdin frames of a client into a pipe, until the client ends
+   * its stdin.
+   */
+  private static final class StdinPump implements Runnable {
+
+    private final DataInputStream in;
+    private final PipedOutputStream pipe;
+
+
+    StdinPump(DataInputStream in, PipedOutputStream pipe) {
+      this.in = in;
+      this.pipe = pipe;
+    }
+
+
+    public void run() {
+      try {
+        byte[] buffer = new byte[8192];
+        while (true) {
+          if (this.in.readByte() != DaemonProtocol.STDIN) {
+            return;
+          }
+          int length = DaemonProtocol.readFrameLength(this.in);
+          if (length == 0) {
+            return;
+          }
+          while (length > 0) {
+            int chunk = Math.min(length, buffer.length);
+            this.in.readFully(buffer, 0, chunk);
+            this.pipe.write(buffer, 0, chunk);
+            length -= chunk;
+          }
+          // Writing alone does not wake a reader waiting for the pipe.
+          this.pipe.flush();
+        }
+      } catch (IOException e) {
+        // Either side went away, stdin ends here.
+      } finally {
+        try {
+          this.pipe.close();
+        } catch (IOException e) {
+          // The program no longer reads stdin.
+        }
+      }
+    }
+
+  }  // class StdinPump
+
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("Usage: ProgramDaemon socket name=class...");
+      System.exit(2);
+    }
+    ProgramDaemon daemon = new ProgramDaemon(Paths.get(args[0]));
+    for (int i = 1; i < args.length; i++) {
+      int separator = args[i].indexOf('=');
+      if (separator <= 0) {
+        System.err.println("Invalid program: " + args[i]);
+        System.exit(2);
+      }
+      final Constructor<? extends CommandLineProgram> constructor =
+          Class.forName(args[i].substring(separator + 1))
+              .asSubclass(CommandLineProgram.class).getConstructor();
+      daemon.register(args[i].substring(0, separator),
+          new Supplier<CommandLineProgram>() {
+            public CommandLineProgram get() {
+              try {
+                return constructor.newInstance();
+              } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+              }
+            }
+          });
+    }
+    daemon.start();
+    daemon.join();
+  }
+
+}  // class ProgramDaemon
@@ -14,14 +14,23 @@
 */
 package org.smartcliparser;
 
+import java.util.Collections;
+import java.util.List;
+
 public class SingleFlagParsingError implements ParsingError {
 
   /**
    * Types of errors that can be related to a single flag.
    */
   public static enum Type {
+    AMBIGUOUS_FLAG,
+    INVALID_DURATION,
+    INVALID_ENUM_CONSTANT,
+    INVALID_PATH,
     MAX_NUMBER_OF_ARGS_VIOLATION,
     MIN_NUMBER_OF_ARGS_VIOLATION,
+    NOT_A_NUMBER,
+    NOT_AN_INTEGER,
     PATTERN_VIOLATION,
     REQUIRED_FLAG_NOT_SET,
     UNKNOWN_FLAG
@@ -37,17 +46,57 @@ public class SingleFlagParsingError implements ParsingError {
    */
   public Type type;
 
+  /**
+   * Names of registered flags related to the error, such as the flags an
+   * ambiguous abbreviation could refer to, or the closest names to an
+   * unknown flag.
+   */
+  public List<String> candidates = Collections.emptyList();
+
+  /**
+   * The offending argument, for errors caused by a single argument, or null.
+   */
+  public String value = null;
+
+  /**
+   * The number of arguments the flag had consumed when the error occurred.
+   */
+  private int numOfArgs;
+
 
   public SingleFlagParsingError(SingleFlagParsingError.Type type, Flag flag) {
+    this(type, flag, flag.args.size());
+  }
+
+
+  public SingleFlagParsingError(
+      SingleFlagParsingError.Type type, Flag flag, int numOfArgs) {
     this.flag = flag;
     this.type = type;
+    this.numOfArgs = numOfArgs;
+  }
+
+
+  public SingleFlagParsingError(SingleFlagParsingError.Type type, Flag flag,
+      int numOfArgs, String value) {
+    this(type, flag, numOfArgs);
+    this.value = value;
+    if (flag instanceof TypedFlag) {
+      this.candidates = ((TypedFlag) flag).getAllowedValues();
+    }
   }
 
 
   public SingleFlagParsingError(
       SingleFlagParsingError.Type type, String flagName) {
-    this.flag = new Flag(flagName);
-    this.type = type;
+    this(type, new Flag(flagName));
+  }
+
+
+  public SingleFlagParsingError(SingleFlagParsingError.Type type,
+      String flagName, List<String> candidates) {
+    this(type, flagName);
+    this.candidates = candidates;
   }
 
 
@@ -62,18 +111,51 @@ public class SingleFlagParsingError implements ParsingError {
   public String getDescription() {
     if (this.type == Type.MIN_NUMBER_OF_ARGS_VIOLATION) {
       return "Expected at least " + flag.getNumOfArgsMin() +
-          " arguments, but got " + flag.args.size();
+          " arguments, but got " + this.numOfArgs;
     } else if (this.type == Type.MAX_NUMBER_OF_ARGS_VIOLATION) {
       return "Expected at most " + flag.getNumOfArgsMax() +
-          " arguments, but got " + flag.args.size();
+          " arguments, but got " + this.numOfArgs;
     } else if (this.type == Type.PATTERN_VIOLATION) {
-      return "Arguments should follow the pattern " + flag.pattern + ".";
+      String description =
+          "Arguments should follow the pattern " + flag.pattern + ".";
+      return this.value == null ? description :
+          description + " Argument " + this.value + " does not.";
     } else if (this.type == Type.REQUIRED_FLAG_NOT_SET) {
       return "Required flag " + flag.getNames().get(0) + " was not set.";
     } else if (this.type == Type.UNKNOWN_FLAG) {
-      return "Flag " + flag.getNames().get(0) + " does not exist.";
+      String description =
+          "Flag " + flag.getNames().get(0) + " does not exist.";
+      return this.candidates.isEmpty() ? description :
+          description + " Did you mean " + join(this.candidates) + "?";
+    } else if (this.type == Type.NOT_AN_INTEGER) {
+      return "Value " + this.value + " is not a valid integer.";
+    } else if (this.type == Type.NOT_A_NUMBER) {
+      return "Value " + this.value + " is not a number.";
+    } else if (this.type == Type.INVALID_PATH) {
+      return "Value " + this.value + " is not a valid path.";
+    } else if (this.type == Type.INVALID_ENUM_CONSTANT) {
+      return "Value " + this.value + " is not one of " + this.candidates +
+          ".";
+    } else if (this.type == Type.INVALID_DURATION) {
+      return "Value " + this.value + " is not a duration, such as 90s or " +
+          "1h30m.";
+    } else if (this.type == Type.AMBIGUOUS_FLAG) {
+      return "Flag " + flag.getNames().get(0) + " is ambiguous, it could " +
+          "be any of " + this.candidates + ".";
     }
     return "";
   }
 
+
+  /**
+   * @return |names| separated by " or ", such as "input or output".
+   */
+  private static String join(List<String> names) {
+    StringBuilder builder = new StringBuilder(names.get(0));
+    for (int i = 1; i < names.size(); i++) {
+      builder.append(" or ").append(names.get(i));
+    }
+    return builder.toString();
+  }
+
 }  // class SingleFlagParsingError
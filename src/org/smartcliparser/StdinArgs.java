@@ -0,0 +1,468 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The positional args of a program read from stdin, as xargs reads them:
+ * one per line, empty lines aside, or ending at a NUL when NUL separated.
+ * They are decoded one at a time as they are consumed, so any number of them
+ * can be streamed through a program.
+ *
+ * Stdin is read ahead on a background thread, so that the process feeding
+ * it is not blocked by a slow consumer. What is read ahead is kept in
+ * memory up to a budget, and spilled to a temporary file beyond it. The
+ * reader only blocks, which in turn blocks the process feeding stdin, once
+ * the spilled bytes not consumed yet reach another budget.
+ *
+ * The number of args is checked against the arity of a flag standing for
+ * them, once all of them are consumed or skipped by finish. Args beyond the
+ * maximum are not returned.
+ */
+public final class StdinArgs implements Iterator<String>, Closeable {
+
+  static final int CHUNK_SIZE = 64 * 1024;
+  static final long DEFAULT_MAX_IN_MEMORY = 8L * 1024 * 1024;
+  static final long DEFAULT_MAX_SPILLED = 1024L * 1024 * 1024;
+
+  /**
+   * Returned by readRecord for a record that is skipped.
+   */
+  private static final String SKIPPED = new String("");
+
+  private final Flag flag;
+  private final byte separator;
+  private final long maxInMemory;
+  private final long maxSpilled;
+
+  // State shared with the reader thread, guarded by this.
+
+  /**
+   * The chunks read ahead, in order.
+   */
+  private final ArrayDeque<Chunk> chunks = new ArrayDeque<Chunk>();
+  private long numOfBytesInMemory = 0;
+  private long numOfBytesSpilled = 0;
+  private FileChannel spillFile = null;
+  private long spillFileSize = 0;
+  private boolean isEndOfStream = false;
+  private IOException error = null;
+  private boolean isClosed = false;
+
+  // State of the consumer.
+
+  /**
+   * The chunk being consumed.
+   */
+  private byte[] bytes = new byte[0];
+  private int position = 0;
+  private int limit = 0;
+  private byte[] spillBuffer = null;
+
+  /**
+   * The bytes of a record spanning chunks.
+   */
+  private byte[] record = new byte[64];
+  private int recordLength = 0;
+
+  private String next = null;
+  private boolean isExhausted = false;
+  private boolean isFinished = false;
+  private long numOfArgs = 0;
+
+
+  /**
+   * Bytes read ahead, held in memory or in the spill file.
+   */
+  private static final class Chunk {
+
+    /**
+     * The bytes, or null if they are spilled.
+     */
+    final byte[] bytes;
+
+    /**
+     * The position of the bytes in the spill file.
+     */
+    final long position;
+
+    final int length;
+
+
+    Chunk(byte[] bytes, long position, int length) {
+      this.bytes = bytes;
+      this.position = position;
+      this.length = length;
+    }
+
+  }  // class Chunk
+
+
+  /**
+   * Starts reading |in|.
+   * @param flag The flag whose arity the number of args should respect.
+   * @param isNulSeparated If true, args end at a NUL instead of a newline.
+   */
+  StdinArgs(InputStream in, Flag flag, boolean isNulSeparated) {
+    this(in, flag, isNulSeparated, DEFAULT_MAX_IN_MEMORY,
+        DEFAULT_MAX_SPILLED);
+  }
+
+
+  /**
+   * @param maxInMemory The number of bytes read ahead that may be held in
+   *     memory, beyond which they are spilled.
+   * @param maxSpilled The number of spilled bytes not consumed yet beyond
+   *     which reading stops.
+   */
+  StdinArgs(final InputStream in, Flag flag, boolean isNulSeparated,
+      long maxInMemory, long maxSpilled) {
+    this.flag = flag;
+    this.separator = isNulSeparated ? (byte) 0 : (byte) '\n';
+    this.maxInMemory = maxInMemory;
+    this.maxSpilled = maxSpilled;
+    // |in| is read as given, whichever stdin is routed to the reader.
+    Thread reader = new Thread(new Runnable() {
+      public void run() {
+        StdinArgs.this.readAhead(in);
+      }
+    }, "StdinArgs reader");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+
+  @Override
+  public boolean hasNext() {
+    if (this.next == null && !this.isExhausted) {
+      String record = this.readRecord(true);
+      if (record == null) {
+        this.isExhausted = true;
+      } else if (this.numOfArgs == this.flag.getNumOfArgsMax()) {
+        // Counted by finish, along with the rest.
+        this.isExhausted = true;
+        this.numOfArgs++;
+      } else {
+        this.numOfArgs++;
+        this.next = record;
+      }
+    }
+    return this.next != null;
+  }
+
+
+  @Override
+  public String next() {
+    if (!this.hasNext()) {
+      throw new NoSuchElementException();
+    }
+    String next = this.next;
+    this.next = null;
+    return next;
+  }
+
+
+  /**
+   * @return The number of args consumed so far, or after finish, the
+   *     number of args read from stdin.
+   */
+  public long getNumOfArgs() {
+    return this.numOfArgs;
+  }
+
+
+  /**
+   * Skips the args not consumed, counting them, and checks the number of
+   * args.
+   * @return The arity errors, which are empty if the number is allowed.
+   * @throws UncheckedIOException If stdin could not be read.
+   */
+  public List<ParsingError> finish() {
+    if (!this.isFinished) {
+      this.isFinished = true;
+      this.next = null;
+      while (this.readRecord(false) != null) {
+        this.numOfArgs++;
+      }
+      this.isExhausted = true;
+      this.close();
+    }
+    // The flag does not hold the args, so the count is passed along.
+    List<ParsingError> errors = new ArrayList<ParsingError>();
+    int numOfArgs = (int) Math.min(Integer.MAX_VALUE, this.numOfArgs);
+    if (this.numOfArgs < this.flag.getNumOfArgsMin()) {
+      errors.add(new SingleFlagParsingError(
+          SingleFlagParsingError.Type.MIN_NUMBER_OF_ARGS_VIOLATION,
+          this.flag, numOfArgs));
+    } else if (this.numOfArgs > this.flag.getNumOfArgsMax()) {
+      errors.add(new SingleFlagParsingError(
+          SingleFlagParsingError.Type.MAX_NUMBER_OF_ARGS_VIOLATION,
+          this.flag, numOfArgs));
+    }
+    return errors;
+  }
+
+
+  /**
+   * Stops reading stdin and deletes the spill file, without checking the
+   * number of args.
+   */
+  @Override
+  public synchronized void close() {
+    if (this.isClosed) {
+      return;
+    }
+    this.isClosed = true;
+    this.chunks.clear();
+    if (this.spillFile != null) {
+      try {
+        this.spillFile.close();
+      } catch (IOException e) {
+        // The file is deleted on close regardless.
+      }
+    }
+    this.notifyAll();
+  }
+
+
+  /**
+   * Reads the next record from the chunks read ahead.
+   * @param decode If false, the record is only skipped.
+   * @return The record, SKIPPED if it is not decoded, or null at the end of
+   *     stdin.
+   */
+  private String readRecord(boolean decode) {
+    while (true) {
+      if (this.position == this.limit) {
+        if (!this.takeChunk()) {
+          if (this.recordLength == 0) {
+            return null;
+          }
+          return this.completeRecord(this.bytes, 0, 0, decode);
+        }
+        continue;
+      }
+      byte[] bytes = this.bytes;
+      int end = this.position;
+      while (end < this.limit && bytes[end] != this.separator) {
+        end++;
+      }
+      if (end == this.limit) {
+        this.appendToRecord(bytes, this.position, end);
+        this.position = end;
+        continue;
+      }
+      int start = this.position;
+      this.position = end + 1;
+      String record = this.completeRecord(bytes, start, end, decode);
+      if (record != null) {
+        return record;
+      }
+    }
+  }
+
+
+  /**
+   * Completes the record ending with bytes[start..end).
+   * @return The record, SKIPPED if it is not decoded, or null if it is an
+   *     empty line, which is not an arg.
+   */
+  private String completeRecord(
+      byte[] bytes, int start, int end, boolean decode) {
+    byte[] recordBytes = bytes;
+    if (this.recordLength > 0) {
+      this.appendToRecord(bytes, start, end);
+      recordBytes = this.record;
+      start = 0;
+      end = this.recordLength;
+      this.recordLength = 0;
+    }
+    if (this.separator == '\n') {
+      if (end > start && recordBytes[end - 1] == '\r') {
+        end--;
+      }
+      if (end == start) {
+        return null;
+      }
+    }
+    return decode ?
+        new String(recordBytes, start, end - start, StandardCharsets.UTF_8) :
+        SKIPPED;
+  }
+
+
+  private void appendToRecord(byte[] bytes, int start, int end) {
+    int length = end - start;
+    if (this.recordLength + length > this.record.length) {
+      this.record = Arrays.copyOf(this.record,
+          Math.max(this.record.length * 2, this.recordLength + length));
+    }
+    System.arraycopy(bytes, start, this.record, this.recordLength, length);
+    this.recordLength += length;
+  }
+
+
+  /**
+   * Makes the next chunk read ahead the one consumed, waiting for it.
+   * @return False at the end of stdin.
+   * @throws UncheckedIOException If stdin could not be read.
+   */
+  private boolean takeChunk() {
+    Chunk chunk;
+    synchronized (this) {
+      while (this.chunks.isEmpty() && !this.isEndOfStream &&
+          this.error == null && !this.isClosed) {
+        try {
+          this.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted reading stdin.", e);
+        }
+      }
+      if (this.chunks.isEmpty()) {
+        if (this.error != null) {
+          throw new UncheckedIOException(this.error);
+        }
+        return false;
+      }
+      chunk = this.chunks.poll();
+      if (chunk.bytes != null) {
+        this.numOfBytesInMemory -= chunk.length;
+        this.notifyAll();
+      }
+    }
+
+    if (chunk.bytes != null) {
+      this.bytes = chunk.bytes;
+    } else {
+      // Spilled chunks are only written before they are queued, and the
+      // file is only truncated once they are all consumed.
+      if (this.spillBuffer == null) {
+        this.spillBuffer = new byte[CHUNK_SIZE];
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(this.spillBuffer, 0, chunk.length);
+      try {
+        while (buffer.hasRemaining()) {
+          this.spillFile.read(
+              buffer, chunk.position + buffer.position());
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      this.bytes = this.spillBuffer;
+      synchronized (this) {
+        this.numOfBytesSpilled -= chunk.length;
+        this.notifyAll();
+      }
+    }
+    this.position = 0;
+    this.limit = chunk.length;
+    return true;
+  }
+
+
+  /**
+   * Reads |in| into chunks until its end, or until closed. Runs on the
+   * reader thread.
+   */
+  private void readAhead(InputStream in) {
+    byte[] buffer = new byte[CHUNK_SIZE];
+    try {
+      int length;
+      while ((length = in.read(buffer)) >= 0) {
+        if (length > 0 && !this.queue(buffer, length)) {
+          return;
+        }
+      }
+    } catch (IOException e) {
+      synchronized (this) {
+        this.error = e;
+      }
+    } finally {
+      synchronized (this) {
+        this.isEndOfStream = true;
+        this.notifyAll();
+      }
+    }
+  }
+
+
+  /**
+   * Queues the chunk of |length| bytes in |buffer|, in memory if within
+   * budget, or else in the spill file, waiting for the spilled bytes to be
+   * consumed if there are too many.
+   * @return False if closed.
+   */
+  private synchronized boolean queue(byte[] buffer, int length)
+      throws IOException {
+    while (!this.isClosed &&
+        this.numOfBytesInMemory + length > this.maxInMemory &&
+        this.numOfBytesSpilled + length > this.maxSpilled) {
+      try {
+        this.wait();
+      } catch (InterruptedException e) {
+        return false;
+      }
+    }
+    if (this.isClosed) {
+      return false;
+    }
+    if (this.numOfBytesInMemory + length <= this.maxInMemory) {
+      this.chunks.add(new Chunk(Arrays.copyOf(buffer, length), 0, length));
+      this.numOfBytesInMemory += length;
+    } else {
+      this.spill(buffer, length);
+    }
+    this.notifyAll();
+    return true;
+  }
+
+
+  private void spill(byte[] buffer, int length) throws IOException {
+    if (this.spillFile == null) {
+      Path path = Files.createTempFile("smartcliparser-stdin", ".args");
+      this.spillFile = FileChannel.open(path, StandardOpenOption.READ,
+          StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    } else if (this.numOfBytesSpilled == 0 && this.spillFileSize > 0) {
+      // Everything spilled was consumed, so the file starts over.
+      this.spillFile.truncate(0);
+      this.spillFileSize = 0;
+    }
+    ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length);
+    while (bytes.hasRemaining()) {
+      this.spillFile.write(bytes, this.spillFileSize + bytes.position());
+    }
+    this.chunks.add(new Chunk(null, this.spillFileSize, length));
+    this.spillFileSize += length;
+    this.numOfBytesSpilled += length;
+  }
+
+}  // class StdinArgs
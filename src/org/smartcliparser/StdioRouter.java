@@ -0,0 +1,209 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Gives each thread running a program its own System.in, System.out and
+ * System.err. While installed, the stdio of this process is replaced by
+ * streams forwarding to the stdio routed to the current thread, or to the
+ * original stdio on threads without one.
+ *
+ * Routing only applies to the thread running the program. Other threads,
+ * including the ones it starts and the ones of the common fork/join pool
+ * running its parallel streams, print to the original stdio. Threads are
+ * not made to inherit the routing, since pooled threads outlive the program
+ * that happened to start them. Work handed to other threads should print
+ * through the streams returned by getOut and getErr on the routed thread,
+ * as CommandLineProgram.getStdout and getStderr do, and read through the
+ * one returned by getIn.
+ */
+final class StdioRouter {
+
+  /**
+   * The number of installations, and the stdio they replaced.
+   */
+  private static int numOfInstalls = 0;
+  private static PrintStream originalOut = null;
+  private static PrintStream originalErr = null;
+  private static InputStream originalIn = null;
+
+  private static final ThreadLocal<Stdio> STDIO = new ThreadLocal<Stdio>();
+
+  private StdioRouter() {}
+
+
+  /**
+   * The stdio routed to a thread.
+   */
+  private static final class Stdio {
+
+    final InputStream in;
+    final PrintStream out;
+    final PrintStream err;
+
+
+    Stdio(InputStream in, OutputStream out, OutputStream err) {
+      this.in = in;
+      this.out = new PrintStream(out, true);
+      this.err = new PrintStream(err, true);
+    }
+
+  }  // class Stdio
+
+
+  /**
+   * Replaces the stdio of this process, unless it is already replaced. Each
+   * call must be paired with a call to uninstall.
+   */
+  static synchronized void install() {
+    if (numOfInstalls++ > 0) {
+      return;
+    }
+    originalIn = System.in;
+    originalOut = System.out;
+    originalErr = System.err;
+    System.setIn(new InputStream() {
+      private InputStream target() {
+        Stdio stdio = STDIO.get();
+        return stdio == null ? originalIn : stdio.in;
+      }
+
+      @Override
+      public int read() throws IOException {
+        return this.target().read();
+      }
+
+      @Override
+      public int read(byte[] bytes, int offset, int length)
+          throws IOException {
+        return this.target().read(bytes, offset, length);
+      }
+
+      @Override
+      public int available() throws IOException {
+        return this.target().available();
+      }
+    });
+    System.setOut(new PrintStream(new RoutingOutputStream(false), true));
+    System.setErr(new PrintStream(new RoutingOutputStream(true), true));
+  }
+
+
+  /**
+   * Restores the stdio of this process once every install is undone.
+   */
+  static synchronized void uninstall() {
+    if (--numOfInstalls > 0) {
+      return;
+    }
+    System.setIn(originalIn);
+    System.setOut(originalOut);
+    System.setErr(originalErr);
+  }
+
+
+  /**
+   * Routes the stdio of the current thread to the given streams until
+   * unroute is called.
+   */
+  static void route(InputStream in, OutputStream out, OutputStream err) {
+    STDIO.set(new Stdio(in, out, err));
+  }
+
+
+  static void unroute() {
+    STDIO.remove();
+  }
+
+
+  /**
+   * @return The stdin routed to the current thread, or System.in if there is
+   *     none. Unlike System.in, it reads from the same stream whichever
+   *     thread uses it.
+   */
+  static InputStream getIn() {
+    Stdio stdio = STDIO.get();
+    return stdio == null ? System.in : stdio.in;
+  }
+
+
+  /**
+   * @return The stdout routed to the current thread, or System.out if there
+   *     is none. Unlike System.out, it writes to the same stream whichever
+   *     thread uses it.
+   */
+  static PrintStream getOut() {
+    Stdio stdio = STDIO.get();
+    return stdio == null ? System.out : stdio.out;
+  }
+
+
+  /**
+   * @return The stderr routed to the current thread, or System.err.
+   * @see #getOut
+   */
+  static PrintStream getErr() {
+    Stdio stdio = STDIO.get();
+    return stdio == null ? System.err : stdio.err;
+  }
+
+
+  /**
+   * Forwards to stdout or stderr of the current thread.
+   */
+  private static final class RoutingOutputStream extends OutputStream {
+
+    private final boolean isErr;
+
+
+    RoutingOutputStream(boolean isErr) {
+      this.isErr = isErr;
+    }
+
+
+    private PrintStream target() {
+      Stdio stdio = STDIO.get();
+      if (stdio == null) {
+        return this.isErr ? originalErr : originalOut;
+      }
+      return this.isErr ? stdio.err : stdio.out;
+    }
+
+
+    @Override
+    public void write(int b) {
+      this.target().write(b);
+    }
+
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+      this.target().write(bytes, offset, length);
+    }
+
+
+    @Override
+    public void flush() {
+      this.target().flush();
+    }
+
+  }  // class RoutingOutputStream
+
+}  // class StdioRouter
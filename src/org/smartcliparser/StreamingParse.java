@@ -0,0 +1,137 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+/**
+ * A single parse forwarding each arg to a ParseListener as soon as it is
+ * classified, keeping only the per flag counts needed for validation. Args
+ * of typed flags are converted to check them, but their values are not kept.
+ */
+final class StreamingParse extends ArgumentSink {
+
+  private final String[] args;
+  private final ParseListener listener;
+
+  /**
+   * Set once an arg was left unconsumed or an error was reported.
+   */
+  private boolean isInvalid = false;
+
+
+  StreamingParse(ParserSpec spec, String[] args, ParseListener listener) {
+    super(spec, false);
+    this.args = args;
+    this.listener = listener;
+  }
+
+
+  @Override
+  void addFlag(int position, int index) {
+    this.setIsSet(index);
+    this.listener.onFlag(this.spec.getFlag(index), this.args[position]);
+  }
+
+
+  @Override
+  void addValue(int position, int index) {
+    this.counts[index]++;
+    this.listener.onValue(this.spec.getFlag(index), this.args[position]);
+    this.check(index, this.args[position]);
+  }
+
+
+  @Override
+  void addPositional(int position) {
+    int unconsumed = this.spec.getUnconsumedIndex();
+    this.counts[unconsumed]++;
+    this.listener.onPositional(this.args[position]);
+    this.check(unconsumed, this.args[position]);
+  }
+
+
+  @Override
+  void addRemaining(int position, boolean isUnknownFlag) {
+    String arg = this.args[position];
+    this.isInvalid = true;
+    this.listener.onRemaining(arg);
+    if (isUnknownFlag) {
+      this.report(new SingleFlagParsingError(
+          SingleFlagParsingError.Type.UNKNOWN_FLAG, arg,
+          this.spec.suggestNames(arg, Flag.getNameOffset(arg))));
+    }
+  }
+
+
+  @Override
+  void addAmbiguousFlag(int position) {
+    String arg = this.args[position];
+    this.isInvalid = true;
+    this.listener.onRemaining(arg);
+    this.report(new SingleFlagParsingError(
+        SingleFlagParsingError.Type.AMBIGUOUS_FLAG, arg,
+        this.spec.getNamesWithPrefix(arg, Flag.getNameOffset(arg))));
+  }
+
+
+  /**
+   * Reports the errors of the flags that can only be decided once all args
+   * are seen.
+   * @return True if the parse was valid.
+   */
+  boolean finish() {
+    int numOfFlags = this.spec.getNumOfFlags();
+    for (int i = 0; i < numOfFlags; i++) {
+      SingleFlagParsingError error = this.getCountError(i);
+      if (error != null) {
+        this.report(error);
+      }
+    }
+    if (!this.isRequiredFlagSetSatisfied()) {
+      this.report(new MultiFlagParsingError(
+          MultiFlagParsingError.Type.REQUIRED_FLAG_SET_VIOLATION,
+          this.spec.getRequiredFlagSetList()));
+    }
+
+    MetricsListener metrics = Instrumentation.getListener();
+    if (metrics != null) {
+      for (int i = 0; i < this.numOfTouched; i++) {
+        int index = this.touched[i];
+        metrics.flagConsumed(this.spec.getFlag(index), this.counts[index]);
+      }
+    }
+    return !this.isInvalid;
+  }
+
+
+  private void check(int index, String arg) {
+    if (this.checkPattern(index, arg)) {
+      this.report(this.getPatternError(index));
+    }
+    if (this.checkValue(index, arg)) {
+      this.report(this.getConversionError(index));
+    }
+  }
+
+
+  private void report(ParsingError error) {
+    this.isInvalid = true;
+    this.listener.onError(error);
+    MetricsListener metrics = Instrumentation.getListener();
+    if (metrics != null) {
+      metrics.errorReported(error);
+    }
+  }
+
+}  // class StreamingParse
@@ -0,0 +1,74 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An error related to the subcommand selected by the args of a program with
+ * subcommands.
+ */
+public class SubcommandParsingError implements ParsingError {
+
+  /**
+   * Types of errors that can be related to a subcommand.
+   */
+  public static enum Type {
+    UNKNOWN_SUBCOMMAND
+  }
+
+  /**
+   * The name of the subcommand, as it was given.
+   */
+  public String name;
+
+  /**
+   * The type of the error that occurred.
+   */
+  public Type type;
+
+  /**
+   * The names of the registered subcommands closest to |name|.
+   */
+  public List<String> candidates = Collections.emptyList();
+
+
+  public SubcommandParsingError(SubcommandParsingError.Type type, String name,
+      List<String> candidates) {
+    this.type = type;
+    this.name = name;
+    this.candidates = candidates;
+  }
+
+
+  @Override
+  public String toString() {
+    return this.name + ": " + this.type.toString() + ": " +
+        this.getDescription();
+  }
+
+
+  @Override
+  public String getDescription() {
+    if (this.type == Type.UNKNOWN_SUBCOMMAND) {
+      String description = "Subcommand " + this.name + " does not exist.";
+      return this.candidates.isEmpty() ? description :
+          description + " Did you mean " + this.candidates.get(0) + "?";
+    }
+    return "";
+  }
+
+}  // class SubcommandParsingError
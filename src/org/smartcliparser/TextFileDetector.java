@@ -0,0 +1,392 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells text files from binary ones by looking at the start of their
+ * contents. A file is considered text if it is not empty and its first
+ * |PREFIX_SIZE| bytes contain no NUL byte.
+ *
+ * Prefixes are read into a direct buffer kept by each thread, and lists of
+ * files are checked in parallel, on the common fork/join pool, which adds
+ * threads while tasks wait on the file system. Verdicts are cached along
+ * with the size and modification time of each file, so a file is only read
+ * again after it changes. Files modified too recently for their
+ * modification time to reveal a later change are not cached, as in
+ * FileSetIndex.
+ *
+ * A detector given a file loads the verdicts saved there by earlier
+ * processes, and save replaces the file with the verdicts it holds. The
+ * file is a DataOutputStream encoding of the form
+ *   MAGIC VERSION numOfVerdicts (absolutePath size modifiedTime isText)*
+ */
+final class TextFileDetector {
+
+  private static final int MAGIC = 0x54584644;
+  private static final int VERSION = 1;
+
+  /**
+   * The name of the file holding the verdicts within an index directory.
+   */
+  static final String FILE_NAME = "textfiles.idx";
+
+  /**
+   * The fewest bytes a verdict takes in a file: the length of its path, its
+   * size, its modification time and whether it is text.
+   */
+  private static final int MIN_VERDICT_SIZE = 2 + 8 + 8 + 1;
+
+  /**
+   * The number of bytes inspected at the start of each file.
+   */
+  static final int PREFIX_SIZE = 4096;
+
+  /**
+   * The number of files each parallel task checks.
+   */
+  private static final int CHUNK_SIZE = 64;
+
+  /**
+   * The number of cached verdicts above which the cache is cleared.
+   */
+  private static final int MAX_CACHE_SIZE = 1 << 20;
+
+  private static final TextFileDetector INSTANCE = new TextFileDetector();
+
+  /**
+   * The detectors shared by all FileSetFlags with an index directory, by the
+   * file holding their verdicts.
+   */
+  private static final Map<Path, TextFileDetector> PERSISTENT_INSTANCES =
+      new HashMap<Path, TextFileDetector>();
+
+  private static final ThreadLocal<ByteBuffer> BUFFER =
+      new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+          return ByteBuffer.allocateDirect(PREFIX_SIZE);
+        }
+      };
+
+  /**
+   * A verdict, along with the metadata of the file it was reached for.
+   */
+  private static final class Verdict {
+
+    final long size;
+    final long modifiedTime;
+    final boolean isText;
+
+
+    Verdict(long size, long modifiedTime, boolean isText) {
+      this.size = size;
+      this.modifiedTime = modifiedTime;
+      this.isText = isText;
+    }
+
+  }  // class Verdict
+
+  private final ConcurrentHashMap<Path, Verdict> cache =
+      new ConcurrentHashMap<Path, Verdict>();
+
+  /**
+   * The file holding the verdicts, or null if they are not saved.
+   */
+  private final Path file;
+
+  /**
+   * Whether verdicts were cached since they were loaded or last saved.
+   */
+  private volatile boolean isModified = false;
+
+
+  TextFileDetector() {
+    this.file = null;
+  }
+
+
+  /**
+   * Loads the verdicts saved in |file|. A missing or unreadable file is
+   * treated as an empty one.
+   */
+  TextFileDetector(Path file) {
+    this.file = file;
+    if (Files.isRegularFile(file)) {
+      try {
+        this.read();
+      } catch (IOException e) {
+        // The verdicts are saved again by the next check.
+        this.cache.clear();
+      }
+    }
+  }
+
+
+  /**
+   * @param indexDirectory The directory holding the saved verdicts, or null
+   *     to keep them in memory only.
+   * @return The detector shared by all FileSetFlags with |indexDirectory|,
+   *     whose cache lasts as long as the process.
+   */
+  static synchronized TextFileDetector getInstance(Path indexDirectory) {
+    if (indexDirectory == null) {
+      return INSTANCE;
+    }
+    Path file = indexDirectory.toAbsolutePath().resolve(FILE_NAME);
+    TextFileDetector detector = PERSISTENT_INSTANCES.get(file);
+    if (detector == null) {
+      detector = new TextFileDetector(file);
+      PERSISTENT_INSTANCES.put(file, detector);
+    }
+    return detector;
+  }
+
+
+  private void read() throws IOException {
+    long size = Files.size(this.file);
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(this.file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Unknown verdicts format.");
+      }
+      int numOfVerdicts =
+          FileSetIndex.readCount(in, size, MIN_VERDICT_SIZE);
+      for (int i = 0; i < numOfVerdicts; i++) {
+        Path path = this.file.getFileSystem().getPath(in.readUTF());
+        long fileSize = in.readLong();
+        long modifiedTime = in.readLong();
+        boolean isText = in.readBoolean();
+        this.cache.put(path, new Verdict(fileSize, modifiedTime, isText));
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+
+  /**
+   * Replaces the file holding the verdicts with the ones cached, unless
+   * none were cached since they were loaded or last saved.
+   */
+  void save() throws IOException {
+    if (this.file == null || !this.isModified) {
+      return;
+    }
+    this.isModified = false;
+    List<Map.Entry<Path, Verdict>> verdicts =
+        new ArrayList<Map.Entry<Path, Verdict>>(this.cache.entrySet());
+    Files.createDirectories(this.file.getParent());
+    Path temporary = Files.createTempFile(
+        this.file.getParent(), "textfiles-", ".tmp");
+    try {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temporary)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(verdicts.size());
+        for (int i = 0; i < verdicts.size(); i++) {
+          Verdict verdict = verdicts.get(i).getValue();
+          out.writeUTF(verdicts.get(i).getKey().toString());
+          out.writeLong(verdict.size);
+          out.writeLong(verdict.modifiedTime);
+          out.writeBoolean(verdict.isText);
+        }
+      } finally {
+        out.close();
+      }
+      Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+
+  /**
+   * @return True if |path| is a readable text file.
+   */
+  boolean isText(Path path) {
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      return false;
+    }
+    if (!attributes.isRegularFile() || attributes.size() == 0) {
+      return false;
+    }
+
+    Path key = path.toAbsolutePath();
+    long size = attributes.size();
+    long modifiedTime =
+        attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    Verdict verdict = this.cache.get(key);
+    if (verdict != null && verdict.size == size &&
+        verdict.modifiedTime == modifiedTime) {
+      return verdict.isText;
+    }
+
+    Boolean isText = readVerdict(path);
+    if (isText == null) {
+      return false;
+    }
+    long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    if (now - modifiedTime >= FileSetIndex.MIN_AGE_NANOS) {
+      if (this.cache.size() >= MAX_CACHE_SIZE) {
+        this.cache.clear();
+      }
+      this.cache.put(key, new Verdict(size, modifiedTime, isText));
+      this.isModified = true;
+    }
+    return isText;
+  }
+
+
+  /**
+   * Reads the start of |path| to decide whether it is text.
+   * @return The verdict, or null if the file could not be read.
+   */
+  private static Boolean readVerdict(Path path) {
+    ByteBuffer buffer = BUFFER.get();
+    buffer.clear();
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+      int numOfBytes = 0;
+      while (buffer.hasRemaining() && numOfBytes >= 0) {
+        numOfBytes = channel.read(buffer);
+      }
+    } catch (IOException e) {
+      return null;
+    } finally {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          // The file was only read, nothing is lost.
+        }
+      }
+    }
+
+    int length = buffer.position();
+    for (int i = 0; i < length; i++) {
+      if (buffer.get(i) == 0) {
+        return false;
+      }
+    }
+    return length > 0;
+  }
+
+
+  /**
+   * Checks |paths| in parallel.
+   * @return The text files among |paths|, in the same order.
+   */
+  List<Path> filter(final List<Path> paths) {
+    final boolean[] isText = new boolean[paths.size()];
+    ForkJoinPool.commonPool().invoke(
+        new FilterTask(paths, isText, 0, paths.size()));
+    List<Path> textPaths = new ArrayList<Path>();
+    for (int i = 0; i < isText.length; i++) {
+      if (isText[i]) {
+        textPaths.add(paths.get(i));
+      }
+    }
+    return textPaths;
+  }
+
+
+  /**
+   * Checks |paths[start, end)|, splitting them in chunks. Each chunk is read
+   * within ForkJoinPool.managedBlock, as FileSetWalker reads directories.
+   */
+  private final class FilterTask extends RecursiveAction
+      implements ForkJoinPool.ManagedBlocker {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Path> paths;
+    private final boolean[] isText;
+    private final int start;
+    private final int end;
+    private boolean isChecked = false;
+
+
+    FilterTask(List<Path> paths, boolean[] isText, int start, int end) {
+      this.paths = paths;
+      this.isText = isText;
+      this.start = start;
+      this.end = end;
+    }
+
+
+    @Override
+    protected void compute() {
+      if (this.end - this.start <= CHUNK_SIZE) {
+        try {
+          ForkJoinPool.managedBlock(this);
+        } catch (InterruptedException e) {
+          // Reading does not wait for anything that can be interrupted.
+          Thread.currentThread().interrupt();
+        }
+        return;
+      }
+      int middle = (this.start + this.end) >>> 1;
+      invokeAll(new FilterTask(this.paths, this.isText, this.start, middle),
+          new FilterTask(this.paths, this.isText, middle, this.end));
+    }
+
+
+    @Override
+    public boolean block() {
+      for (int i = this.start; i < this.end; i++) {
+        this.isText[i] = TextFileDetector.this.isText(this.paths.get(i));
+      }
+      this.isChecked = true;
+      return true;
+    }
+
+
+    @Override
+    public boolean isReleasable() {
+      return this.isChecked;
+    }
+
+  }  // class FilterTask
+
+}  // class TextFileDetector
@@ -0,0 +1,204 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A flag whose args are converted to values of another type, such as
+ * numbers. Args that can not be converted are reported while parsing. Each
+ * arg is converted once, while it is parsed, and the values are handed to
+ * the flag along with the args. Args set otherwise are converted when their
+ * values are first accessed, and again only if the args change.
+ */
+public abstract class TypedFlag extends Flag {
+
+  /**
+   * A list of args that exposes how many times it was modified, so that
+   * converted values can be discarded when the args change.
+   */
+  private static final class ArgsList extends ArrayList<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    int getModCount() {
+      return this.modCount;
+    }
+
+  }  // class ArgsList
+
+  /**
+   * The args that were last converted, or null.
+   */
+  private List<String> convertedArgs = null;
+  private int convertedModCount = 0;
+
+  /**
+   * The first of the converted args that could not be converted, and the
+   * error it caused, or null.
+   */
+  private String invalidArg = null;
+  private SingleFlagParsingError.Type invalidArgError = null;
+
+
+  protected TypedFlag(String[] names, boolean isRequired, int numOfArgsMin,
+      int numOfArgsMax) {
+    super(names, isRequired, numOfArgsMin, numOfArgsMax, null, false);
+    this.args = new ArgsList();
+  }
+
+
+  /**
+   * @return An array holding |size| values, such as an int[].
+   */
+  protected abstract Object newValues(int size);
+
+
+  /**
+   * Converts |arg| into the element at |position| of |values|, an array
+   * created by newValues.
+   * @return The type of error |arg| causes, or null if it was converted.
+   */
+  protected abstract SingleFlagParsingError.Type convert(String arg,
+      Object values, int position);
+
+
+  /**
+   * Replaces any previously converted values by |values|, an array created
+   * by newValues holding the value of each arg.
+   */
+  protected abstract void setValues(Object values);
+
+
+  /**
+   * @return The values an arg may take, if there are only a few of them, to
+   *     be listed in errors.
+   */
+  List<String> getAllowedValues() {
+    return Collections.emptyList();
+  }
+
+
+  /**
+   * Converts the args, unless they were converted after they last changed.
+   * Subclasses call this before accessing their converted values.
+   * @throws IllegalStateException If an arg can not be converted.
+   */
+  protected final void ensureConverted() {
+    String invalidArg = this.convertArgs();
+    if (invalidArg != null) {
+      throw this.invalidValue(invalidArg);
+    }
+  }
+
+
+  /**
+   * Converts the args, unless they were converted after they last changed,
+   * keeping the values only if all args were converted.
+   * @return The first arg that can not be converted, or null.
+   */
+  private String convertArgs() {
+    int modCount = this.args instanceof ArgsList ?
+        ((ArgsList) this.args).getModCount() : -1;
+    if (this.convertedArgs == this.args && modCount >= 0 &&
+        modCount == this.convertedModCount) {
+      return this.invalidArg;
+    }
+    Object values = this.newValues(this.args.size());
+    this.invalidArg = null;
+    this.invalidArgError = null;
+    for (int i = 0; i < this.args.size(); i++) {
+      String arg = this.args.get(i);
+      SingleFlagParsingError.Type error = this.convert(arg, values, i);
+      if (error != null) {
+        this.invalidArg = arg;
+        this.invalidArgError = error;
+        break;
+      }
+    }
+    if (this.invalidArg == null) {
+      this.setValues(values);
+    }
+    this.convertedArgs = this.args;
+    this.convertedModCount = modCount;
+    return this.invalidArg;
+  }
+
+
+  /**
+   * Takes |values|, converted from the current args while they were parsed,
+   * as the values of this flag.
+   */
+  final void setConvertedValues(Object values) {
+    this.setValues(values);
+    this.invalidArg = null;
+    this.invalidArgError = null;
+    this.convertedArgs = this.args;
+    this.convertedModCount = this.args instanceof ArgsList ?
+        ((ArgsList) this.args).getModCount() : -1;
+  }
+
+
+  /**
+   * @return |values|, an array created by newValues holding |size| values,
+   *     or a copy of its first |size| values with room for at least
+   *     |capacity| values.
+   */
+  final Object copyValues(Object values, int size, int capacity) {
+    Object copy = this.newValues(capacity);
+    if (values != null) {
+      System.arraycopy(values, 0, copy, 0, size);
+    }
+    return copy;
+  }
+
+
+  /**
+   * @return The exception to throw when |arg| can not be converted.
+   */
+  protected IllegalStateException invalidValue(String arg) {
+    return new IllegalStateException(
+        "Flag " + this.getNames().get(0) + " has invalid value " + arg + ".");
+  }
+
+
+  /**
+   * @return The number of converted values.
+   */
+  public int getNumOfValues() {
+    return this.args.size();
+  }
+
+
+  @Override
+  public boolean isValid() {
+    return super.isValid() && (!this.isSet() || this.convertArgs() == null);
+  }
+
+
+  @Override
+  public List<ParsingError> getErrors() {
+    List<ParsingError> errors = super.getErrors();
+    String invalidArg = this.convertArgs();
+    if (errors.isEmpty() && this.isSet() && invalidArg != null) {
+      errors.add(new SingleFlagParsingError(this.invalidArgError, this,
+          this.args.size(), invalidArg));
+    }
+    return errors;
+  }
+
+}  // class TypedFlag
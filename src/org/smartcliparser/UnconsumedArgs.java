@@ -0,0 +1,35 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the List&lt;String&gt; field receiving the args no flag consumed,
+ * like the unconsumed flag of a CommandLineProgram. Without it, no such args
+ * are accepted.
+ * @see CommandLineFlag
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface UnconsumedArgs {
+
+  int numOfArgsMin() default 0;
+  int numOfArgsMax() default Flag.UNLIMITED_NUM_OF_ARGS;
+
+}  // @interface UnconsumedArgs
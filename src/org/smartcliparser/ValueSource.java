@@ -0,0 +1,44 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A source of flag values other than the command line, such as a config
+ * file or the environment. Sources are layered below the command line by
+ * CommandLineProgram.addValueSource, and their values are validated like
+ * args.
+ */
+public interface ValueSource {
+
+  /**
+   * The result of getValues for a switch this source turns off, which hides
+   * the values of lower layers. It is told apart from other lists by
+   * identity.
+   */
+  List<String> SWITCH_OFF =
+      Collections.unmodifiableList(new ArrayList<String>());
+
+  /**
+   * @return The args |flag| takes from this source, which are empty for a
+   *     switch that is on, SWITCH_OFF for a switch that is off, or null if
+   *     this source does not set |flag|.
+   */
+  List<String> getValues(Flag flag);
+
+}  // interface ValueSource
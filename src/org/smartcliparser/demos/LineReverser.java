@@ -0,0 +1,531 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser.demos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reverses each line of UTF-8 text by code point, so that surrogate pairs
+ * stay intact, optionally changing its case in the same pass. Bytes that are
+ * not valid UTF-8 are reversed one by one. Line endings, \n or \r\n, stay at
+ * the end of their lines.
+ *
+ * The text is split into chunks of whole lines, which are reversed on all
+ * cores and written out in order through a few reusable buffers. Files are
+ * mapped into memory and reversed straight from the mapping, so any number
+ * of gigabytes can be reversed with a bounded amount of memory, as long as
+ * no line is longer than WINDOW_SIZE.
+ */
+public final class LineReverser {
+
+  /**
+   * The case lines are changed to, which is done per code point and
+   * regardless of the locale.
+   */
+  public static enum Case {
+    UNCHANGED,
+    LOWER,
+    UPPER
+  }
+
+  static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+  /**
+   * The ASCII characters in each case, indexed by character.
+   */
+  private static final byte[] UNCHANGED_ASCII = new byte[128];
+  private static final byte[] LOWER_ASCII = new byte[128];
+  private static final byte[] UPPER_ASCII = new byte[128];
+  static {
+    for (int c = 0; c < 128; c++) {
+      UNCHANGED_ASCII[c] = (byte) c;
+      LOWER_ASCII[c] = (byte) (c >= 'A' && c <= 'Z' ? c + 'a' - 'A' : c);
+      UPPER_ASCII[c] = (byte) (c >= 'a' && c <= 'z' ? c - 'a' + 'A' : c);
+    }
+  }
+
+  /**
+   * The size of the windows files are mapped through.
+   */
+  private static final long WINDOW_SIZE = 1L << 30;
+
+  private final Case textCase;
+  private final int chunkSize;
+  private final int maxInFlight =
+      2 * Runtime.getRuntime().availableProcessors();
+
+
+  public LineReverser(Case textCase) {
+    this(textCase, CHUNK_SIZE);
+  }
+
+
+  LineReverser(Case textCase, int chunkSize) {
+    this.textCase = textCase;
+    this.chunkSize = chunkSize;
+  }
+
+
+  /**
+   * Reverses the lines of the file at |path| into |out|, which is flushed
+   * but not closed. The file is mapped into memory, and each chunk of lines
+   * is reversed straight from a slice of the mapping.
+   */
+  public void reverse(Path path, OutputStream out) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    Pipeline pipeline = new Pipeline(out);
+    try {
+      long size = channel.size();
+      MappedByteBuffer window = null;
+      // The position of the window within the file.
+      long windowPosition = 0;
+      // The position of the next chunk within the window.
+      int start = 0;
+      while (windowPosition + start < size) {
+        int end = window == null ? -1 : this.findChunkEnd(window, start,
+            windowPosition + window.limit() == size);
+        if (end < 0) {
+          // Maps a new window starting at the next chunk, so that it holds
+          // the whole chunk.
+          long position = windowPosition + start;
+          if (window != null && start == 0) {
+            throw new IOException("A line of " + path + " is longer than " +
+                WINDOW_SIZE + " bytes.");
+          }
+          window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+              Math.min(WINDOW_SIZE, size - position));
+          windowPosition = position;
+          start = 0;
+          continue;
+        }
+        Chunk chunk = pipeline.take();
+        chunk.in = window.slice(start, end - start);
+        pipeline.submit(chunk);
+        start = end;
+      }
+      pipeline.finish();
+    } finally {
+      pipeline.cancel();
+      channel.close();
+    }
+  }
+
+
+  /**
+   * Finds the end of the chunk of |window| starting at |start|, after the
+   * last line ending within CHUNK_SIZE bytes, or after the first one if the
+   * first line is longer.
+   * @param isEndOfFile True if |window| ends with the file, whose last line
+   *     may then lack a line ending.
+   * @return The end of the chunk, or -1 if |window| does not hold a whole
+   *     line from |start|.
+   */
+  private int findChunkEnd(ByteBuffer window, int start,
+      boolean isEndOfFile) {
+    int limit = window.limit();
+    if (limit - start <= this.chunkSize && isEndOfFile) {
+      return limit;
+    }
+    int end = Math.min(start + this.chunkSize, limit);
+    for (int i = end - 1; i >= start; i--) {
+      if (window.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    for (int i = end; i < limit; i++) {
+      if (window.get(i) == '\n') {
+        return i + 1;
+      }
+    }
+    return isEndOfFile ? limit : -1;
+  }
+
+
+  /**
+   * Reverses the lines read from |in| into |out|, which is flushed but not
+   * closed.
+   */
+  public void reverse(InputStream in, OutputStream out) throws IOException {
+    Pipeline pipeline = new Pipeline(out);
+    // The start of a line read into the previous chunk.
+    byte[] carry = new byte[0];
+    int carryLength = 0;
+    try {
+      boolean isEndOfStream = false;
+      while (!isEndOfStream) {
+        Chunk chunk = pipeline.take();
+        if (chunk.buffer == null) {
+          chunk.buffer = new byte[this.chunkSize];
+        }
+
+        // Fills the chunk, growing it until it holds a whole line.
+        chunk.ensureBufferCapacity(carryLength);
+        System.arraycopy(carry, 0, chunk.buffer, 0, carryLength);
+        int length = carryLength;
+        int end = -1;
+        while (end < 0) {
+          if (length == chunk.buffer.length) {
+            chunk.ensureBufferCapacity(length * 2);
+          }
+          int numOfBytes;
+          while (length < chunk.buffer.length &&
+              (numOfBytes = in.read(chunk.buffer, length,
+                  chunk.buffer.length - length)) >= 0) {
+            length += numOfBytes;
+          }
+          if (length < chunk.buffer.length) {
+            isEndOfStream = true;
+            end = length;
+          } else {
+            end = lastIndexOf(chunk.buffer, (byte) '\n', length) + 1;
+            end = end == 0 ? -1 : end;
+          }
+        }
+        carryLength = length - end;
+        if (carryLength > carry.length) {
+          carry = new byte[carryLength];
+        }
+        System.arraycopy(chunk.buffer, end, carry, 0, carryLength);
+
+        if (end == 0) {
+          pipeline.giveBack(chunk);
+          continue;
+        }
+        chunk.in = ByteBuffer.wrap(chunk.buffer, 0, end);
+        pipeline.submit(chunk);
+      }
+      pipeline.finish();
+    } finally {
+      pipeline.cancel();
+    }
+  }
+
+
+  /**
+   * Reverses chunks on all cores, writing them out in order, and recycles
+   * a bounded number of chunks.
+   */
+  private final class Pipeline {
+
+    private final OutputStream out;
+    private final ArrayDeque<Chunk> idle = new ArrayDeque<Chunk>();
+    private final ArrayDeque<Future<Chunk>> pending =
+        new ArrayDeque<Future<Chunk>>();
+    private int numOfChunks = 0;
+
+
+    Pipeline(OutputStream out) {
+      this.out = out;
+    }
+
+
+    /**
+     * @return A chunk to fill, waiting for the oldest pending chunk to be
+     *     written out if all chunks are in use.
+     */
+    Chunk take() throws IOException {
+      if (!this.idle.isEmpty()) {
+        return this.idle.poll();
+      } else if (this.numOfChunks < LineReverser.this.maxInFlight) {
+        this.numOfChunks++;
+        return new Chunk();
+      }
+      return write(this.pending.poll(), this.out);
+    }
+
+
+    /**
+     * Returns |chunk|, which was not filled, for reuse.
+     */
+    void giveBack(Chunk chunk) {
+      this.idle.add(chunk);
+    }
+
+
+    /**
+     * Reverses the lines of |chunk| in the background.
+     */
+    void submit(final Chunk chunk) {
+      this.pending.add(ForkJoinPool.commonPool().submit(new Callable<Chunk>() {
+        public Chunk call() {
+          chunk.reverse(LineReverser.this.textCase);
+          return chunk;
+        }
+      }));
+    }
+
+
+    /**
+     * Writes out all pending chunks, and flushes the output.
+     */
+    void finish() throws IOException {
+      while (!this.pending.isEmpty()) {
+        this.idle.add(write(this.pending.poll(), this.out));
+      }
+      this.out.flush();
+    }
+
+
+    /**
+     * Cancels the chunks that were not written out.
+     */
+    void cancel() {
+      while (!this.pending.isEmpty()) {
+        this.pending.poll().cancel(false);
+      }
+    }
+
+  }  // class Pipeline
+
+
+  /**
+   * Writes out the chunk reversed by |future|, once reversed.
+   * @return The chunk, which can be reused.
+   */
+  private static Chunk write(Future<Chunk> future, OutputStream out)
+      throws IOException {
+    Chunk chunk;
+    try {
+      chunk = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reversing lines.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    out.write(chunk.out, 0, chunk.outLength);
+    chunk.in = null;
+    return chunk;
+  }
+
+
+  private static int lastIndexOf(byte[] bytes, byte b, int end) {
+    for (int i = end - 1; i >= 0; i--) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+  /**
+   * The whole lines to reverse and their reversal.
+   */
+  private static final class Chunk {
+
+    /**
+     * The lines, from index 0 to the limit: a slice of a mapped file, or
+     * a wrapper of |buffer|.
+     */
+    ByteBuffer in = null;
+
+    /**
+     * The array lines read from a stream are held in, or null.
+     */
+    byte[] buffer = null;
+
+    byte[] out = new byte[0];
+    int outLength = 0;
+
+
+    void ensureBufferCapacity(int capacity) {
+      if (capacity > this.buffer.length) {
+        this.buffer = Arrays.copyOf(this.buffer, capacity);
+      }
+    }
+
+
+    void reverse(Case textCase) {
+      ByteBuffer in = this.in.order(ByteOrder.LITTLE_ENDIAN);
+      int length = in.limit();
+      // Changing case turns 2 bytes into 3 at most.
+      int capacity = length + length / 2 + 1;
+      if (capacity > this.out.length) {
+        this.out = new byte[capacity];
+      }
+      int position = 0;
+      int start = 0;
+      while (start < length) {
+        int end = indexOfLineFeed(in, start, length);
+        int lineEnd = end > start && in.get(end - 1) == '\r' ? end - 1 : end;
+        position = reverseLine(in, start, lineEnd, this.out, position,
+            textCase);
+        for (int i = lineEnd; i < end + 1 && i < length; i++) {
+          this.out[position++] = in.get(i);
+        }
+        start = end + 1;
+      }
+      this.outLength = position;
+    }
+
+  }  // class Chunk
+
+
+  /**
+   * @return The index of the first \n in in[start..end), or |end|.
+   */
+  private static int indexOfLineFeed(ByteBuffer in, int start, int end) {
+    int i = start;
+    // Looks at 8 bytes at a time. In little-endian order, a byte is only
+    // flagged wrongly above a \n, so the lowest flagged byte is the first.
+    for (; i + 8 <= end; i += 8) {
+      long word = in.getLong(i) ^ 0x0a0a0a0a0a0a0a0aL;
+      long found =
+          (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+      if (found != 0) {
+        return i + Long.numberOfTrailingZeros(found) / 8;
+      }
+    }
+    while (i < end && in.get(i) != '\n') {
+      i++;
+    }
+    return i;
+  }
+
+
+  /**
+   * Writes the code points of in[start..end) in reverse order to |out|,
+   * changing their case to |textCase|.
+   * @return The position in |out| after the reversed line.
+   */
+  static int reverseLine(ByteBuffer in, int start, int end, byte[] out,
+      int position, Case textCase) {
+    byte[] ascii = textCase == Case.UPPER ? UPPER_ASCII :
+        textCase == Case.LOWER ? LOWER_ASCII : UNCHANGED_ASCII;
+    boolean isBigEndian = in.order() == ByteOrder.BIG_ENDIAN;
+    int i = end;
+    while (i > start) {
+      // ASCII, by far the most common, is mapped through a table, 8 bytes
+      // at a time while none of them has its high bit set.
+      while (i - 8 >= start) {
+        long word = in.getLong(i - 8);
+        if ((word & 0x8080808080808080L) != 0) {
+          break;
+        }
+        if (!isBigEndian) {
+          word = Long.reverseBytes(word);
+        }
+        // The last byte is now the lowest.
+        for (int shift = 0; shift < 64; shift += 8) {
+          out[position++] = ascii[(int) (word >>> shift) & 0x7f];
+        }
+        i -= 8;
+      }
+      byte last;
+      while (i > start && (last = in.get(i - 1)) >= 0) {
+        out[position++] = ascii[last];
+        i--;
+      }
+      if (i == start) {
+        break;
+      }
+      last = in.get(i - 1);
+      int j = i - 1;
+      while (j > start && i - j < 4 && (in.get(j) & 0xc0) == 0x80) {
+        j--;
+      }
+      int codePoint = decode(in, j, i);
+      if (codePoint < 0) {
+        // Not valid UTF-8, so the last byte is kept as is.
+        out[position++] = last;
+        i--;
+        continue;
+      }
+      int changed = textCase == Case.UPPER ?
+          Character.toUpperCase(codePoint) :
+          textCase == Case.LOWER ? Character.toLowerCase(codePoint) :
+          codePoint;
+      // A valid code point encodes to the bytes it was decoded from.
+      position = encode(changed, out, position);
+      i = j;
+    }
+    return position;
+  }
+
+
+  /**
+   * @return The code point encoded by in[start..end), or -1 if it is not a
+   *     single, shortest encoding of a code point that is not a surrogate.
+   */
+  private static int decode(ByteBuffer in, int start, int end) {
+    int lead = in.get(start) & 0xff;
+    int length = end - start;
+    int codePoint;
+    int min;
+    if (lead >= 0xc2 && lead <= 0xdf && length == 2) {
+      codePoint = lead & 0x1f;
+      min = 0x80;
+    } else if (lead >= 0xe0 && lead <= 0xef && length == 3) {
+      codePoint = lead & 0x0f;
+      min = 0x800;
+    } else if (lead >= 0xf0 && lead <= 0xf4 && length == 4) {
+      codePoint = lead & 0x07;
+      min = 0x10000;
+    } else {
+      return -1;
+    }
+    for (int i = start + 1; i < end; i++) {
+      if ((in.get(i) & 0xc0) != 0x80) {
+        return -1;
+      }
+      codePoint = (codePoint << 6) | (in.get(i) & 0x3f);
+    }
+    if (codePoint < min || codePoint > Character.MAX_CODE_POINT ||
+        (codePoint >= Character.MIN_SURROGATE &&
+            codePoint <= Character.MAX_SURROGATE)) {
+      return -1;
+    }
+    return codePoint;
+  }
+
+
+  private static int encode(int codePoint, byte[] out, int position) {
+    if (codePoint < 0x80) {
+      out[position++] = (byte) codePoint;
+    } else if (codePoint < 0x800) {
+      out[position++] = (byte) (0xc0 | (codePoint >> 6));
+      out[position++] = (byte) (0x80 | (codePoint & 0x3f));
+    } else if (codePoint < 0x10000) {
+      out[position++] = (byte) (0xe0 | (codePoint >> 12));
+      out[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+      out[position++] = (byte) (0x80 | (codePoint & 0x3f));
+    } else {
+      out[position++] = (byte) (0xf0 | (codePoint >> 18));
+      out[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+      out[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+      out[position++] = (byte) (0x80 | (codePoint & 0x3f));
+    }
+    return position;
+  }
+
+}  // class LineReverser
@@ -1,5 +1,6 @@
 package org.smartcliparser.demos;
 
+import java.io.IOException;
 import java.util.Iterator;
 
 import org.smartcliparser.Flag;
@@ -8,6 +9,7 @@ import org.smartcliparser.CommandLineProgram;
 public class Reverse extends CommandLineProgram {
 
   private Flag inputFlag;
+  private Flag fileFlag;
   private Flag lowercaseFlag;
   private Flag uppercaseFlag;
 
@@ -15,25 +17,36 @@ public class Reverse extends CommandLineProgram {
     super(args);
   }
 
+  // Creates an instance without parsing any args, to be hosted by a
+  // ProgramDaemon.
+  public Reverse() {
+    super();
+  }
+
   @Override
   public void initialize() {
     // Specifying flags.
-    inputFlag = new Flag(new String[]{"input", "i"}, true, 1,
+    inputFlag = new Flag(new String[]{"input", "i"}, false, 1,
+      Flag.UNLIMITED_NUM_OF_ARGS);
+    // Files whose lines are reversed, - standing for stdin.
+    fileFlag = new Flag(new String[]{"file", "f"}, false, 1,
       Flag.UNLIMITED_NUM_OF_ARGS);
     uppercaseFlag = Flag.createSwitch(new String[]{"uppercase", "u"});
     lowercaseFlag = Flag.createSwitch(new String[]{"lowercase", "l"});
 
     // Registering all flags so that the program knows how to parse them.
     registerFlag(inputFlag);
+    registerFlag(fileFlag);
     registerFlag(uppercaseFlag);
     registerFlag(lowercaseFlag);
+    setRequiredFlagSet(new Flag[]{inputFlag, fileFlag});
   }
 
   @Override
   public void run() {
     Iterator<String> it = inputFlag.args.iterator();
     while (it.hasNext()) {
-      String reversed = this.reverse(it.next());
+      String reversed = reverse(it.next());
       if (lowercaseFlag.isSet()) {
         reversed = reversed.toLowerCase();
       } else if (uppercaseFlag.isSet()) {
@@ -41,9 +54,32 @@ public class Reverse extends CommandLineProgram {
       }
       System.out.println(reversed);
     }
+    if (fileFlag.isSet()) {
+      this.reverseFiles();
+    }
+  }
+
+  private void reverseFiles() {
+    LineReverser reverser = new LineReverser(lowercaseFlag.isSet() ?
+        LineReverser.Case.LOWER : uppercaseFlag.isSet() ?
+        LineReverser.Case.UPPER : LineReverser.Case.UNCHANGED);
+    Iterator<String> it = fileFlag.args.iterator();
+    while (it.hasNext()) {
+      String name = it.next();
+      try {
+        if (name.equals("-")) {
+          reverser.reverse(System.in, System.out);
+        } else {
+          reverser.reverse(getWorkingDirectory().resolve(name), System.out);
+        }
+      } catch (IOException e) {
+        System.err.println("Could not reverse " + name + ": " + e);
+        setExitStatus(1);
+      }
+    }
   }
 
-  private String reverse(String string) {
+  static String reverse(String string) {
     StringBuffer out = new StringBuffer();
     for (int i = string.length() - 1; i >= 0; i--) {
       out.append(string.charAt(i));
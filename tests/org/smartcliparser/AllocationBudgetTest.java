@@ -0,0 +1,138 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Tests that reusing a ParseResult keeps the success path free of
+ * allocations, by measuring the bytes allocated by the current thread.
+ */
+public class AllocationBudgetTest {
+
+  private static final int NUM_OF_WARM_UP_PARSES = 20000;
+  private static final int NUM_OF_MEASURED_PARSES = 10000;
+
+  /**
+   * The number of bytes all measured parses may allocate together. It only
+   * leaves room for noise, such as the measurement itself.
+   */
+  private static final long BUDGET = 1024;
+
+  private com.sun.management.ThreadMXBean threadBean;
+  private long threadId;
+
+  private Flag output;
+  private Flag input;
+  private Flag count;
+  private ParserSpec spec;
+
+  /**
+   * The flags whose values are read after each parse.
+   */
+  private Flag[] flags;
+
+
+  @Before
+  public void setUp() {
+    java.lang.management.ThreadMXBean bean =
+        ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    threadBean = (com.sun.management.ThreadMXBean) bean;
+    assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+    threadBean.setThreadAllocatedMemoryEnabled(true);
+    threadId = Thread.currentThread().getId();
+
+    Flag unconsumed = new Flag(
+        new String[]{"unconsumed"}, false, 0, 2, null, true);
+    output = new Flag(new String[]{"output", "o"}, true, 1, 1);
+    input = new Flag(new String[]{"input", "i"}, true, 1,
+        Flag.UNLIMITED_NUM_OF_ARGS);
+    count = new Flag(new String[]{"count", "n"}, false, 1, 1,
+        Pattern.compile("[0-9]+"), false);
+    Flag verbose = Flag.createSwitch(new String[]{"verbose", "v"});
+    flags = new Flag[]{output, input, count};
+    spec = new ParserSpec(
+        Arrays.asList(new Flag[]{unconsumed, output, input, count, verbose}),
+        unconsumed, Arrays.asList(new Flag[]{output, verbose}));
+  }
+
+
+  @Test
+  public void testParse_ReusedResultDoesNotAllocate() {
+    String[][] commandLines = {
+        {"--output", "out.txt", "-i", "a.txt", "b.txt", "c.txt", "-v"},
+        {"positional", "-i", "a.txt", "-o", "out.txt", "--count", "42"},
+        {"-o", "out.txt", "--input", "a.txt", "-n", "7", "x", "y"},
+    };
+    ParseResult result = spec.newResult();
+
+    long checksum = 0;
+    for (int i = 0; i < NUM_OF_WARM_UP_PARSES; i++) {
+      checksum += parseAndRead(commandLines[i % commandLines.length], result);
+    }
+
+    long before = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < NUM_OF_MEASURED_PARSES; i++) {
+      checksum += parseAndRead(commandLines[i % commandLines.length], result);
+    }
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+    assertTrue("checksum", checksum > 0);
+    assertTrue("Allocated " + allocated + " bytes for " +
+        NUM_OF_MEASURED_PARSES + " parses", allocated <= BUDGET);
+  }
+
+
+  @Test
+  public void testParse_ReusedResultMatchesFreshResult() {
+    ParseResult reused = spec.newResult();
+    spec.parse(new String[]{"-o", "a", "-i", "b", "c", "d", "-v"}, reused);
+    spec.parse(new String[]{"-i", "e", "-o", "f"}, reused);
+
+    ParseResult fresh = spec.parse(new String[]{"-i", "e", "-o", "f"});
+    assertEquals(fresh.isValid(), reused.isValid());
+    assertEquals(fresh.getArgs(input), reused.getArgs(input));
+    assertEquals(fresh.getArgs(output), reused.getArgs(output));
+    assertFalse("isSet", reused.isSet(count));
+    assertEquals(0, reused.getNumOfArgs(count));
+  }
+
+
+  /**
+   * Parses |args| and reads all values without allocating.
+   * @return The total length of all values.
+   */
+  private long parseAndRead(String[] args, ParseResult result) {
+    spec.parse(args, result);
+    assertTrue(result.isValid());
+    long length = 0;
+    for (int i = 0; i < flags.length; i++) {
+      int numOfArgs = result.getNumOfArgs(flags[i]);
+      for (int j = 0; j < numOfArgs; j++) {
+        length += result.getArg(flags[i], j).length();
+      }
+    }
+    return length;
+  }
+
+}  // class AllocationBudgetTest
@@ -0,0 +1,153 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class ArgsFileExpanderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+  private String createArgsFile(String name, String contents)
+      throws IOException {
+    File file = this.folder.newFile(name);
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(contents.getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+    return file.getPath();
+  }
+
+
+  private List<String> expand(String... args) {
+    return Arrays.asList(new ArgsFileExpander().expand(args));
+  }
+
+
+  @Test
+  public void testExpand_Quoting() throws IOException {
+    String path = this.createArgsFile("args.txt",
+        "-o out.txt\n  --input 'a b.txt' \"c \\\"d\\\".txt\"\r\n" +
+        "x\"y z\" '' \u00e9t\u00e9\n");
+    assertEquals(
+        Arrays.asList("first", "-o", "out.txt", "--input", "a b.txt",
+            "c \"d\".txt", "xy z", "", "\u00e9t\u00e9", "last"),
+        this.expand("first", "@" + path, "last"));
+  }
+
+
+  @Test
+  public void testExpand_NulSeparated() throws IOException {
+    String path = this.createArgsFile("args.bin", "a b\0'c'\0\0d\n\0");
+    assertEquals(Arrays.asList("a b", "'c'", "", "d\n"),
+        this.expand("@" + path));
+  }
+
+
+  @Test
+  public void testExpand_NulSeparatedArgsAreNotExpanded() throws IOException {
+    String inner = this.createArgsFile("inner.txt", "b c");
+    String path = this.createArgsFile("files.bin",
+        "@" + inner + "\0@@x\0@missing");
+    assertEquals(Arrays.asList("@" + inner, "@@x", "@missing"),
+        this.expand("@" + path));
+  }
+
+
+  @Test
+  public void testExpand_Nested() throws IOException {
+    String inner = this.createArgsFile("inner.txt", "b c @@d");
+    String outer = this.createArgsFile("outer.txt",
+        "a @" + inner + " @" + inner);
+    assertEquals(Arrays.asList("a", "b", "c", "@d", "b", "c", "@d", "@e", "@"),
+        this.expand("@" + outer, "@@e", "@"));
+  }
+
+
+  @Test
+  public void testExpand_Cycle() throws IOException {
+    File first = this.folder.newFile("first.txt");
+    String second = this.createArgsFile("second.txt", "@" + first.getPath());
+    FileOutputStream out = new FileOutputStream(first);
+    try {
+      out.write(("x @" + second).getBytes("UTF-8"));
+    } finally {
+      out.close();
+    }
+
+    ArgsFileExpander expander = new ArgsFileExpander();
+    assertNull(expander.expand(new String[]{"@" + first.getPath()}));
+    assertEquals(ArgsFileParsingError.Type.CYCLE, expander.getError().type);
+    assertEquals(first.getPath(), expander.getError().path);
+  }
+
+
+  @Test
+  public void testExpand_RelativeToWorkingDirectory() throws IOException {
+    this.createArgsFile("inner.txt", "b");
+    this.createArgsFile("outer.txt", "a @inner.txt");
+    ArgsFileExpander expander =
+        new ArgsFileExpander(this.folder.getRoot().toPath());
+    assertEquals(Arrays.asList("a", "b", "c"),
+        Arrays.asList(expander.expand(new String[]{"@outer.txt", "c"})));
+  }
+
+
+  @Test
+  public void testExpand_UnterminatedQuote() throws IOException {
+    String path = this.createArgsFile("args.txt", "a 'b c");
+    ArgsFileExpander expander = new ArgsFileExpander();
+    assertNull(expander.expand(new String[]{"@" + path}));
+    assertEquals(ArgsFileParsingError.Type.UNTERMINATED_QUOTE,
+        expander.getError().type);
+  }
+
+
+  @Test
+  public void testParseArgs_ArgsFile() throws IOException {
+    String path = this.createArgsFile("args.txt", "--output out.txt");
+    CommandLineProgram program = new CommandLineProgram() {
+      public void initialize() {}
+      public void run() {}
+    };
+    Flag output = new Flag(new String[]{"output"}, true, 1, 1);
+    program.registerFlag(output);
+    program.setExpandArgsFiles(true);
+
+    assertTrue(program.parseArgs(new String[]{"@" + path}));
+    assertEquals(Arrays.asList("out.txt"), output.args);
+
+    program.clear();
+    String missing = new File(this.folder.getRoot(), "missing").getPath();
+    assertFalse(program.parseArgs(new String[]{"@" + missing}));
+    List<ParsingError> errors = program.getErrors();
+    assertEquals(ArgsFileParsingError.Type.IO_ERROR,
+        ((ArgsFileParsingError) errors.get(0)).type);
+  }
+
+}  // class ArgsFileExpanderTest
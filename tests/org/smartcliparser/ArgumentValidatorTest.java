@@ -0,0 +1,140 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public class ArgumentValidatorTest {
+
+  private static final String[] SIMPLE_PATTERNS = {
+      "[0-9]+", "\\d*", "^\\w+$", "id-\\d{4}", ".*\\.txt", "[a-cx-z_]{2,3}",
+      "[^0-9]+", "v[0-9.]?", "abc", "-[\\-\\]a]{1,}x", "\\s*", "a.b",
+  };
+
+  private static final String[] COMPLEX_PATTERNS = {
+      "a|b", "(ab)+", "[a-z][0-9]", "ab+", "\\p{L}+", "[0-9]+?", "[a&&b]",
+      "x{2}",
+  };
+
+
+  @Test
+  public void testCompile_SimpleShapes() {
+    for (int i = 0; i < SIMPLE_PATTERNS.length; i++) {
+      assertNotNull(SIMPLE_PATTERNS[i],
+          ArgumentValidator.compile(Pattern.compile(SIMPLE_PATTERNS[i])));
+    }
+    for (int i = 0; i < COMPLEX_PATTERNS.length; i++) {
+      assertNull(COMPLEX_PATTERNS[i],
+          ArgumentValidator.compile(Pattern.compile(COMPLEX_PATTERNS[i])));
+    }
+    assertNull(ArgumentValidator.compile(
+        Pattern.compile("[a-z]+", Pattern.CASE_INSENSITIVE)));
+  }
+
+
+  @Test
+  public void testMatches_SupplementaryCharacters() {
+    // A smiling face is a surrogate pair, but a single code point.
+    String[] patterns = {".{1}", "[^a]", "[^a]{2}", "x.?", ".*", "[^0-9]+"};
+    String face = "\ud83d\ude00";
+    String[] args = {face, "x" + face, face + face, "\ud83d", "\ude00x",
+        "a" + face, face + "\ud83d"};
+    for (int i = 0; i < patterns.length; i++) {
+      Pattern pattern = Pattern.compile(patterns[i]);
+      ArgumentValidator validator = ArgumentValidator.compile(pattern);
+      assertNotNull(patterns[i], validator);
+      for (int j = 0; j < args.length; j++) {
+        assertEquals(patterns[i] + " " + args[j],
+            pattern.matcher(args[j]).matches(), validator.matches(args[j]));
+      }
+    }
+  }
+
+
+  @Test
+  public void testMatches_SameAsRegex() {
+    String alphabet = "0129abcxyz_-.]\n\t \u00e9\u2028idtv";
+    Random random = new Random(7);
+    for (int i = 0; i < SIMPLE_PATTERNS.length; i++) {
+      Pattern pattern = Pattern.compile(SIMPLE_PATTERNS[i]);
+      ArgumentValidator validator = ArgumentValidator.compile(pattern);
+      for (int j = 0; j < 20000; j++) {
+        StringBuilder arg = new StringBuilder();
+        if (random.nextBoolean()) {
+          arg.append(j % 2 == 0 ? "id-" : "a");
+        }
+        int length = random.nextInt(6);
+        for (int k = 0; k < length; k++) {
+          arg.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        if (random.nextBoolean()) {
+          arg.append(j % 2 == 0 ? ".txt" : "x");
+        }
+        String value = arg.toString();
+        assertEquals(pattern + " " + value,
+            pattern.matcher(value).matches(), validator.matches(value));
+      }
+    }
+  }
+
+
+  @Test
+  public void testFindFirstViolation() {
+    List<String> args = new ArrayList<String>();
+    for (int i = 0; i < 200000; i++) {
+      args.add(Integer.toString(i));
+    }
+    Pattern simple = Pattern.compile("[0-9]+");
+    Pattern complex = Pattern.compile("(0|[1-9][0-9]*)");
+    ArgumentValidator validator = ArgumentValidator.compile(simple);
+    assertEquals(-1,
+        ArgumentValidator.findFirstViolation(simple, validator, args));
+    assertEquals(-1,
+        ArgumentValidator.findFirstViolation(complex, null, args));
+
+    args.set(150000, "x");
+    args.set(123457, "y");
+    args.set(199999, "z");
+    assertEquals(123457,
+        ArgumentValidator.findFirstViolation(simple, validator, args));
+    assertEquals(123457,
+        ArgumentValidator.findFirstViolation(complex, null, args));
+    assertEquals(1, ArgumentValidator.findFirstViolation(simple, validator,
+        new LinkedList<String>(Arrays.asList("1", "x", "y"))));
+  }
+
+
+  @Test
+  public void testGetErrors_ReportsFailingArg() {
+    Flag flag = new Flag(new String[]{"count"}, false, 1, 3,
+        Pattern.compile("\\d+"), false);
+    flag.setIsSet();
+    flag.args.addAll(Arrays.asList("1", "two", "three"));
+    assertFalse(flag.isValid());
+    SingleFlagParsingError error =
+        (SingleFlagParsingError) flag.getErrors().get(0);
+    assertEquals(SingleFlagParsingError.Type.PATTERN_VIOLATION, error.type);
+    assertEquals("two", error.value);
+  }
+
+}  // class ArgumentValidatorTest
@@ -0,0 +1,160 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.smartcliparser.demos.Reverse;
+
+public class BatchRunnerTest {
+
+  private BatchRunner runner;
+  private ByteArrayOutputStream out;
+  private ByteArrayOutputStream err;
+  private ByteArrayOutputStream status;
+
+
+  @Before
+  public void setUp() {
+    runner = new BatchRunner(new Supplier<CommandLineProgram>() {
+      public CommandLineProgram get() {
+        return new Reverse();
+      }
+    });
+    runner.setNumOfWorkers(4);
+    runner.setMaxInFlight(8);
+    out = new ByteArrayOutputStream();
+    err = new ByteArrayOutputStream();
+    status = new ByteArrayOutputStream();
+  }
+
+
+  @Test
+  public void testRun_Ordered() throws Exception {
+    StringBuilder records = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      records.append("-i ").append(i).append(" x").append(i).append('\n');
+      expected.append(new StringBuilder("" + i).reverse()).append('\n')
+          .append(new StringBuilder("x" + i).reverse()).append('\n');
+    }
+    assertEquals(0, run(records.toString()));
+    assertEquals(expected.toString(), out.toString("UTF-8"));
+    assertEquals("", err.toString("UTF-8"));
+    String[] statuses = status.toString("UTF-8").split("\n");
+    assertEquals(500, statuses.length);
+    assertEquals("500\t0", statuses[499]);
+  }
+
+
+  @Test
+  public void testRun_Unordered() throws Exception {
+    runner.setOrdered(false);
+    StringBuilder records = new StringBuilder();
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < 100; i++) {
+      records.append("-i a").append(i).append('\n');
+      expected.add(new StringBuilder("a" + i).reverse().toString());
+    }
+    assertEquals(0, run(records.toString()));
+    List<String> lines = new ArrayList<String>(
+        Arrays.asList(out.toString("UTF-8").split("\n")));
+    Collections.sort(lines);
+    Collections.sort(expected);
+    assertEquals(expected, lines);
+  }
+
+
+  @Test
+  public void testRun_ReportsStatusOfEachRecord() throws Exception {
+    assertEquals(2, run("-i 'a b' -u\n-u\n\n-i \"unterminated\n-i c\n"));
+    assertEquals("B A\nc\n", out.toString("UTF-8"));
+    assertEquals("1\t0\n2\t1\n4\t" + BatchRunner.MALFORMED_RECORD_STATUS +
+        "\n5\t0\n", status.toString("UTF-8"));
+    String errors = err.toString("UTF-8");
+    assertTrue(errors.startsWith("Invalid use"));
+    assertTrue(errors.endsWith("Unterminated quote in record 4\n"));
+  }
+
+
+  @Test
+  public void testRun_NulSeparated() throws Exception {
+    runner.setNulSeparated(true);
+    assertEquals(0, run("-i \"a\nb\"\0-i c\0"));
+    assertEquals("b\na\nc\n", out.toString("UTF-8"));
+    assertEquals("1\t0\n2\t0\n", status.toString("UTF-8"));
+  }
+
+
+  @Test
+  public void testRun_ProgramsAreReused() throws Exception {
+    // Switches set by one record must not leak into the next one.
+    assertEquals(0, run("-i a -u\n-i b\n-i c -u\n-i d\n"));
+    assertEquals("A\nb\nC\nd\n", out.toString("UTF-8"));
+  }
+
+
+  @Test(expected = IOException.class, timeout = 10000)
+  public void testRun_FailingOutput() throws Exception {
+    // Such as stdout being a pipe whose reader exited.
+    OutputStream failing = new OutputStream() {
+      public void write(int b) throws IOException {
+        throw new IOException("Broken pipe");
+      }
+
+      public void write(byte[] b, int off, int len) throws IOException {
+        throw new IOException("Broken pipe");
+      }
+    };
+    StringBuilder records = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      records.append("-i a").append(i).append('\n');
+    }
+    runner.run(new ByteArrayInputStream(records.toString().getBytes("UTF-8")),
+        failing, err, status);
+  }
+
+
+  @Test
+  public void testRecordReader_Quoting() throws IOException {
+    BatchRecordReader reader = new BatchRecordReader(new ByteArrayInputStream(
+        "a 'b c' \"d\\\"e\"\r\n\n  \nf\"\"g".getBytes("UTF-8")), false);
+    assertArrayEquals(new String[]{"a", "b c", "d\"e"}, reader.next());
+    assertEquals(1, reader.getRecordNumber());
+    assertArrayEquals(new String[]{"fg"}, reader.next());
+    assertEquals(4, reader.getRecordNumber());
+    assertFalse(reader.isMalformed());
+    assertNull(reader.next());
+  }
+
+
+  private long run(String records) throws Exception {
+    return runner.run(new ByteArrayInputStream(records.getBytes("UTF-8")),
+        out, err, status);
+  }
+
+}  // class BatchRunnerTest
@@ -18,6 +18,13 @@ import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
 public class CommandLineProgramTest {
 
   // Sample command line program used for testing.
@@ -148,6 +155,78 @@ public class CommandLineProgramTest {
     assertEquals("filterFlag.args.size", 5, filterFlag.args.size());
   }
 
+  @Test
+  public void testParseArgs_FlagReconfiguredBetweenParses() {
+    String[] args = new String[]{"--output", "log.txt",
+                                 "-i", "input1.txt", "input2.txt",
+                                 "-d",
+                                 "--filter", "f1", "f2", "f3"};
+    assertTrue("parseArgs", program.parseArgs(args));
+    ParserSpec spec = program.compile();
+    program.flagsMap.get("filter").setNumOfArgs(0, 2);
+    assertFalse("parseArgs", program.parseArgs(args));
+    assertNotSame(spec, program.compile());
+    assertSame(program.compile(), program.compile());
+  }
+
+  /**
+   * Parses |args| by walking a list and removing consumed args one by one.
+   * @return The args that were not consumed.
+   */
+  private static List<String> parseArgsByList(
+      CommandLineProgram program, String[] args) {
+    List<String> list = new LinkedList<String>(Arrays.asList(args));
+    ListIterator<String> itArgs = list.listIterator();
+    while (itArgs.hasNext()) {
+      String arg = itArgs.next();
+      if (Flag.isFlagLike(arg) && program.hasFlag(Flag.extractName(arg))) {
+        itArgs.remove();
+        program.flagsMap.get(Flag.extractName(arg)).consume(list, itArgs);
+      }
+    }
+    itArgs = list.listIterator();
+    if (itArgs.hasNext()) {
+      program.flagsMap.get("unconsumed").consume(list, itArgs);
+    }
+    return list;
+  }
+
+
+  @Test
+  public void testParseArgs_MatchesListBasedParsing() {
+    String[] tokens = {"-o", "--output", "-i", "--filter", "-c", "-u",
+                       "--nosuchflag", "--unconsumed", "a", "b", "c"};
+    Random random = new Random(42);
+    for (int round = 0; round < 500; round++) {
+      String[] args = new String[random.nextInt(12)];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = tokens[random.nextInt(tokens.length)];
+      }
+
+      SampleProgram expected = new SampleProgram();
+      expected.initialize();
+      expected.setUnconsumedFlags(0, 1);
+      List<String> expectedArgs = parseArgsByList(expected, args);
+
+      program = new SampleProgram();
+      program.initialize();
+      program.setUnconsumedFlags(0, 1);
+      program.parseArgs(args);
+
+      String context = Arrays.toString(args);
+      assertEquals(context, expectedArgs, program.args);
+      Iterator<String> it = expected.flagsMap.keySet().iterator();
+      while (it.hasNext()) {
+        String name = it.next();
+        Flag expectedFlag = expected.flagsMap.get(name);
+        Flag flag = program.flagsMap.get(name);
+        assertEquals(context, expectedFlag.isSet(), flag.isSet());
+        assertEquals(context, expectedFlag.args, flag.args);
+      }
+    }
+  }
+
+
   @Test
   public void testRunIsCalled() {
     String[] args = {"--output", "log.txt",
@@ -0,0 +1,131 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class CompletionIndexTest {
+
+  enum Format { JSON, TEXT, XML }
+
+
+  public static class Tool extends CommandLineProgram {
+
+    @Override
+    public void initialize() {
+      registerFlag(Flag.createSwitch(new String[]{"verbose", "v"}));
+      registerFlag(new EnumFlag<Format>(new String[]{"format"}, false, 1, 1,
+          Format.class));
+      registerSubcommand("commit", new Supplier<CommandLineProgram>() {
+        public CommandLineProgram get() {
+          return new Commit();
+        }
+      });
+      registerSubcommand("config", new Supplier<CommandLineProgram>() {
+        public CommandLineProgram get() {
+          return new Commit();
+        }
+      });
+    }
+
+
+    @Override
+    public void run() {}
+
+  }  // class Tool
+
+
+  public static class Commit extends CommandLineProgram {
+
+    @Override
+    public void initialize() {
+      registerFlag(new Flag(new String[]{"message", "m"}, true, 1, 1));
+      registerFlag(new FileSetFlag(new String[]{"files"}, false, 1,
+          Flag.UNLIMITED_NUM_OF_ARGS));
+    }
+
+
+    @Override
+    public void run() {}
+
+  }  // class Commit
+
+
+  private CompletionIndex index;
+
+
+  @Before
+  public void setUp() throws IOException {
+    // Test through a round trip, as shells read the index.
+    StringWriter writer = new StringWriter();
+    CompletionIndex.build(new Tool()).write(writer);
+    index = CompletionIndex.read(new StringReader(writer.toString()));
+  }
+
+
+  @Test
+  public void testComplete_Subcommands() {
+    assertEquals(Arrays.asList("commit", "config"), complete(""));
+    assertEquals(Arrays.asList("config"), complete("con"));
+    assertEquals(Arrays.asList("commit"), complete("-v", "comm"));
+    // A leftover arg prevents selecting a subcommand.
+    assertEquals(Collections.emptyList(), complete("other", "co"));
+  }
+
+
+  @Test
+  public void testComplete_Flags() {
+    assertEquals(Arrays.asList("--format", "--verbose", "-v"), complete("-"));
+    // Subcommands inherit the flags of their parents.
+    assertEquals(Arrays.asList("--files", "--format", "--message",
+        "--verbose"), complete("commit", "--"));
+    assertEquals(Collections.emptyList(), complete("--nosuchflag", "x", "-m"));
+  }
+
+
+  @Test
+  public void testComplete_Values() {
+    assertEquals(Arrays.asList("JSON"), complete("--format", "J"));
+    // A required value is completed by itself.
+    assertEquals(Collections.emptyList(), complete("commit", "-m", ""));
+    // Once the flag took all values, other args follow.
+    assertEquals(Arrays.asList("commit", "config"),
+        complete("--format", "XML", "c"));
+    assertEquals(Arrays.asList("bin/testsClasses/resources/test_folder"),
+        complete("commit", "--files", "bin/testsClasses/resources/test_f"));
+  }
+
+
+  @Test(expected = IOException.class)
+  public void testRead_Malformed() throws IOException {
+    CompletionIndex.read(new StringReader("flag\t/\t--x\t1\n"));
+  }
+
+
+  private List<String> complete(String... words) {
+    return index.complete(Arrays.asList(words));
+  }
+
+}  // class CompletionIndexTest
@@ -20,6 +20,8 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -65,4 +67,38 @@ public class FileSetFlagTest {
   }
 
 
+  @Test
+  public void testGetPaths_Memoized() throws FileNotFoundException {
+    List<Path> paths = flag.getPaths();
+    assertSame(paths, flag.getPaths());
+    flag.args.add("bin/testsClasses/resources/test_folder/test1.data");
+    assertNotSame(paths, flag.getPaths());
+    // The file is already part of the folder.
+    assertEquals(4, flag.getPaths().size());
+  }
+
+
+  @Test
+  public void testGetPaths_RelativeToWorkingDirectory()
+      throws FileNotFoundException {
+    FileSetFlag relative = new FileSetFlag(new String[]{"input"}, true, 1, 1);
+    relative.args.add("test_folder");
+    relative.setWorkingDirectory(
+        Paths.get("bin/testsClasses/resources").toAbsolutePath());
+    assertEquals(4, relative.getPaths().size());
+    assertEquals(4, relative.getFileStream().count());
+  }
+
+
+  @Test
+  public void testGetTextFileStream() {
+    try {
+      assertEquals(4, flag.getFileStream().count());
+      assertEquals(2, flag.getTextFileStream().count());
+    } catch (FileNotFoundException e) {
+      fail();
+    }
+  }
+
+
 }  // class FileSetFlagTest
@@ -0,0 +1,145 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class FileSetIndexTest {
+
+  private static final FileTime OLD = FileTime.fromMillis(1000000000L);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path root;
+  private Path indexDirectory;
+
+
+  @Before
+  public void setUp() throws IOException {
+    this.root = this.folder.newFolder("root").toPath();
+    this.indexDirectory = this.folder.newFolder("index").toPath();
+    Files.createDirectories(this.root.resolve("a/b"));
+    Files.createFile(this.root.resolve("a/b/c.txt"));
+    Files.createFile(this.root.resolve("d.txt"));
+    this.age();
+  }
+
+
+  /**
+   * Makes all directories look like they were last modified long ago.
+   */
+  private void age() throws IOException {
+    Path[] directories = {
+        this.root, this.root.resolve("a"), this.root.resolve("a/b")};
+    for (int i = 0; i < directories.length; i++) {
+      Files.setLastModifiedTime(directories[i], OLD);
+    }
+  }
+
+
+  private List<String> walk() throws IOException {
+    List<String> names = new ArrayList<String>();
+    List<Path> files = FileSetWalker.walk(
+        Collections.singletonList(this.root.toString()), null, null,
+        this.indexDirectory);
+    for (int i = 0; i < files.size(); i++) {
+      names.add(this.root.relativize(files.get(i)).toString());
+    }
+    return names;
+  }
+
+
+  @Test
+  public void testWalk_ReusesUnmodifiedDirectories() throws IOException {
+    assertEquals(Arrays.asList("a/b/c.txt", "d.txt"), this.walk());
+    assertEquals(1, this.indexDirectory.toFile().list().length);
+
+    // Adding a file without changing the modification time of its directory
+    // shows whether the recorded listing is used.
+    Files.createFile(this.root.resolve("a/b/e.txt"));
+    this.age();
+    assertEquals(Arrays.asList("a/b/c.txt", "d.txt"), this.walk());
+
+    Files.setLastModifiedTime(this.root.resolve("a/b"),
+        FileTime.fromMillis(OLD.toMillis() + 1000));
+    assertEquals(Arrays.asList("a/b/c.txt", "a/b/e.txt", "d.txt"),
+        this.walk());
+  }
+
+
+  @Test
+  public void testWalk_RecentlyModifiedDirectoriesNotRecorded()
+      throws IOException {
+    Files.setLastModifiedTime(this.root.resolve("a/b"),
+        FileTime.fromMillis(System.currentTimeMillis()));
+    assertEquals(Arrays.asList("a/b/c.txt", "d.txt"), this.walk());
+
+    Files.createFile(this.root.resolve("a/b/e.txt"));
+    Files.setLastModifiedTime(this.root.resolve("a/b"),
+        FileTime.fromMillis(System.currentTimeMillis()));
+    assertEquals(Arrays.asList("a/b/c.txt", "a/b/e.txt", "d.txt"),
+        this.walk());
+  }
+
+
+  @Test
+  public void testWalk_CorruptIndexIgnored() throws IOException {
+    this.walk();
+    Path file = this.indexDirectory.resolve(
+        this.indexDirectory.toFile().list()[0]);
+    Files.write(file, new byte[]{1, 2, 3});
+    assertEquals(Arrays.asList("a/b/c.txt", "d.txt"), this.walk());
+  }
+
+
+  @Test
+  public void testWalk_CorruptCountsIgnored() throws IOException {
+    this.walk();
+    Path file = this.indexDirectory.resolve(
+        this.indexDirectory.toFile().list()[0]);
+    byte[] header = Arrays.copyOf(Files.readAllBytes(file), 8);
+    int[] numsOfDirectories = {Integer.MAX_VALUE, -1, 1, 1};
+    int[] numsOfEntries = {0, 0, Integer.MAX_VALUE, -1};
+    for (int i = 0; i < numsOfDirectories.length; i++) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.write(header);
+      out.writeInt(numsOfDirectories[i]);
+      out.writeUTF(this.root.toRealPath().toString());
+      out.writeLong(0);
+      out.writeInt(numsOfEntries[i]);
+      out.close();
+      Files.write(file, bytes.toByteArray());
+      assertEquals(Arrays.asList("a/b/c.txt", "d.txt"), this.walk());
+    }
+  }
+
+}  // class FileSetIndexTest
@@ -0,0 +1,165 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+public class FileSetSpliteratorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path root;
+
+
+  @Before
+  public void setUp() throws IOException {
+    this.root = this.folder.getRoot().toPath();
+    for (int i = 0; i < 8; i++) {
+      for (int j = 0; j < 8; j++) {
+        Path file = this.root.resolve("dir" + i + "/sub" + j + "/file.txt");
+        Files.createDirectories(file.getParent());
+        Files.createFile(file);
+      }
+    }
+    Files.createFile(this.root.resolve("top.txt"));
+  }
+
+
+  @Test
+  public void testStream_SameOrderAsWalker() throws IOException {
+    List<Path> expected = FileSetWalker.walk(
+        Collections.singletonList(this.root.toString()));
+    List<Path> roots = Collections.singletonList(this.root);
+    assertEquals(65, expected.size());
+    assertEquals(expected, StreamSupport.stream(
+        new FileSetSpliterator(roots, null, null), false)
+        .collect(Collectors.toList()));
+    // Parallel streams are unordered.
+    List<Path> parallel = StreamSupport.stream(
+        new FileSetSpliterator(roots, null, null), true)
+        .collect(Collectors.toList());
+    Collections.sort(parallel);
+    expected = new ArrayList<Path>(expected);
+    Collections.sort(expected);
+    assertEquals(expected, parallel);
+  }
+
+
+  @Test
+  public void testStream_FilesReachedTwiceYieldedOnce() throws IOException {
+    try {
+      Files.createSymbolicLink(this.root.resolve("dir0/sub0/link.txt"),
+          this.root.resolve("top.txt"));
+      Files.createSymbolicLink(this.root.resolve("dir1/sub0/link"),
+          this.root.resolve("dir2"));
+    } catch (UnsupportedOperationException e) {
+      return;
+    }
+    List<String> roots = Arrays.asList(
+        this.root.resolve("dir2/sub0/file.txt").toString(),
+        this.root.toString());
+    List<Path> expected = FileSetWalker.walk(roots);
+    assertEquals(65, expected.size());
+    List<Path> rootPaths = new ArrayList<Path>();
+    for (int i = 0; i < roots.size(); i++) {
+      rootPaths.add(this.root.getFileSystem().getPath(roots.get(i)));
+    }
+    assertEquals(expected, StreamSupport.stream(
+        new FileSetSpliterator(rootPaths, null, null), false)
+        .collect(Collectors.toList()));
+    assertEquals(65, StreamSupport.stream(
+        new FileSetSpliterator(rootPaths, null, null), true).count());
+  }
+
+
+  @Test
+  public void testStream_LinksUnderSingleRootYieldedOnce()
+      throws IOException {
+    try {
+      // Linking to a file of a directory not walked yet, of one being
+      // walked, and of one already walked.
+      Files.createSymbolicLink(this.root.resolve("dir0/sub0/link1.txt"),
+          this.root.resolve("dir5/sub0/file.txt"));
+      Files.createSymbolicLink(this.root.resolve("dir0/sub0/link2.txt"),
+          this.root.resolve("top.txt"));
+      Files.createSymbolicLink(this.root.resolve("dir7/sub7/link3.txt"),
+          this.root.resolve("dir1/sub0/file.txt"));
+    } catch (UnsupportedOperationException e) {
+      return;
+    }
+    List<Path> roots = Collections.singletonList(this.root);
+    List<Path> files = StreamSupport.stream(
+        new FileSetSpliterator(roots, null, null), false)
+        .collect(Collectors.toList());
+    assertEquals(65, files.size());
+    assertTrue(files.contains(this.root.resolve("dir0/sub0/link1.txt")));
+    assertFalse(files.contains(this.root.resolve("dir5/sub0/file.txt")));
+    // A link to a file of a directory being walked gives way to the file.
+    assertTrue(files.contains(this.root.resolve("top.txt")));
+    assertFalse(files.contains(this.root.resolve("dir7/sub7/link3.txt")));
+    assertEquals(65, StreamSupport.stream(
+        new FileSetSpliterator(roots, null, null), true).count());
+  }
+
+
+  @Test
+  public void testTrySplit_PrefixAndSuffix() {
+    Spliterator<Path> suffix = new FileSetSpliterator(
+        Collections.singletonList(this.root), null, null);
+    Spliterator<Path> prefix = suffix.trySplit();
+    assertNotNull(prefix);
+    final List<Path> paths = new ArrayList<Path>();
+    prefix.forEachRemaining(paths::add);
+    suffix.forEachRemaining(paths::add);
+    assertEquals(65, paths.size());
+    assertTrue(paths.get(0).endsWith("dir0/sub0/file.txt"));
+    assertTrue(paths.get(64).endsWith("top.txt"));
+  }
+
+
+  @Test
+  public void testStream_StopsEarly() {
+    final AtomicInteger checked = new AtomicInteger();
+    Predicate<Path> filter = new Predicate<Path>() {
+      public boolean test(Path path) {
+        return checked.incrementAndGet() > 0;
+      }
+    };
+    List<Path> first = StreamSupport.stream(new FileSetSpliterator(
+        Arrays.asList(this.root), null, filter), false)
+        .limit(3).collect(Collectors.toList());
+    assertEquals(3, first.size());
+    assertEquals(3, checked.get());
+  }
+
+}  // class FileSetSpliteratorTest
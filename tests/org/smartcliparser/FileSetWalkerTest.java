@@ -0,0 +1,105 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class FileSetWalkerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path root;
+
+
+  @Before
+  public void setUp() throws IOException {
+    this.root = this.folder.getRoot().toPath();
+    String[] files = {"b.txt", "a/z.txt", "a/c/d.txt", "a/c/e/f.txt", "c.txt"};
+    for (int i = 0; i < files.length; i++) {
+      Path file = this.root.resolve(files[i]);
+      Files.createDirectories(file.getParent());
+      Files.createFile(file);
+    }
+  }
+
+
+  private List<String> walk(String... paths) throws FileNotFoundException {
+    List<String> names = new ArrayList<String>();
+    List<Path> files = FileSetWalker.walk(Arrays.asList(paths));
+    for (int i = 0; i < files.size(); i++) {
+      names.add(this.root.relativize(files.get(i)).toString());
+    }
+    return names;
+  }
+
+
+  @Test
+  public void testWalk_DeterministicOrder() throws IOException {
+    List<String> expected =
+        Arrays.asList("a/c/d.txt", "a/c/e/f.txt", "a/z.txt", "b.txt", "c.txt");
+    for (int i = 0; i < 20; i++) {
+      assertEquals(expected, this.walk(this.root.toString()));
+    }
+    // Test that roots keep their order and files are listed once.
+    assertEquals(
+        Arrays.asList("c.txt", "a/c/d.txt", "a/c/e/f.txt", "a/z.txt"),
+        this.walk(this.root.resolve("c.txt").toString(),
+            this.root.resolve("a").toString(),
+            this.root.resolve("a/c").toString()));
+  }
+
+
+  @Test
+  public void testWalk_SymbolicLinks() throws IOException {
+    try {
+      // A loop back to the root, and a second way to reach a/c.
+      Files.createSymbolicLink(this.root.resolve("a/c/e/loop"), this.root);
+      Files.createSymbolicLink(this.root.resolve("link"),
+          this.root.resolve("a/c"));
+      Files.createSymbolicLink(this.root.resolve("broken"),
+          this.root.resolve("missing"));
+    } catch (UnsupportedOperationException e) {
+      return;
+    }
+    assertEquals(
+        Arrays.asList("a/c/d.txt", "a/c/e/f.txt", "a/z.txt", "b.txt", "c.txt"),
+        this.walk(this.root.toString()));
+    // Test that files are listed under the first way they were reached.
+    assertEquals(Arrays.asList("link/d.txt", "link/e/f.txt",
+        "link/e/loop/a/z.txt", "link/e/loop/b.txt", "link/e/loop/c.txt"),
+        this.walk(this.root.resolve("link").toString(),
+            this.root.toString()));
+  }
+
+
+  @Test(expected = FileNotFoundException.class)
+  public void testWalk_MissingPath() throws FileNotFoundException {
+    this.walk(this.root.resolve("missing").toString());
+  }
+
+}  // class FileSetWalkerTest
@@ -0,0 +1,134 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class FlagNameIndexTest {
+
+  private FlagNameIndex index;
+
+
+  @Before
+  public void setUp() {
+    index = new FlagNameIndex();
+    index.add("input", 0);
+    index.add("in", 0);
+    index.add("inplace", 1);
+    index.add("output", 2);
+    index.add("o", 2);
+  }
+
+
+  @Test
+  public void testGet() {
+    assertEquals(0, index.get("input"));
+    assertEquals(0, index.get("in"));
+    assertEquals(1, index.get("inplace"));
+    assertEquals(2, index.get("o"));
+    assertEquals(FlagNameIndex.NOT_FOUND, index.get("inp"));
+    assertEquals(FlagNameIndex.NOT_FOUND, index.get("outputs"));
+    assertEquals(FlagNameIndex.NOT_FOUND, index.get(""));
+  }
+
+
+  @Test
+  public void testResolve_Range() {
+    assertEquals(2, index.resolve("--output", 2, 8, false));
+    assertEquals(0, index.resolve("--input=x", 2, 7, false));
+  }
+
+
+  @Test
+  public void testResolve_Prefix() {
+    assertEquals(2, index.resolve("--out", 2, 5, true));
+    assertEquals(0, index.resolve("--inpu", 2, 6, true));
+    assertEquals(1, index.resolve("--inpl", 2, 6, true));
+    // Test that an exact match wins over longer names.
+    assertEquals(0, index.resolve("--in", 2, 4, true));
+    assertEquals(FlagNameIndex.AMBIGUOUS, index.resolve("--inp", 2, 5, true));
+    assertEquals(FlagNameIndex.NOT_FOUND, index.resolve("--x", 2, 3, true));
+    assertEquals(FlagNameIndex.NOT_FOUND, index.resolve("--", 2, 2, true));
+    assertEquals(FlagNameIndex.NOT_FOUND, index.resolve("--out", 2, 5, false));
+  }
+
+
+  @Test
+  public void testGetNamesWithPrefix() {
+    assertEquals(Arrays.asList("inplace", "input"),
+        index.getNamesWithPrefix("--inp", 2, 5));
+    assertTrue(index.getNamesWithPrefix("--x", 2, 3).isEmpty());
+  }
+
+
+  @Test
+  public void testResolve_MatchesBruteForce() {
+    Random random = new Random(7);
+    Map<String, Integer> names = new HashMap<String, Integer>();
+    FlagNameIndex randomIndex = new FlagNameIndex();
+    for (int i = 0; i < 500; i++) {
+      String name = randomName(random);
+      int value = random.nextInt(100);
+      names.put(name, value);
+      randomIndex.add(name, value);
+    }
+
+    for (int i = 0; i < 2000; i++) {
+      String query = randomName(random);
+      int expected = names.containsKey(query) ?
+          names.get(query) : FlagNameIndex.NOT_FOUND;
+      if (expected == FlagNameIndex.NOT_FOUND) {
+        for (Map.Entry<String, Integer> entry : names.entrySet()) {
+          if (!entry.getKey().startsWith(query)) {
+            continue;
+          }
+          if (expected == FlagNameIndex.NOT_FOUND) {
+            expected = entry.getValue();
+          } else if (expected != entry.getValue()) {
+            expected = FlagNameIndex.AMBIGUOUS;
+          }
+        }
+      }
+      assertEquals(query, expected,
+          randomIndex.resolve(query, 0, query.length(), true));
+    }
+  }
+
+
+  private static String randomName(Random random) {
+    char[] name = new char[1 + random.nextInt(6)];
+    for (int i = 0; i < name.length; i++) {
+      name[i] = (char) ('a' + random.nextInt(3));
+    }
+    return new String(name);
+  }
+
+
+  @Test
+  public void testCopy() {
+    FlagNameIndex copy = new FlagNameIndex(index);
+    index.add("extra", 3);
+    assertEquals(2, copy.get("output"));
+    assertEquals(FlagNameIndex.NOT_FOUND, copy.get("extra"));
+  }
+
+}  // class FlagNameIndexTest
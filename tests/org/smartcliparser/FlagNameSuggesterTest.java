@@ -0,0 +1,148 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class FlagNameSuggesterTest {
+
+  /**
+   * The plain dynamic programming the suggester is checked against.
+   * @return The Levenshtein distance between |name| and characters |start|
+   *     to |end| of |string|.
+   * @param rows Two rows of scratch space, grown as needed.
+   */
+  private static int distance(String name, CharSequence string, int start,
+      int end, int[][] rows) {
+    int length = end - start;
+    if (rows[0] == null || rows[0].length <= length) {
+      rows[0] = new int[length + 1];
+      rows[1] = new int[length + 1];
+    }
+    int[] previous = rows[0];
+    int[] current = rows[1];
+    for (int j = 0; j <= length; j++) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= name.length(); i++) {
+      current[0] = i;
+      char c = name.charAt(i - 1);
+      for (int j = 1; j <= length; j++) {
+        int substitution = previous[j - 1] +
+            (c == string.charAt(start + j - 1) ? 0 : 1);
+        current[j] = Math.min(substitution,
+            Math.min(previous[j], current[j - 1]) + 1);
+      }
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return previous[length];
+  }
+
+
+  @Test
+  public void testSuggest_ClosestFirst() {
+    FlagNameSuggester suggester = new FlagNameSuggester(Arrays.asList(
+        "output", "input", "outputs", "verbose", "output"));
+    assertEquals(Arrays.asList("output", "outputs"),
+        suggester.suggest("--outpt", 2, 7, 2));
+    assertEquals(Arrays.asList("input"),
+        suggester.suggest("inptu", 0, 5, 2));
+    assertTrue(suggester.suggest("--compress", 2, 10, 2).isEmpty());
+  }
+
+
+  @Test
+  public void testSuggest_MatchesLinearScan() {
+    Random random = new Random(7);
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < 2000; i++) {
+      names.add(randomWord(random, 4 + random.nextInt(8)));
+    }
+    FlagNameSuggester suggester = new FlagNameSuggester(names);
+
+    int[][] rows = new int[2][];
+    for (int i = 0; i < 200; i++) {
+      String query = randomWord(random, 4 + random.nextInt(8));
+      List<String> expected = new ArrayList<String>();
+      for (String name : names) {
+        if (distance(name, query, 0, query.length(),
+            rows) <= 2 && !expected.contains(name)) {
+          expected.add(name);
+        }
+      }
+      List<String> actual = suggester.suggest(query, 0, query.length(), 2);
+      Collections.sort(expected);
+      Collections.sort(actual);
+      assertEquals(query, expected, actual);
+    }
+  }
+
+
+  @Test
+  public void testDistance() {
+    int[][] rows = new int[2][];
+    assertEquals(0, distance("flag", "--flag", 2, 6, rows));
+    assertEquals(3, distance("kitten", "sitting", 0, 7, rows));
+    assertEquals(4, distance("", "name", 0, 4, rows));
+  }
+
+
+  @Test
+  public void testParse_UnknownFlagSuggestions() {
+    Flag unconsumed = new Flag(new String[]{"unconsumed"}, false, 0, 0, null,
+        true);
+    Flag output = new Flag(new String[]{"output", "o"}, false, 1, 1);
+    Flag verbose = Flag.createSwitch(new String[]{"verbose", "v"});
+    ParserSpec spec = new ParserSpec(
+        Arrays.asList(new Flag[]{unconsumed, output, verbose}), unconsumed,
+        null);
+
+    ParseResult result = spec.parse(new String[]{"--verbos", "-x"});
+    List<ParsingError> errors = result.getErrors();
+    assertEquals("errors.size", 2, errors.size());
+    SingleFlagParsingError error = (SingleFlagParsingError) errors.get(0);
+    assertEquals(SingleFlagParsingError.Type.UNKNOWN_FLAG, error.type);
+    assertEquals(Arrays.asList("verbose"), error.candidates);
+    assertTrue(error.getDescription(),
+        error.getDescription().endsWith("Did you mean verbose?"));
+    // Names of up to 2 characters are not taken for misspellings.
+    assertTrue(((SingleFlagParsingError) errors.get(1)).candidates.isEmpty());
+
+    // The unconsumed flag is never suggested.
+    result = spec.parse(new String[]{"--unconsume"});
+    error = (SingleFlagParsingError) result.getErrors().get(0);
+    assertEquals(SingleFlagParsingError.Type.UNKNOWN_FLAG, error.type);
+    assertTrue(error.candidates.isEmpty());
+  }
+
+
+  private static String randomWord(Random random, int length) {
+    char[] word = new char[length];
+    for (int i = 0; i < length; i++) {
+      word[i] = (char) ('a' + random.nextInt(4));
+    }
+    return new String(word);
+  }
+
+}  // class FlagNameSuggesterTest
@@ -0,0 +1,206 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+public class FlagProcessorTest {
+
+  private static final String OPTIONS = String.join("\n",
+      "package sample;",
+      "import java.util.List;",
+      "import org.smartcliparser.CommandLineFlag;",
+      "import org.smartcliparser.UnconsumedArgs;",
+      "public class Options {",
+      "  @CommandLineFlag(names = {\"output\", \"o\"}, isRequired = true)",
+      "  public String output;",
+      "  @CommandLineFlag(names = {\"input\", \"i\"}, numOfArgsMax = 3)",
+      "  public List<String> inputs;",
+      "  @CommandLineFlag(names = {\"count\", \"n\"})",
+      "  public int count = 1;",
+      "  @CommandLineFlag(names = {\"ratio\"})",
+      "  public double ratio;",
+      "  @CommandLineFlag(names = {\"verbose\", \"v\"})",
+      "  public boolean verbose;",
+      "  @CommandLineFlag(names = {\"name\"}, pattern = \"[a-z]+\")",
+      "  public String name;",
+      "  @UnconsumedArgs(numOfArgsMax = 2)",
+      "  public List<String> rest;",
+      "}");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private JavaCompiler compiler;
+
+
+  /**
+   * The program registering the flags Options declares.
+   */
+  private static class OptionsProgram extends CommandLineProgram {
+
+    @Override
+    public void initialize() {
+      this.setUnconsumedFlags(0, 2);
+      this.registerFlag(new Flag(new String[]{"output", "o"}, true, 1, 1));
+      this.registerFlag(new Flag(new String[]{"input", "i"}, false, 1, 3));
+      this.registerFlag(
+          new IntFlag(new String[]{"count", "n"}, false, 1, 1));
+      this.registerFlag(new DoubleFlag(new String[]{"ratio"}, false, 1, 1));
+      this.registerFlag(Flag.createSwitch(new String[]{"verbose", "v"}));
+      this.registerFlag(new Flag(new String[]{"name"}, false, 1, 1,
+          java.util.regex.Pattern.compile("[a-z]+"), false));
+    }
+
+    @Override
+    public void run() {}
+
+  }  // class OptionsProgram
+
+
+  @Before
+  public void setUp() {
+    this.compiler = ToolProvider.getSystemJavaCompiler();
+    assumeNotNull(this.compiler);
+  }
+
+
+  @Test
+  public void testParse_AssignsFields() throws Exception {
+    Class<?> options = this.compile("Options", OPTIONS);
+    Object target = options.getConstructor().newInstance();
+    ParseResult result = this.parse(options, target, new String[]{
+        "a", "-o", "out", "--input", "x", "y", "-v", "--ratio", "0.5"});
+    assertTrue(result.isValid());
+    assertEquals("out", options.getField("output").get(target));
+    assertEquals(Arrays.asList("x", "y"),
+        options.getField("inputs").get(target));
+    assertEquals(1, options.getField("count").get(target));
+
+    assertEquals(0.5, options.getField("ratio").get(target));
+    assertEquals(true, options.getField("verbose").get(target));
+    assertNull(options.getField("name").get(target));
+    assertEquals(Arrays.asList("a"), options.getField("rest").get(target));
+
+    // Numbers are assigned as converted while parsing.
+    target = options.getConstructor().newInstance();
+    this.parse(options, target, new String[]{"-o", "out", "-n", "-42"});
+    assertEquals(-42, options.getField("count").get(target));
+  }
+
+
+  @Test
+  public void testParse_SameErrorsAsCommandLineProgram() throws Exception {
+    Class<?> options = this.compile("Options", OPTIONS);
+    String[][] commandLines = {
+        {"-o", "out", "-n", "42", "--name", "abc", "--unconsumed"},
+        {"-n", "x", "--ratio", "1f", "--nosuchflag"},
+        {"-o", "a", "b", "-i", "1", "2", "3", "4", "--name", "A1"},
+        {"a", "b", "c", "--output", "--verbose", "-v", "---"},
+        {},
+    };
+    for (int i = 0; i < commandLines.length; i++) {
+      Object target = options.getConstructor().newInstance();
+      ParseResult generated = this.parse(options, target, commandLines[i]);
+      OptionsProgram program = new OptionsProgram();
+      program.initialize();
+      boolean isValid = program.parseArgs(commandLines[i]);
+      String line = Arrays.toString(commandLines[i]);
+      assertEquals(line, isValid, generated.isValid());
+      assertEquals(line, describe(program.getErrors()),
+          describe(generated.getErrors()));
+      assertEquals(line, program.args, generated.getRemainingArgs());
+    }
+  }
+
+
+  @Test
+  public void testProcess_RejectsPrivateFields() throws IOException {
+    File source = this.write("Invalid", String.join("\n",
+        "package sample;",
+        "public class Invalid {",
+        "  @org.smartcliparser.CommandLineFlag(names = {\"value\"})",
+        "  private String value;",
+        "}"));
+    ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+    assertNotEquals(0, this.compiler.run(null, null, diagnostics,
+        "-proc:only", "-processor", FlagProcessor.class.getName(),
+        "-cp", System.getProperty("java.class.path"),
+        "-s", this.folder.getRoot().getPath(), source.getPath()));
+    assertTrue(diagnostics.toString("UTF-8").contains(
+        "value must not be private."));
+  }
+
+
+  /**
+   * Compiles |source| with the processor and loads the class |name|.
+   */
+  private Class<?> compile(String name, String source) throws Exception {
+    File file = this.write(name, source);
+    File classes = this.folder.newFolder("classes");
+    assertEquals(0, this.compiler.run(null, null, null,
+        "-processor", FlagProcessor.class.getName(),
+        "-cp", System.getProperty("java.class.path"),
+        "-d", classes.getPath(), "-s", classes.getPath(), file.getPath()));
+    ClassLoader loader = new URLClassLoader(
+        new URL[]{classes.toURI().toURL()}, this.getClass().getClassLoader());
+    return loader.loadClass("sample." + name);
+  }
+
+
+  private File write(String name, String source) throws IOException {
+    File file = new File(this.folder.getRoot(), name + ".java");
+    Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+
+  private ParseResult parse(Class<?> options, Object target, String[] args)
+      throws Exception {
+    Class<?> parser = options.getClassLoader().loadClass(
+        options.getName() + "Parser");
+    Method parse = parser.getMethod("parse", String[].class, options);
+    return (ParseResult) parse.invoke(null, args, target);
+  }
+
+
+  private static List<String> describe(List<ParsingError> errors) {
+    List<String> descriptions = new ArrayList<String>();
+    for (int i = 0; i < errors.size(); i++) {
+      descriptions.add(errors.get(i).getDescription());
+    }
+    return descriptions;
+  }
+
+}  // class FlagProcessorTest
@@ -0,0 +1,197 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class GlobFilterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path root;
+
+
+  @Before
+  public void setUp() throws IOException {
+    this.root = this.folder.getRoot().toPath();
+    String[] files = {"src/A.java", "src/b/B.java", "src/b/notes.txt",
+        "src/build/Out.java", "build/Gen.java", "node_modules/x/y.java"};
+    for (int i = 0; i < files.length; i++) {
+      Path file = this.root.resolve(files[i]);
+      Files.createDirectories(file.getParent());
+      Files.createFile(file);
+    }
+  }
+
+
+  @Test
+  public void testCompile() {
+    assertTrue(GlobFilter.compile("*.java").matcher("A.java").matches());
+    assertTrue(GlobFilter.compile("*.java").matcher("a/b/A.java").matches());
+    assertFalse(GlobFilter.compile("/*.java").matcher("a/A.java").matches());
+    assertTrue(GlobFilter.compile("src/**/*.java")
+        .matcher("src/A.java").matches());
+    assertTrue(GlobFilter.compile("src/**/*.java")
+        .matcher("src/a/b/A.java").matches());
+    assertFalse(GlobFilter.compile("src/*.java")
+        .matcher("src/a/A.java").matches());
+    assertTrue(GlobFilter.compile("file?.[ch]").matcher("file1.c").matches());
+    assertFalse(GlobFilter.compile("file?.[!ch]")
+        .matcher("file1.c").matches());
+    assertTrue(GlobFilter.compile("*.{java,txt}")
+        .matcher("a.txt").matches());
+    assertFalse(GlobFilter.compile("a+b.txt").matcher("aab.txt").matches());
+    assertTrue(GlobFilter.compile("\\*.txt").matcher("*.txt").matches());
+    assertTrue(GlobFilter.compile("./*.java").matcher("A.java").matches());
+    assertFalse(GlobFilter.compile("./*.java").matcher("a/A.java").matches());
+  }
+
+
+  @Test
+  public void testIsGlob() {
+    assertTrue(GlobFilter.isGlob("**/*.java"));
+    assertTrue(GlobFilter.isGlob("!build"));
+    assertTrue(GlobFilter.isGlob("file[0-9]"));
+    assertFalse(GlobFilter.isGlob("src/A.java"));
+    assertFalse(GlobFilter.isGlob("file\\[1].txt"));
+    assertTrue(GlobFilter.isGlob("\\\\*.txt"));
+  }
+
+
+  @Test
+  public void testUnquote() {
+    assertEquals("file[1].txt", GlobFilter.unquote("file\\[1\\].txt"));
+    assertEquals("!a", GlobFilter.unquote("\\!a"));
+    assertEquals("a\\b", GlobFilter.unquote("a\\\\b"));
+    assertEquals("a\\b", GlobFilter.unquote("a\\b"));
+  }
+
+
+  @Test
+  public void testGetBaseDirectory() {
+    assertEquals("/src", GlobFilter.getBaseDirectory("/src/*.java"));
+    assertEquals("/src/b", GlobFilter.getBaseDirectory("/src/b/**"));
+    assertEquals("/", GlobFilter.getBaseDirectory("/*.java"));
+    assertEquals("/a*", GlobFilter.getBaseDirectory("/a\\*/{b,c}"));
+  }
+
+
+  @Test
+  public void testIsPruned() {
+    GlobFilter globs = new GlobFilter(Collections.<String>emptyList(),
+        Arrays.asList("**/build/**", ".git"));
+    assertTrue(globs.isPruned(Paths.get("build"), "build"));
+    assertTrue(globs.isPruned(Paths.get("src/build"), "src/build"));
+    assertTrue(globs.isPruned(Paths.get("a/.git"), "a/.git"));
+    assertFalse(globs.isPruned(Paths.get("src"), "src"));
+    assertFalse(globs.isIncluded(
+        Paths.get("src/build/Out.java"), "src/build/Out.java"));
+    assertTrue(globs.isIncluded(Paths.get("src/A.java"), "src/A.java"));
+  }
+
+
+  @Test
+  public void testGetPaths_IncludesAndExcludes() throws IOException {
+    FileSetFlag flag = this.createFlag(
+        "**/*.java", "!**/build/**", "!node_modules");
+    assertEquals(Arrays.asList("src/A.java", "src/b/B.java"),
+        this.relativize(flag.getPaths()));
+    assertEquals(Arrays.asList("src/A.java", "src/b/B.java"),
+        this.relativize(
+            flag.getFileStream().collect(Collectors.toList())));
+  }
+
+
+  @Test
+  public void testGetPaths_ExcludesOnly() throws IOException {
+    FileSetFlag flag = this.createFlag("!*.java");
+    assertEquals(Arrays.asList("src/b/notes.txt"),
+        this.relativize(flag.getPaths()));
+    assertEquals(Arrays.asList("src/b/notes.txt"),
+        this.relativize(
+            flag.getFileStream().collect(Collectors.toList())));
+  }
+
+
+  @Test
+  public void testGetPaths_GlobsAreOptIn() throws IOException {
+    Files.createFile(this.root.resolve("src/{a}[1].txt"));
+    FileSetFlag flag = new FileSetFlag(
+        new String[]{"input"}, false, 1, Flag.UNLIMITED_NUM_OF_ARGS);
+    flag.args.add(this.root.resolve("src/{a}[1].txt").toString());
+    assertEquals(Arrays.asList("src/{a}[1].txt"),
+        this.relativize(flag.getPaths()));
+
+    flag.setExpandGlobs(true);
+    assertEquals(Collections.<String>emptyList(),
+        this.relativize(flag.getPaths()));
+    flag.args.set(0, this.root + "/src/\\{a}\\[1].txt");
+    assertEquals(Arrays.asList("src/{a}[1].txt"),
+        this.relativize(flag.getPaths()));
+  }
+
+
+  @Test
+  public void testGetPaths_AbsoluteGlobs() throws IOException {
+    FileSetFlag flag = new FileSetFlag(
+        new String[]{"input"}, false, 1, Flag.UNLIMITED_NUM_OF_ARGS);
+    flag.setExpandGlobs(true);
+    flag.args.add(this.root + "/src/*.java");
+    assertEquals(Arrays.asList("src/A.java"),
+        this.relativize(flag.getPaths()));
+
+    flag = this.createFlag("*.java", "!" + this.root + "/src/**");
+    assertEquals(Arrays.asList("build/Gen.java", "node_modules/x/y.java"),
+        this.relativize(flag.getPaths()));
+    assertEquals(Arrays.asList("build/Gen.java", "node_modules/x/y.java"),
+        this.relativize(
+            flag.getFileStream().collect(Collectors.toList())));
+  }
+
+
+  private FileSetFlag createFlag(String... globs) {
+    FileSetFlag flag = new FileSetFlag(
+        new String[]{"input"}, false, 1, Flag.UNLIMITED_NUM_OF_ARGS);
+    flag.setExpandGlobs(true);
+    flag.args.add(this.root.toString());
+    flag.args.addAll(Arrays.asList(globs));
+    return flag;
+  }
+
+
+  private List<String> relativize(List<Path> paths) {
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < paths.size(); i++) {
+      names.add(this.root.relativize(paths.get(i)).toString());
+    }
+    return names;
+  }
+
+}  // class GlobFilterTest
@@ -0,0 +1,169 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.smartcliparser.demos.Reverse;
+
+public class InstrumentationTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ParseMetrics metrics;
+  private Flag output;
+  private IntFlag count;
+  private ParserSpec spec;
+
+
+  @Before
+  public void setUp() {
+    metrics = new ParseMetrics();
+    Instrumentation.setListener(metrics);
+    Flag unconsumed = new Flag(
+        new String[]{"unconsumed"}, false, 0, 0, null, true);
+    output = new Flag(new String[]{"output", "o"}, true, 1, 1);
+    count = new IntFlag(new String[]{"count", "n"}, false, 1, 2);
+    spec = new ParserSpec(java.util.Arrays.asList(
+        new Flag[]{unconsumed, output, count}), unconsumed, null);
+  }
+
+
+  @After
+  public void tearDown() {
+    Instrumentation.setListener(null);
+  }
+
+
+  @Test
+  public void testParse_ReportsPhasesFlagsAndErrors() {
+    spec.parse(new String[]{"-o", "a", "-n", "1", "2"});
+    spec.parse(new String[]{"-n", "x", "--nosuchflag"});
+
+    assertEquals(2, metrics.getCount(MetricsListener.Phase.PARSE));
+    assertEquals(2, metrics.getCount(MetricsListener.Phase.VALIDATE));
+    assertEquals(1, metrics.getCount(MetricsListener.Phase.COLLECT_ERRORS));
+    assertTrue(metrics.getPercentileNanos(MetricsListener.Phase.PARSE, 99) >=
+        metrics.getPercentileNanos(MetricsListener.Phase.PARSE, 1));
+    assertEquals(1, metrics.getNumOfTimesSet(output));
+    assertEquals(1, metrics.getNumOfArgsConsumed(output));
+    assertEquals(2, metrics.getNumOfTimesSet(count));
+    assertEquals(3, metrics.getNumOfArgsConsumed(count));
+    assertEquals(1, metrics.getErrorCount(
+        SingleFlagParsingError.Type.REQUIRED_FLAG_NOT_SET));
+    assertEquals(1, metrics.getErrorCount(
+        SingleFlagParsingError.Type.UNKNOWN_FLAG));
+    assertEquals(1, metrics.getErrorCount(
+        SingleFlagParsingError.Type.NOT_AN_INTEGER));
+  }
+
+
+  @Test
+  public void testExecute_ReportsRun() {
+    CommandLineProgram program = new CommandLineProgram() {
+      public void initialize() {
+        this.registerFlag(output);
+      }
+
+      public void run() {}
+    };
+    assertEquals(0, program.execute(new String[]{"-o", "a"}));
+    assertEquals(1, metrics.getCount(MetricsListener.Phase.RUN));
+    assertEquals(0, metrics.getCount(
+        MetricsListener.Phase.EXPAND_ARGS_FILES));
+  }
+
+
+  @Test
+  public void testSetListener_Null() {
+    Instrumentation.setListener(null);
+    spec.parse(new String[]{"-o", "a"});
+    assertEquals(0, metrics.getCount(MetricsListener.Phase.PARSE));
+  }
+
+
+  @Test
+  public void testParse_EmitsFlightRecorderEvents() throws Exception {
+    Instrumentation.setListener(null);
+    Path file = folder.getRoot().toPath().resolve("parse.jfr");
+    Recording recording = new Recording();
+    try {
+      recording.enable("org.smartcliparser.Phase").withoutThreshold();
+      recording.start();
+      spec.parse(new String[]{"--nosuchflag"});
+      recording.stop();
+      recording.dump(file);
+    } finally {
+      recording.close();
+    }
+
+    Set<String> phases = new HashSet<String>();
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+    for (int i = 0; i < events.size(); i++) {
+      phases.add(events.get(i).getString("phase"));
+    }
+    assertTrue(phases.contains("PARSE"));
+    assertTrue(phases.contains("VALIDATE"));
+    assertTrue(phases.contains("COLLECT_ERRORS"));
+  }
+
+
+  @Test
+  public void testExecute_ColdStartLoadsNoEventClasses() throws Exception {
+    // Looking up the type of PhaseEvent initializes the Flight Recorder,
+    // which costs hundreds of milliseconds on every start of a program.
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java")
+        .toString();
+    Process process = new ProcessBuilder(java, "-Xlog:class+load",
+        "-cp", System.getProperty("java.class.path"),
+        Reverse.class.getName(), "-i", "a", "b", "c")
+        .redirectErrorStream(true)
+        .start();
+    List<String> loaded = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        process.getInputStream(), StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.contains(PhaseEvent.class.getName()) ||
+          line.contains("jdk.jfr.EventType ") ||
+          line.contains("jdk.jfr.internal.")) {
+        loaded.add(line);
+      }
+    }
+    assertEquals(0, process.waitFor());
+    assertEquals(new ArrayList<String>(), loaded);
+  }
+
+}  // class InstrumentationTest
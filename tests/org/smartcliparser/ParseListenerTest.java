@@ -0,0 +1,170 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class ParseListenerTest {
+
+  /**
+   * Records the events it receives as strings.
+   */
+  private static class RecordingListener implements ParseListener {
+
+    final List<String> events = new ArrayList<String>();
+    final List<ParsingError> errors = new ArrayList<ParsingError>();
+
+
+    public void onFlag(Flag flag, String arg) {
+      this.events.add("flag " + flag.getNames().get(0) + " " + arg);
+    }
+
+
+    public void onValue(Flag flag, String value) {
+      this.events.add("value " + flag.getNames().get(0) + " " + value);
+    }
+
+
+    public void onPositional(String value) {
+      this.events.add("positional " + value);
+    }
+
+
+    public void onRemaining(String arg) {
+      this.events.add("remaining " + arg);
+    }
+
+
+    public void onError(ParsingError error) {
+      this.events.add("error " + ((SingleFlagParsingError) error).type);
+      this.errors.add(error);
+    }
+
+  }  // class RecordingListener
+
+
+  private Flag output;
+  private Flag input;
+  private Flag count;
+  private Flag unconsumed;
+  private ParserSpec spec;
+
+
+  @Before
+  public void setUp() {
+    output = new Flag(new String[]{"output", "o"}, true, 1, 1);
+    input = new Flag(new String[]{"input", "i"}, false, 1,
+        Flag.UNLIMITED_NUM_OF_ARGS);
+    count = new Flag(new String[]{"count", "n"}, false, 1, 1,
+        Pattern.compile("[0-9]+"), false);
+    unconsumed = new Flag(new String[]{"unconsumed"}, false, 0, 1, null, true);
+    spec = new ParserSpec(
+        Arrays.asList(new Flag[]{unconsumed, output, input, count}),
+        unconsumed, null);
+  }
+
+
+  @Test
+  public void testParse_EventsInArgvOrder() {
+    RecordingListener listener = new RecordingListener();
+    assertTrue(spec.parse(new String[]{
+        "first", "-i", "a", "b", "--output", "out", "-n", "3"}, listener));
+    assertEquals(Arrays.asList(
+        "positional first",
+        "flag input -i", "value input a", "value input b",
+        "flag output --output", "value output out",
+        "flag count -n", "value count 3"), listener.events);
+  }
+
+
+  @Test
+  public void testParse_ErrorsFollowTheirArgs() {
+    RecordingListener listener = new RecordingListener();
+    assertFalse(spec.parse(new String[]{
+        "-n", "x", "--nosuchflag", "value"}, listener));
+    assertEquals(Arrays.asList(
+        "flag count -n", "value count x", "error PATTERN_VIOLATION",
+        "remaining --nosuchflag", "error UNKNOWN_FLAG", "remaining value",
+        "error REQUIRED_FLAG_NOT_SET"), listener.events);
+    assertEquals("x", ((SingleFlagParsingError) listener.errors.get(0)).value);
+  }
+
+
+  @Test
+  public void testParse_TypedArgsCheckedWithoutKeepingValues() {
+    IntFlag ids = new IntFlag(new String[]{"ids"}, false, 1,
+        Flag.UNLIMITED_NUM_OF_ARGS);
+    ParserSpec idsSpec = new ParserSpec(
+        Arrays.asList(new Flag[]{unconsumed, ids}), unconsumed, null);
+    String[] args = new String[1002];
+    args[0] = "--ids";
+    for (int i = 1; i < 1001; i++) {
+      args[i] = Integer.toString(i);
+    }
+    args[1001] = "x";
+    RecordingListener listener = new RecordingListener();
+    StreamingParse parse = new StreamingParse(idsSpec, args, listener);
+    ArgumentTokenizer.tokenize(idsSpec, args, parse);
+    assertFalse(parse.finish());
+    assertEquals(SingleFlagParsingError.Type.NOT_AN_INTEGER,
+        ((SingleFlagParsingError) listener.errors.get(0)).type);
+
+    // Only the latest value is held while the args convert.
+    args[1001] = "1001";
+    parse = new StreamingParse(idsSpec, args, new RecordingListener());
+    ArgumentTokenizer.tokenize(idsSpec, args, parse);
+    assertTrue(parse.finish());
+    assertEquals(1001, ((int[]) parse.convertedValues[1])[0]);
+    assertEquals(4, ((int[]) parse.convertedValues[1]).length);
+  }
+
+
+  @Test
+  public void testParse_MatchesListBasedResult() {
+    String[][] commandLines = {
+        {"p", "-o", "out", "-i", "a", "b", "c"},
+        {"-o", "-i", "a", "-n", "1", "2"},
+        {"p", "q", "-o", "out"},
+        {"--output", "x", "--input"},
+    };
+    for (int i = 0; i < commandLines.length; i++) {
+      RecordingListener listener = new RecordingListener();
+      boolean isValid = spec.parse(commandLines[i], listener);
+      ParseResult result = spec.parse(commandLines[i]);
+      assertEquals("isValid", result.isValid(), isValid);
+
+      List<String> inputArgs = new ArrayList<String>();
+      List<String> remaining = new ArrayList<String>();
+      for (String event : listener.events) {
+        if (event.startsWith("value input ")) {
+          inputArgs.add(event.substring("value input ".length()));
+        } else if (event.startsWith("remaining ")) {
+          remaining.add(event.substring("remaining ".length()));
+        }
+      }
+      assertEquals(result.getArgs(input), inputArgs);
+      assertEquals(result.getRemainingArgs(), remaining);
+      assertEquals(result.getErrors().size(), listener.errors.size());
+    }
+  }
+
+}  // class ParseListenerTest
@@ -0,0 +1,201 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParserSpecTest {
+
+  private Flag output;
+  private Flag input;
+  private Flag compress;
+  private Flag unconsumed;
+  private ParserSpec spec;
+
+
+  @Before
+  public void setUp() {
+    output = new Flag(new String[]{"output", "o"}, true, 1, 1);
+    input = new Flag(new String[]{"input", "i"}, true, 1, 2);
+    compress = Flag.createSwitch(new String[]{"compress", "c"});
+    unconsumed = new Flag(new String[]{"unconsumed"}, false, 0, 1, null, true);
+    spec = new ParserSpec(
+        Arrays.asList(new Flag[]{unconsumed, output, input, compress}),
+        unconsumed, null);
+  }
+
+
+  @Test
+  public void testParse_Success() {
+    ParseResult result = spec.parse(new String[]{
+        "positional", "-o", "log.txt", "--input", "in1.txt", "in2.txt", "-c"});
+    assertTrue("isValid", result.isValid());
+    assertTrue("errors.isEmpty", result.getErrors().isEmpty());
+    assertEquals(Arrays.asList("log.txt"), result.getArgs(output));
+    assertEquals(Arrays.asList("in1.txt", "in2.txt"), result.getArgs(input));
+    assertTrue("isSet", result.isSet(compress));
+    assertEquals(Arrays.asList("positional"), result.getArgs(unconsumed));
+    assertTrue("remaining.isEmpty", result.getRemainingArgs().isEmpty());
+  }
+
+
+  @Test
+  public void testParse_Errors() {
+    ParseResult result = spec.parse(new String[]{
+        "-o", "log.txt", "extra.txt", "--nosuchflag", "value"});
+    assertFalse("isValid", result.isValid());
+    // input is not set and an unknown flag was passed.
+    assertEquals("errors.size", 2, result.getErrors().size());
+    assertEquals(Arrays.asList("extra.txt"), result.getArgs(unconsumed));
+    assertEquals(Arrays.asList("--nosuchflag", "value"),
+        result.getRemainingArgs());
+    // Test that the flags themselves are left untouched.
+    assertFalse("isSet", output.isSet());
+    assertTrue("args.isEmpty", output.args.isEmpty());
+  }
+
+
+  @Test
+  public void testParse_ErrorsInRegistrationOrder() {
+    Flag count = new Flag(new String[]{"count", "n"}, false, 1, 1,
+        java.util.regex.Pattern.compile("[0-9]+"), false);
+    ParserSpec patternSpec = new ParserSpec(
+        Arrays.asList(new Flag[]{unconsumed, output, input, count, compress}),
+        unconsumed, Arrays.asList(new Flag[]{compress}));
+    ParseResult result = patternSpec.parse(new String[]{
+        "-n", "x", "--unknown", "-o"});
+    assertFalse("isValid", result.isValid());
+
+    List<ParsingError> errors = result.getErrors();
+    assertEquals("errors.size", 5, errors.size());
+    assertEquals(SingleFlagParsingError.Type.MIN_NUMBER_OF_ARGS_VIOLATION,
+        ((SingleFlagParsingError) errors.get(0)).type);
+    assertEquals(SingleFlagParsingError.Type.REQUIRED_FLAG_NOT_SET,
+        ((SingleFlagParsingError) errors.get(1)).type);
+    assertEquals(SingleFlagParsingError.Type.PATTERN_VIOLATION,
+        ((SingleFlagParsingError) errors.get(2)).type);
+    assertEquals(MultiFlagParsingError.Type.REQUIRED_FLAG_SET_VIOLATION,
+        ((MultiFlagParsingError) errors.get(3)).type);
+    assertEquals(SingleFlagParsingError.Type.UNKNOWN_FLAG,
+        ((SingleFlagParsingError) errors.get(4)).type);
+    // Test that the errors are collected once and cached.
+    assertEquals(errors, result.getErrors());
+  }
+
+
+  @Test
+  public void testParse_IndependentResults() {
+    ParseResult first = spec.parse(new String[]{"-o", "a", "-i", "b"});
+    ParseResult second = spec.parse(new String[]{"-o", "c"});
+    assertEquals(Arrays.asList("a"), first.getArgs(output));
+    assertEquals(Arrays.asList("c"), second.getArgs(output));
+    assertTrue("isSet", first.isSet(input));
+    assertFalse("isSet", second.isSet(input));
+  }
+
+
+  @Test
+  public void testParse_SharedAcrossThreads() throws InterruptedException {
+    final AtomicInteger failures = new AtomicInteger();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 8; t++) {
+      final String value = "value" + t;
+      Thread thread = new Thread(new Runnable() {
+        public void run() {
+          for (int i = 0; i < 1000; i++) {
+            ParseResult result = spec.parse(
+                new String[]{"-o", value, "-i", value, value});
+            if (!result.isValid() ||
+                !result.getArgs(output).get(0).equals(value) ||
+                result.getArgs(input).size() != 2) {
+              failures.incrementAndGet();
+            }
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals("failures", 0, failures.get());
+  }
+
+
+  @Test
+  public void testParse_Abbreviations() {
+    Flag inplace = Flag.createSwitch(new String[]{"inplace"});
+    ParserSpec abbreviating = new ParserSpec(
+        Arrays.asList(new Flag[]{unconsumed, output, input, inplace}),
+        unconsumed, null, true);
+
+    ParseResult result = abbreviating.parse(
+        new String[]{"--out", "log.txt", "--inpu", "in.txt", "--inpl"});
+    assertTrue("isValid", result.isValid());
+    assertEquals(Arrays.asList("log.txt"), result.getArgs(output));
+    assertEquals(Arrays.asList("in.txt"), result.getArgs(input));
+    assertTrue("isSet", result.isSet(inplace));
+
+    result = abbreviating.parse(
+        new String[]{"--out", "log.txt", "-i", "in.txt", "--inp"});
+    assertFalse("isValid", result.isValid());
+    List<ParsingError> errors = result.getErrors();
+    assertEquals("errors.size", 1, errors.size());
+    SingleFlagParsingError error = (SingleFlagParsingError) errors.get(0);
+    assertEquals(SingleFlagParsingError.Type.AMBIGUOUS_FLAG, error.type);
+    assertEquals(Arrays.asList("inplace", "input"), error.candidates);
+
+    // Test that abbreviations are rejected unless allowed.
+    assertFalse("isValid",
+        spec.parse(new String[]{"--out", "log.txt", "-i", "in.txt"})
+            .isValid());
+  }
+
+
+  @Test
+  public void testParse_ManyArgsValidatedInParallel() {
+    Flag numbers = new Flag(new String[]{"numbers", "n"}, false, 1,
+        Flag.UNLIMITED_NUM_OF_ARGS, java.util.regex.Pattern.compile("\\d+"),
+        false);
+    ParserSpec numbersSpec = new ParserSpec(
+        Arrays.asList(new Flag[]{unconsumed, numbers}), unconsumed, null);
+    String[] args = new String[ArgumentValidator.PARALLEL_THRESHOLD * 2];
+    args[0] = "-n";
+    for (int i = 1; i < args.length; i++) {
+      args[i] = i % 1000 == 0 ? "x" + i : "" + i;
+    }
+    ParseResult result = numbersSpec.parse(args);
+    assertFalse("isValid", result.isValid());
+    SingleFlagParsingError error =
+        (SingleFlagParsingError) result.getErrors().get(0);
+    assertEquals(SingleFlagParsingError.Type.PATTERN_VIOLATION, error.type);
+    assertEquals("x1000", error.value);
+  }
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIsSet_UnknownFlag() {
+    spec.parse(new String[0]).isSet(new Flag("other"));
+  }
+
+}  // class ParserSpecTest
@@ -0,0 +1,439 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.smartcliparser.demos.Reverse;
+
+public class ProgramDaemonTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path socket;
+  private ProgramDaemon daemon;
+  private DaemonClient client;
+
+
+  /**
+   * Copies stdin to stdout, after printing the working directory and the
+   * variable named by --variable.
+   */
+  public static class Cat extends CommandLineProgram {
+
+    private Flag variable;
+
+    @Override
+    public void initialize() {
+      this.variable = new Flag(new String[]{"variable"}, true, 1, 1);
+      this.registerFlag(this.variable);
+    }
+
+    @Override
+    public void run() {
+      System.out.println(this.getWorkingDirectory());
+      System.out.println(
+          this.getEnvironment().get(this.variable.args.get(0)));
+      try {
+        InputStream in = System.in;
+        int b;
+        while ((b = in.read()) >= 0) {
+          System.out.write(b);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+  }  // class Cat
+
+
+  /**
+   * Prints each positional arg read from stdin.
+   */
+  public static class Xargs extends CommandLineProgram {
+
+    @Override
+    public void initialize() {
+      this.setStdinArgs(0, Flag.UNLIMITED_NUM_OF_ARGS, false);
+    }
+
+    @Override
+    public void run() {
+      StdinArgs args = this.getStdinArgs();
+      while (args.hasNext()) {
+        System.out.println("got: " + args.next());
+      }
+    }
+
+  }  // class Xargs
+
+
+  /**
+   * Prints 64 lines from the threads of a parallel stream.
+   */
+  public static class Parallel extends CommandLineProgram {
+
+    @Override
+    public void initialize() {}
+
+    @Override
+    public void run() {
+      final PrintStream out = this.getStdout();
+      IntStream.range(0, 64).parallel().forEach(new IntConsumer() {
+        public void accept(int i) {
+          out.println("line " + i);
+        }
+      });
+    }
+
+  }  // class Parallel
+
+
+  /**
+   * Prints a line once |release| is counted down, after counting down
+   * |started|.
+   */
+  public static class Waiter extends CommandLineProgram {
+
+    static CountDownLatch started;
+    static CountDownLatch release;
+
+    @Override
+    public void initialize() {}
+
+    @Override
+    public void run() {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      System.out.println("done");
+    }
+
+  }  // class Waiter
+
+
+  @Before
+  public void setUp() throws IOException {
+    this.socket = this.folder.getRoot().toPath().resolve("daemon.sock");
+    this.daemon = new ProgramDaemon(this.socket);
+    this.daemon.register("reverse", new Supplier<CommandLineProgram>() {
+      public CommandLineProgram get() {
+        return new Reverse();
+      }
+    });
+    this.daemon.register("cat", new Supplier<CommandLineProgram>() {
+      public CommandLineProgram get() {
+        return new Cat();
+      }
+    });
+    this.daemon.register("xargs", new Supplier<CommandLineProgram>() {
+      public CommandLineProgram get() {
+        return new Xargs();
+      }
+    });
+    this.daemon.register("parallel", new Supplier<CommandLineProgram>() {
+      public CommandLineProgram get() {
+        return new Parallel();
+      }
+    });
+    this.daemon.register("waiter", new Supplier<CommandLineProgram>() {
+      public CommandLineProgram get() {
+        return new Waiter();
+      }
+    });
+    this.daemon.start();
+    this.client = new DaemonClient(this.socket);
+  }
+
+
+  @After
+  public void tearDown() throws IOException {
+    this.daemon.close();
+  }
+
+
+  @Test
+  public void testExecute_Success() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    int status = this.client.execute("reverse",
+        new String[]{"-i", "abc", "de", "-u"}, null, out, err);
+    assertEquals(0, status);
+    assertEquals("CBA\nED\n", out.toString("UTF-8"));
+    assertEquals("", err.toString("UTF-8"));
+  }
+
+
+  @Test
+  public void testExecute_InvalidArgs() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    assertEquals(1, this.client.execute(
+        "reverse", new String[]{"-u"}, null, out, err));
+    assertEquals("", out.toString("UTF-8"));
+    assertTrue(err.toString("UTF-8").startsWith("Invalid use"));
+  }
+
+
+  @Test
+  public void testExecute_UnknownProgram() throws IOException {
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    assertEquals(DaemonProtocol.UNKNOWN_PROGRAM_STATUS, this.client.execute(
+        "nosuchprogram", new String[0], null, new ByteArrayOutputStream(),
+        err));
+    assertEquals("Unknown program: nosuchprogram\n", err.toString("UTF-8"));
+  }
+
+
+  @Test
+  public void testExecute_ForwardsContextAndStdin() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Path workingDirectory = Paths.get("/some/directory");
+    int status = this.client.execute("cat",
+        new String[]{"--variable", "NAME"}, workingDirectory,
+        Collections.singletonMap("NAME", "value"),
+        new ByteArrayInputStream("line 1\nline 2\n".getBytes("UTF-8")),
+        out, new ByteArrayOutputStream());
+    assertEquals(0, status);
+    assertEquals(workingDirectory + "\nvalue\nline 1\nline 2\n",
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+
+  /**
+   * Waits until |out| ends with |expected|.
+   * @return The number of milliseconds waited.
+   */
+  private static long awaitOutput(ByteArrayOutputStream out, String expected)
+      throws Exception {
+    long start = System.nanoTime();
+    while (!out.toString("UTF-8").endsWith(expected)) {
+      Thread.sleep(1);
+    }
+    return (System.nanoTime() - start) / 1000000;
+  }
+
+
+  @Test(timeout = 10000)
+  public void testExecute_StreamsStdin() throws Exception {
+    PipedOutputStream stdin = new PipedOutputStream();
+    final PipedInputStream clientStdin = new PipedInputStream(stdin);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final AtomicInteger status = new AtomicInteger(-1);
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          status.set(client.execute("cat",
+              new String[]{"--variable", "NAME"}, Paths.get("/"),
+              Collections.singletonMap("NAME", "value"), clientStdin, out,
+              new ByteArrayOutputStream()));
+        } catch (IOException e) {
+          // Reported by the status left at -1.
+        }
+      }
+    });
+    thread.start();
+    stdin.write("line 1\n".getBytes("UTF-8"));
+    stdin.flush();
+    awaitOutput(out, "line 1\n");
+    // Lets the program block reading the next line.
+    Thread.sleep(100);
+    stdin.write("line 2\n".getBytes("UTF-8"));
+    stdin.flush();
+    long waited = awaitOutput(out, "line 2\n");
+    assertTrue("waited " + waited + " ms", waited < 500);
+    stdin.close();
+    thread.join();
+    assertEquals(0, status.get());
+  }
+
+
+  @Test(timeout = 10000)
+  public void testExecute_StdinArgsReadFromClient() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int status = this.client.execute("xargs", new String[0],
+        new ByteArrayInputStream("client-a\nclient-b\n".getBytes("UTF-8")),
+        out, new ByteArrayOutputStream());
+    assertEquals(0, status);
+    assertEquals("got: client-a\ngot: client-b\n", out.toString("UTF-8"));
+  }
+
+
+  @Test
+  public void testExecute_ConcurrentInvocationsAreIsolated()
+      throws InterruptedException {
+    final AtomicInteger failures = new AtomicInteger();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 8; t++) {
+      final String value = "value" + t;
+      Thread thread = new Thread(new Runnable() {
+        public void run() {
+          try {
+            for (int i = 0; i < 20; i++) {
+              ByteArrayOutputStream out = new ByteArrayOutputStream();
+              int status = client.execute("reverse",
+                  new String[]{"-i", value}, null, out,
+                  new ByteArrayOutputStream());
+              String expected = new StringBuilder(value).reverse() + "\n";
+              if (status != 0 || !out.toString("UTF-8").equals(expected)) {
+                failures.incrementAndGet();
+              }
+            }
+          } catch (IOException e) {
+            failures.incrementAndGet();
+          }
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals("failures", 0, failures.get());
+  }
+
+
+  /**
+   * Sends a request for cat with |numOfArgs| args, the first of |length|
+   * bytes, without sending the bytes.
+   * @return The exit status reported by the daemon.
+   */
+  private int sendOversizedRequest(int numOfArgs, int length)
+      throws IOException {
+    SocketChannel channel =
+        SocketChannel.open(UnixDomainSocketAddress.of(this.socket));
+    try {
+      DataOutputStream out = new DataOutputStream(
+          DaemonProtocol.newOutputStream(channel));
+      out.writeInt(DaemonProtocol.MAGIC);
+      out.writeInt(DaemonProtocol.VERSION);
+      DaemonProtocol.writeString(out, "cat");
+      DaemonProtocol.writeString(out, "/");
+      out.writeInt(numOfArgs);
+      out.writeInt(length);
+      out.flush();
+      DataInputStream in =
+          new DataInputStream(DaemonProtocol.newInputStream(channel));
+      while (true) {
+        byte frameChannel = in.readByte();
+        int frameLength = DaemonProtocol.readFrameLength(in);
+        if (frameChannel == DaemonProtocol.EXIT) {
+          return in.readInt();
+        }
+        in.readFully(new byte[frameLength]);
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+
+  @Test
+  public void testExecute_OversizedRequestIsRejected() throws IOException {
+    assertEquals(DaemonProtocol.REQUEST_TOO_LARGE_STATUS,
+        this.sendOversizedRequest(Integer.MAX_VALUE, 0));
+    assertEquals(DaemonProtocol.REQUEST_TOO_LARGE_STATUS,
+        this.sendOversizedRequest(1, Integer.MAX_VALUE));
+    // The daemon keeps serving.
+    assertEquals(0, this.client.execute("reverse", new String[]{"-i", "a"},
+        null, new ByteArrayOutputStream(), new ByteArrayOutputStream()));
+  }
+
+
+  @Test
+  public void testExecute_OutputOfOtherThreads() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(0, this.client.execute("parallel", new String[0], null, out,
+        new ByteArrayOutputStream()));
+    List<String> lines = new ArrayList<String>(
+        Arrays.asList(out.toString("UTF-8").split("\n")));
+    Collections.sort(lines);
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < 64; i++) {
+      expected.add("line " + i);
+    }
+    Collections.sort(expected);
+    assertEquals(expected, lines);
+  }
+
+
+  @Test
+  public void testClose_RunningInvocationKeepsStdio() throws Exception {
+    Waiter.started = new CountDownLatch(1);
+    Waiter.release = new CountDownLatch(1);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final AtomicInteger status = new AtomicInteger(-1);
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          status.set(client.execute("waiter", new String[0], null, out,
+              new ByteArrayOutputStream()));
+        } catch (IOException e) {
+          // Reported by the status left at -1.
+        }
+      }
+    });
+    thread.start();
+    Waiter.started.await();
+    this.daemon.close();
+    Waiter.release.countDown();
+    thread.join();
+    assertEquals(0, status.get());
+    assertEquals("done\n", out.toString("UTF-8"));
+  }
+
+
+  @Test(expected = IOException.class)
+  public void testStart_AlreadyListening() throws IOException {
+    new ProgramDaemon(
+        this.folder.getRoot().toPath().resolve("daemon.sock")).start();
+  }
+
+}  // class ProgramDaemonTest
@@ -0,0 +1,155 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StdinArgsTest {
+
+  private static InputStream stream(String text) {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+
+  private static Flag arity(int min, int max) {
+    return new Flag(new String[]{"stdin"}, false, min, max, null, true);
+  }
+
+
+  private static List<String> readAll(StdinArgs args) {
+    List<String> values = new ArrayList<String>();
+    while (args.hasNext()) {
+      values.add(args.next());
+    }
+    return values;
+  }
+
+
+  @Test
+  public void testNext_Lines() {
+    StdinArgs args = new StdinArgs(stream("a.txt\r\n\nb c.txt\n\u03b1\nlast"),
+        arity(0, Flag.UNLIMITED_NUM_OF_ARGS), false);
+    assertEquals(Arrays.asList("a.txt", "b c.txt", "\u03b1", "last"),
+        readAll(args));
+    assertTrue("errors.isEmpty", args.finish().isEmpty());
+    assertEquals(4, args.getNumOfArgs());
+  }
+
+
+  @Test
+  public void testNext_NulSeparated() {
+    StdinArgs args = new StdinArgs(stream("a\nb\0\0c\0"),
+        arity(0, Flag.UNLIMITED_NUM_OF_ARGS), true);
+    assertEquals(Arrays.asList("a\nb", "", "c"), readAll(args));
+  }
+
+
+  @Test
+  public void testNext_Spilled() {
+    // Long args span chunks, and most chunks are spilled.
+    StringBuilder text = new StringBuilder();
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < 100000; i++) {
+      String arg = i % 10000 == 0 ?
+          new String(new char[StdinArgs.CHUNK_SIZE + i / 10000]) + i :
+          "/path/to/file" + i;
+      expected.add(arg);
+      text.append(arg).append('\n');
+    }
+    StdinArgs args = new StdinArgs(stream(text.toString()),
+        arity(0, Flag.UNLIMITED_NUM_OF_ARGS), false,
+        StdinArgs.CHUNK_SIZE, 4 * StdinArgs.CHUNK_SIZE);
+    assertEquals(expected, readAll(args));
+    assertTrue("errors.isEmpty", args.finish().isEmpty());
+  }
+
+
+  @Test
+  public void testFinish_TooMany() {
+    StdinArgs args = new StdinArgs(stream("a\nb\nc\nd\n"), arity(0, 2), false);
+    assertEquals(Arrays.asList("a", "b"), readAll(args));
+    List<ParsingError> errors = args.finish();
+    assertEquals("errors.size", 1, errors.size());
+    SingleFlagParsingError error = (SingleFlagParsingError) errors.get(0);
+    assertEquals(SingleFlagParsingError.Type.MAX_NUMBER_OF_ARGS_VIOLATION,
+        error.type);
+    assertEquals("Expected at most 2 arguments, but got 4",
+        error.getDescription());
+  }
+
+
+  @Test
+  public void testFinish_TooFew() {
+    StdinArgs args = new StdinArgs(stream("a\nb\nc\n"), arity(5, 10), false);
+    // Args not consumed are still counted.
+    args.next();
+    List<ParsingError> errors = args.finish();
+    assertEquals("errors.size", 1, errors.size());
+    assertEquals("Expected at least 5 arguments, but got 3",
+        errors.get(0).getDescription());
+    assertFalse("hasNext", args.hasNext());
+  }
+
+
+  private static class Lister extends CommandLineProgram {
+
+    List<String> listed = new ArrayList<String>();
+
+
+    @Override
+    public void initialize() {
+      setStdinArgs(1, 3, false);
+    }
+
+
+    @Override
+    public void run() {
+      StdinArgs args = getStdinArgs();
+      listed.add(args.next());
+    }
+
+  }  // class Lister
+
+
+  @Test
+  public void testExecute() {
+    InputStream in = System.in;
+    try {
+      Lister lister = new Lister();
+      System.setIn(stream("a\nb\n"));
+      assertEquals(0, lister.execute(new String[0]));
+      assertEquals(Arrays.asList("a"), lister.listed);
+
+      System.setIn(stream("c\nd\ne\nf\n"));
+      assertEquals(1, lister.parseAndRun(new String[0]));
+      assertEquals(Arrays.asList("a", "c"), lister.listed);
+      List<ParsingError> errors = lister.getErrors();
+      assertEquals("errors.size", 1, errors.size());
+      assertEquals(SingleFlagParsingError.Type.MAX_NUMBER_OF_ARGS_VIOLATION,
+          ((SingleFlagParsingError) errors.get(0)).type);
+    } finally {
+      System.setIn(in);
+    }
+  }
+
+}  // class StdinArgsTest
@@ -0,0 +1,171 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+public class SubcommandTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The names of the subcommands created so far, in order.
+   */
+  private List<String> created;
+
+  /**
+   * The programs that ran so far, in order.
+   */
+  private List<CommandLineProgram> ran;
+
+
+  private class Tool extends CommandLineProgram {
+
+    Flag verbose = Flag.createSwitch(new String[]{"verbose", "v"});
+
+
+    @Override
+    public void initialize() {
+      registerFlag(verbose);
+      registerSubcommand("commit", factory("commit"));
+      registerSubcommand("log", factory("log"));
+    }
+
+
+    @Override
+    public void run() {
+      ran.add(this);
+    }
+
+  }  // class Tool
+
+
+  private class Subcommand extends CommandLineProgram {
+
+    Flag message = new Flag(new String[]{"message", "m"}, false, 1, 1);
+
+
+    @Override
+    public void initialize() {
+      registerFlag(message);
+      setExpandArgsFiles(true);
+    }
+
+
+    @Override
+    public void run() {
+      ran.add(this);
+    }
+
+  }  // class Subcommand
+
+
+  @Before
+  public void setUp() {
+    created = new ArrayList<String>();
+    ran = new ArrayList<CommandLineProgram>();
+  }
+
+
+  @Test
+  public void testExecute_RunsOnlySelectedSubcommand() {
+    Tool tool = new Tool();
+    assertEquals(0, tool.execute(
+        new String[]{"--verbose", "commit", "-m", "message"}));
+    assertEquals(Arrays.asList("commit"), created);
+    assertEquals(1, ran.size());
+    Subcommand commit = (Subcommand) ran.get(0);
+    assertSame(tool, commit.getParent());
+    assertEquals(Arrays.asList("message"), commit.message.args);
+    assertTrue("isSet", tool.verbose.isSet());
+  }
+
+
+  @Test
+  public void testExecute_InheritedFlagAfterName() {
+    Tool tool = new Tool();
+    assertEquals(0, tool.execute(new String[]{"log", "-m", "x", "-v"}));
+    assertEquals(Arrays.asList("log"), created);
+    assertTrue("isSet", tool.verbose.isSet());
+
+    // Test that the values of a previous invocation are cleared.
+    assertEquals(0, tool.parseAndRun(new String[]{"log"}));
+    assertFalse("isSet", tool.verbose.isSet());
+  }
+
+
+  @Test
+  public void testExecute_WithoutSubcommand() {
+    Tool tool = new Tool();
+    assertEquals(0, tool.execute(new String[]{"-v"}));
+    assertTrue(created.isEmpty());
+    assertEquals(Arrays.asList((CommandLineProgram) tool), ran);
+  }
+
+
+  @Test
+  public void testExecute_UnknownSubcommand() {
+    Tool tool = new Tool();
+    assertEquals(1, tool.execute(new String[]{"-v", "comit", "-m", "x"}));
+    assertTrue(created.isEmpty());
+    assertTrue(ran.isEmpty());
+    SubcommandParsingError error =
+        (SubcommandParsingError) tool.getErrors().get(0);
+    assertEquals(SubcommandParsingError.Type.UNKNOWN_SUBCOMMAND, error.type);
+    assertEquals("comit", error.name);
+    assertEquals(Arrays.asList("commit"), error.candidates);
+  }
+
+
+  @Test
+  public void testExecute_SubcommandInArgsFile() throws Exception {
+    File opts = folder.newFile();
+    Files.write(opts.toPath(), Arrays.asList("commit -m '@@x'"),
+        StandardCharsets.UTF_8);
+    Tool tool = new Tool();
+    tool.initialize();
+    tool.setExpandArgsFiles(true);
+    assertEquals(0, tool.parseAndRun(new String[]{"@" + opts, "-v"}));
+    // The args are not expanded again by the subcommand.
+    assertEquals(Arrays.asList("commit"), created);
+    Subcommand commit = (Subcommand) ran.get(0);
+    assertEquals(Arrays.asList("@x"), commit.message.args);
+    assertTrue("isSet", tool.verbose.isSet());
+  }
+
+
+  private Supplier<CommandLineProgram> factory(final String name) {
+    return new Supplier<CommandLineProgram>() {
+      public CommandLineProgram get() {
+        created.add(name);
+        return new Subcommand();
+      }
+    };
+  }
+
+}  // class SubcommandTest
@@ -0,0 +1,132 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TextFileDetectorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+  private Path createFile(String name, byte[] contents) throws IOException {
+    return Files.write(this.folder.getRoot().toPath().resolve(name), contents);
+  }
+
+
+  @Test
+  public void testIsText() throws IOException {
+    TextFileDetector detector = new TextFileDetector();
+    byte[] longText = new byte[3 * TextFileDetector.PREFIX_SIZE];
+    Arrays.fill(longText, (byte) 'a');
+    // A NUL byte past the prefix is not inspected.
+    longText[longText.length - 1] = 0;
+
+    assertTrue(detector.isText(this.createFile("a.txt", "text\n".getBytes())));
+    assertTrue(detector.isText(this.createFile("long.txt", longText)));
+    assertFalse(detector.isText(
+        this.createFile("a.bin", new byte[]{'a', 0, 'b'})));
+    assertFalse(detector.isText(this.createFile("empty", new byte[0])));
+    assertFalse(detector.isText(this.folder.getRoot().toPath()));
+    assertFalse(detector.isText(
+        this.folder.getRoot().toPath().resolve("missing")));
+  }
+
+
+  @Test
+  public void testIsText_CachedUntilFileChanges() throws IOException {
+    TextFileDetector detector = new TextFileDetector();
+    Path path = this.createFile("a.txt", "text".getBytes());
+    FileTime modifiedTime = FileTime.fromMillis(1000000);
+    Files.setLastModifiedTime(path, modifiedTime);
+    assertTrue(detector.isText(path));
+
+    // Same size and modification time, so the cached verdict is used.
+    Files.write(path, new byte[]{0, 0, 0, 0});
+    Files.setLastModifiedTime(path, modifiedTime);
+    assertTrue(detector.isText(path));
+
+    Files.setLastModifiedTime(path, FileTime.fromMillis(2000000));
+    assertFalse(detector.isText(path));
+  }
+
+
+  @Test
+  public void testIsText_RecentlyModifiedFileNotCached() throws IOException {
+    TextFileDetector detector = new TextFileDetector();
+    Path path = this.createFile("a.txt", "text".getBytes());
+    assertTrue(detector.isText(path));
+
+    // A change within the same tick of the file system clock keeps the
+    // modification time, so the verdict must not have been cached.
+    FileTime modifiedTime = Files.getLastModifiedTime(path);
+    Files.write(path, new byte[]{0, 0, 0, 0});
+    Files.setLastModifiedTime(path, modifiedTime);
+    assertFalse(detector.isText(path));
+  }
+
+
+  @Test
+  public void testSave_VerdictsLoadedByNextDetector() throws IOException {
+    Path file = this.folder.getRoot().toPath().resolve("index/verdicts");
+    TextFileDetector detector = new TextFileDetector(file);
+    Path path = this.createFile("a.txt", "text".getBytes());
+    FileTime modifiedTime = FileTime.fromMillis(1000000);
+    Files.setLastModifiedTime(path, modifiedTime);
+    assertTrue(detector.isText(path));
+    detector.save();
+
+    // Same size and modification time, so the saved verdict is used.
+    Files.write(path, new byte[]{0, 0, 0, 0});
+    Files.setLastModifiedTime(path, modifiedTime);
+    assertTrue(new TextFileDetector(file).isText(path));
+    assertFalse(new TextFileDetector().isText(path));
+
+    // A corrupt file is ignored.
+    Files.write(file, new byte[]{1, 2, 3});
+    assertFalse(new TextFileDetector(file).isText(path));
+  }
+
+
+  @Test
+  public void testFilter_KeepsOrder() throws IOException {
+    TextFileDetector detector = new TextFileDetector();
+    List<Path> paths = new ArrayList<Path>();
+    List<Path> expected = new ArrayList<Path>();
+    for (int i = 0; i < 500; i++) {
+      boolean isText = i % 3 != 0;
+      Path path = this.createFile("file" + i,
+          isText ? "text".getBytes() : new byte[]{0});
+      paths.add(path);
+      if (isText) {
+        expected.add(path);
+      }
+    }
+    assertEquals(expected, detector.filter(paths));
+  }
+
+}  // class TextFileDetectorTest
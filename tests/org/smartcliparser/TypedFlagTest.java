@@ -0,0 +1,225 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TypedFlagTest {
+
+  private enum Mode { FAST, SAFE }
+
+  private IntFlag ids;
+  private LongFlag size;
+  private DoubleFlag ratio;
+  private PathFlag output;
+  private EnumFlag<Mode> mode;
+  private DurationFlag timeout;
+  private CommandLineProgram program;
+
+
+  @Before
+  public void setUp() {
+    this.ids = new IntFlag(new String[]{"ids"}, false, 1,
+        Flag.UNLIMITED_NUM_OF_ARGS);
+    this.size = new LongFlag(new String[]{"size"}, false, 1, 1);
+    this.ratio = new DoubleFlag(new String[]{"ratio"}, false, 1, 2);
+    this.output = new PathFlag(new String[]{"output"}, false, 1, 1);
+    this.mode = new EnumFlag<Mode>(new String[]{"mode"}, false, 1, 1,
+        Mode.class);
+    this.timeout = new DurationFlag(new String[]{"timeout"}, false, 1, 1);
+    this.program = new CommandLineProgram() {
+      public void initialize() {}
+      public void run() {}
+    };
+    Flag[] flags = {ids, size, ratio, output, mode, timeout};
+    for (int i = 0; i < flags.length; i++) {
+      this.program.registerFlag(flags[i]);
+    }
+  }
+
+
+  @Test
+  public void testParseArgs_ConvertsValues() {
+    assertTrue(this.program.parseArgs(new String[]{
+        "--ids", "1", "-20", "2147483647", "--size", "8589934592",
+        "--ratio", "0.5", "-1e3", "--output", "out/log.txt",
+        "--mode", "safe", "--timeout", "1h30m"}));
+    assertArrayEquals(new int[]{1, -20, Integer.MAX_VALUE},
+        this.ids.getValues());
+    assertEquals(8589934592L, this.size.getValue(0));
+    assertArrayEquals(new double[]{0.5, -1000}, this.ratio.getValues(), 0);
+    assertEquals(Paths.get("out", "log.txt"), this.output.getValue(0));
+    assertEquals(Mode.SAFE, this.mode.getValue(0));
+    assertEquals(Duration.ofMinutes(90), this.timeout.getValue(0));
+  }
+
+
+  @Test
+  public void testParseArgs_ConversionErrors() {
+    assertFalse(this.program.parseArgs(new String[]{
+        "--ids", "1", "2147483648", "x", "--size", "1.5",
+        "--ratio", "1.5f", "--mode", "slow", "--timeout", "10"}));
+    List<ParsingError> errors = this.program.getErrors();
+    assertEquals("errors.size", 5, errors.size());
+
+    SingleFlagParsingError error = (SingleFlagParsingError) errors.get(0);
+    assertEquals(SingleFlagParsingError.Type.NOT_AN_INTEGER, error.type);
+    // Test that the first invalid value is reported.
+    assertEquals("2147483648", error.value);
+    assertEquals(SingleFlagParsingError.Type.NOT_AN_INTEGER,
+        ((SingleFlagParsingError) errors.get(1)).type);
+    assertEquals(SingleFlagParsingError.Type.NOT_A_NUMBER,
+        ((SingleFlagParsingError) errors.get(2)).type);
+    error = (SingleFlagParsingError) errors.get(3);
+    assertEquals(SingleFlagParsingError.Type.INVALID_ENUM_CONSTANT,
+        error.type);
+    assertEquals(Arrays.asList("FAST", "SAFE"), error.candidates);
+    assertEquals(SingleFlagParsingError.Type.INVALID_DURATION,
+        ((SingleFlagParsingError) errors.get(4)).type);
+  }
+
+
+  @Test
+  public void testParseArgs_NumOfArgsChecked() {
+    assertFalse(this.program.parseArgs(new String[]{
+        "--ratio", "1", "2", "3"}));
+    SingleFlagParsingError error =
+        (SingleFlagParsingError) this.program.getErrors().get(0);
+    assertEquals(SingleFlagParsingError.Type.MAX_NUMBER_OF_ARGS_VIOLATION,
+        error.type);
+  }
+
+
+  @Test
+  public void testGetValues_ConvertedAgainWhenArgsChange() {
+    assertTrue(this.program.parseArgs(new String[]{"--ids", "1", "2"}));
+    int[] values = this.ids.getValues();
+    assertSame("cached", values, this.ids.getValues());
+
+    this.program.clear();
+    assertTrue(this.program.parseArgs(new String[]{"--ids", "3", "4"}));
+    assertArrayEquals(new int[]{3, 4}, this.ids.getValues());
+    assertEquals(2, this.ids.getNumOfValues());
+  }
+
+
+  /**
+   * A flag whose values are the lengths of its args, counting conversions.
+   */
+  private static class LengthFlag extends TypedFlag {
+
+    int numOfConversions = 0;
+    private int[] values;
+
+
+    LengthFlag() {
+      super(new String[]{"lengths"}, false, 1, Flag.UNLIMITED_NUM_OF_ARGS);
+    }
+
+
+    @Override
+    protected Object newValues(int size) {
+      return new int[size];
+    }
+
+
+    @Override
+    protected SingleFlagParsingError.Type convert(String arg, Object values,
+        int position) {
+      this.numOfConversions++;
+      ((int[]) values)[position] = arg.length();
+      return null;
+    }
+
+
+    @Override
+    protected void setValues(Object values) {
+      this.values = (int[]) values;
+    }
+
+
+    int[] getValues() {
+      this.ensureConverted();
+      return this.values;
+    }
+
+  }  // class LengthFlag
+
+
+  @Test
+  public void testGetValues_ArgsConvertedOnceWhileParsing() {
+    LengthFlag lengths = new LengthFlag();
+    this.program.registerFlag(lengths);
+
+    assertTrue(this.program.parseArgs(new String[]{
+        "--lengths", "a", "bb", "ccc", "dddd", "eeeee"}));
+    assertTrue("isValid", lengths.isValid());
+    assertTrue("isEmpty", lengths.getErrors().isEmpty());
+    assertArrayEquals(new int[]{1, 2, 3, 4, 5}, lengths.getValues());
+    assertEquals(5, lengths.numOfConversions);
+
+    // Args changed after parsing are converted when accessed.
+    lengths.args.add("ffffff");
+    assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6}, lengths.getValues());
+    assertEquals(11, lengths.numOfConversions);
+  }
+
+
+  @Test
+  public void testConvert_IntegerBounds() {
+    int[] ints = new int[1];
+    assertNull(this.ids.convert("-2147483648", ints, 0));
+    assertEquals(Integer.MIN_VALUE, ints[0]);
+    assertNull(this.ids.convert("+2147483647", ints, 0));
+    assertEquals(Integer.MAX_VALUE, ints[0]);
+    long[] longs = new long[1];
+    assertNull(this.size.convert("-9223372036854775808", longs, 0));
+    assertEquals(Long.MIN_VALUE, longs[0]);
+    assertNull(this.size.convert("007", longs, 0));
+    assertEquals(7, longs[0]);
+
+    String[] invalid = {"", "-", "+", "1-", "1.0", " 1", "2147483648",
+        "-2147483649"};
+    for (int i = 0; i < invalid.length; i++) {
+      assertEquals(invalid[i], SingleFlagParsingError.Type.NOT_AN_INTEGER,
+          this.ids.convert(invalid[i], ints, 0));
+    }
+    assertEquals(SingleFlagParsingError.Type.NOT_AN_INTEGER,
+        this.size.convert("9223372036854775808", longs, 0));
+  }
+
+
+  @Test
+  public void testParseNanos() {
+    assertEquals(0, DurationFlag.parseNanos("0"));
+    assertEquals(250000000L, DurationFlag.parseNanos("250ms"));
+    assertEquals(TimeUnit.DAYS.toNanos(2) + 3000,
+        DurationFlag.parseNanos("2d3us"));
+    assertEquals(-1, DurationFlag.parseNanos(""));
+    assertEquals(-1, DurationFlag.parseNanos("5"));
+    assertEquals(-1, DurationFlag.parseNanos("ms"));
+    assertEquals(-1, DurationFlag.parseNanos("5y"));
+    assertEquals(-1, DurationFlag.parseNanos("999999999999d"));
+  }
+
+}  // class TypedFlagTest
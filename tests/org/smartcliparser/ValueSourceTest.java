@@ -0,0 +1,240 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+public class ValueSourceTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Map<String, String> environment;
+
+
+  private class Tool extends CommandLineProgram {
+
+    Flag output = new Flag(new String[]{"output", "o"}, true, 1, 1);
+    Flag input = new Flag(new String[]{"input-file", "i"}, false, 1,
+        Flag.UNLIMITED_NUM_OF_ARGS);
+    Flag count = new Flag(new String[]{"count", "n"}, false, 1, 1,
+        Pattern.compile("[0-9]+"), false);
+    Flag verbose = Flag.createSwitch(new String[]{"verbose", "v"});
+
+
+    @Override
+    public void initialize() {
+      registerFlag(output);
+      registerFlag(input);
+      registerFlag(count);
+      registerFlag(verbose);
+    }
+
+
+    @Override
+    public void run() {}
+
+  }  // class Tool
+
+
+  @Before
+  public void setUp() {
+    environment = new HashMap<String, String>();
+  }
+
+
+  private ConfigFile createConfigFile(String... lines) throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+    return ConfigFile.open(file.toPath());
+  }
+
+
+  @Test
+  public void testConfigFile_Get() throws IOException {
+    ConfigFile config = createConfigFile(
+        "# A comment.",
+        "",
+        "  output = out.txt  ",
+        "input-file=a.txt\r",
+        "verbose",
+        "input-file =b.txt",
+        "name=\u03ba\u03b1\u03bb\u03ac=1",
+        "=ignored");
+    assertEquals(Arrays.asList("out.txt"), config.get("output"));
+    assertEquals(Arrays.asList("a.txt", "b.txt"), config.get("input-file"));
+    assertEquals(Arrays.asList(""), config.get("verbose"));
+    assertEquals(Arrays.asList("\u03ba\u03b1\u03bb\u03ac=1"),
+        config.get("name"));
+    assertTrue("isEmpty", config.get("# A comment.").isEmpty());
+    assertTrue("isEmpty", config.get("").isEmpty());
+    assertTrue("isEmpty", config.get("outpu").isEmpty());
+  }
+
+
+  @Test
+  public void testConfigFile_GetValues() throws IOException {
+    Tool tool = new Tool();
+    ConfigFile config = createConfigFile(
+        "o=out.txt", "verbose=no", "verbose=yes", "count=1", "count=2");
+    assertEquals(Arrays.asList("out.txt"), config.getValues(tool.output));
+    assertEquals(Collections.emptyList(), config.getValues(tool.verbose));
+    assertEquals(Arrays.asList("1", "2"), config.getValues(tool.count));
+    assertNull(config.getValues(tool.input));
+
+    assertSame(ValueSource.SWITCH_OFF,
+        createConfigFile("verbose=false").getValues(tool.verbose));
+    assertNull(createConfigFile().getValues(tool.output));
+  }
+
+
+  @Test
+  public void testConfigFile_ManyKeys() throws IOException {
+    String[] lines = new String[10000];
+    for (int i = 0; i < lines.length; i++) {
+      lines[i] = "key" + i + "=" + i;
+    }
+    ConfigFile config = createConfigFile(lines);
+    for (int i = 0; i < lines.length; i += 997) {
+      assertEquals(Arrays.asList("" + i), config.get("key" + i));
+    }
+  }
+
+
+  @Test
+  public void testEnvironmentValueSource() {
+    Tool tool = new Tool();
+    environment.put("TOOL_OUTPUT", "out.txt");
+    environment.put("TOOL_INPUT_FILE", "a.txt,b.txt");
+    environment.put("TOOL_V", "1");
+    environment.put("TOOL_COUNT", "0");
+    ValueSource source = new EnvironmentValueSource("TOOL_", environment);
+    assertEquals(Arrays.asList("out.txt"), source.getValues(tool.output));
+    assertEquals(Arrays.asList("a.txt", "b.txt"),
+        source.getValues(tool.input));
+    assertEquals(Collections.emptyList(), source.getValues(tool.verbose));
+    assertEquals(Arrays.asList("0"), source.getValues(tool.count));
+
+    environment.put("TOOL_V", "false");
+    assertSame(ValueSource.SWITCH_OFF, source.getValues(tool.verbose));
+  }
+
+
+  @Test
+  public void testParseArgs_Precedence() throws IOException {
+    Tool tool = new Tool();
+    tool.initialize();
+    tool.setInvocationContext(null, environment);
+    tool.setDefaultArgs(tool.output, "default.txt");
+    tool.setDefaultArgs(tool.count, "1");
+    tool.addValueSource(createConfigFile(
+        "output=config.txt", "count=2", "input-file=config.in"));
+    tool.addEnvironmentSource("TOOL_");
+    environment.put("TOOL_COUNT", "3");
+
+    assertTrue(tool.parseArgs(new String[]{"-i", "a.txt", "b.txt"}));
+    assertEquals(Arrays.asList("config.txt"), tool.output.args);
+    assertEquals(Arrays.asList("3"), tool.count.args);
+    assertEquals(Arrays.asList("a.txt", "b.txt"), tool.input.args);
+    assertFalse("isSet", tool.verbose.isSet());
+
+    tool.clear();
+    environment.put("TOOL_VERBOSE", "yes");
+    assertTrue(tool.parseArgs(new String[]{"--count", "4", "-o", "x"}));
+    assertEquals(Arrays.asList("x"), tool.output.args);
+    assertEquals(Arrays.asList("4"), tool.count.args);
+    assertEquals(Arrays.asList("config.in"), tool.input.args);
+    assertTrue("isSet", tool.verbose.isSet());
+  }
+
+
+  @Test
+  public void testParseArgs_SwitchTurnedOffByHigherLayer()
+      throws IOException {
+    Tool tool = new Tool();
+    tool.initialize();
+    tool.setInvocationContext(null, environment);
+    tool.setDefaultArgs(tool.verbose);
+    tool.addValueSource(createConfigFile("output=out.txt", "verbose=true"));
+    tool.addEnvironmentSource("TOOL_");
+
+    assertTrue(tool.parseArgs(new String[0]));
+    assertTrue("isSet", tool.verbose.isSet());
+
+    tool.clear();
+    environment.put("TOOL_VERBOSE", "false");
+    assertTrue(tool.parseArgs(new String[0]));
+    assertFalse("isSet", tool.verbose.isSet());
+
+    // Args still take precedence over the environment.
+    tool.clear();
+    assertTrue(tool.parseArgs(new String[]{"-v"}));
+    assertTrue("isSet", tool.verbose.isSet());
+
+    // A config file turns off a switch that is on by default.
+    Tool other = new Tool();
+    other.initialize();
+    other.setDefaultArgs(other.verbose);
+    other.addValueSource(createConfigFile("output=out.txt", "verbose=0"));
+    assertTrue(other.parseArgs(new String[0]));
+    assertFalse("isSet", other.verbose.isSet());
+  }
+
+
+  @Test
+  public void testParseArgs_SourcedValuesAreNotTakenForFlags()
+      throws IOException {
+    Tool tool = new Tool();
+    tool.initialize();
+    tool.addValueSource(createConfigFile(
+        "output=--x", "input-file=-5", "input-file=-"));
+
+    assertTrue(tool.parseArgs(new String[]{"-v"}));
+    assertEquals(Arrays.asList("--x"), tool.output.args);
+    assertEquals(Arrays.asList("-5", "-"), tool.input.args);
+    assertTrue("isEmpty", tool.args.isEmpty());
+  }
+
+
+  @Test
+  public void testParseArgs_SourcedValuesAreValidated() throws IOException {
+    Tool tool = new Tool();
+    tool.initialize();
+    tool.addValueSource(createConfigFile("output=out.txt", "count=many"));
+
+    assertFalse(tool.parseArgs(new String[0]));
+    List<ParsingError> errors = tool.getErrors();
+    assertEquals("errors.size", 1, errors.size());
+    SingleFlagParsingError error = (SingleFlagParsingError) errors.get(0);
+    assertEquals(SingleFlagParsingError.Type.PATTERN_VIOLATION, error.type);
+    assertSame(tool.count, error.flag);
+  }
+
+}  // class ValueSourceTest
@@ -0,0 +1,138 @@
+/* Copyright 2014 Demetrios Papadopoulos
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package org.smartcliparser.demos;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+public class LineReverserTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+  private static String reverse(String text, LineReverser.Case textCase,
+      int chunkSize) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new LineReverser(textCase, chunkSize).reverse(
+        new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)),
+        out);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+
+  @Test
+  public void testReverse() throws IOException {
+    // A smiling face is a surrogate pair.
+    String text = "abc\r\n\nx\ud83d\ude00y\n\u00e9t\u00e9";
+    assertEquals("cba\r\n\ny\ud83d\ude00x\n\u00e9t\u00e9",
+        reverse(text, LineReverser.Case.UNCHANGED, LineReverser.CHUNK_SIZE));
+    assertEquals("CBA\r\n\nY\ud83d\ude00X\n\u00c9T\u00c9",
+        reverse(text, LineReverser.Case.UPPER, LineReverser.CHUNK_SIZE));
+    assertEquals("", reverse("", LineReverser.Case.LOWER, 4));
+  }
+
+
+  @Test
+  public void testReverse_InvalidBytes() throws IOException {
+    byte[] in = {'a', (byte) 0xe2, (byte) 0x82, 'b', (byte) 0x80};
+    byte[] out = new byte[in.length];
+    int end = LineReverser.reverseLine(
+        ByteBuffer.wrap(in), 0, in.length, out, 0, LineReverser.Case.UPPER);
+    assertEquals(in.length, end);
+    assertArrayEquals(
+        new byte[]{(byte) 0x80, 'B', (byte) 0x82, (byte) 0xe2, 'A'}, out);
+  }
+
+
+  @Test
+  public void testReverse_SmallChunks() throws IOException {
+    // Lines are longer than chunks, and end anywhere within them.
+    Random random = new Random(7);
+    String[] words = {"word", "\u00df", "\u0250", "\ud801\udc00", "AB"};
+    StringBuilder text = new StringBuilder();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      StringBuilder line = new StringBuilder();
+      int numOfWords = random.nextInt(20);
+      for (int j = 0; j < numOfWords; j++) {
+        line.append(words[random.nextInt(words.length)]);
+      }
+      text.append(line).append('\n');
+      expected.append(line.reverse().toString().toLowerCase(Locale.ROOT))
+          .append('\n');
+    }
+    assertEquals(expected.toString(),
+        reverse(text.toString(), LineReverser.Case.LOWER, 16));
+  }
+
+
+  @Test
+  public void testReverse_File() throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(),
+        "first line\nsecond\n".getBytes(StandardCharsets.UTF_8));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new LineReverser(LineReverser.Case.UNCHANGED).reverse(
+        file.toPath(), out);
+    assertEquals("enil tsrif\ndnoces\n",
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+
+  @Test
+  public void testReverse_FileInSmallChunks() throws IOException {
+    // Chunks of a mapped file end anywhere within lines, and the last line
+    // has no line ending.
+    Random random = new Random(11);
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      int length = random.nextInt(40);
+      for (int j = 0; j < length; j++) {
+        text.append(j % 7 == 0 ? "\u00e9" : "x" + i);
+      }
+      text.append(i % 10 == 0 ? "\r\n" : "\n");
+    }
+    text.append("last");
+    File file = folder.newFile();
+    Files.write(file.toPath(),
+        text.toString().getBytes(StandardCharsets.UTF_8));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new LineReverser(LineReverser.Case.UPPER, 16).reverse(file.toPath(), out);
+    assertEquals(reverse(text.toString(), LineReverser.Case.UPPER, 16),
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+
+  @Test
+  public void testExecute_UnreadableFileFails() {
+    String missing = new File(folder.getRoot(), "missing").getPath();
+    assertEquals(1, new Reverse().execute(new String[]{"-f", missing}));
+    assertEquals(0, new Reverse().execute(new String[]{"-i", "abc"}));
+  }
+
+}  // class LineReverserTest